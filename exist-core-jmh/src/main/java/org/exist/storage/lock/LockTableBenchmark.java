@@ -20,11 +20,21 @@
 package org.exist.storage.lock;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class LockTableBenchmark {
 
+    private static final int CONTENDED_THREADS = 32;
+
     private static final int DATA_SUB_COLLECTIONS = 13;
     private static final int DOCUMENTS = 20;
 
@@ -37,6 +47,35 @@ public class LockTableBenchmark {
     @State(Scope.Benchmark)
     public static class LockTableState {
         private final LockTable lockTable = new LockTable(null);
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            lockTable.shutdown();
+        }
+    }
+
+    /**
+     * A lock table whose events are written to a JSON file.
+     */
+    @State(Scope.Benchmark)
+    public static class ListenedLockTableState {
+        private final LockTable lockTable = new LockTable(null);
+        private Path jsonFile;
+        private LockEventJsonListener listener;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            jsonFile = Files.createTempFile("lock-table-benchmark", ".json");
+            listener = new LockEventJsonListener(jsonFile);
+            lockTable.registerListener(listener);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            lockTable.deregisterListener(listener);
+            lockTable.shutdown();
+            Files.deleteIfExists(jsonFile);
+        }
     }
 
     @State(Scope.Thread)
@@ -48,10 +87,36 @@ public class LockTableBenchmark {
 
         private int dataSubCollectionIndex = 0;
         private int documentsIndex = 0;
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            btreeReads = 0;
+            collectionIntentionReads = 0;
+            collectionReads = 0;
+            documentReads = 0;
+            dataSubCollectionIndex = 0;
+            documentsIndex = 0;
+        }
     }
 
     @Benchmark
     public void testEvent(final LockTableState lockTableState, final EventsState eventsState) {
+        events(lockTableState.lockTable, eventsState);
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public void testEventContended(final LockTableState lockTableState, final EventsState eventsState) {
+        events(lockTableState.lockTable, eventsState);
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public void testEventContendedWithListener(final ListenedLockTableState lockTableState, final EventsState eventsState) {
+        events(lockTableState.lockTable, eventsState);
+    }
+
+    private static void events(final LockTable lockTable, final EventsState eventsState) {
         while (!(eventsState.collectionIntentionReads >= EVENTS_COLLECTION_INTENTION_READ_LOCK
                 && eventsState.collectionReads >= EVENTS_COLLECTION_READ_LOCK
                 && eventsState.documentReads >= EVENTS_DOCUMENT_READ_LOCK
@@ -61,59 +126,59 @@ public class LockTableBenchmark {
             final long groupId = System.nanoTime();
 
             if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 eventsState.btreeReads++;
-                lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
             }
 
             boolean didCollectionIntentionRead = false;
             if (eventsState.collectionIntentionReads < EVENTS_COLLECTION_INTENTION_READ_LOCK) {
-                lockTableState.lockTable.attempt(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.acquired(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.attempt(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.acquired(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
                 eventsState.collectionIntentionReads++;
 
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
-                lockTableState.lockTable.attempt(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.acquired(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.released(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.attempt(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.acquired(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.released(groupId, "/db", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
                 eventsState.collectionIntentionReads++;
 
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
-                lockTableState.lockTable.attempt(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.acquired(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.released(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.attempt(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.acquired(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.released(groupId, "/db/apps", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
                 eventsState.collectionIntentionReads++;
 
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
-                lockTableState.lockTable.attempt(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.acquired(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
-                lockTableState.lockTable.released(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.attempt(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.acquired(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.released(groupId, "/db/apps/docs", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
                 eventsState.collectionIntentionReads++;
 
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
                 didCollectionIntentionRead = true;
@@ -128,44 +193,44 @@ public class LockTableBenchmark {
             if (eventsState.collectionReads < EVENTS_COLLECTION_READ_LOCK) {
 
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
-                lockTableState.lockTable.attempt(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
-                lockTableState.lockTable.acquired(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
+                lockTable.attempt(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
+                lockTable.acquired(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
                 eventsState.collectionReads++;
 
                 didCollectionRead = true;
             }
 
             if (didCollectionIntentionRead) {
-                lockTableState.lockTable.released(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
+                lockTable.released(groupId, "/db/apps/docs/data", Lock.LockType.COLLECTION, Lock.LockMode.INTENTION_READ);
             }
 
             if (eventsState.documentReads < EVENTS_DOCUMENT_READ_LOCK) {
                 if (eventsState.btreeReads < EVENTS_BTREE_READ_LOCK) {
-                    lockTableState.lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
-                    lockTableState.lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.attempt(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.acquired(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                     eventsState.btreeReads++;
-                    lockTableState.lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+                    lockTable.released(groupId, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
                 }
 
                 if (eventsState.documentsIndex > DOCUMENTS) {
                     eventsState.documentsIndex = 0;
                 }
                 final String document = dataSubCollection + '/' + eventsState.documentsIndex++;
-                lockTableState.lockTable.attempt(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
-                lockTableState.lockTable.acquired(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
+                lockTable.attempt(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
+                lockTable.acquired(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
                 eventsState.documentReads++;
 
-                lockTableState.lockTable.released(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
+                lockTable.released(groupId, document, Lock.LockType.DOCUMENT, Lock.LockMode.READ_LOCK);
             }
 
             if (didCollectionRead) {
-                lockTableState.lockTable.released(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
+                lockTable.released(groupId, dataSubCollection, Lock.LockType.COLLECTION, Lock.LockMode.READ_LOCK);
             }
         }
     }
@@ -0,0 +1,118 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+
+/**
+ * Measures the time taken by the recovery of the journal at startup,
+ * after a number of documents were stored and the database was not
+ * shutdown cleanly.
+ *
+ * Requires a conf.xml in $EXIST_HOME, i.e. the benchmark should be run
+ * from within a (built) distribution.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class RecoveryBenchmark {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("recovery-benchmark");
+
+    @Param({"100", "1000"})
+    private int documents;
+
+    @Param({"1", "4"})
+    private int redoThreads;
+
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        existEmbeddedServer = new ExistEmbeddedServer(
+                propertiesBuilder()
+                        .put(RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS, redoThreads)
+                        .build(),
+                true,
+                true);
+        existEmbeddedServer.startDb();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            for (int i = 0; i < documents; i++) {
+                final String xml = document(i);
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + i + ".xml"), xml);
+                collection.store(transaction, broker, info, xml);
+            }
+            transact.commit(transaction);
+        }
+
+        // flush the journal and stop without a checkpoint, so that the next startup runs recovery
+        pool.getJournalManager().get().flush(true, false);
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.stopDb(false);
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Benchmark
+    public void recover() throws Exception {
+        existEmbeddedServer.startDb();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.stopDb(true);
+    }
+
+    private static String document(final int num) {
+        final StringBuilder builder = new StringBuilder("<doc id=\"").append(num).append("\">");
+        for (int i = 0; i < 50; i++) {
+            builder.append("<item n=\"").append(i).append("\">Item ").append(i).append(" of document ").append(num).append("</item>");
+        }
+        return builder.append("</doc>").toString();
+    }
+}
@@ -584,10 +584,11 @@ public class MutableCollection implements Collection {
     }
     
     private void addDocumentsToSet(final DBBroker broker, final Iterator<DocumentImpl> documentIterator, final MutableDocumentSet docs) {
+        final Subject subject = broker.getCurrentSubject();
         while (documentIterator.hasNext()) {
             final DocumentImpl doc = documentIterator.next();
-            try(final ManagedDocumentLock lockedDoc = lockManager.acquireDocumentReadLock(doc.getURI())) {
-                if(doc.getPermissions().validate(broker.getCurrentSubject(), Permission.READ)) {
+            try {
+                if(lockManager.readDocumentOptimistically(doc.getURI(), () -> doc.getPermissions().validate(subject, Permission.READ))) {
                     docs.add(doc);
                 }
             } catch (final LockException e) {
@@ -0,0 +1,660 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.persistent;
+
+import org.exist.dom.QName;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.xquery.Constants;
+import org.exist.xquery.Expression;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.SequenceIterator;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A read-only node set, which stores its nodes in primitive arrays instead of
+ * {@link NodeProxy} objects: the serialized node id, its number of units and the
+ * storage address of each node, plus one entry per document.
+ *
+ * A node costs about 20 bytes instead of the 100 bytes and more taken by a proxy
+ * and its node id. Proxies are only created when a node is read from the set,
+ * and the joins {@link #selectParentChild(NodeSet, int, int)} and
+ * {@link #selectAncestorDescendant(NodeSet, int, boolean, int, boolean)} only create
+ * proxies for the nodes they select. {@link #intersection(NodeSet)} and
+ * {@link #union(NodeSet)} with another packed set are done on the packed nodes.
+ *
+ * All nodes have the same node type and name. They have to be added in document
+ * order, as they are read from the structural index. As proxies are created on
+ * demand, changes to the context or the matches of a proxy read from the set are
+ * not kept, so the set should only be used as the input of a join.
+ *
+ * Node ids are compared by their serialized form, which sorts in document order
+ * like the keys of the structural index.
+ */
+public class PackedNodeSet extends AbstractNodeSet {
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final NodeIdFactory nodeFactory;
+    private final short nodeType;
+    @Nullable private final QName qname;
+
+    private DocumentImpl[] documents = new DocumentImpl[4];
+
+    /**
+     * The index of the first node of each document in {@link #documents}.
+     */
+    private int[] documentStart = new int[4];
+    private int documentCount = 0;
+
+    /**
+     * The offset of the id of each node in {@link #ids}.
+     */
+    private int[] idOffsets = new int[INITIAL_SIZE];
+    private int[] idUnits = new int[INITIAL_SIZE];
+    private long[] addresses = new long[INITIAL_SIZE];
+    private byte[] ids = new byte[INITIAL_SIZE * 4];
+    private int idsLength = 0;
+    private int size = 0;
+
+    /**
+     * @param nodeFactory the factory creating the node ids
+     * @param nodeType the type of all nodes in the set
+     * @param qname the name of all nodes in the set, or null if not known
+     */
+    public PackedNodeSet(final NodeIdFactory nodeFactory, final short nodeType, @Nullable final QName qname) {
+        this.nodeFactory = nodeFactory;
+        this.nodeType = nodeType;
+        this.qname = qname;
+    }
+
+    /**
+     * Adds a node, whose serialized node id is copied from the given array.
+     *
+     * @param doc the document of the node
+     * @param data the array containing the serialized node id
+     * @param offset the offset of the node id in data
+     * @param units the number of units of the node id
+     * @param address the storage address of the node
+     *
+     * @throws IllegalArgumentException if the node is before the last node added
+     */
+    public void add(final DocumentImpl doc, final byte[] data, final int offset, final int units, final long address) {
+        final int length = nodeFactory.lengthInBytes(units, data, offset);
+        if (documentCount > 0 && documents[documentCount - 1].getDocId() == doc.getDocId()) {
+            final int last = size - 1;
+            final int cmp = compareIds(ids, idOffsets[last], idLength(last), data, offset, length);
+            if (cmp == 0) {
+                return;
+            } else if (cmp > 0) {
+                throw new IllegalArgumentException("Nodes have to be added in document order");
+            }
+        } else {
+            if (documentCount > 0 && documents[documentCount - 1].getDocId() > doc.getDocId()) {
+                throw new IllegalArgumentException("Nodes have to be added in document order");
+            }
+            if (documentCount == documents.length) {
+                documents = Arrays.copyOf(documents, documentCount * 2);
+                documentStart = Arrays.copyOf(documentStart, documentCount * 2);
+            }
+            documents[documentCount] = doc;
+            documentStart[documentCount++] = size;
+        }
+
+        if (size == addresses.length) {
+            final int newSize = size * 3 / 2;
+            idOffsets = Arrays.copyOf(idOffsets, newSize);
+            idUnits = Arrays.copyOf(idUnits, newSize);
+            addresses = Arrays.copyOf(addresses, newSize);
+        }
+        if (idsLength + length > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(ids.length * 3 / 2, idsLength + length));
+        }
+        System.arraycopy(data, offset, ids, idsLength, length);
+        idOffsets[size] = idsLength;
+        idUnits[size] = units;
+        addresses[size++] = address;
+        idsLength += length;
+        isEmpty = false;
+        hasOne = size == 1;
+    }
+
+    /**
+     * Adds a node. As the set does not keep the context or the matches of
+     * a node, the proxy must have neither.
+     *
+     * @param proxy the node
+     *
+     * @throws IllegalArgumentException if the proxy has a context or matches, if it has
+     *     another node type than the set or if it is before the last node added
+     */
+    @Override
+    public void add(final NodeProxy proxy) {
+        if (proxy.getContext() != null || proxy.getMatches() != null) {
+            throw new IllegalArgumentException("A packed node set cannot store the context or matches of a node");
+        }
+        if (proxy.getNodeType() != nodeType) {
+            throw new IllegalArgumentException("A packed node set can only store nodes of type " + nodeType);
+        }
+        final NodeId nodeId = proxy.getNodeId();
+        final byte[] data = new byte[nodeId.size()];
+        nodeId.serialize(data, 0);
+        add(proxy.getOwnerDocument(), data, 0, nodeId.units(), proxy.getInternalAddress());
+    }
+
+    @Override
+    public void addAll(final NodeSet other) {
+        for (final NodeProxy proxy : other) {
+            add(proxy);
+        }
+    }
+
+    @Override
+    public NodeSetIterator iterator() {
+        return new PackedIterator();
+    }
+
+    @Override
+    public SequenceIterator iterate() {
+        return new PackedIterator();
+    }
+
+    @Override
+    public SequenceIterator unorderedIterator() {
+        return new PackedIterator();
+    }
+
+    @Override
+    public boolean contains(final NodeProxy proxy) {
+        return indexOf(proxy.getOwnerDocument(), proxy.getNodeId()) > -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean hasOne() {
+        return size == 1;
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public long getItemCountLong() {
+        return size;
+    }
+
+    @Override
+    public Node item(final int pos) {
+        return get(pos);
+    }
+
+    @Override
+    public Item itemAt(final int pos) {
+        return get(pos);
+    }
+
+    @Override
+    public NodeProxy get(final int pos) {
+        if (pos < 0 || pos >= size) {
+            return null;
+        }
+        return createProxy(findDocumentOfNode(pos), pos, createNodeId(pos));
+    }
+
+    @Override
+    public NodeProxy get(final DocumentImpl doc, final NodeId nodeId) {
+        final int pos = indexOf(doc, nodeId);
+        if (pos < 0) {
+            return null;
+        }
+        return createProxy(findDocument(doc.getDocId()), pos, nodeId);
+    }
+
+    @Override
+    public NodeProxy get(final NodeProxy proxy) {
+        return get(proxy.getOwnerDocument(), proxy.getNodeId());
+    }
+
+    @Override
+    public DocumentSet getDocumentSet() {
+        final MutableDocumentSet docs = new DefaultDocumentSet(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            docs.add(documents[i]);
+        }
+        return docs;
+    }
+
+    @Override
+    public int getSizeHint(final DocumentImpl doc) {
+        final int docIdx = findDocument(doc.getDocId());
+        if (docIdx < 0) {
+            return Constants.NO_SIZE_HINT;
+        }
+        return documentEnd(docIdx) - documentStart[docIdx];
+    }
+
+    @Override
+    public NodeSet selectParentChild(final NodeSet al, final int mode, final int contextId) {
+        if (al instanceof VirtualNodeSet) {
+            return super.selectParentChild(al, mode, contextId);
+        }
+        return getDescendantsInSet(al, true, false, mode, contextId, true);
+    }
+
+    @Override
+    public NodeSet selectAncestorDescendant(final NodeSet al, final int mode, final boolean includeSelf,
+            final int contextId, final boolean copyMatches) {
+        if (al instanceof VirtualNodeSet) {
+            return super.selectAncestorDescendant(al, mode, includeSelf, contextId, copyMatches);
+        }
+        return getDescendantsInSet(al, false, includeSelf, mode, contextId, copyMatches);
+    }
+
+    /**
+     * Finds the nodes in this set which are children or descendants of the nodes in al,
+     * like {@link NewArrayNodeSet#getDescendantsInSet(NodeSet, boolean, boolean, int, int, boolean)}.
+     * Proxies are only created for the nodes selected, and a node selected by more than one
+     * node in al is only created once.
+     */
+    private NodeSet getDescendantsInSet(final NodeSet al, final boolean childOnly, final boolean includeSelf,
+            final int mode, final int contextId, final boolean copyMatches) {
+        final NodeSet result = new NewArrayNodeSet();
+        int lastDocIdx = -1;
+        NodeProxy[] proxies = null;
+        for (final NodeProxy ancestor : al) {
+            final int docIdx = findDocument(ancestor.getOwnerDocument().getDocId());
+            if (docIdx < 0) {
+                continue;
+            }
+            if (docIdx != lastDocIdx) {
+                lastDocIdx = docIdx;
+                proxies = null;
+            }
+            final int start = documentStart[docIdx];
+            final int end = documentEnd(docIdx);
+            final NodeId ancestorId = ancestor.getNodeId();
+            // document nodes are not stored in the set, so all nodes are descendants of the document node
+            int pos = ancestorId == NodeId.DOCUMENT_NODE ? start : lowerBound(start, end, serialize(ancestorId));
+            for (; pos < end; pos++) {
+                final NodeId nodeId = createNodeId(pos);
+                final int relation = nodeId.computeRelation(ancestorId);
+                if (relation < 0) {
+                    break;
+                }
+                if (childOnly ? relation != NodeId.IS_CHILD : relation == NodeId.IS_SELF && !includeSelf) {
+                    continue;
+                }
+
+                if (proxies == null) {
+                    proxies = new NodeProxy[end - start];
+                }
+                NodeProxy node = proxies[pos - start];
+                if (node == null) {
+                    node = createProxy(docIdx, pos, nodeId);
+                    proxies[pos - start] = node;
+                }
+                switch (mode) {
+                    case NodeSet.DESCENDANT:
+                        if (Expression.NO_CONTEXT_ID != contextId) {
+                            node.deepCopyContext(ancestor, contextId);
+                        } else {
+                            node.copyContext(ancestor);
+                        }
+                        if (copyMatches) {
+                            node.addMatches(ancestor);
+                        }
+                        result.add(node);
+                        break;
+                    case NodeSet.ANCESTOR:
+                        if (Expression.NO_CONTEXT_ID != contextId) {
+                            ancestor.deepCopyContext(node, contextId);
+                        } else {
+                            ancestor.copyContext(node);
+                        }
+                        if (copyMatches) {
+                            ancestor.addMatches(node);
+                        }
+                        result.add(ancestor, 1);
+                        break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public NodeSet intersection(final NodeSet other) {
+        if (!(other instanceof PackedNodeSet)) {
+            return super.intersection(other);
+        }
+        final PackedNodeSet packed = (PackedNodeSet) other;
+        final PackedNodeSet result = new PackedNodeSet(nodeFactory, nodeType, qname);
+        int i = 0;
+        int j = 0;
+        while (i < documentCount && j < packed.documentCount) {
+            final int cmp = Integer.compare(documents[i].getDocId(), packed.documents[j].getDocId());
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                int pos = documentStart[i];
+                int otherPos = packed.documentStart[j];
+                final int end = documentEnd(i);
+                final int otherEnd = packed.documentEnd(j);
+                while (pos < end && otherPos < otherEnd) {
+                    final int idCmp = compareIds(ids, idOffsets[pos], idLength(pos),
+                            packed.ids, packed.idOffsets[otherPos], packed.idLength(otherPos));
+                    if (idCmp < 0) {
+                        pos++;
+                    } else if (idCmp > 0) {
+                        otherPos++;
+                    } else {
+                        result.add(documents[i], ids, idOffsets[pos], idUnits[pos], addresses[pos]);
+                        pos++;
+                        otherPos++;
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public NodeSet union(final NodeSet other) {
+        if (!(other instanceof PackedNodeSet) || ((PackedNodeSet) other).nodeType != nodeType
+                || !Objects.equals(((PackedNodeSet) other).qname, qname)) {
+            return super.union(other);
+        }
+        final PackedNodeSet packed = (PackedNodeSet) other;
+        final PackedNodeSet result = new PackedNodeSet(nodeFactory, nodeType, qname);
+        int i = 0;
+        int j = 0;
+        while (i < documentCount || j < packed.documentCount) {
+            final int cmp;
+            if (i == documentCount) {
+                cmp = 1;
+            } else if (j == packed.documentCount) {
+                cmp = -1;
+            } else {
+                cmp = Integer.compare(documents[i].getDocId(), packed.documents[j].getDocId());
+            }
+            if (cmp < 0) {
+                result.addDocument(this, i++);
+            } else if (cmp > 0) {
+                result.addDocument(packed, j++);
+            } else {
+                int pos = documentStart[i];
+                int otherPos = packed.documentStart[j];
+                final int end = documentEnd(i);
+                final int otherEnd = packed.documentEnd(j);
+                while (pos < end || otherPos < otherEnd) {
+                    final int idCmp;
+                    if (pos == end) {
+                        idCmp = 1;
+                    } else if (otherPos == otherEnd) {
+                        idCmp = -1;
+                    } else {
+                        idCmp = compareIds(ids, idOffsets[pos], idLength(pos),
+                                packed.ids, packed.idOffsets[otherPos], packed.idLength(otherPos));
+                    }
+                    if (idCmp <= 0) {
+                        result.add(documents[i], ids, idOffsets[pos], idUnits[pos], addresses[pos]);
+                        pos++;
+                        if (idCmp == 0) {
+                            otherPos++;
+                        }
+                    } else {
+                        result.add(documents[i], packed.ids, packed.idOffsets[otherPos], packed.idUnits[otherPos],
+                                packed.addresses[otherPos]);
+                        otherPos++;
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private void addDocument(final PackedNodeSet from, final int docIdx) {
+        final int end = from.documentEnd(docIdx);
+        for (int pos = from.documentStart[docIdx]; pos < end; pos++) {
+            add(from.documents[docIdx], from.ids, from.idOffsets[pos], from.idUnits[pos], from.addresses[pos]);
+        }
+    }
+
+    /**
+     * The set does not keep the context of its nodes, so there is nothing to clear.
+     */
+    @Override
+    public void clearContext(final int contextId) throws XPathException {
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        final int pos = indexOf(newNode.getOwnerDocument(), oldNodeId);
+        if (pos < 0) {
+            return;
+        }
+        addresses[pos] = newNode.getInternalAddress();
+        final NodeId newNodeId = newNode.getNodeId();
+        if (!newNodeId.equals(oldNodeId)) {
+            // the old id is left unused in the array of ids
+            final int length = newNodeId.size();
+            if (idsLength + length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 3 / 2, idsLength + length));
+            }
+            newNodeId.serialize(ids, idsLength);
+            idOffsets[pos] = idsLength;
+            idUnits[pos] = newNodeId.units();
+            idsLength += length;
+        }
+    }
+
+    private NodeProxy createProxy(final int docIdx, final int pos, final NodeId nodeId) {
+        final NodeProxy proxy = new NodeProxy(documents[docIdx], nodeId, nodeType, addresses[pos]);
+        if (qname != null) {
+            proxy.setQName(qname);
+        }
+        return proxy;
+    }
+
+    private NodeId createNodeId(final int pos) {
+        return nodeFactory.createFromData(idUnits[pos], ids, idOffsets[pos]);
+    }
+
+    private int idLength(final int pos) {
+        return nodeFactory.lengthInBytes(idUnits[pos], ids, idOffsets[pos]);
+    }
+
+    private int documentEnd(final int docIdx) {
+        return docIdx + 1 < documentCount ? documentStart[docIdx + 1] : size;
+    }
+
+    private int findDocument(final int docId) {
+        int low = 0;
+        int high = documentCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midDocId = documents[mid].getDocId();
+            if (midDocId < docId) {
+                low = mid + 1;
+            } else if (midDocId > docId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int findDocumentOfNode(final int pos) {
+        int low = 0;
+        int high = documentCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (documentStart[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int indexOf(final DocumentImpl doc, final NodeId nodeId) {
+        final int docIdx = findDocument(doc.getDocId());
+        if (docIdx < 0) {
+            return -1;
+        }
+        final byte[] data = serialize(nodeId);
+        final int end = documentEnd(docIdx);
+        final int pos = lowerBound(documentStart[docIdx], end, data);
+        if (pos < end && compareIds(ids, idOffsets[pos], idLength(pos), data, 0, data.length) == 0) {
+            return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first node between start and end, whose id is not before the given id.
+     */
+    private int lowerBound(final int start, final int end, final byte[] data) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareIds(ids, idOffsets[mid], idLength(mid), data, 0, data.length) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] serialize(final NodeId nodeId) {
+        final byte[] data = new byte[nodeId.size()];
+        nodeId.serialize(data, 0);
+        return data;
+    }
+
+    private static int compareIds(final byte[] a, final int aOffset, final int aLength,
+            final byte[] b, final int bOffset, final int bLength) {
+        final int limit = Math.min(aLength, bLength);
+        for (int i = 0; i < limit; i++) {
+            final byte b1 = a[aOffset + i];
+            final byte b2 = b[bOffset + i];
+            if (b1 != b2) {
+                return (b1 & 0xFF) - (b2 & 0xFF);
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private class PackedIterator implements NodeSetIterator, SequenceIterator {
+        private int pos = 0;
+        private int docIdx = 0;
+
+        @Override
+        public boolean hasNext() {
+            return pos < size;
+        }
+
+        @Override
+        public NodeProxy next() {
+            if (pos >= size) {
+                throw new NoSuchElementException();
+            }
+            return createNext();
+        }
+
+        @Override
+        public Item nextItem() {
+            if (pos >= size) {
+                return null;
+            }
+            return createNext();
+        }
+
+        private NodeProxy createNext() {
+            while (documentEnd(docIdx) <= pos) {
+                docIdx++;
+            }
+            final NodeProxy proxy = createProxy(docIdx, pos, createNodeId(pos));
+            pos++;
+            return proxy;
+        }
+
+        @Override
+        public long skippable() {
+            return size - pos;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skip = Math.min(n, size - pos);
+            pos += skip;
+            return skip;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NodeProxy peekNode() {
+            if (pos >= size) {
+                return null;
+            }
+            final int current = pos;
+            final NodeProxy proxy = createNext();
+            pos = current;
+            return proxy;
+        }
+
+        @Override
+        public void setPosition(final NodeProxy proxy) {
+            final int found = indexOf(proxy.getOwnerDocument(), proxy.getNodeId());
+            if (found < 0) {
+                pos = size;
+            } else {
+                pos = found;
+                docIdx = findDocumentOfNode(found);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing;
+
+import org.exist.storage.btree.DBException;
+
+/**
+ * Interface to be implemented by an index if it can be built more
+ * efficiently when all of its entries are known in advance, e.g. by
+ * sorting them and writing its pages bottom-up. This feature is used
+ * when the whole database is reindexed by {@link org.exist.storage.DBBroker#repair()}.
+ *
+ * Whilst the bulk load is in progress, the index only collects new entries,
+ * and its content is not visible to queries.
+ *
+ * A bulk load is therefore only used by the repair, which runs whilst the
+ * database is still starting up and starts from empty index files. It is not
+ * used when a collection is reindexed or a backup is restored, because then:
+ * the index files already hold the entries of other documents, so the pages
+ * cannot be built from scratch; the database is in use, and other users would
+ * not see the collected entries; and the pages written at the end of a bulk
+ * load are not journalled.
+ */
+public interface BulkLoadSupport {
+
+    /**
+     * Called before the database is reindexed, whilst the index is still empty.
+     *
+     * @throws DBException if the bulk load cannot be started
+     */
+    void startBulkLoad() throws DBException;
+
+    /**
+     * Called after the database was reindexed, writes the collected entries to the index.
+     *
+     * @throws DBException if the entries could not be written
+     */
+    void finishBulkLoad() throws DBException;
+}
@@ -27,9 +27,13 @@ import org.exist.storage.BrokerPool;
 import org.exist.storage.BrokerPoolService;
 import org.exist.storage.BrokerPoolServiceException;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.lock.ManagedLock;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
 import org.w3c.dom.Element;
 
 import java.io.IOException;
@@ -37,6 +41,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -265,6 +270,34 @@ public class IndexManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Call indexes to flush all data to disk whilst the database is in use.
+     *
+     * The storage file of each index, if it has one, is write locked whilst
+     * <code>beforeSync</code> runs and the index is synced, so that its pages
+     * are not modified in the meantime.
+     *
+     * @param beforeSync called before each index is synced, e.g. to flush the journal
+     * @throws DBException in case of an eXist-db error
+     */
+    public void syncLocked(final Runnable beforeSync) throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            final BTree storage = index.getStorage();
+            if (storage == null) {
+                beforeSync.run();
+                index.sync();
+            } else {
+                try (final ManagedLock<ReentrantLock> storageLock = pool.getLockManager().acquireBtreeWriteLock(storage.getLockName())) {
+                    beforeSync.run();
+                    index.sync();
+                } catch (final LockException e) {
+                    LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(storage.getFile()) + "'", e);
+                }
+            }
+        }
+    }
+
     /**
      * Physically destroy the registered indexes by calling {@link org.exist.indexing.Index#remove()}
      * on them.
@@ -292,6 +325,47 @@ public class IndexManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Starts a bulk load on all registered indexes which support it,
+     * see {@link BulkLoadSupport#startBulkLoad()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void startBulkLoad() throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            if (index instanceof BulkLoadSupport) {
+                ((BulkLoadSupport) index).startBulkLoad();
+            }
+        }
+    }
+
+    /**
+     * Finishes the bulk load on all registered indexes which support it,
+     * see {@link BulkLoadSupport#finishBulkLoad()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void finishBulkLoad() throws DBException {
+        DBException firstError = null;
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            if (index instanceof BulkLoadSupport) {
+                try {
+                    ((BulkLoadSupport) index).finishBulkLoad();
+                } catch (final DBException e) {
+                    LOG.error("Failed to finish bulk load of index " + index.getIndexId() + ": " + e.getMessage(), e);
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
     public void backupToArchive(final RawDataBackup backup) throws IOException {
         for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
             final Index index = i.next();
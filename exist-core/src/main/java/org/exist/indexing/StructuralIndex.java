@@ -46,6 +46,26 @@ public interface StructuralIndex {
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent);
 
+    /**
+     * Find all elements or attributes with the given name, for use as the input of
+     * {@link NodeSet#selectParentChild(NodeSet, int, int)} or
+     * {@link NodeSet#selectAncestorDescendant(NodeSet, int, boolean, int, boolean)}.
+     *
+     * The returned set may not keep changes to the context or matches of its nodes,
+     * which allows implementations to return a compact set like
+     * {@link org.exist.dom.persistent.PackedNodeSet}.
+     *
+     * @param type node type
+     * @param docs the docs to search
+     * @param qname the name of the nodes
+     * @param parent the expression evaluated
+     * @return all nodes with the given name
+     */
+    default NodeSet findElementsByTagNameForJoin(final byte type, final DocumentSet docs, final QName qname,
+            final Expression parent) {
+        return findElementsByTagName(type, docs, qname, null, parent);
+    }
+
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis,
         DocumentSet docs, NodeSet contextSet,  int contextId);
 
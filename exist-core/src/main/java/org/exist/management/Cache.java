@@ -76,6 +76,16 @@ public class Cache implements CacheMXBean {
         return cache.getFails();
     }
 
+    @Override
+    public int getAdmitted() {
+        return cache.getAdmitted();
+    }
+
+    @Override
+    public int getRejected() {
+        return cache.getRejected();
+    }
+
     @Override
     public String getCacheName() {
         return cache.getName();
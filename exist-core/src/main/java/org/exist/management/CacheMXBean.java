@@ -38,5 +38,9 @@ public interface CacheMXBean extends PerInstanceMBean {
 
     int getFails();
 
+    int getAdmitted();
+
+    int getRejected();
+
     String getCacheName();
 }
\ No newline at end of file
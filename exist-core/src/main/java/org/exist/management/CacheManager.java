@@ -44,4 +44,29 @@ public class CacheManager implements CacheManagerMXBean {
     public long getCurrentSize() {
         return manager.getCurrentSize();
     }
+
+    @Override
+    public long getAdmitted() {
+        return manager.getAdmitted();
+    }
+
+    @Override
+    public long getRejected() {
+        return manager.getRejected();
+    }
+
+    @Override
+    public long getOffHeapSize() {
+        return manager.getOffHeapSize();
+    }
+
+    @Override
+    public long getOffHeapHits() {
+        return manager.getOffHeapHits();
+    }
+
+    @Override
+    public long getOffHeapFails() {
+        return manager.getOffHeapFails();
+    }
 }
@@ -9,4 +9,14 @@ public interface CacheManagerMXBean extends PerInstanceMBean {
     long getMaxSingle();
 
     long getCurrentSize();
+
+    long getAdmitted();
+
+    long getRejected();
+
+    long getOffHeapSize();
+
+    long getOffHeapHits();
+
+    long getOffHeapFails();
 }
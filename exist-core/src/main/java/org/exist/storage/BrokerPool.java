@@ -61,6 +61,7 @@ import org.exist.storage.journal.JournalManager;
 import org.exist.storage.lock.FileLockService;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.recovery.RecoveryManager;
+import org.exist.storage.sync.FuzzyCheckpointer;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.sync.SyncTask;
 import org.exist.storage.txn.TransactionException;
@@ -85,6 +86,7 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -210,6 +212,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private final Map<Thread, DBBroker> activeBrokers = new ConcurrentHashMap<>();
 
+    /**
+     * One permit for each broker which may be leased, i.e. {@link #maxBrokers}.
+     *
+     * Waiting for a broker is done on this (fair) semaphore rather than on the monitor
+     * of the pool, so that waiting threads are served in order and do not
+     * contend for the monitor.
+     */
+    private final Semaphore brokerLeases;
+
 
     /**
      * Used when TRACE level logging is enabled
@@ -260,6 +271,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private TransactionManager transactionManager = null;
 
+    /**
+     * Creates fuzzy checkpoints in the background, if enabled.
+     */
+    private Optional<FuzzyCheckpointer> fuzzyCheckpointer = Optional.empty();
+
     /**
      * The Blob Store of the database instance.
      */
@@ -406,6 +422,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.minBrokers = conf.getProperty(PROPERTY_MIN_CONNECTIONS, minBrokers);
         this.maxBrokers = conf.getProperty(PROPERTY_MAX_CONNECTIONS, maxBrokers);
         LOG.info("database instance '" + instanceName + "' will have between " + nf.format(this.minBrokers) + " and " + nf.format(this.maxBrokers) + " brokers");
+        this.brokerLeases = new Semaphore(this.maxBrokers, true);
 
         this.majorSyncPeriod = conf.getProperty(PROPERTY_SYNC_PERIOD, DEFAULT_SYNCH_PERIOD);
         LOG.info("database instance '" + instanceName + "' will be synchronized every " + nf.format(/*this.*/majorSyncPeriod) + " ms");
@@ -492,6 +509,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         final SystemTaskManager systemTaskManager = servicesManager.register(new SystemTaskManager(this));
         this.transactionManager = servicesManager.register(new TransactionManager(this, journalManager, systemTaskManager));
 
+        if(journalManager.isPresent() && majorSyncPeriod > 0 && conf.getProperty(PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, false)) {
+            this.fuzzyCheckpointer = Optional.of(servicesManager.register(new FuzzyCheckpointer(this, majorSyncPeriod)));
+        }
+
         this.blobStoreService = servicesManager.register(new BlobStoreImplService());
 
         this.symbols = servicesManager.register(new SymbolTable());
@@ -989,6 +1010,13 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return journalManager;
     }
 
+    /**
+     * @return the fuzzy checkpointer, if fuzzy checkpoints are enabled
+     */
+    public Optional<FuzzyCheckpointer> getFuzzyCheckpointer() {
+        return fuzzyCheckpointer;
+    }
+
     public TransactionManager getTransactionManager() {
         return transactionManager;
     }
@@ -1170,6 +1198,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     /**
      * Returns an active broker for the database instance.
      *
+     * If all {@link #getMax()} brokers are leased, the calling thread
+     * waits until a broker is released; waiting threads are served in
+     * the order in which they arrived.
+     *
      * @param subject Optionally a subject to set on the broker, if a user is not provided then the
      *                current user assigned to the broker will be re-used
      * @return The broker
@@ -1210,37 +1242,37 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         //No active broker : get one ASAP
 
-        while(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
-            try {
-                LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
-                wait();
-            } catch(final InterruptedException e) {
-                Thread.currentThread().interrupt();
-                LOG.error("Interrupt detected");
+        synchronized(this) {
+            while(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
+                try {
+                    LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
+                    wait();
+                } catch(final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOG.error("Interrupt detected");
+                }
             }
         }
 
+        // wait (outside of the monitor) until we may lease a broker
+        if(!brokerLeases.tryAcquire()) {
+            LOG.debug("waiting for a broker to become available");
+            brokerLeases.acquireUninterruptibly();
+        }
+
         synchronized(this) {
-            //Are there any available brokers ?
-            if(inactiveBrokers.isEmpty()) {
-                //There are no available brokers. If allowed...
-                if(brokersCount < maxBrokers)
-                //... create one
-                {
+            try {
+                //Are there any available brokers ?
+                if(inactiveBrokers.isEmpty()) {
+                    //There are no available brokers, as we hold a lease we are allowed to create one
                     createBroker();
-                } else
-                    //... or wait until there is one available
-                    while(inactiveBrokers.isEmpty()) {
-                        LOG.debug("waiting for a broker to become available");
-                        try {
-                            this.wait();
-                        } catch(final InterruptedException e) {
-                            //nothing to be done!
-                        }
-                    }
+                }
+                broker = inactiveBrokers.pop();
+                broker.prepare();
+            } catch(final EXistException | RuntimeException e) {
+                brokerLeases.release();
+                throw e;
             }
-            broker = inactiveBrokers.pop();
-            broker.prepare();
 
             //activate the broker
             activeBrokers.put(Thread.currentThread(), broker);
@@ -1264,9 +1296,6 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 brokerLeaseChangeTrace.get(broker.getId()).add(TraceableBrokerLeaseChange.get(new TraceableBrokerLeaseChange.BrokerInfo(broker.getId(), broker.getReferenceCount())));
             }
 
-            //Inform the other threads that we have a new-comer
-            // TODO: do they really need to be informed here???????
-            this.notifyAll();
             return broker;
         }
     }
@@ -1343,6 +1372,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             }
 
             inactiveBrokers.push(broker);
+            brokerLeases.release();
             watchdog.ifPresent(wd -> wd.remove(broker));
 
             if(LOG.isTraceEnabled()) {
@@ -1439,6 +1469,20 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      * @param syncEvent One of {@link org.exist.storage.sync.Sync}
      */
     public void sync(final DBBroker broker, final Sync syncEvent) {
+        sync(broker, syncEvent, true);
+    }
+
+    /**
+     * Executes a waiting cache synchronization for the database instance.
+     *
+     * NOTE: This method should not be called concurrently from multiple threads.
+     *
+     * @param broker    A broker responsible for executing the job
+     * @param syncEvent One of {@link org.exist.storage.sync.Sync}
+     * @param flushPages false if the dirty pages need not be written to disk on a major
+     *     sync, as they are written by the {@link FuzzyCheckpointer}. No checkpoint is created then.
+     */
+    public void sync(final DBBroker broker, final Sync syncEvent, final boolean flushPages) {
 
         /**
          * Database Systems - The Complete Book (Second edition)
@@ -1453,8 +1497,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             journalManager.get().flush(true, true);
         }
 
-        // sync various DBX files
-        broker.sync(syncEvent);
+        if (flushPages) {
+            // sync various DBX files
+            broker.sync(syncEvent);
+        }
 
         //TODO : strange that it is set *after* the sunc method has been called.
         try {
@@ -1463,7 +1509,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             if (syncEvent == Sync.MAJOR) {
                 LOG.debug("Major sync");
                 try {
-                    if (!FORCE_CORRUPTION) {
+                    if (!FORCE_CORRUPTION && flushPages) {
                         transactionManager.checkpoint(checkpoint);
                     }
                 } catch (final TransactionException e) {
@@ -1596,6 +1642,9 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             //Shutdown the scheduler
             scheduler.shutdown(true);
 
+            //Wait for a running fuzzy checkpoint, it needs a broker
+            fuzzyCheckpointer.ifPresent(FuzzyCheckpointer::shutdown);
+
             try {
                 statusReporter = new StatusReporter(SIGNAL_SHUTDOWN);
                 statusObservers.forEach(statusReporter::addObserver);
@@ -1810,6 +1859,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         if(syncRequired) {
             return;
         }
+        if(fuzzyCheckpointer.isPresent()) {
+            // write the dirty pages in the background first, so that the checkpoint
+            // only has to write the pages which have been dirtied in the meantime
+            fuzzyCheckpointer.get().rotate(this::scheduleCheckpoint);
+        } else {
+            scheduleCheckpoint();
+        }
+    }
+
+    private void scheduleCheckpoint() {
         synchronized(this) {
             syncEvent = Sync.MAJOR;
             syncRequired = true;
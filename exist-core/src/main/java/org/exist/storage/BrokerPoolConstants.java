@@ -82,6 +82,8 @@ public interface BrokerPoolConstants {
 
     String PROPERTY_RECOVERY_GROUP_COMMIT = "db-connection.recovery.group-commit";
     String RECOVERY_GROUP_COMMIT_ATTRIBUTE = "group-commit";
+    String PROPERTY_RECOVERY_FUZZY_CHECKPOINTS = "db-connection.recovery.fuzzy-checkpoints";
+    String RECOVERY_FUZZY_CHECKPOINTS_ATTRIBUTE = "fuzzy-checkpoints";
     String PROPERTY_RECOVERY_FORCE_RESTART = "db-connection.recovery.force-restart";
     String RECOVERY_FORCE_RESTART_ATTRIBUTE = "force-restart";
 
@@ -77,6 +77,31 @@ public interface CacheManager {
      */
     long getCurrentSize();
 
+    /**
+     * @return Number of items admitted by the admission policies of all Caches
+     */
+    long getAdmitted();
+
+    /**
+     * @return Number of items rejected by the admission policies of all Caches
+     */
+    long getRejected();
+
+    /**
+     * @return Maximum size of the off-heap page cache in bytes, or 0 if it is disabled
+     */
+    long getOffHeapSize();
+
+    /**
+     * @return Number of pages which were found in the off-heap page cache
+     */
+    long getOffHeapHits();
+
+    /**
+     * @return Number of pages which were not found in the off-heap page cache
+     */
+    long getOffHeapFails();
+
     /**
      * Returns the default initial size for all caches.
      *
@@ -563,6 +563,9 @@ public abstract class DBBroker implements AutoCloseable {
      * NOTE: Read locks will be taken in a top-down, left-right manner
      *     on Collections as they are indexed
      *
+     * The index entries are inserted one at a time, indexes are not bulk loaded
+     * here, see {@link org.exist.indexing.BulkLoadSupport}.
+     *
      * @param transaction the transaction
      * @param collectionUri The URI of the Collection to reindex
      *
@@ -583,6 +586,8 @@ public abstract class DBBroker implements AutoCloseable {
      * Repair indexes. Should delete all secondary indexes and rebuild them.
      * This method will be called after the recovery run has completed.
      *
+     * Indexes implementing {@link org.exist.indexing.BulkLoadSupport} are bulk loaded.
+     *
      * @throws PermissionDeniedException If the current user does not have appropriate permissions
      * @throws LockException If an exception occurs whilst acquiring locks
      * @throws IOException If an error occurs whilst repairing indexes the database
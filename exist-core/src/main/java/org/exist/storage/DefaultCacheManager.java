@@ -26,7 +26,13 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeCacheable;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.OffHeapPageCache;
+import org.exist.storage.cache.WTinyLFUCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
@@ -77,6 +83,19 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    public static final String  CACHE_POLICY_LRU                        = "lru";
+    public static final String  CACHE_POLICY_W_TINY_LFU                 = "w-tinylfu";
+
+    public static final String  BTREE_CACHE_POLICY_ATTRIBUTE            = "btreeCachePolicy";
+    public static final String  PROPERTY_BTREE_CACHE_POLICY             = "db-connection.btree-cache-policy";
+
+    public static final String  DATA_CACHE_POLICY_ATTRIBUTE             = "dataCachePolicy";
+    public static final String  PROPERTY_DATA_CACHE_POLICY              = "db-connection.data-cache-policy";
+
+    public static final int     DEFAULT_OFF_HEAP_CACHE_SIZE             = 0;
+    public static final String  OFF_HEAP_CACHE_SIZE_ATTRIBUTE           = "offHeapCacheSize";
+    public static final String  PROPERTY_OFF_HEAP_CACHE_SIZE            = "db-connection.off-heap-cache-size";
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<>();
 
@@ -108,6 +127,15 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** The replacement policy of the caches for btree pages. */
+    private final String        btreeCachePolicy;
+
+    /** The replacement policy of the caches for data pages. */
+    private final String        dataCachePolicy;
+
+    /** The second level cache for raw pages outside of the heap, or null if disabled. */
+    private final OffHeapPageCache offHeapPageCache;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -126,6 +154,9 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         shrinkThreshold = configuration.getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        btreeCachePolicy = configuration.getProperty( PROPERTY_BTREE_CACHE_POLICY, CACHE_POLICY_LRU );
+        dataCachePolicy  = configuration.getProperty( PROPERTY_DATA_CACHE_POLICY, CACHE_POLICY_LRU );
+
         totalMem        = cacheSize * 1024L * 1024L;
 
         final Boolean checkMaxCache = (Boolean)configuration.getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -146,6 +177,13 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
             LOG.warn( "Checking of Max Cache Size disabled by user, this could cause memory issues which may lead to database corruptions if you don't have enough memory allocated to your JVM!" );
         }
 
+        final int offHeapCacheSize = configuration.getProperty( PROPERTY_OFF_HEAP_CACHE_SIZE, DEFAULT_OFF_HEAP_CACHE_SIZE );
+        if( offHeapCacheSize > 0 ) {
+            offHeapPageCache = new OffHeapPageCache( offHeapCacheSize * 1024L * 1024L, pageSize );
+        } else {
+            offHeapPageCache = null;
+        }
+
         int buffers = (int)( totalMem / pageSize );
 
         this.totalPageCount = buffers;
@@ -154,12 +192,60 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         LOG.info( "Cache settings: " + nf.format( totalMem / 1024L ) + "k; totalPages: " + nf.format( totalPageCount ) +
                 "; maxCacheSize: " + nf.format( maxCacheSize ) +
-                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold )
+                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) +
+                "; btreeCachePolicy: " + btreeCachePolicy + "; dataCachePolicy: " + dataCachePolicy +
+                "; offHeapCacheSize: " + nf.format( offHeapCacheSize * 1024L ) + "k"
         );
 
         registerMBean();
     }
 
+    /**
+     * Creates a new cache for btree pages, using the replacement
+     * policy configured by {@link #PROPERTY_BTREE_CACHE_POLICY}.
+     *
+     * The cache is not registered with the cache manager.
+     *
+     * @param <T> The type of the btree pages
+     * @param name the name of the cache
+     * @param size the initial size of the cache in pages
+     * @param growthFactor the factor by which the cache should grow
+     * @param growthThreshold the amount of thrashing which triggers growth
+     *
+     * @return the new cache
+     */
+    public <T extends BTreeCacheable> Cache<T> newBTreeCache( final String name, final int size, final double growthFactor, final double growthThreshold )
+    {
+        if( CACHE_POLICY_W_TINY_LFU.equals( btreeCachePolicy ) ) {
+            return( new WTinyLFUCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE ) );
+        }
+        return( new BTreeCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE ) );
+    }
+
+
+    /**
+     * Creates a new cache for data pages, using the replacement
+     * policy configured by {@link #PROPERTY_DATA_CACHE_POLICY}.
+     *
+     * The cache is not registered with the cache manager.
+     *
+     * @param <T> The type of the data pages
+     * @param name the name of the cache
+     * @param size the initial size of the cache in pages
+     * @param growthFactor the factor by which the cache should grow
+     * @param growthThreshold the amount of thrashing which triggers growth
+     *
+     * @return the new cache
+     */
+    public <T extends Cacheable> Cache<T> newDataCache( final String name, final int size, final double growthFactor, final double growthThreshold )
+    {
+        if( CACHE_POLICY_W_TINY_LFU.equals( dataCachePolicy ) ) {
+            return( new WTinyLFUCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.DATA ) );
+        }
+        return( new LRUCache<>( name, size, growthFactor, growthThreshold, Cache.CacheType.DATA ) );
+    }
+
+
     @Override
     public void registerCache( Cache cache )
     {
@@ -332,6 +418,61 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         return( maxCacheSize );
     }
 
+    /**
+     * @return Number of items admitted by the admission policies of all Caches
+     */
+    @Override
+    public long getAdmitted()
+    {
+        long admitted = 0;
+        for( final Cache cache : caches ) {
+            admitted += Math.max( 0, cache.getAdmitted() );
+        }
+        return( admitted );
+    }
+
+    /**
+     * @return Number of items rejected by the admission policies of all Caches
+     */
+    @Override
+    public long getRejected()
+    {
+        long rejected = 0;
+        for( final Cache cache : caches ) {
+            rejected += Math.max( 0, cache.getRejected() );
+        }
+        return( rejected );
+    }
+
+    /**
+     * Returns the off-heap cache for raw pages which is shared
+     * by all paged files, see {@link #PROPERTY_OFF_HEAP_CACHE_SIZE}.
+     *
+     * @return the off-heap page cache, or null if it is disabled
+     */
+    public OffHeapPageCache getOffHeapPageCache()
+    {
+        return( offHeapPageCache );
+    }
+
+    @Override
+    public long getOffHeapSize()
+    {
+        return( offHeapPageCache == null ? 0 : offHeapPageCache.getSize() );
+    }
+
+    @Override
+    public long getOffHeapHits()
+    {
+        return( offHeapPageCache == null ? 0 : offHeapPageCache.getHits() );
+    }
+
+    @Override
+    public long getOffHeapFails()
+    {
+        return( offHeapPageCache == null ? 0 : offHeapPageCache.getFails() );
+    }
+
     public long getTotalMem()
     {
         return( totalMem );
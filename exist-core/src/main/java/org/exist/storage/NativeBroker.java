@@ -3631,8 +3631,22 @@ public class NativeBroker extends DBBroker {
 
         loadIndexModules();
         LOG.info("Reindexing database files ...");
-        //Reindex from root collection
-        reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        // the indexes are empty, those which support it are built in bulk once all documents were indexed
+        try {
+            pool.getIndexManager().startBulkLoad();
+        } catch(final DBException e) {
+            LOG.error("Failed to start bulk load of index files during repair: {}", e.getMessage(), e);
+        }
+        try {
+            //Reindex from root collection
+            reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        } finally {
+            try {
+                pool.getIndexManager().finishBulkLoad();
+            } catch(final DBException e) {
+                LOG.error("Failed to finish bulk load of index files during repair: {}", e.getMessage(), e);
+            }
+        }
     }
 
     @Override
@@ -3709,6 +3723,52 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    /**
+     * Writes the dirty pages of all database files to disk whilst transactions
+     * keep running, for a fuzzy checkpoint.
+     *
+     * Each file is write locked whilst its pages are written, so that they are not
+     * modified in the meantime. The journal is flushed whilst holding the lock,
+     * before the pages are written, as the journal entries of all changes to the
+     * pages must be on disk before the pages themselves.
+     *
+     * @param flushJournal flushes the journal to disk
+     */
+    public void syncFuzzy(final Runnable flushJournal) {
+        if(isReadOnly()) {
+            return;
+        }
+        try {
+            new DOMTransaction(this, domDb, () -> lockManager.acquireBtreeWriteLock(domDb.getLockName())) {
+                @Override
+                public Object start() {
+                    flushJournal.run();
+                    try {
+                        domDb.flush();
+                    } catch(final DBException e) {
+                        LOG.error("error while flushing dom.dbx", e);
+                    }
+                    return null;
+                }
+            }.run();
+            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                flushJournal.run();
+                collectionsDb.flush();
+            } catch(final LockException e) {
+                LOG.error("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+            }
+            try(final ManagedLock<ReentrantLock> valuesDbLock = lockManager.acquireBtreeWriteLock(valueIndex.dbValues.getLockName())) {
+                flushJournal.run();
+                notifySync();
+            } catch(final LockException e) {
+                LOG.error("Failed to acquire lock on " + FileUtils.fileName(valueIndex.dbValues.getFile()), e);
+            }
+            pool.getIndexManager().syncLocked(flushJournal);
+        } catch(final DBException dbe) {
+            LOG.error(dbe);
+        }
+    }
+
     @Override
     public void shutdown() {
         try {
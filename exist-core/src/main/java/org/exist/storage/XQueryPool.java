@@ -19,9 +19,13 @@
  */
 package org.exist.storage;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import com.github.benmanes.caffeine.cache.Cache;
@@ -34,6 +38,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.source.Source;
 import org.exist.util.Configuration;
 import org.exist.util.Holder;
+import org.exist.util.NamedThreadFactory;
 import org.exist.xquery.*;
 
 /**
@@ -48,6 +53,10 @@ import org.exist.xquery.*;
  * used for a pre-defined timeout (default is {@link #DEFAULT_TIMEOUT}); these
  * settings can be configured in conf.xml.
  *
+ * If the warm-up size is configured, the most often used queries are recorded
+ * when the database is stopped and compiled in the background when it is
+ * started again, see {@link XQueryPoolWarmUp}.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
@@ -59,18 +68,24 @@ public class XQueryPool implements BrokerPoolService {
     public static final String MAX_STACK_SIZE_ATTRIBUTE = "max-stack-size";
     public static final String POOL_SIZE_ATTTRIBUTE = "size";
     public static final String TIMEOUT_ATTRIBUTE = "timeout";
+    public static final String WARM_UP_ATTRIBUTE = "warm-up";
 
     public static final String PROPERTY_MAX_STACK_SIZE = "db-connection.query-pool.max-stack-size";
     public static final String PROPERTY_POOL_SIZE = "db-connection.query-pool.size";
     public static final String PROPERTY_TIMEOUT = "db-connection.query-pool.timeout";
+    public static final String PROPERTY_WARM_UP = "db-connection.query-pool.warm-up";
 
     private static final int DEFAULT_MAX_POOL_SIZE = 128;
     private static final int DEFAULT_MAX_QUERY_STACK_SIZE = 64;
     private static final long DEFAULT_TIMEOUT = 120_000L;   // ms (i.e. 2 mins)
+    private static final int DEFAULT_WARM_UP = 0;
 
     private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private int maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
     private long timeout = DEFAULT_TIMEOUT;
+    private int warmUpSize = DEFAULT_WARM_UP;
+    private XQueryPoolWarmUp warmUp = null;
+    private ExecutorService warmUpExecutor = null;
 
     /**
      * Source -> Deque of compiled Queries
@@ -82,6 +97,7 @@ public class XQueryPool implements BrokerPoolService {
         final Integer maxStSz = (Integer) configuration.getProperty(PROPERTY_MAX_STACK_SIZE);
         final Integer maxPoolSz = (Integer) configuration.getProperty(PROPERTY_POOL_SIZE);
         final Long t = (Long) configuration.getProperty(PROPERTY_TIMEOUT);
+        final Integer warmUpSz = (Integer) configuration.getProperty(PROPERTY_WARM_UP);
         final NumberFormat nf = NumberFormat.getNumberInstance();
 
         if (maxPoolSz != null) {
@@ -102,6 +118,13 @@ public class XQueryPool implements BrokerPoolService {
             this.timeout = DEFAULT_TIMEOUT;
         }
 
+        if (warmUpSz != null) {
+            this.warmUpSize = warmUpSz;
+        } else {
+            this.warmUpSize = DEFAULT_WARM_UP;
+        }
+        this.warmUp = warmUpSize > 0 ? new XQueryPoolWarmUp(warmUpSize) : null;
+
         this.cache = Caffeine.newBuilder()
                 .maximumSize(maxPoolSize)
                 .expireAfterAccess(timeout, TimeUnit.MILLISECONDS)
@@ -109,7 +132,51 @@ public class XQueryPool implements BrokerPoolService {
 
         LOG.info("QueryPool: " + "size = " + nf.format(maxPoolSize) + "; "
                 + "maxQueryStackSize = " + nf.format(maxQueryStackSize) + "; "
-                + "timeout = " + nf.format(timeout) + "; ");
+                + "timeout = " + nf.format(timeout) + "; "
+                + "warmUp = " + nf.format(warmUpSize) + "; ");
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (warmUp == null) {
+            return;
+        }
+        try {
+            warmUp.read(getWarmUpFile(brokerPool));
+        } catch (final IOException e) {
+            LOG.warn("Unable to read the queries to compile on startup: " + e.getMessage(), e);
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        warmUpExecutor = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()),
+                new NamedThreadFactory(brokerPool.getThreadGroup(), brokerPool.getId(), "query-pool-warm-up"));
+        warmUp.warmUp(brokerPool, this, warmUpExecutor).whenComplete((result, e) -> {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compiling queries on startup took " + (System.currentTimeMillis() - start) + "ms");
+            }
+        });
+        // lets the threads terminate once the queries are compiled
+        warmUpExecutor.shutdown();
+    }
+
+    @Override
+    public void stop(final DBBroker systemBroker) {
+        if (warmUp == null) {
+            return;
+        }
+        if (warmUpExecutor != null) {
+            warmUpExecutor.shutdownNow();
+        }
+        try {
+            warmUp.write(systemBroker, getWarmUpFile(systemBroker.getBrokerPool()));
+        } catch (final IOException e) {
+            LOG.warn("Unable to record the queries to compile on startup: " + e.getMessage(), e);
+        }
+    }
+
+    private static Path getWarmUpFile(final BrokerPool brokerPool) {
+        return brokerPool.getStoragePlace().resolve(XQueryPoolWarmUp.FILE_NAME);
     }
 
     /**
@@ -123,6 +190,19 @@ public class XQueryPool implements BrokerPoolService {
             return;
         }
 
+        if (warmUp != null) {
+            warmUp.record(source, compiledXQuery);
+        }
+        offer(source, compiledXQuery);
+    }
+
+    /**
+     * Adds a compiled XQuery to the XQuery pool, without recording its use.
+     *
+     * @param source The source of the compiled XQuery.
+     * @param compiledXQuery The compiled XQuery to add to the XQuery pool.
+     */
+    void offer(final Source source, final CompiledXQuery compiledXQuery) {
         cache.asMap().compute(source, (key, value) -> {
             final Deque<CompiledXQuery> deque;
             if (value != null) {
@@ -170,6 +250,9 @@ public class XQueryPool implements BrokerPoolService {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(source.getKey() + " is invalid, removing from XQuery Pool...");
                 }
+                if (warmUp != null) {
+                    warmUp.forget(source);
+                }
 
                 // query is invalid, returning null will remove the entry from the cache
                 return null;
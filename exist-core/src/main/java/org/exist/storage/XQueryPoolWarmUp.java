@@ -0,0 +1,324 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.ClassLoaderSource;
+import org.exist.source.DBSource;
+import org.exist.source.FileSource;
+import org.exist.source.Source;
+import org.exist.source.SourceFactory;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedDocumentLock;
+import org.exist.util.LockException;
+import org.exist.util.crypto.digest.DigestType;
+import org.exist.util.crypto.digest.StreamableDigest;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the queries which are most often returned to the {@link XQueryPool}, so they
+ * can be compiled in the background when the database is started again.
+ *
+ * Only queries whose source can be loaded again are remembered, i.e. queries stored in the
+ * database, in the file system or on the class path. Each query is recorded with the module
+ * load path it was compiled with and a checksum of its source. The source is only kept as
+ * its location: when the queries are written, it is loaded again with the broker writing
+ * them and its checksum computed whilst holding a READ_LOCK on the document. A query whose
+ * source has changed since it was written is dropped instead of being compiled.
+ *
+ * At most four times as many queries as are compiled at startup are tracked. When a new
+ * query does not fit, the use counts of all queries are halved and those which are no
+ * longer used are forgotten, so that queries which were hot in the past are replaced.
+ */
+@ThreadSafe
+final class XQueryPoolWarmUp {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryPoolWarmUp.class);
+
+    static final String FILE_NAME = "query-pool.warm-up";
+
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * A query which was returned to the pool.
+     */
+    static final class Entry {
+        final String location;
+        @Nullable final String moduleLoadPath;
+        final AtomicLong uses;
+
+        /**
+         * The checksum of the source, null until the entry is written.
+         */
+        @Nullable volatile String checksum;
+
+        Entry(final String location, @Nullable final String moduleLoadPath, @Nullable final String checksum,
+                final long uses) {
+            this.location = location;
+            this.moduleLoadPath = moduleLoadPath;
+            this.checksum = checksum;
+            this.uses = new AtomicLong(uses);
+        }
+    }
+
+    private final int size;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param size the number of queries which are compiled at startup
+     */
+    XQueryPoolWarmUp(final int size) {
+        this.size = size;
+    }
+
+    /**
+     * Records the use of a query.
+     *
+     * @param source the source of the query
+     * @param compiledXQuery the query
+     */
+    void record(final Source source, final CompiledXQuery compiledXQuery) {
+        final String location = getLocation(source);
+        if (location == null) {
+            return;
+        }
+        final Entry entry = entries.get(location);
+        if (entry != null) {
+            entry.uses.incrementAndGet();
+            return;
+        }
+
+        if (entries.size() >= size * 4) {
+            decay();
+        }
+        entries.putIfAbsent(location, new Entry(location, compiledXQuery.getContext().getModuleLoadPath(), null, 1));
+    }
+
+    /**
+     * Halves the use counts until there is room for another query,
+     * forgetting the queries whose count drops to zero.
+     */
+    private synchronized void decay() {
+        while (!entries.isEmpty() && entries.size() >= size * 4) {
+            for (final Entry entry : entries.values()) {
+                if (entry.uses.updateAndGet(uses -> uses / 2) == 0) {
+                    entries.remove(entry.location, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets a query whose source has been modified, so it is recorded again
+     * with a new checksum.
+     *
+     * @param source the source of the query
+     */
+    void forget(final Source source) {
+        final String location = getLocation(source);
+        if (location != null) {
+            entries.remove(location);
+        }
+    }
+
+    /**
+     * Compiles the recorded queries and adds them to the pool.
+     *
+     * @param brokerPool the database
+     * @param xqueryPool the pool receiving the compiled queries
+     * @param executor the executor compiling the queries
+     *
+     * @return completes when all queries have been compiled
+     */
+    CompletableFuture<Void> warmUp(final BrokerPool brokerPool, final XQueryPool xqueryPool, final Executor executor) {
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (final Entry entry : getHottest()) {
+            tasks.add(CompletableFuture.runAsync(() -> compile(brokerPool, xqueryPool, entry), executor));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+    }
+
+    private void compile(final BrokerPool brokerPool, final XQueryPool xqueryPool, final Entry entry) {
+        if (brokerPool.isShuttingDown()) {
+            return;
+        }
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final Source source = SourceFactory.getSource(broker, null, entry.location, true);
+            if (source == null || (entry.checksum != null && !entry.checksum.equals(checksum(broker, source)))) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Source of " + entry.location + " has changed, not compiling it");
+                }
+                entries.remove(entry.location, entry);
+                return;
+            }
+
+            final XQueryContext context = new XQueryContext(brokerPool);
+            if (entry.moduleLoadPath != null) {
+                context.setModuleLoadPath(entry.moduleLoadPath);
+            }
+            final CompiledXQuery compiledXQuery = brokerPool.getXQueryService().compile(broker, context, source);
+            xqueryPool.offer(source, compiledXQuery);
+        } catch (final EXistException | IOException | PermissionDeniedException | XPathException e) {
+            LOG.warn("Unable to compile " + entry.location + " on startup: " + e.getMessage());
+            entries.remove(entry.location, entry);
+        }
+    }
+
+    private List<Entry> getHottest() {
+        final List<Entry> hottest = new ArrayList<>(entries.values());
+        hottest.sort(Comparator.comparingLong((Entry entry) -> entry.uses.get()).reversed());
+        return hottest.size() > size ? hottest.subList(0, size) : hottest;
+    }
+
+    /**
+     * Writes the most often used queries to a file.
+     *
+     * @param broker the broker used to load the sources of the queries
+     * @param file the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    void write(final DBBroker broker, final Path file) throws IOException {
+        final List<Entry> hottest = new ArrayList<>();
+        for (final Entry entry : getHottest()) {
+            if (entry.checksum == null) {
+                try {
+                    final Source source = SourceFactory.getSource(broker, null, entry.location, true);
+                    if (source != null) {
+                        entry.checksum = checksum(broker, source);
+                    }
+                } catch (final IOException | PermissionDeniedException e) {
+                    LOG.warn("Unable to load " + entry.location + ": " + e.getMessage());
+                }
+            }
+            if (entry.checksum != null) {
+                hottest.add(entry);
+            }
+        }
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            os.writeInt(FILE_VERSION);
+            os.writeInt(hottest.size());
+            for (final Entry entry : hottest) {
+                os.writeUTF(entry.location);
+                os.writeBoolean(entry.moduleLoadPath != null);
+                if (entry.moduleLoadPath != null) {
+                    os.writeUTF(entry.moduleLoadPath);
+                }
+                os.writeUTF(entry.checksum);
+                os.writeLong(entry.uses.get());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the queries written by {@link #write(Path)}. Their use counts are
+     * halved, so queries which are no longer used are eventually replaced.
+     *
+     * @param file the file
+     *
+     * @throws IOException if the file cannot be read
+     */
+    void read(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (is.readInt() != FILE_VERSION) {
+                return;
+            }
+            final int count = is.readInt();
+            for (int i = 0; i < count; i++) {
+                final String location = is.readUTF();
+                final String moduleLoadPath = is.readBoolean() ? is.readUTF() : null;
+                final String checksum = is.readUTF();
+                final long uses = is.readLong();
+                entries.put(location, new Entry(location, moduleLoadPath, checksum, Math.max(1, uses / 2)));
+            }
+        }
+    }
+
+    /**
+     * Returns the location from which a source can be loaded again
+     * by {@link SourceFactory}.
+     *
+     * @param source the source
+     *
+     * @return the location, or null if the source cannot be loaded again
+     */
+    static @Nullable String getLocation(final Source source) {
+        if (source instanceof DBSource) {
+            return ((DBSource) source).getDocumentPath().toString();
+        } else if (source instanceof FileSource) {
+            return ((FileSource) source).getPath().toAbsolutePath().toString();
+        } else if (source instanceof ClassLoaderSource) {
+            final String location = ((ClassLoaderSource) source).getSource();
+            return location.startsWith(ClassLoaderSource.PROTOCOL) ? location : ClassLoaderSource.PROTOCOL + location;
+        }
+        return null;
+    }
+
+    private static @Nullable String checksum(final DBBroker broker, final Source source) {
+        if (source instanceof DBSource) {
+            final LockManager lockManager = broker.getBrokerPool().getLockManager();
+            try (final ManagedDocumentLock documentLock = lockManager.acquireDocumentReadLock(((DBSource) source).getDocumentPath())) {
+                return checksum(source);
+            } catch (final LockException e) {
+                LOG.warn("Unable to lock " + ((DBSource) source).getDocumentPath() + ": " + e.getMessage());
+                return null;
+            }
+        }
+        return checksum(source);
+    }
+
+    private static @Nullable String checksum(final Source source) {
+        try {
+            final StreamableDigest digest = DigestType.SHA_256.newStreamableDigest();
+            digest.update(source.getContent().getBytes(StandardCharsets.UTF_8));
+            return digest.copyMessageDigest().toHexString();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+}
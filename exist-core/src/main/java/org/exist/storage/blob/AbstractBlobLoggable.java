@@ -26,7 +26,19 @@ import java.nio.ByteBuffer;
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 public abstract class AbstractBlobLoggable extends AbstractLoggable implements BlobLoggable {
+
+    /**
+     * Identifies the blob store when redoing entries,
+     * outside of the range of the ids of the paged files.
+     */
+    private static final int BLOB_STORE_REDO_FILE_ID = Byte.MAX_VALUE + 1;
+
     protected DBBroker broker;
+
+    /**
+     * Resolved by the thread reading the journal, as the entry may be redone by another thread
+     */
+    protected BlobStore blobStore;
     private BlobId blobId;
 
     public AbstractBlobLoggable(final byte type, final long transactionId, final BlobId blobId) {
@@ -37,6 +49,7 @@ public abstract class AbstractBlobLoggable extends AbstractLoggable implements B
     public AbstractBlobLoggable(final byte type, final DBBroker broker, final long transactionId) {
         super(type, transactionId);
         this.broker = broker;
+        this.blobStore = broker == null ? null : broker.getBrokerPool().getBlobStore();
     }
 
     @Override
@@ -53,6 +66,11 @@ public abstract class AbstractBlobLoggable extends AbstractLoggable implements B
         this.blobId = new BlobId(id);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return BLOB_STORE_REDO_FILE_ID;
+    }
+
     @Override
     public int getLogSize() {
         return 4 + blobId.getId().length;
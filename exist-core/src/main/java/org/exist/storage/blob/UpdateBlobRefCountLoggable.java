@@ -62,13 +62,11 @@ public class UpdateBlobRefCountLoggable extends AbstractBlobLoggable {
 
     @Override
     public void redo() throws LogException {
-        final BlobStore blobStore = broker.getBrokerPool().getBlobStore();
         blobStore.redo(this);
     }
 
     @Override
     public void undo() throws LogException {
-        final BlobStore blobStore = broker.getBrokerPool().getBlobStore();
         blobStore.undo(this);
     }
 
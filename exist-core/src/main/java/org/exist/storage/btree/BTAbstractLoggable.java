@@ -33,6 +33,7 @@ import org.exist.storage.txn.Txn;
 public abstract class BTAbstractLoggable extends AbstractLoggable {
     private byte fileId;
     private NativeBroker broker;
+    private BTree storage;
 
     public BTAbstractLoggable(final byte type, final byte fileId, final Txn transaction) {
         super(type, transaction.getId());
@@ -44,13 +45,22 @@ public abstract class BTAbstractLoggable extends AbstractLoggable {
         this.broker = (NativeBroker) broker;
     }
 
+    @Override
+    public int getRedoFileId() {
+        return fileId;
+    }
+
     protected BTree getStorage() {
-        return broker.getStorage(fileId);
+        return storage;
     }
 
     @Override
     public void read(final ByteBuffer in) {
         fileId = in.get();
+        // resolved by the thread reading the journal, as the entry may be redone by another thread
+        if (broker != null) {
+            storage = broker.getStorage(fileId);
+        }
     }
 
     @Override
@@ -118,6 +118,12 @@ public class BTree extends Paged implements Lockable {
 
     protected final static int MIN_SPACE_PER_KEY = 32;
 
+    /**
+     * The maximum length of the prefix which a key in a leaf page shares with the previous key,
+     * and which is not stored again. The length is stored as an unsigned byte.
+     */
+    private final static int MAX_LEAF_PREFIX_LEN = 0xFF;
+
     /** Log entry type for an insert value operation */
     public final static byte LOG_INSERT_VALUE = 0x20;
     /** Log entry type for creation of a new BTree node */
@@ -223,8 +229,7 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
-            0, Cache.CacheType.BTREE);
+        this.cache = cacheManager.newBTreeCache(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5, 0);
         cacheManager.registerCache(cache);
     }
 
@@ -524,7 +529,7 @@ public class BTree extends Paged implements Lockable {
     public TreeMetrics treeStatistics() throws IOException {
         final TreeMetrics metrics = new TreeMetrics(FileUtils.fileName(getFile()));
         final BTreeNode root = getRootNode();
-        root.treeStatistics(metrics);
+        root.treeStatistics(metrics, 1);
         return metrics;
     }
 
@@ -735,6 +740,252 @@ public class BTree extends Paged implements Lockable {
         return last;
     }
 
+    /**
+     * Get the number of leading bytes of a key in a leaf page which are shared with the
+     * previous key, and therefore not stored again.
+     *
+     * @param key the key
+     * @param previous the previous key on the page
+     *
+     * @return the length of the shared prefix
+     */
+    private static int leafPrefixLen(final Value key, final Value previous) {
+        return Math.min(key.commonPrefix(previous), MAX_LEAF_PREFIX_LEN);
+    }
+
+    /**
+     * Get the shortest separator between two adjacent keys of a leaf page, which is
+     * promoted to the parent branch page when the leaf page is split. Only a prefix of the
+     * right key needs to be stored in the branch page (suffix truncation), which increases
+     * the number of keys per branch page.
+     *
+     * @param left the last key which remains on the left page
+     * @param right the first key which moves to the right page
+     *
+     * @return a value greater than left, and less than or equal to right
+     */
+    private static Value separator(final Value left, final Value right) {
+        final Value separator = left.getSeparator(right);
+        return separator.getLength() < right.getLength() ? separator : right;
+    }
+
+    /**
+     * Create a loader which builds the tree bottom-up from keys
+     * supplied in ascending order. The tree must be empty.
+     *
+     * @return the bulk loader
+     * @throws BTreeException if the tree is not empty
+     */
+    public BulkLoader newBulkLoader() throws BTreeException {
+        return new BulkLoader();
+    }
+
+    /**
+     * Builds a tree from keys supplied in ascending order, see {@link BTree#newBulkLoader()}.
+     *
+     * The keys are appended to the current leaf page until it is full, then a new
+     * leaf page is started. Completed pages are linked to their parent branch page,
+     * which is filled in the same way, and written to disk immediately, so only
+     * one page per level of the tree is held in memory. The pages are densely
+     * packed and have the same format as those written by {@link BTree#addValue(Value, long)},
+     * the tree can therefore be modified as usual afterwards.
+     *
+     * The changes are not journalled. As for {@link BTree#rebuild()}, the caller
+     * has to flush the tree once the keys have been loaded.
+     */
+    public final class BulkLoader {
+
+        /** The page currently filled on each level of the tree, the leaf pages are on level 0 */
+        private final List<BulkLoadLevel> levels = new ArrayList<>();
+        private Value lastKey = null;
+        private long count = 0;
+
+        private BulkLoader() throws BTreeException {
+            final BTreeNode root = getRootNode();
+            if (root.pageHeader.getStatus() != LEAF || root.nKeys > 0) {
+                throw new BTreeException("Bulk load requires an empty tree: " + FileUtils.fileName(getFile()));
+            }
+            // the empty root page becomes the first leaf page
+            levels.add(new BulkLoadLevel(root));
+        }
+
+        /**
+         * Append a key to the tree.
+         *
+         * @param key the key, must be greater than the previous key
+         * @param pointer the pointer associated with the key
+         *
+         * @throws IOException if an I/O error occurs
+         * @throws BTreeException if the key is not in ascending order, or too large for a page
+         */
+        public void add(final Value key, final long pointer) throws IOException, BTreeException {
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new BTreeException("Keys must be added in ascending order: " + key + " after " + lastKey);
+            }
+
+            final BulkLoadLevel leafLevel = levels.get(0);
+            BTreeNode leaf = leafLevel.node;
+            if (!appendToLeaf(leaf, key, pointer)) {
+                if (leaf.nKeys == 0) {
+                    throw new BTreeException("Key too large for a page: " + key.getLength() + " bytes");
+                }
+                final BTreeNode full = leaf;
+                final Value fullMinKey = leafLevel.minKey;
+                leaf = newNode(LEAF);
+                full.pageHeader.setNextPage(leaf.page.getPageNum());
+                leafLevel.start(leaf);
+                leafLevel.minKey = separator(lastKey, key);
+                addChild(1, full, fullMinKey);
+                if (!appendToLeaf(leaf, key, pointer)) {
+                    throw new BTreeException("Key too large for a page: " + key.getLength() + " bytes");
+                }
+            }
+            if (leafLevel.minKey == null) {
+                leafLevel.minKey = key;
+            }
+            lastKey = key;
+            count++;
+        }
+
+        /**
+         * Write the remaining pages and make the top-most page the root of the tree.
+         *
+         * @return the number of keys added
+         *
+         * @throws IOException if an I/O error occurs
+         * @throws BTreeException if an error occurs with the tree
+         */
+        public long finish() throws IOException, BTreeException {
+            if (count > 0) {
+                // NOTE: levels may grow whilst the pages are completed
+                for (int level = 0; level < levels.size(); level++) {
+                    final BulkLoadLevel current = levels.get(level);
+                    if (level == levels.size() - 1) {
+                        current.node.setParent(null);
+                        current.node.write();
+                        setRootNode(current.node);
+                    } else {
+                        addChild(level + 1, current.node, current.minKey);
+                    }
+                }
+            }
+            return count;
+        }
+
+        private boolean appendToLeaf(final BTreeNode leaf, final Value key, final long pointer) {
+            leaf.insertKey(key, leaf.nKeys);
+            leaf.insertPointer(pointer, leaf.nPtrs);
+            leaf.adjustDataLen(leaf.nKeys - 1);
+            if (leaf.getDataLen() > fileHeader.getWorkSize()) {
+                leaf.removeKey(leaf.nKeys - 1);
+                leaf.removePointer(leaf.nPtrs - 1);
+                leaf.currentDataLen = -1;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Link a completed page to the branch page on the given level, and write it.
+         *
+         * @param level the level of the branch page
+         * @param child the completed page
+         * @param childMinKey the separator of the completed page
+         */
+        private void addChild(final int level, final BTreeNode child, final Value childMinKey) throws IOException, BTreeException {
+            final BTreeNode parent;
+            if (level == levels.size()) {
+                // the tree grows by one level
+                parent = newNode(BRANCH);
+                parent.insertPointer(child.page.getPageNum(), 0);
+                final BulkLoadLevel parentLevel = new BulkLoadLevel(parent);
+                parentLevel.minKey = childMinKey;
+                levels.add(parentLevel);
+
+            } else {
+                final BulkLoadLevel parentLevel = levels.get(level);
+                if (parentLevel.fits(childMinKey)) {
+                    parent = parentLevel.node;
+                    parentLevel.addKey(childMinKey);
+                    parent.insertKey(childMinKey, parent.nKeys);
+                    parent.insertPointer(child.page.getPageNum(), parent.nPtrs);
+                } else {
+                    final BTreeNode full = parentLevel.node;
+                    final Value fullMinKey = parentLevel.minKey;
+                    parent = newNode(BRANCH);
+                    parent.insertPointer(child.page.getPageNum(), 0);
+                    parentLevel.start(parent);
+                    parentLevel.minKey = childMinKey;
+                    addChild(level + 1, full, fullMinKey);
+                }
+            }
+            child.setParent(parent);
+            child.write();
+        }
+
+        private BTreeNode newNode(final byte status) throws IOException {
+            final BTreeNode node = new BTreeNode(getFreePage(false), true);
+            node.pageHeader.setStatus(status);
+            return node;
+        }
+    }
+
+    /**
+     * The page which is currently filled on one level of the tree
+     * by the {@link BulkLoader}.
+     */
+    private final class BulkLoadLevel {
+        private BTreeNode node;
+
+        /**
+         * the separator of the page: greater than the keys stored in the preceding pages,
+         * and less than or equal to the smallest key stored below the page
+         */
+        private Value minKey = null;
+
+        /** for branch pages: the first key, the length of the common prefix and the total length of the keys */
+        private Value firstKey = null;
+        private int prefixLen = 0;
+        private long keysLen = 0;
+
+        BulkLoadLevel(final BTreeNode node) {
+            this.node = node;
+        }
+
+        void start(final BTreeNode node) {
+            this.node = node;
+            this.minKey = null;
+            this.firstKey = null;
+            this.prefixLen = 0;
+            this.keysLen = 0;
+        }
+
+        /**
+         * Check if a key, and the pointer which follows it, fit into the branch page.
+         * Calculates the size of the page as {@link BTreeNode#recalculateDataLen()},
+         * but without modifying the page, as the common prefix of the keys might shrink.
+         */
+        boolean fits(final Value key) {
+            final int n = node.nKeys + 1;
+            final int newPrefixLen = firstKey == null ? key.getLength() : Math.min(prefixLen, firstKey.commonPrefix(key));
+            long len = 2 + newPrefixLen + (keysLen + key.getLength()) - (long) n * newPrefixLen + 8L * (n + 1);
+            if (fileHeader.getFixedKeyLen() < 0) {
+                len += 2L * n;
+            }
+            return len <= fileHeader.getWorkSize();
+        }
+
+        void addKey(final Value key) {
+            if (firstKey == null) {
+                firstKey = key;
+                prefixLen = key.getLength();
+            } else {
+                prefixLen = Math.min(prefixLen, firstKey.commonPrefix(key));
+            }
+            keysLen += key.getLength();
+        }
+    }
+
     /* -------------------------------------------------------------------------
      * Methods used by recovery and transaction management
      * ---------------------------------------------------------------------- */
@@ -1093,10 +1344,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     currentDataLen += keys[i].getLength() - prefix;
                 } else {
                     currentDataLen += keys[i].getLength();
@@ -1144,11 +1392,7 @@ public class BTree extends Paged implements Lockable {
         }
 
         private int calculatePrefixLen(final int idx0, final int idx1) {
-            int prefix = keys[idx0].commonPrefix(keys[idx1]);
-            if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                prefix = 0;
-            }
-            return prefix;
+            return leafPrefixLen(keys[idx0], keys[idx1]);
         }
 
         /**
@@ -1169,10 +1413,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     currentLen += keys[i].getLength() - prefix;
                 } else {
                     currentLen += keys[i].getLength();
@@ -1191,10 +1432,7 @@ public class BTree extends Paged implements Lockable {
                 if (pageHeader.getStatus() == LEAF && i > 0) {
                     // if this is a leaf page, we use prefix compression to store the keys,
                     // so subtract the size of the prefix
-                    int prefix = keys[i].commonPrefix(keys[i - 1]);
-                    if (prefix < 0 || prefix > Byte.MAX_VALUE) {
-                        prefix = 0;
-                    }
+                    final int prefix = leafPrefixLen(keys[i], keys[i - 1]);
                     totalLen += keys[i].getLength() - prefix;
                 } else {
                     totalLen += keys[i].getLength();
@@ -1306,9 +1544,7 @@ public class BTree extends Paged implements Lockable {
                     // keys that can be stored on one page. Each key is stored as follows:
                     // [valSize, prefixLen, value], where prefixLen specifies the number of
                     // leading bytes the key has in common with the previous key.
-                    int prefixLen = keys[i].commonPrefix(keys[i - 1]); // determine the common prefix
-                    if (prefixLen < 0 || prefixLen > Byte.MAX_VALUE)
-                        {prefixLen = 0;}
+                    final int prefixLen = leafPrefixLen(keys[i], keys[i - 1]); // determine the common prefix
                     // store the length of the prefix
                     temp[p++] = (byte) prefixLen;
                     // copy the remaining bytes, starting at prefixLen
@@ -1534,7 +1770,7 @@ public class BTree extends Paged implements Lockable {
                     System.arraycopy(ptrs, 0, leftPtrs, 0, leftPtrs.length);
                     System.arraycopy(keys, leftVals.length, rightVals, 0, rightVals.length);
                     System.arraycopy(ptrs, leftPtrs.length, rightPtrs, 0, rightPtrs.length);
-                    separator = keys[leftVals.length];
+                    separator = leftVals.length > 0 ? separator(keys[leftVals.length - 1], keys[leftVals.length]) : keys[0];
                     break;
 
                 default :
@@ -1697,12 +1933,27 @@ public class BTree extends Paged implements Lockable {
             return writer.toString();
         }
 
-        private void treeStatistics(final TreeMetrics metrics) throws IOException {
-            metrics.addPage(pageHeader.getStatus());
+        private void treeStatistics(final TreeMetrics metrics, final int depth) throws IOException {
+            long rawKeyBytes = 0;
+            final long storedKeyBytes;
+            if (pageHeader.getStatus() == BRANCH) {
+                // the common prefix is stored once per page
+                for (int i = 0; i < nKeys; i++) {
+                    rawKeyBytes += prefix.getLength() + keys[i].getLength();
+                }
+                storedKeyBytes = prefix.getLength() + getKeyDataLen();
+            } else {
+                for (int i = 0; i < nKeys; i++) {
+                    rawKeyBytes += keys[i].getLength();
+                }
+                // one byte per key for the length of the prefix shared with the previous key
+                storedKeyBytes = getKeyDataLen() + Math.max(0, nKeys - 1);
+            }
+            metrics.addPage(pageHeader.getStatus(), depth, nKeys, rawKeyBytes, storedKeyBytes);
             if (pageHeader.getStatus() == BRANCH) {
                 for (int i = 0; i < nPtrs; i++) {
                     final BTreeNode child = getChildNode(i);
-                    child.treeStatistics(metrics);
+                    child.treeStatistics(metrics, depth + 1);
                 }
             }
         }
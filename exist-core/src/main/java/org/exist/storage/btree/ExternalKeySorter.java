@@ -0,0 +1,245 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.btree;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.util.io.TemporaryFileManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects keys and their pointers in any order, and loads them
+ * into an empty {@link BTree} in ascending order, using a {@link BTree.BulkLoader}.
+ *
+ * The keys are buffered in memory. Whenever the buffer is full, the keys
+ * are sorted and written to a temporary file as a sorted run. The runs are
+ * merged when the keys are loaded. If a key is added more than once, the
+ * pointer which was added last wins, just as for {@link BTree#addValue(Value, long)}.
+ */
+@NotThreadSafe
+public class ExternalKeySorter implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ExternalKeySorter.class);
+
+    /** The estimated memory used by an entry of the buffer, in addition to the key data */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = (e1, e2) -> e1.key.compareTo(e2.key);
+
+    private final long maxBufferSize;
+    private final List<Entry> buffer = new ArrayList<>();
+    private long bufferSize = 0;
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param maxBufferSize the approximate size in bytes of the keys buffered
+     *     in memory, before they are written to a temporary file
+     */
+    public ExternalKeySorter(final long maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param key the key
+     * @param pointer the pointer associated with the key
+     *
+     * @throws IOException if the buffer could not be written to a temporary file
+     */
+    public void add(final Value key, final long pointer) throws IOException {
+        buffer.add(new Entry(key, pointer));
+        bufferSize += key.getLength() + ENTRY_OVERHEAD;
+        if (bufferSize >= maxBufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Load the keys into the tree, which must be empty.
+     *
+     * @param btree the tree
+     *
+     * @return the number of distinct keys loaded
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public long load(final BTree btree) throws IOException, BTreeException {
+        final BTree.BulkLoader loader = btree.newBulkLoader();
+        if (runs.isEmpty()) {
+            // all keys fit into memory
+            sortBuffer();
+            for (int i = 0; i < buffer.size(); i++) {
+                final Entry entry = buffer.get(i);
+                // of several equal keys, the last one added wins
+                if (i + 1 < buffer.size() && entry.key.equals(buffer.get(i + 1).key)) {
+                    continue;
+                }
+                loader.add(entry.key, entry.pointer);
+            }
+            buffer.clear();
+            bufferSize = 0;
+        } else {
+            spill();
+            merge(loader);
+        }
+        return loader.finish();
+    }
+
+    private void sortBuffer() {
+        // NOTE: the sort is stable, so equal keys remain in the order in which they were added
+        buffer.sort(ENTRY_COMPARATOR);
+    }
+
+    /**
+     * Write the buffered keys to a temporary file as a sorted run.
+     */
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        sortBuffer();
+        final Path run = TemporaryFileManager.getInstance().getTemporaryFile();
+        runs.add(run);
+        try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE))) {
+            for (int i = 0; i < buffer.size(); i++) {
+                final Entry entry = buffer.get(i);
+                if (i + 1 < buffer.size() && entry.key.equals(buffer.get(i + 1).key)) {
+                    continue;
+                }
+                os.writeInt(entry.key.getLength());
+                os.write(entry.key.data(), entry.key.start(), entry.key.getLength());
+                os.writeLong(entry.pointer);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Wrote sorted run of " + buffer.size() + " keys to " + run.toAbsolutePath().toString());
+        }
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    /**
+     * Merge the sorted runs into the tree.
+     */
+    private void merge(final BTree.BulkLoader loader) throws IOException, BTreeException {
+        // of several equal keys, the one from the latest run comes first
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), (r1, r2) -> {
+            final int cmp = r1.current.key.compareTo(r2.current.key);
+            return cmp != 0 ? cmp : Integer.compare(r2.runIdx, r1.runIdx);
+        });
+        final List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                final RunReader reader = new RunReader(i, runs.get(i));
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            Value last = null;
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+                final Entry entry = reader.current;
+                if (last == null || !entry.key.equals(last)) {
+                    loader.add(entry.key, entry.pointer);
+                    last = entry.key;
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (final RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Remove the temporary files.
+     */
+    @Override
+    public void close() {
+        buffer.clear();
+        bufferSize = 0;
+        for (final Path run : runs) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(run);
+        }
+        runs.clear();
+    }
+
+    private static final class Entry {
+        final Value key;
+        final long pointer;
+
+        Entry(final Value key, final long pointer) {
+            this.key = key;
+            this.pointer = pointer;
+        }
+    }
+
+    private static final class RunReader implements AutoCloseable {
+        final int runIdx;
+        final DataInputStream is;
+        Entry current = null;
+
+        RunReader(final int runIdx, final Path run) throws IOException {
+            this.runIdx = runIdx;
+            this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            final int len;
+            try {
+                len = is.readInt();
+            } catch (final EOFException e) {
+                current = null;
+                return false;
+            }
+            final byte[] data = new byte[len];
+            is.readFully(data);
+            current = new Entry(new Value(data), is.readLong());
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+}
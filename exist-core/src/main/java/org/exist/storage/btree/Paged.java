@@ -74,22 +74,31 @@ package org.exist.storage.btree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.DefaultCacheManager;
+import org.exist.storage.cache.OffHeapPageCache;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
+import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
 
+import javax.annotation.Nullable;
+
 import java.lang.AutoCloseable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -120,6 +129,21 @@ public abstract class Paged implements AutoCloseable {
     public static final int OFFSET_RECORD_COUNT = OFFSET_MAX_KEY_SIZE + LENGTH_MAX_KEY_SIZE; //43
     public static final int OFFSET_REMAINDER = OFFSET_RECORD_COUNT + LENGTH_RECORD_COUNT; //51
 
+    /**
+     * If set to "yes", pages are read from memory-mapped segments
+     * of the file instead of through the {@link RandomAccessFile}.
+     * Writes are not affected and still go through the file.
+     */
+    public static final String MMAP_ATTRIBUTE = "mmap";
+    public static final String PROPERTY_MMAP = "db-connection.mmap";
+
+    /**
+     * Maximum size of a single memory-mapped segment of the file.
+     * Rounded down to a multiple of the page size, so that a page
+     * never straddles two segments.
+     */
+    private static final long MAX_MAPPED_SEGMENT_SIZE = 64 * 1024 * 1024; //64MB
+
     protected final static Logger LOG = LogManager.getLogger(Paged.class);
 
     protected final static byte DELETED = 127;
@@ -133,6 +157,22 @@ public abstract class Paged implements AutoCloseable {
     private final byte[] tempPageData;
     private final byte[] tempHeaderData;
 
+    private final boolean mmap;
+    private final long mappedSegmentSize;
+    private MappedByteBuffer[] mappedSegments = new MappedByteBuffer[0];
+
+    @Nullable private final OffHeapPageCache offHeapCache;
+    private final int offHeapFileId;
+    private final byte[] tempCachedData;
+
+    /**
+     * Raw pages (header and data) which were read ahead of their use,
+     * see {@link #readAhead(long)}. Guarded by its own monitor.
+     */
+    @Nullable private Map<Long, byte[]> readAheadPages = null;
+    private long writeCount = 0;
+    private long readAheadHits = 0;
+
     private RandomAccessFile raf;
     private Path file;
     private boolean readOnly = false;
@@ -143,6 +183,20 @@ public abstract class Paged implements AutoCloseable {
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
         this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        final Configuration configuration = pool.getConfiguration();
+        this.mmap = configuration != null && configuration.getProperty(PROPERTY_MMAP, false);
+        this.mappedSegmentSize = (MAX_MAPPED_SEGMENT_SIZE / fileHeader.pageSize) * fileHeader.pageSize;
+
+        // the off-heap cache would only duplicate the pages which are already mapped into memory
+        final DefaultCacheManager cacheManager = pool.getCacheManager();
+        this.offHeapCache = mmap || cacheManager == null ? null : cacheManager.getOffHeapPageCache();
+        if (offHeapCache != null) {
+            this.offHeapFileId = offHeapCache.register();
+            this.tempCachedData = new byte[fileHeader.pageSize];
+        } else {
+            this.offHeapFileId = -1;
+            this.tempCachedData = null;
+        }
     }
 
     public final static void setPageSize(final int pageSize) {
@@ -157,6 +211,16 @@ public abstract class Paged implements AutoCloseable {
         return readOnly;
     }
 
+    /**
+     * Returns true if pages of this file are read through
+     * memory-mapped segments, see {@link #PROPERTY_MMAP}.
+     *
+     * @return true if the memory-mapped read path is enabled
+     */
+    public final boolean isMemoryMapped() {
+        return mmap;
+    }
+
     /**
      * Close the underlying files.
      *
@@ -164,6 +228,11 @@ public abstract class Paged implements AutoCloseable {
      */
     @Override
     public void close() throws DBException {
+        // the mappings are released by the GC, there is no portable way to unmap them
+        mappedSegments = new MappedByteBuffer[0];
+        if (offHeapCache != null) {
+            offHeapCache.invalidate(offHeapFileId);
+        }
         try {
             raf.close();
         } catch (final IOException e) {
@@ -420,6 +489,173 @@ public abstract class Paged implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns a view of the memory-mapped segment which contains
+     * the region starting at <code>offset</code>, positioned at that offset.
+     *
+     * Segments are mapped lazily and re-mapped when the file has grown
+     * beyond the end of a previously mapped (partial) segment.
+     *
+     * @param offset the offset of the region in the file
+     * @param length the length of the region
+     *
+     * @return a view of the region, or null if the region is not (yet)
+     *     within the file or straddles two segments
+     * @throws IOException if the segment cannot be mapped
+     */
+    private ByteBuffer getMappedRegion(final long offset, final int length) throws IOException {
+        final int segmentIdx = (int) (offset / mappedSegmentSize);
+        final int segmentOffset = (int) (offset % mappedSegmentSize);
+        if (segmentOffset + length > mappedSegmentSize) {
+            return null;
+        }
+
+        MappedByteBuffer segment = segmentIdx < mappedSegments.length ? mappedSegments[segmentIdx] : null;
+        if (segment == null || segment.capacity() < segmentOffset + length) {
+            segment = mapSegment(segmentIdx);
+            if (segment == null || segment.capacity() < segmentOffset + length) {
+                return null;
+            }
+        }
+
+        final ByteBuffer region = segment.duplicate();
+        region.position(segmentOffset);
+        return region;
+    }
+
+    private MappedByteBuffer mapSegment(final int segmentIdx) throws IOException {
+        final long start = segmentIdx * mappedSegmentSize;
+        final FileChannel channel = raf.getChannel();
+        final long fileLength = channel.size();
+        if (fileLength <= start) {
+            return null;
+        }
+
+        final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(mappedSegmentSize, fileLength - start));
+        if (segmentIdx >= mappedSegments.length) {
+            mappedSegments = Arrays.copyOf(mappedSegments, segmentIdx + 1);
+        }
+        mappedSegments[segmentIdx] = segment;
+        return segment;
+    }
+
+    /**
+     * Enables reading pages ahead of their use, see {@link #readAhead(long)}.
+     *
+     * @param maxPages the maximum number of pages which are held
+     *     after they have been read ahead and before they are used
+     */
+    protected final void enableReadAhead(final int maxPages) {
+        readAheadPages = new LinkedHashMap<Long, byte[]>(maxPages) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, byte[]> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Reads a page ahead of its use, so that a subsequent {@link Page#read()}
+     * of the page does not have to go to the file.
+     *
+     * Unlike the other methods of this class, this method may be called
+     * concurrently with them, e.g. by a background thread. The page is read
+     * with a positional read, which does not move the file pointer, and it is
+     * discarded if any page was written while it was read, as the data read
+     * might then be outdated.
+     *
+     * @param pageNum the number of the page
+     *
+     * @return the raw page (header and data), or null if read-ahead is not
+     *     enabled, the page is not within the file, or the page was discarded
+     * @throws IOException if the page cannot be read
+     */
+    protected final @Nullable byte[] readAhead(final long pageNum) throws IOException {
+        final Map<Long, byte[]> pages = readAheadPages;
+        if (pages == null) {
+            return null;
+        }
+        final long writes;
+        synchronized (pages) {
+            final byte[] data = pages.get(pageNum);
+            if (data != null) {
+                return data;
+            }
+            writes = writeCount;
+        }
+
+        final byte[] data = new byte[fileHeader.pageSize];
+        final ByteBuffer buf = ByteBuffer.wrap(data);
+        final long offset = fileHeader.headerSize + (pageNum * fileHeader.pageSize);
+        final FileChannel channel = raf.getChannel();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                return null;
+            }
+        }
+
+        synchronized (pages) {
+            if (writeCount != writes) {
+                return null;
+            }
+            pages.put(pageNum, data);
+        }
+        return data;
+    }
+
+    /**
+     * Takes a page which was read ahead.
+     *
+     * @param pageNum the number of the page
+     *
+     * @return the raw page, or null if it was not read ahead
+     */
+    private @Nullable byte[] takeReadAhead(final long pageNum) {
+        final Map<Long, byte[]> pages = readAheadPages;
+        if (pages == null) {
+            return null;
+        }
+        synchronized (pages) {
+            final byte[] data = pages.isEmpty() ? null : pages.remove(pageNum);
+            if (data != null) {
+                readAheadHits++;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Returns the number of page reads which were served by a page read ahead.
+     *
+     * @return the number of pages read ahead which were used
+     */
+    public final long getReadAheadHits() {
+        final Map<Long, byte[]> pages = readAheadPages;
+        if (pages == null) {
+            return 0;
+        }
+        synchronized (pages) {
+            return readAheadHits;
+        }
+    }
+
+    /**
+     * Discards a page which was read ahead after the page has been written.
+     *
+     * @param pageNum the number of the page
+     */
+    private void discardReadAhead(final long pageNum) {
+        final Map<Long, byte[]> pages = readAheadPages;
+        if (pages == null) {
+            return;
+        }
+        synchronized (pages) {
+            writeCount++;
+            pages.remove(pageNum);
+        }
+    }
+
     /**
      * Unlinks a set of pages starting at the specified page.
      *
@@ -941,6 +1177,24 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public byte[] read() throws IOException {
+            final byte[] readAhead = takeReadAhead(pageNum);
+            if (readAhead != null) {
+                return read(ByteBuffer.wrap(readAhead));
+            }
+
+            if (mmap) {
+                final ByteBuffer region = getMappedRegion(offset, fileHeader.pageSize);
+                if (region != null) {
+                    return read(region);
+                }
+                // not yet within the file, e.g. a page which has just been appended
+            } else if (offHeapCache != null) {
+                final int length = offHeapCache.get(offHeapFileId, pageNum, tempCachedData);
+                if (length >= 0) {
+                    return read(ByteBuffer.wrap(tempCachedData, 0, length));
+                }
+            }
+
             try {
                 if (raf.getFilePointer() != offset) {
                     raf.seek(offset);
@@ -952,6 +1206,11 @@ public abstract class Paged implements AutoCloseable {
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
                 raf.read(workData);
+                if (offHeapCache != null) {
+                    System.arraycopy(tempHeaderData, 0, tempCachedData, 0, tempHeaderData.length);
+                    System.arraycopy(workData, 0, tempCachedData, tempHeaderData.length, workData.length);
+                    offHeapCache.put(offHeapFileId, pageNum, tempCachedData, tempHeaderData.length + workData.length);
+                }
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: " + getPageInfo(), e);
@@ -959,6 +1218,21 @@ public abstract class Paged implements AutoCloseable {
             }
         }
 
+        private byte[] read(final ByteBuffer region) throws IOException {
+            try {
+                region.get(tempHeaderData);
+                // Read in the header
+                header.read(tempHeaderData, 0);
+                // Read the working data
+                final byte[] workData = new byte[header.dataLen];
+                region.get(workData);
+                return workData;
+            } catch(final Exception e) {
+                LOG.warn("error while reading mapped page: " + getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
         public void setPageNum(final long pageNum) {
             this.pageNum = pageNum;
             offset = fileHeader.headerSize + (pageNum * fileHeader.pageSize);
@@ -988,6 +1262,12 @@ public abstract class Paged implements AutoCloseable {
                 raf.seek(offset);
             }
             raf.write(tempPageData);
+            // NOTE: only after the write, so that a page which is concurrently read ahead is discarded
+            discardReadAhead(pageNum);
+            if (offHeapCache != null) {
+                // the whole page as on disk, the header of a removed page may still state a data length
+                offHeapCache.put(offHeapFileId, pageNum, tempPageData, tempPageData.length);
+            }
         }
 
         @Override
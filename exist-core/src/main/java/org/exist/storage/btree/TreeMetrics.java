@@ -23,15 +23,27 @@ package org.exist.storage.btree;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.text.NumberFormat;
 
 /**
+ * Statistics about the pages of a {@link BTree}, see {@link BTree#treeStatistics()}.
  *
+ * Besides the number of pages, the metrics report the size of the keys:
+ * their raw size, and the size which they actually occupy on the pages
+ * thanks to prefix compression in leaf and branch pages. The separators
+ * in branch pages are truncated to the shortest prefix which separates
+ * two leaf pages, this shows as a higher average fanout.
  */
 public class TreeMetrics {
 
     private int leafPages = 0;
     private int innerPages = 0;
     private int dataPages = 0;
+    private int height = 0;
+    private long leafKeys = 0;
+    private long innerKeys = 0;
+    private long rawKeyBytes = 0;
+    private long storedKeyBytes = 0;
     private String btreeName;
 
     public TreeMetrics(String name) {
@@ -45,6 +57,27 @@ public class TreeMetrics {
             {addLeafPage();}
     }
 
+    /**
+     * Add a page of the tree.
+     *
+     * @param status the type of the page, {@link BTree#LEAF} or {@link BTree#BRANCH}
+     * @param depth the depth of the page, the root page has depth 1
+     * @param keys the number of keys on the page
+     * @param rawKeyBytes the total length of the keys
+     * @param storedKeyBytes the number of bytes which the keys occupy on the page
+     */
+    public void addPage(int status, int depth, int keys, long rawKeyBytes, long storedKeyBytes) {
+        addPage(status);
+        if (status == BTree.BRANCH) {
+            innerKeys += keys;
+        } else {
+            leafKeys += keys;
+        }
+        height = Math.max(height, depth);
+        this.rawKeyBytes += rawKeyBytes;
+        this.storedKeyBytes += storedKeyBytes;
+    }
+
     public void addLeafPage() {
         ++leafPages;
     }
@@ -57,11 +90,55 @@ public class TreeMetrics {
         ++dataPages;
     }
 
+    public int getLeafPages() {
+        return leafPages;
+    }
+
+    public int getInnerPages() {
+        return innerPages;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getLeafKeys() {
+        return leafKeys;
+    }
+
+    public long getRawKeyBytes() {
+        return rawKeyBytes;
+    }
+
+    public long getStoredKeyBytes() {
+        return storedKeyBytes;
+    }
+
+    /**
+     * @return the average number of children of a branch page
+     */
+    public double getAverageFanout() {
+        return innerPages == 0 ? 0 : (innerKeys + innerPages) / (double) innerPages;
+    }
+
+    /**
+     * @return the fraction of the raw key size which is saved by compression
+     */
+    public double getKeyCompression() {
+        return rawKeyBytes == 0 ? 0 : 1.0 - storedKeyBytes / (double) rawKeyBytes;
+    }
+
     public void print(PrintWriter writer) {
+        final NumberFormat nf = NumberFormat.getPercentInstance();
         writer.println("BTree tree metrics for " + btreeName);
         writer.println("# inner pages: " + innerPages);
         writer.println("# leaf pages: " + leafPages);
         writer.println("# data pages: " + dataPages);
+        writer.println("# keys: " + leafKeys);
+        writer.println("tree height: " + height);
+        writer.println("avg. fanout: " + String.format("%.1f", getAverageFanout()));
+        writer.println("key bytes: " + rawKeyBytes + " raw, " + storedKeyBytes + " stored (" +
+                nf.format(getKeyCompression()) + " saved)");
     }
 
     public void toLogger() {
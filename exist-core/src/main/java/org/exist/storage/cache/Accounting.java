@@ -57,6 +57,12 @@ public class Accounting {
     
     /** total cache misses during the lifetime of the cache */
     private int misses = 0;
+
+    /** total items admitted by the admission policy of the cache */
+    private int admitted = 0;
+
+    /** total items rejected by the admission policy of the cache */
+    private int rejected = 0;
     
     /** the current size of the cache */
     private int totalSize = 0;
@@ -119,6 +125,42 @@ public class Accounting {
         return misses;
     }
     
+    /**
+     * Increment the number of items admitted to the cache,
+     * in favour of an existing item, by one.
+     */
+    public void admittedIncrement() {
+        ++admitted;
+    }
+
+    /**
+     * Returns the number of items admitted to the cache
+     * by its admission policy.
+     *
+     * @return number of admitted items
+     */
+    public int getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Increment the number of items rejected by the
+     * admission policy of the cache by one.
+     */
+    public void rejectedIncrement() {
+        ++rejected;
+    }
+
+    /**
+     * Returns the number of items rejected by the
+     * admission policy of the cache.
+     *
+     * @return number of rejected items
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
     /**
      * Called by the cache to signal that a page was replaced
      * in order to store the Cacheable object passed.
@@ -172,6 +214,8 @@ public class Accounting {
     public void stats() {
         LOG.debug("hits: " + hits 
                 + "; misses: " + misses 
+                + "; admitted: " + admitted
+                + "; rejected: " + rejected
                 + "; thrashing: " + getThrashing() 
                 + "; thrashing period: " + checkPeriod);
     }
@@ -164,6 +164,29 @@ public interface Cache<T extends Cacheable> {
      */
     int getFails();
 
+    /**
+     * Get the number of times where a new item was admitted to the
+     * cache, in favour of an existing item, by the admission policy
+     * of the cache.
+     *
+     * @return number of admitted items, or -1 if the cache
+     * has no admission policy
+     */
+    default int getAdmitted() {
+        return -1;
+    }
+
+    /**
+     * Get the number of times where a new item was rejected by the
+     * admission policy of the cache, in favour of an existing item.
+     *
+     * @return number of rejected items, or -1 if the cache
+     * has no admission policy
+     */
+    default int getRejected() {
+        return -1;
+    }
+
     /**
      * Get the load factor if the cache
      *
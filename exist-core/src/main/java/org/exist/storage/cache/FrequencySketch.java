@@ -0,0 +1,119 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A Count-Min sketch which estimates the access frequency of
+ * cache keys (usually page numbers) within a recent time window.
+ *
+ * Counters saturate at {@link #MAX_COUNT}. After a number of increments
+ * proportional to the capacity of the cache, all counters are halved,
+ * so that the sketch ages and reflects the recent history only.
+ *
+ * Used as the admission filter of {@link WTinyLFUCache}.
+ */
+@NotThreadSafe
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int MIN_WIDTH = 16;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L,
+            0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L
+    };
+
+    private final byte[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * @param capacity the number of items held by the cache
+     */
+    FrequencySketch(final int capacity) {
+        final int width = ceilingPowerOfTwo(Math.max(capacity, MIN_WIDTH));
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = SAMPLE_FACTOR * Math.max(capacity, MIN_WIDTH);
+    }
+
+    /**
+     * Records an access to the key.
+     *
+     * @param key the key of the accessed item
+     */
+    void increment(final long key) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            final int idx = index(key, i);
+            if (table[i][idx] < MAX_COUNT) {
+                table[i][idx]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent accesses to the key.
+     *
+     * @param key the key of the item
+     * @return the estimated frequency, between 0 and {@link #MAX_COUNT}
+     */
+    int frequency(final long key) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[i][index(key, i)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (final byte[] row : table) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (byte) (row[j] >>> 1);
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(final long key, final int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[row];
+        hash += hash >>> 32;
+        return ((int) hash) & mask;
+    }
+
+    private static int ceilingPowerOfTwo(final int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
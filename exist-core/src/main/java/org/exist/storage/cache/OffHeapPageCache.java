@@ -0,0 +1,237 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.jcip.annotations.ThreadSafe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A second level cache for the raw bytes of database pages, held
+ * outside of the Java heap.
+ *
+ * The memory is allocated lazily as slabs of direct {@link ByteBuffer}s,
+ * each of which is divided into fixed size slots of one page. Pages
+ * which have been evicted from the (on-heap) page caches of the
+ * paged files can then be re-read from here instead of from disk,
+ * without adding to the work of the garbage collector.
+ *
+ * Slots are replaced using the CLOCK algorithm. The cache is
+ * write-through: {@link org.exist.storage.btree.Paged} stores every page
+ * which is written to disk, so the cached copy is never stale.
+ *
+ * Instances are shared by all paged files of a database instance
+ * and are managed by {@link org.exist.storage.DefaultCacheManager}.
+ */
+@ThreadSafe
+public class OffHeapPageCache {
+
+    /** The maximum size of a single slab */
+    private static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int FILE_ID_SHIFT = 40;
+    private static final long PAGE_NUM_MASK = (1L << FILE_ID_SHIFT) - 1;
+    private static final long FREE = -1;
+
+    private final int pageSize;
+    private final int slotCount;
+    private final int slotsPerSlab;
+    private final ByteBuffer[] slabs;
+
+    private final Long2IntOpenHashMap slotIndex;
+    private final long[] slotKeys;
+    private final int[] slotLengths;
+    private final boolean[] referenced;
+    private final IntArrayList freeSlots = new IntArrayList();
+    private int unusedSlot = 0;
+    private int clockHand = 0;
+
+    private int nextFileId = 0;
+    private long hits = 0;
+    private long fails = 0;
+
+    /**
+     * @param size the maximum size of the cache in bytes
+     * @param pageSize the size of a page in bytes
+     */
+    public OffHeapPageCache(final long size, final int pageSize) {
+        this.pageSize = pageSize;
+        this.slotCount = (int) Math.min(Integer.MAX_VALUE, size / pageSize);
+        this.slotsPerSlab = Math.max(1, Math.min(slotCount, MAX_SLAB_SIZE / pageSize));
+        this.slabs = new ByteBuffer[(slotCount + slotsPerSlab - 1) / slotsPerSlab];
+
+        this.slotIndex = new Long2IntOpenHashMap(slotCount);
+        this.slotIndex.defaultReturnValue(-1);
+        this.slotKeys = new long[slotCount];
+        Arrays.fill(slotKeys, FREE);
+        this.slotLengths = new int[slotCount];
+        this.referenced = new boolean[slotCount];
+    }
+
+    /**
+     * Registers a paged file with the cache.
+     *
+     * @return the id which identifies the pages of the file within the cache
+     */
+    public synchronized int register() {
+        return nextFileId++;
+    }
+
+    /**
+     * Stores the raw bytes of a page, replacing any previous copy.
+     *
+     * @param fileId the id of the file as returned by {@link #register()}
+     * @param pageNum the number of the page
+     * @param data the raw bytes of the page, including the page header
+     * @param length the number of bytes to store, at most the page size
+     */
+    public synchronized void put(final int fileId, final long pageNum, final byte[] data, final int length) {
+        if (slotCount == 0) {
+            return;
+        }
+        final long key = key(fileId, pageNum);
+        int slot = slotIndex.get(key);
+        if (slot < 0) {
+            slot = allocateSlot();
+            slotKeys[slot] = key;
+            slotIndex.put(key, slot);
+        }
+        final ByteBuffer slab = getSlab(slot);
+        slab.position((slot % slotsPerSlab) * pageSize);
+        slab.put(data, 0, length);
+        slotLengths[slot] = length;
+        referenced[slot] = true;
+    }
+
+    /**
+     * Copies the raw bytes of a page into the given array.
+     *
+     * @param fileId the id of the file as returned by {@link #register()}
+     * @param pageNum the number of the page
+     * @param dest an array of at least the page size
+     *
+     * @return the number of bytes copied, or -1 if the page is not cached
+     */
+    public synchronized int get(final int fileId, final long pageNum, final byte[] dest) {
+        final int slot = slotIndex.get(key(fileId, pageNum));
+        if (slot < 0) {
+            fails++;
+            return -1;
+        }
+        final ByteBuffer slab = slabs[slot / slotsPerSlab];
+        slab.position((slot % slotsPerSlab) * pageSize);
+        slab.get(dest, 0, slotLengths[slot]);
+        referenced[slot] = true;
+        hits++;
+        return slotLengths[slot];
+    }
+
+    /**
+     * Removes all pages of a file from the cache,
+     * e.g. when the file is closed.
+     *
+     * @param fileId the id of the file as returned by {@link #register()}
+     */
+    public synchronized void invalidate(final int fileId) {
+        for (int slot = 0; slot < unusedSlot; slot++) {
+            if (slotKeys[slot] != FREE && (slotKeys[slot] >>> FILE_ID_SHIFT) == fileId) {
+                slotIndex.remove(slotKeys[slot]);
+                slotKeys[slot] = FREE;
+                referenced[slot] = false;
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.popInt();
+        }
+        if (unusedSlot < slotCount) {
+            return unusedSlot++;
+        }
+
+        // CLOCK: evict the first slot which has not been referenced since the hand last passed it
+        while (true) {
+            final int slot = clockHand;
+            clockHand = (clockHand + 1) % slotCount;
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                slotIndex.remove(slotKeys[slot]);
+                slotKeys[slot] = FREE;
+                return slot;
+            }
+        }
+    }
+
+    private ByteBuffer getSlab(final int slot) {
+        final int slabIdx = slot / slotsPerSlab;
+        ByteBuffer slab = slabs[slabIdx];
+        if (slab == null) {
+            final int slots = Math.min(slotsPerSlab, slotCount - slabIdx * slotsPerSlab);
+            slab = ByteBuffer.allocateDirect(slots * pageSize);
+            slabs[slabIdx] = slab;
+        }
+        return slab;
+    }
+
+    private static long key(final int fileId, final long pageNum) {
+        return ((long) fileId << FILE_ID_SHIFT) | (pageNum & PAGE_NUM_MASK);
+    }
+
+    /**
+     * @return the maximum size of the cache in bytes
+     */
+    public long getSize() {
+        return (long) slotCount * pageSize;
+    }
+
+    /**
+     * @return the number of bytes which have been allocated for slabs so far
+     */
+    public synchronized long getAllocated() {
+        long allocated = 0;
+        for (final ByteBuffer slab : slabs) {
+            if (slab != null) {
+                allocated += slab.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * @return the number of pages held by the cache
+     */
+    public synchronized int getUsedPages() {
+        return slotIndex.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getFails() {
+        return fails;
+    }
+}
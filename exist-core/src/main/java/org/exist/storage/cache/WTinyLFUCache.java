@@ -0,0 +1,350 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+import org.exist.util.hashtable.SequencedLongHashMap;
+
+/**
+ * A scan-resistant cache implementing the W-TinyLFU replacement policy.
+ *
+ * New items enter a small LRU admission window. Items leaving the window
+ * compete with the eviction victim of the main space, and are only admitted
+ * if their access frequency, as estimated by a {@link FrequencySketch}, is
+ * higher than the one of the victim. The main space is a segmented LRU:
+ * items are promoted from the probation to the protected segment when they
+ * are accessed again.
+ *
+ * A single scan over a large file therefore only churns the admission
+ * window and the probation segment, while frequently used pages, e.g. the
+ * inner pages of a btree, stay in the protected segment.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@NotThreadSafe
+public class WTinyLFUCache<T extends Cacheable> implements Cache<T> {
+    private final static Logger LOG = LogManager.getLogger(WTinyLFUCache.class);
+
+    /** The fraction of the cache used for the admission window */
+    private static final double WINDOW_FRACTION = 0.01;
+
+    /** The fraction of the main space used for the protected segment */
+    private static final double PROTECTED_FRACTION = 0.8;
+
+    private final String name;
+    private final CacheType type;
+    private final double growthFactor;
+    private final Accounting accounting;
+    private CacheManager cacheManager = null;
+    private int hitsOld = -1;
+
+    private int max;
+    private int windowMax;
+    private int protectedMax;
+
+    private SequencedLongHashMap<T> window;
+    private SequencedLongHashMap<T> probation;
+    private SequencedLongHashMap<T> protectedSegment;
+    private FrequencySketch sketch;
+
+    public WTinyLFUCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this.name = name;
+        this.type = type;
+        this.growthFactor = growthFactor;
+        this.accounting = new Accounting(growthThreshold);
+        init(size);
+    }
+
+    private void init(final int size) {
+        this.max = size;
+        this.windowMax = Math.max(1, (int) (size * WINDOW_FRACTION));
+        this.protectedMax = (int) ((size - windowMax) * PROTECTED_FRACTION);
+        this.window = new SequencedLongHashMap<>(windowMax * 2);
+        this.probation = new SequencedLongHashMap<>(size * 2);
+        this.protectedSegment = new SequencedLongHashMap<>(protectedMax * 2);
+        this.sketch = new FrequencySketch(size);
+        accounting.reset();
+        accounting.setTotalSize(max);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        add(item);
+    }
+
+    @Override
+    public void add(final T item) {
+        final long key = item.getKey();
+        if (window.get(key) != null) {
+            window.put(key, item);
+            return;
+        }
+        if (probation.get(key) != null) {
+            probation.put(key, item);
+            return;
+        }
+        if (protectedSegment.get(key) != null) {
+            protectedSegment.put(key, item);
+            return;
+        }
+
+        sketch.increment(key);
+        window.put(key, item);
+        if (window.size() > windowMax) {
+            evictFromWindow(item);
+        }
+    }
+
+    /**
+     * Moves the least recently used item of the admission window into the
+     * main space, or evicts it if the main space is full and the item is
+     * accessed less frequently than the main space's eviction victim.
+     *
+     * @param item the item which is being added to the cache
+     */
+    private void evictFromWindow(final T item) {
+        final SequencedLongHashMap.Entry<T> first = window.removeFirst();
+        final T candidate = first.getValue();
+
+        if (probation.size() + protectedSegment.size() < max - windowMax) {
+            probation.put(candidate.getKey(), candidate);
+            return;
+        }
+
+        final T victim = findVictim(item.getKey());
+        if (victim == null) {
+            // nothing can be unloaded from the main space at the moment
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Unable to remove entry");
+            }
+            probation.put(candidate.getKey(), candidate);
+            return;
+        }
+
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey()) || !candidate.allowUnload()) {
+            unload(victim);
+            probation.put(candidate.getKey(), candidate);
+            accounting.admittedIncrement();
+        } else {
+            candidate.sync(true);
+            accounting.rejectedIncrement();
+        }
+
+        accounting.replacedPage(item);
+        if (growthFactor > 1.0 && accounting.resizeNeeded()) {
+            cacheManager.requestMem(this);
+        }
+    }
+
+    /**
+     * Finds the least recently used item of the main space which
+     * may be unloaded, preferring items from the probation segment.
+     *
+     * @param excludeKey the key of an item which must not be chosen
+     *
+     * @return the victim, or null if no item can be unloaded
+     */
+    private T findVictim(final long excludeKey) {
+        T victim = findUnloadable(probation, excludeKey);
+        if (victim == null) {
+            victim = findUnloadable(protectedSegment, excludeKey);
+        }
+        return victim;
+    }
+
+    private T findUnloadable(final SequencedLongHashMap<T> segment, final long excludeKey) {
+        for (SequencedLongHashMap.Entry<T> next = segment.getFirstEntry(); next != null; next = next.getNext()) {
+            final T cached = next.getValue();
+            if (cached.allowUnload() && cached.getKey() != excludeKey) {
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    private void unload(final T item) {
+        item.sync(true);
+        if (probation.remove(item.getKey()) == null) {
+            protectedSegment.remove(item.getKey());
+        }
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        T obj = window.get(key);
+        if (obj != null) {
+            window.put(key, obj);
+        } else if ((obj = probation.get(key)) != null) {
+            // accessed again: promote to the protected segment
+            probation.remove(key);
+            protectedSegment.put(key, obj);
+            if (protectedSegment.size() > protectedMax) {
+                final SequencedLongHashMap.Entry<T> demoted = protectedSegment.removeFirst();
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        } else if ((obj = protectedSegment.get(key)) != null) {
+            protectedSegment.put(key, obj);
+        }
+
+        if (obj == null) {
+            accounting.missesIncrement();
+        } else {
+            accounting.hitIncrement();
+            sketch.increment(key);
+        }
+        return obj;
+    }
+
+    @Override
+    public void remove(final T item) {
+        final long key = item.getKey();
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        boolean flushed = flush(window);
+        flushed = flushed | flush(probation);
+        flushed = flushed | flush(protectedSegment);
+        return flushed;
+    }
+
+    private boolean flush(final SequencedLongHashMap<T> segment) {
+        boolean flushed = false;
+        for (SequencedLongHashMap.Entry<T> next = segment.getFirstEntry(); next != null; next = next.getNext()) {
+            final T cacheable = next.getValue();
+            if (cacheable.isDirty()) {
+                flushed = flushed | cacheable.sync(false);
+            }
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        return hasDirtyItems(window) || hasDirtyItems(probation) || hasDirtyItems(protectedSegment);
+    }
+
+    private boolean hasDirtyItems(final SequencedLongHashMap<T> segment) {
+        for (SequencedLongHashMap.Entry<T> next = segment.getFirstEntry(); next != null; next = next.getNext()) {
+            if (next.getValue().isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBuffers() {
+        return max;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    @Override
+    public int getHits() {
+        return accounting.getHits();
+    }
+
+    @Override
+    public int getFails() {
+        return accounting.getMisses();
+    }
+
+    @Override
+    public int getAdmitted() {
+        return accounting.getAdmitted();
+    }
+
+    @Override
+    public int getRejected() {
+        return accounting.getRejected();
+    }
+
+    public int getThrashing() {
+        return accounting.getThrashing();
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        if (newSize < max) {
+            flush();
+            init(newSize);
+        } else {
+            final SequencedLongHashMap<T> oldWindow = window;
+            final SequencedLongHashMap<T> oldProbation = probation;
+            final SequencedLongHashMap<T> oldProtected = protectedSegment;
+            init(newSize);
+            copy(oldWindow, window);
+            copy(oldProbation, probation);
+            copy(oldProtected, protectedSegment);
+        }
+    }
+
+    private void copy(final SequencedLongHashMap<T> from, final SequencedLongHashMap<T> to) {
+        for (SequencedLongHashMap.Entry<T> next = from.getFirstEntry(); next != null; next = next.getNext()) {
+            to.put(next.getKey(), next.getValue());
+        }
+    }
+
+    @Override
+    public int getLoad() {
+        if (hitsOld == 0) {
+            hitsOld = accounting.getHits();
+            return Integer.MAX_VALUE;
+        }
+        final int load = accounting.getHits() - hitsOld;
+        hitsOld = accounting.getHits();
+        return load;
+    }
+}
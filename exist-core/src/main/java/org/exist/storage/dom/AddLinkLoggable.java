@@ -73,6 +73,11 @@ public class AddLinkLoggable extends AbstractLoggable {
         domDb.redoAddLink(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoAddLink(this);
@@ -22,6 +22,7 @@ package org.exist.storage.dom;
 
 import java.nio.ByteBuffer;
 
+import org.exist.storage.NativeBroker;
 import org.exist.storage.DBBroker;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
@@ -64,6 +65,11 @@ public class AddMovedValueLoggable extends AddValueLoggable {
         domDb.redoAddMovedValue(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoAddMovedValue(this);
@@ -96,6 +96,11 @@ public class AddValueLoggable extends AbstractLoggable {
         domDb.redoAddValue(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoAddValue(this);
@@ -81,6 +81,11 @@ public class CreatePageLoggable extends AbstractLoggable {
         domDb.redoCreatePage(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoCreatePage(this);
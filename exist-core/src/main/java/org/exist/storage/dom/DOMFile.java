@@ -29,6 +29,10 @@ import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -64,7 +68,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
@@ -176,8 +179,25 @@ public class DOMFile extends BTree implements Lockable {
 
     public final static long DATA_SYNC_PERIOD = 4200;
 
+    /**
+     * The number of pages which are read ahead on a background thread,
+     * once a chain of data pages is found to be traversed sequentially.
+     * 0 disables reading ahead.
+     */
+    public static final String READ_AHEAD_ATTRIBUTE = "readAhead";
+    public static final String PROPERTY_READ_AHEAD = "db-connection.read-ahead";
+    public static final int DEFAULT_READ_AHEAD = 0;
+
+    /**
+     * The number of pages of a chain which have to be accessed in
+     * order, before the chain is considered to be traversed sequentially.
+     */
+    private static final int READ_AHEAD_THRESHOLD = 2;
+
     private final Cache<DOMPage> dataCache;
 
+    @Nullable private final ReadAhead readAhead;
+
     private final BTreeFileHeader fileHeader;
 
     private Object owner = null;
@@ -196,8 +216,16 @@ public class DOMFile extends BTree implements Lockable {
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
-        dataCache = new LRUCache<>(getFileName(), 256, 0.0, 1.0, Cache.CacheType.DATA);
+        dataCache = cacheManager.newDataCache(getFileName(), 256, 0.0, 1.0);
         cacheManager.registerCache(dataCache);
+        // the pages of a memory-mapped file are read ahead by the operating system
+        final int readAheadPages = config.getProperty(PROPERTY_READ_AHEAD, DEFAULT_READ_AHEAD);
+        if (readAheadPages > 0 && !isMemoryMapped()) {
+            enableReadAhead(readAheadPages * 4);
+            this.readAhead = new ReadAhead(pool, readAheadPages);
+        } else {
+            this.readAhead = null;
+        }
         final Path file = dataDir.resolve(getFileName());
         setFile(file);
         if (exists()) {
@@ -257,6 +285,9 @@ public class DOMFile extends BTree implements Lockable {
         if (page == null) {
             page = new DOMPage(pointer);
         }
+        if (readAhead != null) {
+            readAhead.accessed(page);
+        }
         return page;
     }
 
@@ -307,6 +338,9 @@ public class DOMFile extends BTree implements Lockable {
         if (LOG.isDebugEnabled() && !lockManager.isBtreeLockedForWrite(getLockName())) {
             LOG.debug("The file doesn't own a write lock");
         }
+        if (readAhead != null) {
+            readAhead.close();
+        }
         super.close();
         cacheManager.deregisterCache(dataCache);
     }
@@ -1416,6 +1450,9 @@ public class DOMFile extends BTree implements Lockable {
         } else {
             buf.append(nf1.format(dataCache.getHits()/(float)(dataCache.getFails() + dataCache.getHits())));
         }
+        if (readAhead != null) {
+            buf.append(" Pages read ahead used : ").append(nf2.format(getReadAheadHits()));
+        }
         LOGSTATS.info(buf.toString());
     }
 
@@ -2907,6 +2944,90 @@ public class DOMFile extends BTree implements Lockable {
         dataCache.add(page, 2);
     }
 
+    /**
+     * Detects the sequential traversal of a chain of data pages, e.g. whilst
+     * a whole document is serialized, and reads the next pages of the chain
+     * ahead on a background thread, so that the traversal does not have to
+     * wait for each page to be read from the file.
+     */
+    private final class ReadAhead {
+        private final int readAheadPages;
+        private final ThreadPoolExecutor executor;
+
+        // the state of the traversal, guarded by the lock of the file
+        private long currentPage = NO_PAGE;
+        private long expectedPage = NO_PAGE;
+        private int sequential = 0;
+
+        ReadAhead(final BrokerPool pool, final int readAheadPages) {
+            this.readAheadPages = readAheadPages;
+            // NOTE: read-ahead is only a hint, so requests which cannot be queued are dropped
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(4),
+                    new NamedThreadFactory(pool.getThreadGroup(), pool.getId(), "dom-read-ahead"),
+                    new ThreadPoolExecutor.DiscardPolicy());
+        }
+
+        /**
+         * Called each time a page is accessed.
+         *
+         * @param page the page
+         */
+        void accessed(final DOMPage page) {
+            if (page.getPageNum() == currentPage) {
+                // the records of a page are usually accessed one by one
+                return;
+            }
+            currentPage = page.getPageNum();
+            if (currentPage == expectedPage) {
+                sequential++;
+            } else {
+                sequential = 0;
+            }
+            final long nextPage = page.getPageHeader().getNextDataPage();
+            expectedPage = nextPage;
+
+            // read ahead once the traversal is found to be sequential, and then
+            // again each time half of the pages read ahead have been consumed
+            if (nextPage != NO_PAGE && sequential >= READ_AHEAD_THRESHOLD
+                    && (sequential - READ_AHEAD_THRESHOLD) % Math.max(1, readAheadPages / 2) == 0) {
+                executor.execute(() -> readChain(nextPage));
+            }
+        }
+
+        private void readChain(long pageNum) {
+            final DOMFilePageHeader pageHeader = new DOMFilePageHeader();
+            try {
+                for (int i = 0; i < readAheadPages && pageNum != NO_PAGE; i++) {
+                    final byte[] data = readAhead(pageNum);
+                    if (data == null) {
+                        return;
+                    }
+                    pageHeader.read(data, 0);
+                    final byte status = pageHeader.getStatus();
+                    if (status != RECORD) {
+                        return;
+                    }
+                    pageNum = pageHeader.getNextDataPage();
+                }
+            } catch (final IOException e) {
+                // the page will simply be read when it is needed
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to read ahead page " + pageNum + ": " + e.getMessage());
+                }
+            }
+        }
+
+        void close() {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     protected final class DOMFilePageHeader extends BTreePageHeader {
 
         protected int dataLength = 0;
@@ -89,6 +89,11 @@ public class InsertValueLoggable extends AbstractLoggable {
         domDb.redoInsertValue(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoInsertValue(this);
@@ -73,6 +73,11 @@ public class RemoveEmptyPageLoggable extends AbstractLoggable {
         domDb.redoRemoveEmptyPage(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoRemoveEmptyPage(this);
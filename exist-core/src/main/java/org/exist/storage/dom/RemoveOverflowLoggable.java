@@ -77,6 +77,11 @@ public class RemoveOverflowLoggable extends AbstractLoggable {
         domDb.redoRemoveOverflow(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoRemoveOverflow(this);
@@ -92,6 +92,11 @@ public class RemovePageLoggable extends AbstractLoggable {
         domDb.redoRemovePage(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoRemovePage(this);
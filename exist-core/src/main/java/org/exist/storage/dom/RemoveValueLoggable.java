@@ -93,6 +93,11 @@ public class RemoveValueLoggable extends AbstractLoggable {
         domDb.redoRemoveValue(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoRemoveValue(this);
@@ -81,6 +81,11 @@ public class SplitPageLoggable extends AbstractLoggable implements Loggable {
         domDb.redoSplitPage(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoSplitPage(this);
@@ -82,6 +82,11 @@ public class UpdateHeaderLoggable extends AbstractLoggable {
         domDb.redoUpdateHeader(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoUpdateHeader(this);
@@ -74,6 +74,11 @@ public class UpdateLinkLoggable extends AbstractLoggable {
         domDb.redoUpdateLink(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoUpdateLink(this);
@@ -85,6 +85,11 @@ public class UpdateValueLoggable extends AbstractLoggable {
         domDb.redoUpdateValue(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoUpdateValue(this);
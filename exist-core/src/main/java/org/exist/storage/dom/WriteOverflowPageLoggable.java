@@ -78,6 +78,11 @@ public class WriteOverflowPageLoggable extends AbstractLoggable {
         domDb.redoWriteOverflow(this);
     }
 
+    @Override
+    public int getRedoFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void undo() throws LogException {
         domDb.undoWriteOverflow(this);
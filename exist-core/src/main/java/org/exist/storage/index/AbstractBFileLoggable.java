@@ -32,6 +32,7 @@ import org.exist.storage.txn.Txn;
  */
 public abstract class AbstractBFileLoggable extends AbstractLoggable {
     private NativeBroker broker;
+    private BFile indexFile;
     protected byte fileId;
 
     public AbstractBFileLoggable(final byte type, final byte fileId, final Txn transaction) {
@@ -52,6 +53,10 @@ public abstract class AbstractBFileLoggable extends AbstractLoggable {
     @Override
     public void read(final ByteBuffer in) {
         fileId = in.get();
+        // resolved by the thread reading the journal, as the entry may be redone by another thread
+        if (broker != null) {
+            indexFile = (BFile) broker.getStorage(fileId);
+        }
     }
 
     @Override
@@ -60,13 +65,18 @@ public abstract class AbstractBFileLoggable extends AbstractLoggable {
     }
 
     protected BFile getIndexFile() {
-        return (BFile) broker.getStorage(fileId);
+        return indexFile;
     }
 
     public byte getFileId() {
         return fileId;
     }
 
+    @Override
+    public int getRedoFileId() {
+        return fileId;
+    }
+
     @Override
     public String dump() {
         return super.dump() + " [BFile]";
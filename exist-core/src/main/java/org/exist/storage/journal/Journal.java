@@ -22,6 +22,7 @@ package org.exist.storage.journal;
 import java.io.*;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
@@ -117,11 +118,13 @@ public final class Journal implements Closeable {
     public static final String RECOVERY_SYNC_ON_COMMIT_ATTRIBUTE = "sync-on-commit";
     public static final String RECOVERY_JOURNAL_DIR_ATTRIBUTE = "journal-dir";
     public static final String RECOVERY_SIZE_LIMIT_ATTRIBUTE = "size";
+    public static final String RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE = "group-commit-window";
 
     public static final String PROPERTY_RECOVERY_SIZE_MIN = "db-connection.recovery.size-min";
     public static final String PROPERTY_RECOVERY_SIZE_LIMIT = "db-connection.recovery.size-limit";
     public static final String PROPERTY_RECOVERY_JOURNAL_DIR = "db-connection.recovery.journal-dir";
     public static final String PROPERTY_RECOVERY_SYNC_ON_COMMIT = "db-connection.recovery.sync-on-commit";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW = "db-connection.recovery.group-commit-window";
 
     public static final String LOG_FILE_SUFFIX = "log";
     public static final String BAK_FILE_SUFFIX = ".bak";
@@ -227,7 +230,25 @@ public final class Journal implements Closeable {
     /**
      * stores the current LSN of the last file sync on the file
      */
-    private Lsn lastSyncLsn = Lsn.LSN_INVALID;
+    private volatile Lsn lastSyncLsn = Lsn.LSN_INVALID;
+
+    /**
+     * monitor used to coordinate committers waiting in {@link #syncToLog(Lsn)}
+     */
+    private final Object groupCommitLock = new Object();
+
+    /**
+     * true whilst a committer is syncing the journal on behalf of the group,
+     * guarded by {@link #groupCommitLock}
+     */
+    private boolean groupCommitSyncing = false;
+
+    /**
+     * the time in milliseconds which the syncing committer waits for
+     * further commit records before it syncs the journal
+     */
+    private static final long DEFAULT_GROUP_COMMIT_WINDOW = 0;
+    private final long groupCommitWindow;
 
     /**
      * set to true while recovery is in progress
@@ -262,6 +283,7 @@ public final class Journal implements Closeable {
         if (LOG.isDebugEnabled()) {
             LOG.debug("SyncOnCommit = " + syncOnCommit);
         }
+        this.groupCommitWindow = pool.getConfiguration().getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, DEFAULT_GROUP_COMMIT_WINDOW);
 
         final Optional<Path> logDir = Optional.ofNullable((Path) pool.getConfiguration().getProperty(PROPERTY_RECOVERY_JOURNAL_DIR));
         if (logDir.isPresent()) {
@@ -374,6 +396,16 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Returns the LSN of the last entry written to the journal,
+     * which may still be buffered.
+     *
+     * @return the LSN of the last entry
+     */
+    public synchronized Lsn currentLsn() {
+        return currentLsn;
+    }
+
     /**
      * Returns the last LSN physically written to the journal.
      *
@@ -408,7 +440,7 @@ public final class Journal implements Closeable {
         flushBuffer();
 
         try {
-            if (forceSync || (fsync && syncOnCommit && currentLsn.compareTo(lastSyncLsn) > 0)) {
+            if (channel != null && (forceSync || (fsync && syncOnCommit && currentLsn.compareTo(lastSyncLsn) > 0))) {
                 sync();
                 lastSyncLsn = currentLsn;
             }
@@ -416,6 +448,60 @@ public final class Journal implements Closeable {
             LOG.error("Could not sync Journal to disk: " + e.getMessage(), e);
         }
 
+        checkJournalSize();
+    }
+
+    /**
+     * Flushes the buffer and syncs the journal on behalf of a group of committers.
+     *
+     * In contrast to {@link #flushToLog(boolean, boolean)}, the file is synced
+     * without holding the monitor of the journal, so that further records
+     * can be written whilst the sync is in progress.
+     *
+     * @throws JournalException if the journal could not be synced
+     */
+    private void groupSync() throws JournalException {
+        final FileChannel syncChannel;
+        final Lsn syncLsn;
+        synchronized (this) {
+            if (inRecovery) {
+                return;
+            }
+            flushBuffer();
+            syncChannel = channel;
+            syncLsn = currentLsn;
+        }
+
+        if (syncChannel != null && syncLsn.compareTo(lastSyncLsn) > 0) {
+            // an interrupt would close the shared channel, so it is deferred until the sync is done
+            final boolean interrupted = Thread.interrupted();
+            try {
+                syncChannel.force(true);
+            } catch (final ClosedChannelException e) {
+                synchronized (latch) {
+                    if (syncChannel == channel) {
+                        throw new JournalException("Could not sync Journal to disk, the journal file has been closed", e);
+                    }
+                }
+                // the journal file has been switched, which syncs it before closing
+            } catch (final IOException e) {
+                throw new JournalException("Could not sync Journal to disk: " + e.getMessage(), e);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (this) {
+                if (syncLsn.compareTo(lastSyncLsn) > 0) {
+                    lastSyncLsn = syncLsn;
+                }
+                checkJournalSize();
+            }
+        }
+    }
+
+    private void checkJournalSize() {
         try {
             if (channel != null && channel.size() >= journalSizeLimit) {
                 pool.triggerCheckpoint();
@@ -425,6 +511,70 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Makes the journal durable up to the given LSN, usually the LSN of
+     * a {@link TxnCommit} record, if syncOnCommit is enabled.
+     *
+     * Implements group commit: the first of several concurrent committers
+     * syncs the journal on behalf of all records written so far, and the
+     * others wait until it is done. Their records are then either already
+     * durable, or the next committer syncs the journal for them, so that
+     * a single sync is shared by all commits which arrive whilst the
+     * previous sync is in progress. The syncing committer may also wait
+     * for a configurable window first, see {@link #PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW},
+     * to collect more commit records.
+     *
+     * Must not be called whilst holding the monitor of the journal.
+     *
+     * @param lsn the LSN which must be durable when the method returns
+     * @throws JournalException if the journal could not be synced
+     */
+    public void syncToLog(final Lsn lsn) throws JournalException {
+        if (!syncOnCommit || inRecovery) {
+            flushToLog(true);
+            return;
+        }
+
+        boolean interrupted = false;
+        try {
+            synchronized (groupCommitLock) {
+                // keep waiting if interrupted, as only one committer may sync at a time
+                while (groupCommitSyncing) {
+                    try {
+                        groupCommitLock.wait();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (lastSyncLsn.compareTo(lsn) >= 0) {
+                    // synced by another committer
+                    return;
+                }
+                groupCommitSyncing = true;
+            }
+
+            try {
+                if (groupCommitWindow > 0 && !interrupted) {
+                    try {
+                        Thread.sleep(groupCommitWindow);
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                groupSync();
+            } finally {
+                synchronized (groupCommitLock) {
+                    groupCommitSyncing = false;
+                    groupCommitLock.notifyAll();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private void sync() throws IOException {
         channel.force(true);
     }
@@ -493,6 +643,23 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Write a fuzzy checkpoint record to the journal and flush it.
+     *
+     * In contrast to {@link #checkpoint(long, boolean)}, the journal file
+     * is never switched, as recovery still needs the entries from
+     * the redo point onwards.
+     *
+     * @param txnId the transaction id
+     * @param redoLsn the LSN from which recovery has to redo the journal
+     * @throws JournalException if the checkpoint could not be written to the journal.
+     */
+    public void checkpoint(final long txnId, final Lsn redoLsn) throws JournalException {
+        LOG.debug("Fuzzy checkpoint reached, redo from: " + redoLsn);
+        writeToLog(new Checkpoint(txnId, redoLsn));
+        flushToLog(true, true);
+    }
+
     /**
      * Set the file number of the last file used.
      *
@@ -92,20 +92,28 @@ public class JournalManager implements BrokerPoolService {
     }
 
     /**
-     * Write a group of entrys to the journal
+     * Write the entry which completes a group of entries, e.g. the commit
+     * of a transaction, to the journal. Unless group commits are enabled,
+     * the method returns once the entry has been synced to disk.
+     *
+     * Concurrent callers share a single sync of the journal,
+     * see {@link Journal#syncToLog(Lsn)}.
      *
      * @see Journal#writeToLog(Loggable)
-     * @see Journal#flushToLog(boolean)
+     * @see Journal#syncToLog(Lsn)
      *
      * @param loggable The entry to write in the journalGroup
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
+    public void journalGroup(final Loggable loggable) throws JournalException {
         if(!journallingDisabled) {
-            journal.writeToLog(loggable);
+            synchronized (this) {
+                journal.writeToLog(loggable);
+            }
+            // not synchronized, so that other committers may write their entries whilst the journal is synced
             if (!groupCommits) {
-                journal.flushToLog(true);
+                journal.syncToLog(loggable.getLsn());
             }
         }
     }
@@ -139,6 +147,24 @@ public class JournalManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * @see Journal#checkpoint(long, Lsn)
+     *
+     * Create a new fuzzy checkpoint. In contrast to {@link #checkpoint(long, boolean)}
+     * the database may be in use, the checkpoint only records the LSN from which
+     * recovery has to redo the journal.
+     *
+     * @param transactionId The id of the transaction for the checkpoint
+     * @param redoLsn The LSN from which recovery has to redo the journal
+     *
+     * @throws JournalException of the journal checkpoint cannot be written
+     */
+    public synchronized void checkpoint(final long transactionId, final Lsn redoLsn) throws JournalException {
+        if(!journallingDisabled) {
+            journal.checkpoint(transactionId, redoLsn);
+        }
+    }
+
     /**
      * @param fsync true to use fsync
      * @param forceSync true to force an fsync
@@ -168,6 +194,15 @@ public class JournalManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * @see Journal#currentLsn()
+     *
+     * @return the LSN of the last entry
+     */
+    public Lsn currentLsn() {
+        return journal.currentLsn();
+    }
+
     /**
      * @see Journal#lastWrittenLsn()
      *
@@ -43,6 +43,7 @@ public class LogEntryTypes {
     public final static byte TXN_COMMIT = 1;
     public final static byte CHECKPOINT = 2;
     public final static byte TXN_ABORT = 3;
+    public final static byte FUZZY_CHECKPOINT = 4;
 
     private final static Int2ObjectMap<BiFunction<DBBroker, Long, Loggable>> entryTypes = new Int2ObjectOpenHashMap<>();
 
@@ -52,6 +53,7 @@ public class LogEntryTypes {
         entryTypes.put(TXN_COMMIT, TxnCommit::new);
         entryTypes.put(CHECKPOINT, Checkpoint::new);
         entryTypes.put(TXN_ABORT, TxnAbort::new);
+        entryTypes.put(FUZZY_CHECKPOINT, Checkpoint::fuzzy);
     }
 
     /**
@@ -30,6 +30,18 @@ import java.nio.ByteBuffer;
  * @author wolf
  */
 public interface Loggable {
+
+    /**
+     * Returned by {@link #getRedoFileId()} if redoing the entry
+     * may modify any database file.
+     */
+    int REDO_ANY_FILE = -1;
+
+    /**
+     * Returned by {@link #getRedoFileId()} if redoing the entry
+     * does not modify any database file.
+     */
+    int REDO_NO_FILE = -2;
     
 	/**
 	 * Returns the type id of the log entry. This is the type registered
@@ -92,6 +104,19 @@ public interface Loggable {
      * @throws LogException if the operation cannot be redone
      */
     void redo() throws LogException;
+
+    /**
+     * Returns the id of the database file which is modified when the
+     * entry is redone. The {@link org.exist.storage.recovery.RecoveryManager}
+     * may redo the entries of different files concurrently, whilst the
+     * entries of the same file are always redone in the order of the journal.
+     *
+     * @return the id of the file, {@link #REDO_NO_FILE}, or
+     *     {@link #REDO_ANY_FILE} if the file is not known
+     */
+    default int getRedoFileId() {
+        return REDO_ANY_FILE;
+    }
     
     /**
      * Undo, i.e. roll back, the underlying operation. The method
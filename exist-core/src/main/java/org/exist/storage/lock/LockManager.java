@@ -19,6 +19,7 @@
  */
 package org.exist.storage.lock;
 
+import com.evolvedbinary.j8fu.function.SupplierE;
 import com.evolvedbinary.j8fu.tuple.Tuple3;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -102,7 +103,7 @@ public class LockManager {
 
     private final LockTable lockTable;
     private final WeakLazyStripes<String, MultiLock> pathLocks;
-    private final WeakLazyStripes<String, MultiLock> documentLocks;
+    private final WeakLazyStripes<String, VersionedMultiLock> documentLocks;
     private final WeakLazyStripes<String, ReentrantLock> btreeLocks;
 
     /**
@@ -166,8 +167,8 @@ public class LockManager {
      *
      * @return the document lock
      */
-    private static MultiLock createDocumentLock(final String documentPath) {
-        return new MultiLock();
+    private static VersionedMultiLock createDocumentLock(final String documentPath) {
+        return new VersionedMultiLock();
     }
 
     /**
@@ -474,10 +475,64 @@ public class LockManager {
      *
      * @return A lock for the Document
      */
-    MultiLock getDocumentLock(final String documentPath) {
+    VersionedMultiLock getDocumentLock(final String documentPath) {
         return documentLocks.get(documentPath);
     }
 
+    /**
+     * Performs a read of a Document without taking a READ_LOCK, if possible.
+     *
+     * The read is first performed optimistically, and validated against the
+     * version of the Document lock afterwards. Should a writer have held the
+     * WRITE_LOCK on the Document at any time during the read, then the
+     * read is repeated whilst holding a READ_LOCK.
+     *
+     * As the optimistic read may observe the Document whilst it is being modified,
+     * the reader must not have any side effects, and it may throw exceptions
+     * resulting from an inconsistent state. The result of an invalid
+     * optimistic read, or any exception it raised, is discarded.
+     *
+     * This is only suitable for short reads which complete within a single call,
+     * such as checking the permissions of a Document. Locks which are held for a
+     * span chosen by the caller, e.g. through {@link org.exist.dom.persistent.DocumentSet#lock(org.exist.storage.DBBroker, boolean)}
+     * or a {@link LockedDocumentMap}, must still be acquired with
+     * {@link #acquireDocumentReadLock(XmldbURI)}.
+     *
+     * @param <T> the type of the result of the read
+     * @param <E> the type of exception thrown by the reader
+     *
+     * @param documentPath The URI of the Document within the database
+     * @param reader reads from the Document
+     *
+     * @return the result of the reader
+     *
+     * @throws LockException if the READ_LOCK could not be acquired
+     * @throws E if the reader raises an exception
+     */
+    public <T, E extends Throwable> T readDocumentOptimistically(final XmldbURI documentPath, final SupplierE<T, E> reader) throws LockException, E {
+        if (!usePathLocksForDocuments) {
+            final VersionedMultiLock lock = getDocumentLock(documentPath.toString());
+            final long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    final T result = reader.get();
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (final Throwable e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        // a writer interfered, fallback to the READ_LOCK
+        try (final ManagedDocumentLock documentLock = acquireDocumentReadLock(documentPath)) {
+            return reader.get();
+        }
+    }
+
     /**
      * Acquire a READ_LOCK on a Document
      *
@@ -538,10 +593,11 @@ public class LockManager {
             final long groupId = System.nanoTime();
             final String path = documentPath.toString();
 
-            final MultiLock lock = getDocumentLock(path);
+            final VersionedMultiLock lock = getDocumentLock(path);
             lockTable.attempt(groupId, path, LockType.DOCUMENT, Lock.LockMode.WRITE_LOCK);
 
             if (lock(lock, Lock.LockMode.WRITE_LOCK)) {
+                lock.beginWrite();
                 lockTable.acquired(groupId, path, LockType.DOCUMENT, Lock.LockMode.WRITE_LOCK);
             } else {
                 lockTable.attemptFailed(groupId, path, LockType.DOCUMENT, Lock.LockMode.WRITE_LOCK);
@@ -549,6 +605,7 @@ public class LockManager {
             }
 
             return new ManagedDocumentLock(documentPath, lock, () -> {
+                lock.endWrite();
                 lock.asWriteLock().unlock();
                 lockTable.released(groupId, path, LockType.DOCUMENT, Lock.LockMode.WRITE_LOCK);
             });
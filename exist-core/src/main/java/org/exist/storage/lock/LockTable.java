@@ -20,7 +20,6 @@
 package org.exist.storage.lock;
 
 import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
-import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,11 +32,13 @@ import org.exist.util.Configuration;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
-import java.util.concurrent.*;
-import java.util.concurrent.locks.StampedLock;
-import java.util.function.Consumer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.exist.storage.lock.LockTable.LockEventType.*;
+import static org.exist.util.ThreadUtils.newGlobalThread;
 
 /**
  * The Lock Table holds the details of
@@ -48,6 +49,13 @@ import static org.exist.storage.lock.LockTable.LockEventType.*;
  * which is typically an indicator of the
  * lock subject.
  *
+ * Lock events are not applied to the table by the thread
+ * which reports them, instead each thread publishes its
+ * events to its own ring buffer, which are drained
+ * by a single background aggregator. The aggregator also
+ * notifies any listeners, so a slow listener only delays
+ * the reporting threads once their buffers are full.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 public class LockTable {
@@ -75,21 +83,41 @@ public class LockTable {
      */
     private int traceStackDepth;
 
+    /**
+     * The number of events which each thread may buffer, before it
+     * has to wait for the aggregator to catch up, must be a power of 2
+     */
+    private static final int EVENT_BUFFER_SIZE = 512;
+
+    /**
+     * How long the aggregator waits between draining the event
+     * buffers whilst lock events are being reported
+     */
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     /**
      * Lock event listeners
      */
-    private final StampedLock listenersLock = new StampedLock();
-    @GuardedBy("listenersWriteLock") private volatile LockEventListener[] listeners = null;
+    @GuardedBy("drainLock") private volatile LockEventListener[] listeners = null;
 
     /**
-     * Table of threads attempting to acquire a lock
+     * The event buffer of each thread which reports lock events.
+     *
+     * Each thread only ever writes to its own buffer, the buffers
+     * are only ever read whilst holding the {@link #drainLock}.
      */
-    private final Map<Thread, Entry> attempting = new ConcurrentHashMap<>(60);
+    private final ThreadLocal<EventBuffer> eventBuffer = ThreadLocal.withInitial(this::newEventBuffer);
+    private final List<EventBuffer> eventBuffers = new CopyOnWriteArrayList<>();
 
     /**
-     * Table of threads which have acquired lock(s)
+     * Held whilst the events are drained from the {@link #eventBuffers}
+     * into the lock table and the listeners are notified.
      */
-    private final Map<Thread, Entries> acquired = new ConcurrentHashMap<>(60);
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    @Nullable private volatile Thread aggregator;
+    private volatile boolean aggregatorIdle;
+    private volatile boolean shutdown;
 
 
     LockTable(final Configuration configuration) {
@@ -109,6 +137,25 @@ public class LockTable {
      * events will be reported.
      */
     public void shutdown() {
+        this.shutdown = true;
+
+        final Thread aggregator = this.aggregator;
+        if (aggregator != null) {
+            LockSupport.unpark(aggregator);
+            try {
+                aggregator.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // report any remaining events
+        drainLock.lock();
+        try {
+            drain();
+        } finally {
+            drainLock.unlock();
+        }
     }
 
     /**
@@ -137,7 +184,7 @@ public class LockTable {
     }
 
     private void event(final LockEventType lockEventType, final long groupId, final String id, final LockType lockType, final LockMode lockMode) {
-        if(disableEvents) {
+        if(disableEvents || shutdown) {
             return;
         }
 
@@ -155,269 +202,319 @@ public class LockTable {
 //            sanityCheckLockLifecycles(lockEventType, groupId, id, lockType, lockMode, threadName, 1, timestamp, stackTrace);
 //        }
 
-        switch (lockEventType) {
-            case Attempt:
-
-                Entry entry = attempting.get(currentThread);
-                if (entry == null) {
-                    // happens once per thread!
-                    entry = new Entry();
-                    attempting.put(currentThread, entry);
-                }
-
-                entry.id = id;
-                entry.lockType = lockType;
-                entry.lockMode = lockMode;
-                entry.owner = currentThread.getName();
-                if(traceStackDepth == 0) {
-                    entry.stackTraces = null;
-                } else {
-                    entry.stackTraces = new ArrayList<>();
-                    entry.stackTraces.add(getStackTrace(currentThread));
-                }
-                // write count last to ensure reader-thread visibility of above fields
-                entry.count = 1;
-
-                notifyListeners(lockEventType, timestamp, groupId, entry);
-
-                break;
+        final StackTraceElement[] stackTrace = traceStackDepth == 0 ? null : getStackTrace(currentThread);
 
+        eventBuffer.get().publish(this, lockEventType, groupId, id, lockType, lockMode, currentThread.getName(), timestamp, stackTrace);
 
-            case AttemptFailed:
-                final Entry attemptFailedEntry = attempting.get(currentThread);
-                if (attemptFailedEntry == null || attemptFailedEntry.count == 0) {
-                    LOG.error("No entry found when trying to remove failed `attempt` for: id={}, thread={}", id, currentThread.getName());
-                    break;
-                }
+        if (aggregatorIdle) {
+            aggregatorIdle = false;
+            LockSupport.unpark(aggregator);
+        }
+    }
 
-                // mark attempt as unused
-                attemptFailedEntry.count = 0;
+    private EventBuffer newEventBuffer() {
+        final EventBuffer buffer = new EventBuffer(Thread.currentThread());
+        eventBuffers.add(buffer);
 
-                notifyListeners(lockEventType, timestamp, groupId, attemptFailedEntry);
+        if (aggregator == null) {
+            startAggregator();
+        }
 
-                break;
+        return buffer;
+    }
 
+    private synchronized void startAggregator() {
+        if (aggregator == null && !shutdown) {
+            final Thread thread = newGlobalThread("lock-table.aggregator", this::aggregate);
+            thread.setDaemon(true);
+            thread.start();
+            aggregator = thread;
+        }
+    }
 
-            case Acquired:
-                final Entry attemptEntry = attempting.get(currentThread);
-                if (attemptEntry == null || attemptEntry.count == 0) {
-                    LOG.error("No entry found when trying to remove `attempt` to promote to `acquired` for: id={}, thread={}", id, currentThread.getName());
+    /**
+     * Drains the event buffers until the lock table is shutdown.
+     *
+     * Whilst events are reported, the buffers are drained every {@link #DRAIN_INTERVAL_NANOS},
+     * otherwise the aggregator sleeps until it is woken by the next event.
+     */
+    private void aggregate() {
+        while (!shutdown) {
+            final boolean drained;
+            drainLock.lock();
+            try {
+                drained = drain();
+            } finally {
+                drainLock.unlock();
+            }
 
-                    break;
+            if (drained) {
+                LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+            } else {
+                aggregatorIdle = true;
+                // check again, in case an event was published before the flag was visible
+                if (!hasPendingEvents()) {
+                    LockSupport.park(this);
                 }
+                aggregatorIdle = false;
+            }
+        }
+    }
 
-                // we now either add or merge the `attemptEntry` with the `acquired` table
-                Entries acquiredEntries = acquired.get(currentThread);
+    private boolean hasPendingEvents() {
+        for (final EventBuffer buffer : eventBuffers) {
+            if (buffer.hasPending()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                if (acquiredEntries == null) {
-                    final Entry acquiredEntry = new Entry(attemptEntry);
+    /**
+     * Applies the events of all event buffers to the
+     * lock table and notifies the listeners.
+     *
+     * @return true if any events were drained
+     */
+    @GuardedBy("drainLock")
+    private boolean drain() {
+        boolean drained = false;
+        for (final EventBuffer buffer : eventBuffers) {
+            drained |= buffer.drain(this);
+
+            // forget about threads which have finished, unless they still hold locks
+            if (!buffer.owner.isAlive() && !buffer.hasPending() && buffer.acquired.isEmpty()) {
+                eventBuffers.remove(buffer);
+            }
+        }
+        return drained;
+    }
 
-                    acquiredEntries = new Entries(acquiredEntry);
-                    acquired.put(currentThread, acquiredEntries);
+    /**
+     * A single producer, single consumer ring buffer of the lock
+     * events of a thread, together with the lock table state
+     * of that thread.
+     *
+     * Events are only published by the owner thread, and
+     * only drained whilst holding the {@link #drainLock}.
+     *
+     * NOTE: intentionally static, as a reference from the buffer to the
+     * lock table would stop the thread-local buffers from being reclaimed.
+     */
+    private static class EventBuffer {
+        private final Thread owner;
+        private final Event[] events = new Event[EVENT_BUFFER_SIZE];
 
-                    notifyListeners(lockEventType, timestamp, groupId, acquiredEntry);
+        /**
+         * The number of events published by the owner thread,
+         * written last to ensure visibility of the event to the drain.
+         */
+        private volatile long head = 0;
 
-                } else {
+        /**
+         * The number of events drained, written last to
+         * ensure that the slots can be reused by the owner thread.
+         */
+        private volatile long tail = 0;
 
-                    final Entry acquiredEntry = acquiredEntries.merge(attemptEntry);
-                    notifyListeners(lockEventType, timestamp, groupId, acquiredEntry);
-                }
+        /**
+         * Events which were published whilst the ring buffer was full and the owner
+         * thread was itself draining, i.e. from a listener which takes a lock.
+         * They follow the events of the ring buffer. Only accessed whilst holding
+         * the drainLock, {@link #overflowed} tells the owner thread that it is not empty.
+         */
+        @GuardedBy("drainLock") private final Deque<Event> overflow = new ArrayDeque<>();
+        private volatile boolean overflowed = false;
 
-                // mark attempt as unused
-                attemptEntry.count = 0;
+        // lock table state of the thread, only accessed whilst holding the drainLock
+        @GuardedBy("drainLock") private final Entry attempting = new Entry();
+        @GuardedBy("drainLock") private final ObjectLinkedOpenHashSet<Entry> acquired = new ObjectLinkedOpenHashSet<>();
+        @GuardedBy("drainLock") private final Entry key = new Entry();
 
-                break;
+        EventBuffer(final Thread owner) {
+            this.owner = owner;
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new Event();
+            }
+        }
 
+        boolean hasPending() {
+            return head != tail || overflowed;
+        }
 
-            case Released:
-                final Entries entries = acquired.get(currentThread);
-                if (entries == null) {
-                    LOG.error("No entries found when trying to `release` for: id={}, thread={}", id, currentThread.getName());
-                    break;
+        void publish(final LockTable lockTable, final LockEventType lockEventType, final long groupId, final String id, final LockType lockType,
+                final LockMode lockMode, final String threadName, final long timestamp,
+                @Nullable final StackTraceElement[] stackTrace) {
+            final long localHead = head;
+            while (overflowed || localHead - tail == events.length) {
+                if (lockTable.drainLock.isHeldByCurrentThread()) {
+                    // i.e. a listener which takes a lock, we must not drain from within a drain,
+                    // so the event is queued after those which are still in the ring buffer
+                    final Event event = new Event();
+                    set(event, lockEventType, groupId, id, lockType, lockMode, threadName, timestamp, stackTrace);
+                    overflow.add(event);
+                    overflowed = true;
+                    return;
                 }
 
-                final Entry releasedEntry = entries.unmerge(id, lockType, lockMode);
-                if (releasedEntry == null) {
-                    LOG.error("Unable to unmerge entry for `release`: id={}, threadName={}", id, currentThread.getName());
-                    break;
+                // the aggregator has fallen behind, so we help it out
+                lockTable.drainLock.lock();
+                try {
+                    lockTable.drain();
+                } finally {
+                    lockTable.drainLock.unlock();
                 }
+            }
 
-                notifyListeners(lockEventType, timestamp, groupId, releasedEntry);
+            set(events[(int) (localHead & (events.length - 1))], lockEventType, groupId, id, lockType, lockMode, threadName, timestamp, stackTrace);
 
-                break;
+            // write head last to publish the event
+            head = localHead + 1;
         }
-    }
 
-    /**
-     * There is one Entries object for each writing-thread,
-     * however it may be read from other threads which
-     * is why it needs to be thread-safe.
-     */
-    @ThreadSafe
-    private static class Entries {
-        private final StampedLock entriesLock = new StampedLock();
-        @GuardedBy("entriesLock") private final ObjectLinkedOpenHashSet<Entry> entries = new ObjectLinkedOpenHashSet<>();
-
-        public Entries(final Entry entry) {
-            entries.add(entry);
+        private static void set(final Event event, final LockEventType lockEventType, final long groupId, final String id,
+                final LockType lockType, final LockMode lockMode, final String threadName, final long timestamp,
+                @Nullable final StackTraceElement[] stackTrace) {
+            event.lockEventType = lockEventType;
+            event.groupId = groupId;
+            event.id = id;
+            event.lockType = lockType;
+            event.lockMode = lockMode;
+            event.threadName = threadName;
+            event.timestamp = timestamp;
+            event.stackTrace = stackTrace;
         }
 
-        public Entry merge(final Entry attemptEntry) {
-            // try optimistic read
-            long optReadStamp = entriesLock.tryOptimisticRead();
-            long readStamp = -1;
-            long stamp = -1;
-            try {
+        /**
+         * Applies the published events to the lock table.
+         *
+         * @return true if any events were drained
+         */
+        @GuardedBy("drainLock")
+        boolean drain(final LockTable lockTable) {
+            final long localHead = head;
+            final long localTail = tail;
+            if (localHead == localTail && !overflowed) {
+                return false;
+            }
 
-                Entry local = entries.get(attemptEntry);
-                if (!entriesLock.validate(optReadStamp)) {
+            for (long i = localTail; i < localHead; i++) {
+                final Event event = events[(int) (i & (events.length - 1))];
+                apply(lockTable, event);
 
-                    // otherwise... pessimistic read
-                    readStamp = entriesLock.readLock();
-                    stamp = readStamp;
-                    local = entries.get(attemptEntry);
-                } else {
-                    stamp = optReadStamp;
-                }
+                // release references to allow garbage collection
+                event.id = null;
+                event.threadName = null;
+                event.stackTrace = null;
+            }
 
-                // if found, do the merge
-                if (local != null) {
-                    if (attemptEntry.stackTraces != null) {
-                        local.stackTraces.addAll(attemptEntry.stackTraces);
-                    }
-                    local.count += attemptEntry.count;
-                    return local;
+            // write tail last to free the slots
+            tail = localHead;
+
+            if (overflowed) {
+                // the owner thread queues further events here until the queue is empty,
+                // even if they are published by a listener notified below
+                Event event;
+                while ((event = overflow.poll()) != null) {
+                    apply(lockTable, event);
                 }
+                overflowed = false;
+            }
+            return true;
+        }
 
-                // try to upgrade optimistic-read or read lock to write lock
-                stamp = entriesLock.tryConvertToWriteLock(stamp);
-                if (stamp == 0L) {
+        @GuardedBy("drainLock")
+        private void apply(final LockTable lockTable, final Event event) {
+            switch (event.lockEventType) {
+                case Attempt:
+                    attempting.id = event.id;
+                    attempting.lockType = event.lockType;
+                    attempting.lockMode = event.lockMode;
+                    attempting.owner = event.threadName;
+                    attempting.stackTraces = List(event.stackTrace);
+                    attempting.count = 1;
 
-                    // failed to upgrade
-                    if (readStamp != -1) {
-                        // release the read lock before taking the write lock
-                        entriesLock.unlockRead(readStamp);
-                    }
+                    lockTable.notifyListeners(event, attempting);
 
-                    // take the write lock (blocking)
-                    stamp = entriesLock.writeLock();
+                    break;
 
-                    // we must refresh the `local` as it could have changed between releasing the readLock and obtaining the write lock
-                    local = entries.get(attemptEntry);
 
-                    // if found, do the merge
-                    if (local != null) {
-                        if (attemptEntry.stackTraces != null) {
-                            local.stackTraces.addAll(attemptEntry.stackTraces);
-                        }
-                        local.count += attemptEntry.count;
-                        return local;
+                case AttemptFailed:
+                    if (attempting.count == 0) {
+                        LOG.error("No entry found when trying to remove failed `attempt` for: id={}, thread={}", event.id, event.threadName);
+                        break;
                     }
-                }
 
-                // we have a write lock, add it
-                final Entry acquiredEntry = new Entry(attemptEntry);
-                entries.add(acquiredEntry);
-                return acquiredEntry;
-            } finally {
-                // we don't need to unlock if it was just an optimistic read
-                if (stamp != optReadStamp) {
-                    entriesLock.unlock(stamp);
-                }
-            }
-        }
+                    // mark attempt as unused
+                    attempting.count = 0;
 
-        @Nullable
-        public Entry unmerge(final String id, final LockType lockType, final LockMode lockMode) {
-            final Entry key = new Entry(id, lockType, lockMode, null, null);
-
-            // optimistic read
-            long stamp = entriesLock.tryOptimisticRead();
-            Entry local = entries.get(key);
-            // if count is equal to 1 we can just remove from the list rather than decrementing
-            if (local.count == 1) {
-                final long writeStamp = entriesLock.tryConvertToWriteLock(stamp);
-                if (writeStamp != 0L) {
-                    try {
-                        entries.remove(local);
-                        local.count--;
-                        return local;
-                    } finally {
-                        entriesLock.unlockWrite(writeStamp);
-                    }
-                }
-            } else {
-                if (entriesLock.validate(stamp)) {
+                    lockTable.notifyListeners(event, attempting);
 
-                    // do the unmerge bit
-                    if (local.stackTraces != null) {
-                        local.stackTraces.remove(local.stackTraces.size() - 1);
+                    break;
+
+
+                case Acquired:
+                    if (attempting.count == 0) {
+                        LOG.error("No entry found when trying to remove `attempt` to promote to `acquired` for: id={}, thread={}", event.id, event.threadName);
+                        break;
                     }
-                    local.count = local.count - 1;
 
-                    //done
-                    return local;
-                }
-            }
+                    // we now either add or merge the `attempting` entry with the `acquired` entries
+                    Entry acquiredEntry = acquired.get(attempting);
+                    if (acquiredEntry == null) {
+                        acquiredEntry = new Entry(attempting);
+                        acquired.add(acquiredEntry);
+                    } else {
+                        if (attempting.stackTraces != null) {
+                            acquiredEntry.stackTraces.addAll(attempting.stackTraces);
+                        }
+                        acquiredEntry.count += attempting.count;
+                    }
 
+                    lockTable.notifyListeners(event, acquiredEntry);
 
-            // otherwise... pessimistic read
-            boolean mustRemove;
-            stamp = entriesLock.readLock();
-            try {
+                    // mark attempt as unused
+                    attempting.count = 0;
 
-                local = entries.get(key);
+                    break;
 
-                // if count is equal to 1 we can just remove from the list rather than decrementing
-                if (local.count == 1) {
 
-                    final long writeStamp = entriesLock.tryConvertToWriteLock(stamp);
-                    if (writeStamp != 0L) {
-                        stamp = writeStamp;  // NOTE: this causes the write lock to be released in the finally further down
-                        entries.remove(local);
-                        local.count--;
-                        return local;
+                case Released:
+                    key.id = event.id;
+                    key.lockType = event.lockType;
+                    key.lockMode = event.lockMode;
+                    final Entry releasedEntry = acquired.get(key);
+                    if (releasedEntry == null) {
+                        LOG.error("No entry found when trying to `release` for: id={}, thread={}", event.id, event.threadName);
+                        break;
                     }
 
-                } else {
-                    // do the unmerge bit
-                    if (local.stackTraces != null) {
-                        local.stackTraces.remove(local.stackTraces.size() - 1);
+                    if (releasedEntry.count == 1) {
+                        acquired.remove(releasedEntry);
+                    } else if (releasedEntry.stackTraces != null) {
+                        releasedEntry.stackTraces.remove(releasedEntry.stackTraces.size() - 1);
                     }
-                    local.count = local.count - 1;
+                    releasedEntry.count--;
 
-                    //done
-                    return local;
-                }
-
-                mustRemove = true;
-            } finally {
-                entriesLock.unlock(stamp);
-            }
+                    lockTable.notifyListeners(event, releasedEntry);
 
-            // unable to remove by tryConvertToWriteLock above, so directly acquire write lock
-            if (mustRemove) {
-                stamp = entriesLock.writeLock();
-                try {
-                    entries.remove(local);
-                    local.count--;
-                    return local;
-                } finally {
-                    entriesLock.unlockWrite(stamp);
-                }
+                    break;
             }
-
-            return null;
         }
+    }
 
-        public void forEach(final Consumer<Entry> entryConsumer) {
-            final long stamp = entriesLock.readLock();
-            try {
-                entries.forEach(entryConsumer);
-            } finally {
-                entriesLock.unlockRead(stamp);
-            }
-        }
+    /**
+     * A slot in an {@link EventBuffer}.
+     */
+    private static class Event {
+        LockEventType lockEventType;
+        long groupId;
+        String id;
+        LockType lockType;
+        LockMode lockMode;
+        String threadName;
+        long timestamp;
+        @Nullable StackTraceElement[] stackTrace;
     }
 
     @Nullable
@@ -452,8 +549,13 @@ public class LockTable {
     }
 
     public void registerListener(final LockEventListener lockEventListener) {
-        final long stamp = listenersLock.writeLock();
+        drainLock.lock();
         try {
+            // earlier events are not reported to the new listener
+            drain();
+
+            lockEventListener.registered();
+
             // extend listeners by 1
             if (listeners == null) {
                 listeners = new LockEventListener[1];
@@ -465,15 +567,16 @@ public class LockTable {
                 listeners = newListeners;
             }
         } finally {
-            listenersLock.unlockWrite(stamp);
+            drainLock.unlock();
         }
-
-        lockEventListener.registered();
     }
 
     public void deregisterListener(final LockEventListener lockEventListener) {
-        final long stamp = listenersLock.writeLock();
+        drainLock.lock();
         try {
+            // report any pending events before the listener goes
+            drain();
+
             // reduce listeners by 1
             for (int i = listeners.length - 1; i > -1; i--) {
                 // intentionally compare by identity!
@@ -494,11 +597,11 @@ public class LockTable {
                     break;
                 }
             }
+
+            lockEventListener.unregistered();
         } finally {
-            listenersLock.unlockWrite(stamp);
+            drainLock.unlock();
         }
-
-        lockEventListener.unregistered();
     }
 
     /**
@@ -509,29 +612,35 @@ public class LockTable {
     public Map<String, Map<LockType, List<LockModeOwner>>> getAttempting() {
         final Map<String, Map<LockType, List<LockModeOwner>>> result = new HashMap<>();
 
-        for (Entry entry : attempting.values()) {
-            // read count (volatile) first to ensure visibility
-            final int localCount = entry.count;
-            if (localCount == 0) {
-                // attempt entry object is marked as unused
-                continue;
-            }
+        drainLock.lock();
+        try {
+            drain();
 
-            result.compute(entry.id, (_k, v) -> {
-                if (v == null) {
-                    v = new HashMap<>();
+            for (final EventBuffer buffer : eventBuffers) {
+                final Entry entry = buffer.attempting;
+                if (entry.count == 0) {
+                    // attempt entry object is marked as unused
+                    continue;
                 }
 
-                v.compute(entry.lockType, (_k1, v1) -> {
-                    if (v1 == null) {
-                        v1 = new ArrayList<>();
+                result.compute(entry.id, (_k, v) -> {
+                    if (v == null) {
+                        v = new HashMap<>();
                     }
-                    v1.add(new LockModeOwner(entry.lockMode, entry.owner, entry.stackTraces != null ? entry.stackTraces.get(0) : null));
-                    return v1;
-                });
 
-                return v;
-            });
+                    v.compute(entry.lockType, (_k1, v1) -> {
+                        if (v1 == null) {
+                            v1 = new ArrayList<>();
+                        }
+                        v1.add(new LockModeOwner(entry.lockMode, entry.owner, entry.stackTraces != null ? entry.stackTraces.get(0) : null));
+                        return v1;
+                    });
+
+                    return v;
+                });
+            }
+        } finally {
+            drainLock.unlock();
         }
 
         return result;
@@ -545,50 +654,55 @@ public class LockTable {
     public Map<String, Map<LockType, Map<LockMode, Map<String, LockCountTraces>>>> getAcquired() {
         final Map<String, Map<LockType, Map<LockMode, Map<String, LockCountTraces>>>> result = new HashMap<>();
 
-        for (Entries entries : acquired.values()) {
-            entries.forEach(entry -> {
-
-                // read count (volatile) first to ensure visibility
-                final int localCount = entry.count;
+        drainLock.lock();
+        try {
+            drain();
 
-                result.compute(entry.id, (_k, v) -> {
-                    if (v == null) {
-                        v = new EnumMap<>(LockType.class);
-                    }
+            for (final EventBuffer buffer : eventBuffers) {
+                for (final Entry entry : buffer.acquired) {
+                    final int localCount = entry.count;
 
-                    v.compute(entry.lockType, (_k1, v1) -> {
-                        if (v1 == null) {
-                            v1 = new EnumMap<>(LockMode.class);
+                    result.compute(entry.id, (_k, v) -> {
+                        if (v == null) {
+                            v = new EnumMap<>(LockType.class);
                         }
 
-                        v1.compute(entry.lockMode, (_k2, v2) -> {
-                            if (v2 == null) {
-                                v2 = new HashMap<>();
+                        v.compute(entry.lockType, (_k1, v1) -> {
+                            if (v1 == null) {
+                                v1 = new EnumMap<>(LockMode.class);
                             }
 
-                            v2.compute(entry.owner, (_k3, v3) -> {
-                                if (v3 == null) {
-                                    v3 = new LockCountTraces(localCount, entry.stackTraces);
-                                } else {
-                                    v3.count += localCount;
-                                    if (entry.stackTraces != null) {
-                                        v3.traces.addAll(entry.stackTraces);
-                                    }
+                            v1.compute(entry.lockMode, (_k2, v2) -> {
+                                if (v2 == null) {
+                                    v2 = new HashMap<>();
                                 }
 
-                                return v3;
-                            });
+                                v2.compute(entry.owner, (_k3, v3) -> {
+                                    if (v3 == null) {
+                                        v3 = new LockCountTraces(localCount, entry.stackTraces != null ? new ArrayList<>(entry.stackTraces) : null);
+                                    } else {
+                                        v3.count += localCount;
+                                        if (entry.stackTraces != null) {
+                                            v3.traces.addAll(entry.stackTraces);
+                                        }
+                                    }
+
+                                    return v3;
+                                });
 
-                            return v2;
+                                return v2;
 
+                            });
+
+                            return v1;
                         });
 
-                        return v1;
+                        return v;
                     });
-
-                    return v;
-                });
-            });
+                }
+            }
+        } finally {
+            drainLock.unlock();
         }
 
         return result;
@@ -637,23 +751,19 @@ public class LockTable {
         }
     }
 
-    private void notifyListeners(final LockEventType lockEventType, final long timestamp, final long groupId,
-            final Entry entry) {
+    @GuardedBy("drainLock")
+    private void notifyListeners(final Event event, final Entry entry) {
+        final LockEventListener[] listeners = this.listeners;
         if (listeners == null) {
             return;
         }
 
-        final long stamp = listenersLock.readLock();
-        try {
-            for (LockEventListener listener : listeners) {
-                try {
-                    listener.accept(lockEventType, timestamp, groupId, entry);
-                } catch (final Exception e) {
-                    LOG.error("Listener '{}' error: ", listener.getClass().getName(), e);
-                }
+        for (final LockEventListener listener : listeners) {
+            try {
+                listener.accept(event.lockEventType, event.timestamp, event.groupId, entry);
+            } catch (final Exception e) {
+                LOG.error("Listener '{}' error: ", listener.getClass().getName(), e);
             }
-        } finally {
-            listenersLock.unlockRead(stamp);
         }
     }
 
@@ -743,14 +853,13 @@ public class LockTable {
     }
 
     /**
-     * Represents an entry in the {@link #attempting} or {@link #acquired} lock table.
+     * Represents an entry in the attempting or acquired lock table of an {@link EventBuffer}.
      *
-     * All class members are only written from a single
-     * thread.
+     * All class members are only written whilst
+     * holding the {@link #drainLock}.
      *
-     * However, they may be read from the same writer thread or a different read-only thread.
      * The member `count` is written last by the writer thread
-     * and read first by the read-only reader thread to ensure correct visibility
+     * and read first by any other reader thread to ensure correct visibility
      * of the member values.
      */
     public static class Entry {
@@ -939,4 +1048,4 @@ public class LockTable {
 //                || id.equals("values.dbx")
 //                || id.equals("CollectionCache");
 //    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.lock;
+
+import net.jcip.annotations.ThreadSafe;
+import uk.ac.ic.doc.slurp.multilock.MultiLock;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A {@link MultiLock} which also carries a version stamp,
+ * so that it can be read optimistically, i.e. without
+ * taking the lock, see {@link StampedLock#tryOptimisticRead()}.
+ *
+ * The version changes whenever a writer acquires the
+ * WRITE_LOCK, so a reader which obtained a stamp before
+ * reading, and can validate the stamp after reading, knows
+ * that no writer was active in the mean time.
+ */
+@ThreadSafe
+final class VersionedMultiLock extends MultiLock {
+
+    private final StampedLock version = new StampedLock();
+
+    /**
+     * Only written by the thread holding the WRITE_LOCK.
+     */
+    private long writeStamp;
+
+    // NOTE: the WRITE_LOCK is exclusive, so whilst it is held, the write lock count
+    // is the re-entrancy count of the writer; MultiLock does not track hold counts
+
+    /**
+     * Must be called by the writer after it has acquired the WRITE_LOCK.
+     */
+    void beginWrite() {
+        if (getWriteLockCount() == 1) {
+            // uncontended, as optimistic readers never block the writer
+            writeStamp = version.writeLock();
+        }
+    }
+
+    /**
+     * Must be called by the writer before it releases the WRITE_LOCK.
+     */
+    void endWrite() {
+        if (getWriteLockCount() == 1) {
+            version.unlockWrite(writeStamp);
+        }
+    }
+
+    /**
+     * Returns a stamp for an optimistic read.
+     *
+     * @return the stamp, or 0 if a writer holds the lock
+     */
+    long tryOptimisticRead() {
+        return version.tryOptimisticRead();
+    }
+
+    /**
+     * Checks that no writer acquired the lock since the stamp was obtained.
+     *
+     * @param stamp the stamp from {@link #tryOptimisticRead()}
+     *
+     * @return true if the optimistic read is valid
+     */
+    boolean validate(final long stamp) {
+        return version.validate(stamp);
+    }
+}
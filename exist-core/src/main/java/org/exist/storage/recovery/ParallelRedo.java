@@ -0,0 +1,209 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.recovery;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+import org.exist.util.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redoes journal entries on a pool of worker threads.
+ *
+ * The entries are partitioned by the database file which they modify,
+ * see {@link Loggable#getRedoFileId()}. All entries of a file are redone
+ * by the same single-threaded worker in the order in which they were
+ * passed to {@link #redo(Loggable)}, i.e. in journal order, whilst the
+ * entries of different files are redone concurrently. This mirrors
+ * normal operation, where different files may be modified concurrently
+ * by different brokers, each of them holding the lock of the file.
+ *
+ * Entries which do not modify a file are redone by the calling thread.
+ * Entries which may modify any file act as a barrier: all previous
+ * entries are redone first, then the entry is redone by the calling thread.
+ *
+ * The workers never call into the {@link org.exist.storage.DBBroker} of the
+ * recovery, which must only be used by a single thread: entries which modify
+ * a file resolve the file, or the blob store, when they are read from the
+ * journal by the calling thread, see e.g.
+ * {@link org.exist.storage.btree.BTAbstractLoggable}. Their redo then only
+ * accesses that file and services of the pool which are shared by all brokers
+ * in normal operation, such as the cache manager.
+ *
+ * Not thread-safe, {@link #redo(Loggable)} must be called from a single thread.
+ */
+class ParallelRedo implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelRedo.class);
+
+    /** The number of entries handed to a worker at once */
+    private static final int BATCH_SIZE = 256;
+
+    /** The number of batches per worker which may be queued, limits the memory used for entries read ahead */
+    private static final int BATCHES_PER_WORKER = 8;
+
+    private final ExecutorService[] workers;
+    private final int maxBatches;
+    private final Semaphore batchPermits;
+    private final Int2ObjectMap<List<Loggable>> batches = new Int2ObjectOpenHashMap<>();
+
+    private volatile Throwable failure = null;
+    private volatile Loggable failedEntry = null;
+
+    ParallelRedo(final BrokerPool pool, final int threads) {
+        final ThreadFactory threadFactory = new NamedThreadFactory(pool.getThreadGroup(), pool.getId(), "recovery-redo");
+        this.workers = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        this.maxBatches = threads * BATCHES_PER_WORKER;
+        this.batchPermits = new Semaphore(maxBatches);
+    }
+
+    /**
+     * Schedules the entry to be redone.
+     *
+     * @param loggable the journal entry
+     *
+     * @throws LogException if redoing this or a previously scheduled entry failed
+     */
+    void redo(final Loggable loggable) throws LogException {
+        checkFailure();
+
+        final int fileId = loggable.getRedoFileId();
+        if (fileId == Loggable.REDO_NO_FILE) {
+            loggable.redo();
+
+        } else if (fileId == Loggable.REDO_ANY_FILE) {
+            awaitCompletion();
+            loggable.redo();
+
+        } else {
+            List<Loggable> batch = batches.get(fileId);
+            if (batch == null) {
+                batch = new ArrayList<>(BATCH_SIZE);
+                batches.put(fileId, batch);
+            }
+            batch.add(loggable);
+            if (batch.size() >= BATCH_SIZE) {
+                batches.remove(fileId);
+                submit(fileId, batch);
+            }
+        }
+    }
+
+    /**
+     * Waits until all scheduled entries have been redone.
+     *
+     * @throws LogException if redoing an entry failed
+     */
+    void awaitCompletion() throws LogException {
+        for (final Int2ObjectMap.Entry<List<Loggable>> entry : batches.int2ObjectEntrySet()) {
+            submit(entry.getIntKey(), entry.getValue());
+        }
+        batches.clear();
+
+        try {
+            batchPermits.acquire(maxBatches);
+            batchPermits.release(maxBatches);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted whilst waiting for the redo of the journal", e);
+        }
+        checkFailure();
+    }
+
+    private void submit(final int fileId, final List<Loggable> batch) throws LogException {
+        try {
+            batchPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted whilst waiting for the redo of the journal", e);
+        }
+
+        workers[Math.floorMod(fileId, workers.length)].execute(() -> {
+            try {
+                for (final Loggable loggable : batch) {
+                    if (failure != null) {
+                        break;
+                    }
+                    redoEntry(loggable);
+                }
+            } finally {
+                batchPermits.release();
+            }
+        });
+    }
+
+    private void redoEntry(final Loggable loggable) {
+        try {
+            loggable.redo();
+        } catch (final Throwable t) {
+            synchronized (this) {
+                if (failure == null) {
+                    failedEntry = loggable;
+                    failure = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the entry whose redo failed on a worker, or null
+     */
+    Loggable getFailedEntry() {
+        return failedEntry;
+    }
+
+    private void checkFailure() throws LogException {
+        if (failure != null) {
+            throw new LogException("Redo failed for log entry: " + failedEntry.dump(), failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (final ExecutorService worker : workers) {
+            try {
+                if (!worker.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.warn("Timeout whilst waiting for recovery redo worker to terminate");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
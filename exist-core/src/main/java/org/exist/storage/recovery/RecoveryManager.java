@@ -41,10 +41,10 @@ import org.exist.storage.blob.BlobStore;
 import org.exist.storage.journal.*;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.txn.Checkpoint;
+import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.util.ProgressBar;
 import com.evolvedbinary.j8fu.function.SupplierE;
-import org.exist.util.sanity.SanityCheck;
 
 /**
  * Database recovery. This class is used once during startup to check
@@ -57,14 +57,22 @@ public class RecoveryManager {
 	
 	private final static Logger LOG = LogManager.getLogger(RecoveryManager.class);
 
+    public static final String RECOVERY_REDO_THREADS_ATTRIBUTE = "redo-threads";
+    public static final String PROPERTY_RECOVERY_REDO_THREADS = "db-connection.recovery.redo-threads";
+    public static final int DEFAULT_REDO_THREADS = 1;
+
     private final DBBroker broker;
     private final JournalRecoveryAccessor journalRecovery;
     private final boolean restartOnError;
+    private final int redoThreads;
 
     public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError) {
         this.broker = broker;
         this.journalRecovery = journalManager.getRecoveryAccessor(this);
         this.restartOnError = restartOnError;
+        final Configuration configuration = broker.getBrokerPool().getConfiguration();
+        this.redoThreads = configuration == null ? DEFAULT_REDO_THREADS
+                : Math.max(1, configuration.getProperty(PROPERTY_RECOVERY_REDO_THREADS, DEFAULT_REDO_THREADS));
 	}
 
 	/**
@@ -98,6 +106,8 @@ public class RecoveryManager {
             	boolean checkpointFound = false;
     			try {
                     final Loggable lastLog = reader.lastEntry();
+                    // A fuzzy checkpoint does not indicate a clean state, as the
+                    // changes logged after its redo point may not have been written.
                     if (lastLog != null && lastLog.getLogType() == LogEntryTypes.CHECKPOINT) {
                     	final Checkpoint checkpoint = (Checkpoint) lastLog;
                     	// Found a checkpoint. To be sure it is indeed a valid checkpoint
@@ -122,20 +132,28 @@ public class RecoveryManager {
 	    			Checkpoint lastCheckpoint = null;
 	    			Lsn lastLsn = Lsn.LSN_INVALID;
 	                Loggable next;
+	                final PhaseProgress scanProgress = new PhaseProgress("Scan", FileUtils.sizeQuietly(last));
 	                try {
 						final ProgressBar progress = new ProgressBar("Scanning journal ", FileUtils.sizeQuietly(last));
 	        			while ((next = reader.nextEntry()) != null) {
 //	                        LOG.debug(next.dump());
 							progress.set(next.getLsn().getOffset());
+							scanProgress.entry(next.getLsn());
 							if (next.getLogType() == LogEntryTypes.TXN_START) {
 				                // new transaction starts: add it to the transactions table
 				                txnsStarted.put(next.getTransactionId(), next);
 				            } else if (next.getLogType() == LogEntryTypes.TXN_ABORT) {
 				            	// transaction aborted: remove it from the transactions table
 				            	txnsStarted.remove(next.getTransactionId());
-				            } else if (next.getLogType() == LogEntryTypes.CHECKPOINT) {
-				            	txnsStarted.clear();
+				            } else if (next.getLogType() == LogEntryTypes.CHECKPOINT || next.getLogType() == LogEntryTypes.FUZZY_CHECKPOINT) {
 	        					lastCheckpoint = (Checkpoint) next;
+	        					if (lastCheckpoint.isFuzzy()) {
+	        					    // transactions which started before the redo point had completed, and were written to disk
+	        					    final Lsn redoLsn = lastCheckpoint.getRedoLsn();
+	        					    txnsStarted.values().removeIf(txnStart -> txnStart.getLsn().compareTo(redoLsn) < 0);
+	        					} else {
+				            	    txnsStarted.clear();
+	        					}
 				            }
 	        				lastLsn = next.getLsn();
 	        			}
@@ -144,17 +162,26 @@ public class RecoveryManager {
                             LOG.debug("Caught exception while reading log", e);
                         }
                         LOG.warn("Last readable journal log entry lsn: " + lastLsn);
+                    } finally {
+	                    scanProgress.done();
                     }
 
 	    			// if the last checkpoint record is not the last record in the file
 	    			// we need a recovery.
-	    			if ((lastCheckpoint == null || !lastCheckpoint.getLsn().equals(lastLsn)) &&
+	    			if ((lastCheckpoint == null || lastCheckpoint.isFuzzy() || !lastCheckpoint.getLsn().equals(lastLsn)) &&
 	    					txnsStarted.size() > 0) {
 	    				LOG.info("Dirty transactions: " + txnsStarted.size());
 	    				// starting recovery: reposition the log reader to the last checkpoint
 						if (lastCheckpoint == null)
 						    {reader.positionFirst();}
-						else {
+						else if (lastCheckpoint.isFuzzy()) {
+						    // redo from the redo point of the fuzzy checkpoint, including the entry at the redo point
+						    if (lastCheckpoint.getRedoLsn().getFileNumber() == lastNum) {
+						        reader.position(lastCheckpoint.getRedoLsn());
+						    } else {
+						        reader.positionFirst();
+						    }
+						} else {
 						    reader.position(lastCheckpoint.getLsn());
 						    next = reader.nextEntry();
 						}
@@ -256,14 +283,15 @@ public class RecoveryManager {
 
             // ------- REDO ---------
             if (LOG.isInfoEnabled())
-                {LOG.info("First pass: redoing " + txnCount + " transactions...");}
+                {LOG.info("First pass: redoing " + txnCount + " transactions using " + redoThreads + " thread(s)...");}
             final ProgressBar progress = new ProgressBar("Redo ", FileUtils.sizeQuietly(last));
+            final PhaseProgress redoProgress = new PhaseProgress("Redo", FileUtils.sizeQuietly(last));
             Loggable next = null;
             int redoCnt = 0;
+            final ParallelRedo parallelRedo = redoThreads > 1 ? new ParallelRedo(broker.getBrokerPool(), redoThreads) : null;
             try {
                 while ((next = reader.nextEntry()) != null) {
-                    SanityCheck.ASSERT(next.getLogType() != LogEntryTypes.CHECKPOINT,
-                            "Found a checkpoint during recovery run! This should not ever happen.");
+                    // NOTE: checkpoints may be found after the redo point of a fuzzy checkpoint, their redo does nothing
                     if (next.getLogType() == LogEntryTypes.TXN_START) {
                         // new transaction starts: add it to the transactions table
                         runningTxns.put(next.getTransactionId(), next);
@@ -277,19 +305,34 @@ public class RecoveryManager {
                     }
         //            LOG.debug("Redo: " + next.dump());
                     // redo the log entry
-                    next.redo();
+                    if (parallelRedo != null) {
+                        parallelRedo.redo(next);
+                    } else {
+                        next.redo();
+                    }
                     progress.set(next.getLsn().getOffset());
+                    redoProgress.entry(next.getLsn());
                     if (next.getLsn().equals(lastLsn))
                         {break;} // last readable entry reached. Stop here.
                 }
+                if (parallelRedo != null) {
+                    // entries are still being redone by the workers
+                    parallelRedo.awaitCompletion();
+                }
             } catch (final Exception e) {
                 LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
                     "Before starting again, make sure to run a check via the emergency export tool.", e);
-                if (next != null)
-                    {LOG.info("Log entry that caused the exception: " + next.dump());}
+                // with parallel redo, the last entry read is not necessarily the one which failed
+                final Loggable failedEntry = parallelRedo != null && parallelRedo.getFailedEntry() != null ? parallelRedo.getFailedEntry() : next;
+                if (failedEntry != null)
+                    {LOG.info("Log entry that caused the exception: " + failedEntry.dump());}
                 throw new LogException("Recovery aborted. ");
             } finally {
+                if (parallelRedo != null) {
+                    parallelRedo.close();
+                }
                 LOG.info("Redo processed " + redoCnt + " out of " + txnCount + " transactions.");
+                redoProgress.done();
             }
 
             // ------- UNDO ---------
@@ -299,6 +342,7 @@ public class RecoveryManager {
             // see if there are uncommitted transactions pending
             if (runningTxns.size() > 0) {
                 // do a reverse scan of the log, undoing all uncommitted transactions
+                final PhaseProgress undoProgress = new PhaseProgress("Undo", FileUtils.sizeQuietly(last));
                 try {
                     while((next = reader.previousEntry()) != null) {
                         if (next.getLogType() == LogEntryTypes.TXN_START) {
@@ -311,7 +355,8 @@ public class RecoveryManager {
                         } else if (next.getLogType() == LogEntryTypes.TXN_COMMIT) {
                             // ignore already committed transaction
                         } else if (next.getLogType() == LogEntryTypes.CHECKPOINT) {
-                            // found last checkpoint: undo is completed
+                            // found last checkpoint: undo is completed. A fuzzy checkpoint
+                            // may have been created whilst uncommitted transactions were running
                             break;
                         }
 
@@ -320,6 +365,7 @@ public class RecoveryManager {
     //					LOG.debug("Undo: " + next.dump());
                             next.undo();
                         }
+                        undoProgress.entry(next.getLsn());
                     }
                 } catch (final Exception e) {
                     LOG.warn("Exception caught while undoing dirty transactions. Remaining transactions " +
@@ -328,6 +374,8 @@ public class RecoveryManager {
                     if (next != null)
                         {LOG.warn("Log entry that caused the exception: " + next.dump());}
                     throw new LogException("Recovery aborted", e);
+                } finally {
+                    undoProgress.done();
                 }
             }
         } finally {
@@ -339,4 +387,54 @@ public class RecoveryManager {
 	private void cleanDirectory(final Stream<Path> files) {
         files.forEach(FileUtils::deleteQuietly);
 	}
+
+    /**
+     * Reports the progress and the throughput of a phase of the recovery
+     * to the log and as status of the broker pool.
+     */
+    private class PhaseProgress {
+        private static final long REPORT_INTERVAL = 10000;  // ms
+
+        private final String phase;
+        private final long journalSize;
+        private final long start = System.currentTimeMillis();
+        private long lastReport = start;
+        private long entries = 0;
+        private long firstOffset = -1;
+        private long lastOffset = -1;
+
+        PhaseProgress(final String phase, final long journalSize) {
+            this.phase = phase;
+            this.journalSize = journalSize;
+        }
+
+        void entry(final Lsn lsn) {
+            entries++;
+            if (firstOffset < 0) {
+                firstOffset = lsn.getOffset();
+            }
+            lastOffset = lsn.getOffset();
+
+            final long now = System.currentTimeMillis();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                lastReport = now;
+                final String status = phase + ": " + (journalSize > 0 ? (lastOffset * 100 / journalSize) : 0) + "% of journal, " + throughput(now);
+                LOG.info(status);
+                broker.getBrokerPool().reportStatus(status);
+            }
+        }
+
+        void done() {
+            if (LOG.isInfoEnabled()) {
+                LOG.info(phase + " completed: " + throughput(System.currentTimeMillis()));
+            }
+        }
+
+        private String throughput(final long now) {
+            final long elapsed = Math.max(1, now - start);
+            final long bytes = Math.abs(lastOffset - firstOffset);
+            return entries + " entries in " + elapsed + "ms (" + (entries * 1000 / elapsed) + " entries/s, "
+                    + (bytes * 1000 / elapsed / 1024) + " KB/s)";
+        }
+    }
 }
@@ -24,15 +24,20 @@ import org.exist.dom.QName;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.storage.ElementValue;
 import org.exist.storage.NodePath;
+import org.exist.xquery.Constants.Comparison;
+import org.w3c.dom.Node;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Collects statistics about the distribution of elements in a document or
@@ -46,14 +51,22 @@ import java.util.List;
  * 5336 paragraphs below them. The second number indicates the size of the largest element,
  * expressed as the number of descendant elements below the node. The largest p node in this
  * distribution has 820 elements below it.
+ *
+ * In addition, the data guide keeps a {@link ValueHistogram} of the text values of every
+ * element name and of the values of every attribute name. The histograms are written after
+ * the graph, so files without histograms can still be read.
  */
 public class DataGuide {
 
     private final static int BYTES_PER_NODE = 16;
+    private final static int BYTES_PER_HISTOGRAM = 5 + ValueHistogram.BYTES;
 
     // the (virtual) root of the tree whose name will always be null.
     private NodeStats root = new NodeStatsRoot();
 
+    private final Map<QName, ValueHistogram> elementValues = new ConcurrentHashMap<>();
+    private final Map<QName, ValueHistogram> attributeValues = new ConcurrentHashMap<>();
+
     public int getSize() {
         return root.getSize();
     }
@@ -96,6 +109,16 @@ public class DataGuide {
         return current;
     }
 
+    /**
+     * Add a value of an element or attribute to the histogram of its name.
+     *
+     * @param qname the name of the element or attribute
+     * @param value the text value of the element, or the value of the attribute
+     */
+    public void addValue(QName qname, String value) {
+        histograms(qname).computeIfAbsent(qname, q -> new ValueHistogram()).addValue(value);
+    }
+
     /**
      * Merge paths and statistics from this instance into the
      * other instance.
@@ -105,9 +128,54 @@ public class DataGuide {
      */
     public DataGuide mergeInto(DataGuide other) {
         root.mergeInto(other, new NodePath());
+        mergeValues(elementValues, other.elementValues);
+        mergeValues(attributeValues, other.attributeValues);
         return other;
     }
 
+    private static void mergeValues(Map<QName, ValueHistogram> values, Map<QName, ValueHistogram> into) {
+        for (final Map.Entry<QName, ValueHistogram> entry : values.entrySet()) {
+            entry.getValue().mergeInto(into.computeIfAbsent(entry.getKey(), q -> new ValueHistogram()));
+        }
+    }
+
+    /**
+     * Returns the number of elements or attributes with the given name.
+     *
+     * @param qname the name of the elements or attributes
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount(QName qname) {
+        if (qname.getNameType() == ElementValue.ATTRIBUTE) {
+            final ValueHistogram histogram = attributeValues.get(qname);
+            return histogram == null ? 0 : histogram.getValueCount();
+        }
+        return root.getNodeCount(qname);
+    }
+
+    /**
+     * Estimates the fraction of the values of an element or attribute name which
+     * satisfy a comparison.
+     *
+     * @param qname the name of the elements or attributes
+     * @param relation the comparison operator
+     * @param value the value compared with, or null if it is not known
+     *
+     * @return the fraction between 0 and 1, or -1 if no values have been recorded
+     */
+    public double getSelectivity(QName qname, Comparison relation, @Nullable String value) {
+        final ValueHistogram histogram = histograms(qname).get(qname);
+        if (histogram == null) {
+            return -1;
+        }
+        return histogram.getSelectivity(relation, value);
+    }
+
+    private Map<QName, ValueHistogram> histograms(QName qname) {
+        return qname.getNameType() == ElementValue.ATTRIBUTE ? attributeValues : elementValues;
+    }
+
     public int getMaxParentDepth(QName qname) {
         final NodeStats temp = new NodeStats(qname);
         root.getMaxParentDepth(qname, temp);
@@ -132,8 +200,15 @@ public class DataGuide {
 
     public void write(SeekableByteChannel chan, SymbolTable symbols) throws IOException {
         final int nodeCount = root.getSize();
-        final ByteBuffer buffer = ByteBuffer.allocate(nodeCount * BYTES_PER_NODE + 4);
+        final List<Map.Entry<QName, ValueHistogram>> elements = new ArrayList<>(elementValues.entrySet());
+        final List<Map.Entry<QName, ValueHistogram>> attributes = new ArrayList<>(attributeValues.entrySet());
+        final int histogramCount = elements.size() + attributes.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(nodeCount * BYTES_PER_NODE + 4 +
+                4 + histogramCount * BYTES_PER_HISTOGRAM);
         root.write(buffer, symbols);
+        buffer.putInt(histogramCount);
+        writeValues(buffer, symbols, elements, Node.ELEMENT_NODE);
+        writeValues(buffer, symbols, attributes, Node.ATTRIBUTE_NODE);
         buffer.flip();
         chan.write(buffer);
     }
@@ -143,6 +218,31 @@ public class DataGuide {
         chan.read(buffer);
         buffer.flip();
         root.read(buffer, symbols);
+        // histograms are missing in files written by older versions
+        if (buffer.remaining() >= 4) {
+            final int histogramCount = buffer.getInt();
+            if (histogramCount < 0 || buffer.remaining() != histogramCount * BYTES_PER_HISTOGRAM) {
+                return;
+            }
+            for (int i = 0; i < histogramCount; i++) {
+                final short type = buffer.get();
+                final String namespaceURI = symbols.getNamespace(buffer.getShort());
+                final String localName = symbols.getName(buffer.getShort());
+                final QName qname = symbols.getQName(type, namespaceURI, localName, "");
+                final ValueHistogram histogram = new ValueHistogram();
+                histogram.read(buffer);
+                histograms(qname).put(qname, histogram);
+            }
+        }
+    }
+
+    private static void writeValues(ByteBuffer buffer, SymbolTable symbols, List<Map.Entry<QName, ValueHistogram>> values, short type) {
+        for (final Map.Entry<QName, ValueHistogram> entry : values) {
+            buffer.put((byte) type);
+            buffer.putShort(symbols.getNSSymbol(entry.getKey().getNamespaceURI()));
+            buffer.putShort(symbols.getSymbol(entry.getKey().getLocalPart()));
+            entry.getValue().write(buffer);
+        }
     }
 
     private static class NodeStatsRoot extends NodeStats {
@@ -31,10 +31,12 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
+import org.exist.xquery.Constants.Comparison;
 import org.w3c.dom.Element;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.SeekableByteChannel;
@@ -68,6 +70,32 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return dataGuide.getMaxParentDepth(qname);
     }
 
+    /**
+     * Returns the number of elements or attributes with the given name
+     * in the database.
+     *
+     * @param qname the name of the elements or attributes
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount(QName qname) {
+        return dataGuide.getNodeCount(qname);
+    }
+
+    /**
+     * Estimates the fraction of the elements or attributes with the given name
+     * whose value satisfies a comparison. See {@link DataGuide#getSelectivity(QName, Comparison, String)}.
+     *
+     * @param qname the name of the elements or attributes
+     * @param relation the comparison operator
+     * @param value the value compared with, or null if it is not known
+     *
+     * @return the fraction between 0 and 1, or -1 if no values have been recorded
+     */
+    public double getSelectivity(QName qname, Comparison relation, @Nullable String value) {
+        return dataGuide.getSelectivity(qname, relation, value);
+    }
+
     protected void mergeStats(DataGuide other) {
         dataGuide = other.mergeInto(dataGuide);
     }
@@ -108,7 +136,7 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
 
     public void sync() throws DBException {
         try(final SeekableByteChannel chan = Files.newByteChannel(dataFile,
-                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
             dataGuide.write(chan, getBrokerPool().getSymbols());
         } catch (final IOException e) {
             LOG.error(e.getMessage(), e);
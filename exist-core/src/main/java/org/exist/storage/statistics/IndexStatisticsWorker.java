@@ -20,6 +20,8 @@
 package org.exist.storage.statistics;
 
 import org.exist.collections.Collection;
+import org.exist.dom.persistent.AbstractCharacterData;
+import org.exist.dom.persistent.AttrImpl;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.persistent.ElementImpl;
@@ -36,6 +38,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.numbering.NodeId;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
@@ -178,6 +181,16 @@ public class IndexStatisticsWorker implements IndexWorker {
                         path.addComponent(qname);
                         final NodeStats nodeStats = perDocGuide.add(path);
                         stack.push(nodeStats);
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            final QName attrName = new QName(reader.getAttributeLocalName(i),
+                                    reader.getAttributeNamespace(i), ElementValue.ATTRIBUTE);
+                            perDocGuide.addValue(attrName, reader.getAttributeValue(i));
+                        }
+                        break;
+
+                    case XMLStreamReader.CHARACTERS:
+                    case XMLStreamReader.CDATA:
+                        addText(perDocGuide, path, reader.getText());
                         break;
 
                     case XMLStreamReader.END_ELEMENT:
@@ -215,6 +228,12 @@ public class IndexStatisticsWorker implements IndexWorker {
         return new Occurrences[0];
     }
 
+    private static void addText(final DataGuide guide, final NodePath path, final String text) {
+        if (path.length() > 0 && !text.trim().isEmpty()) {
+            guide.addValue(path.getLastComponent(), text);
+        }
+    }
+
     private class StatisticsListener extends AbstractStreamListener {
         private final Deque<NodeStats> stack = new ArrayDeque<>();
 
@@ -230,6 +249,22 @@ public class IndexStatisticsWorker implements IndexWorker {
             }
         }
 
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            super.attribute(transaction, attrib, path);
+            if (perDocGuide != null) {
+                perDocGuide.addValue(new QName(attrib.getQName(), ElementValue.ATTRIBUTE), attrib.getValue());
+            }
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            super.characters(transaction, text, path);
+            if (perDocGuide != null) {
+                addText(perDocGuide, path, text.getData());
+            }
+        }
+
         @Override
         public void endElement(final Txn transaction, final ElementImpl element, final NodePath path) {
             super.endElement(transaction, element, path);
@@ -0,0 +1,168 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import org.exist.xquery.Constants.Comparison;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects the distribution of the values of an element or attribute name.
+ *
+ * Values are counted in a fixed number of buckets chosen by the hash code
+ * of the value, which gives an upper bound for the frequency of a single value.
+ * For numeric values, the minimum and maximum are tracked as well, so the
+ * fraction of values in a range can be interpolated.
+ */
+class ValueHistogram {
+
+    static final int BUCKETS = 64;
+
+    static final int BYTES = 8 + BUCKETS * 4 + 8 + 8 + 8;
+
+    /**
+     * Selectivity of a range comparison if the values are not numeric.
+     */
+    static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    private long valueCount = 0;
+    private final int[] buckets = new int[BUCKETS];
+    private long numericCount = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void addValue(final String value) {
+        valueCount++;
+        buckets[bucketOf(value)]++;
+        final double d = toDouble(value);
+        if (!Double.isNaN(d)) {
+            numericCount++;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+        }
+    }
+
+    void mergeInto(final ValueHistogram other) {
+        other.valueCount += valueCount;
+        for (int i = 0; i < BUCKETS; i++) {
+            other.buckets[i] += buckets[i];
+        }
+        other.numericCount += numericCount;
+        other.min = Math.min(other.min, min);
+        other.max = Math.max(other.max, max);
+    }
+
+    long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Estimates the fraction of the values which satisfy a comparison.
+     *
+     * @param relation the comparison operator
+     * @param value the value compared with, or null if it is not known
+     *
+     * @return the fraction, between 0 and 1
+     */
+    double getSelectivity(final Comparison relation, @Nullable final String value) {
+        if (valueCount == 0) {
+            return 0;
+        }
+        switch (relation) {
+            case EQ:
+                return equalSelectivity(value);
+            case NEQ:
+                return 1 - equalSelectivity(value);
+            case LT:
+            case LTEQ:
+            case GT:
+            case GTEQ:
+                final double d = value == null ? Double.NaN : toDouble(value);
+                if (Double.isNaN(d) || numericCount == 0) {
+                    return DEFAULT_RANGE_SELECTIVITY;
+                }
+                double below;
+                if (d < min) {
+                    below = 0;
+                } else if (d > max) {
+                    below = 1;
+                } else if (max == min) {
+                    below = relation == Comparison.LT || relation == Comparison.GTEQ ? 0 : 1;
+                } else {
+                    below = (d - min) / (max - min);
+                }
+                final double fraction = relation == Comparison.LT || relation == Comparison.LTEQ ? below : 1 - below;
+                return fraction * numericCount / valueCount;
+            default:
+                return 1;
+        }
+    }
+
+    private double equalSelectivity(@Nullable final String value) {
+        if (value != null) {
+            return (double) buckets[bucketOf(value)] / valueCount;
+        }
+        // unknown value: assume the average frequency of a bucket in use
+        int used = 0;
+        for (final int count : buckets) {
+            if (count > 0) {
+                used++;
+            }
+        }
+        return 1.0 / used;
+    }
+
+    private static int bucketOf(final String value) {
+        return (value.hashCode() & 0x7fffffff) % BUCKETS;
+    }
+
+    private static double toDouble(final String value) {
+        final String s = value.trim();
+        if (s.isEmpty() || !(Character.isDigit(s.charAt(0)) || s.charAt(0) == '-' || s.charAt(0) == '.')) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(s);
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    void write(final ByteBuffer buffer) {
+        buffer.putLong(valueCount);
+        for (final int count : buckets) {
+            buffer.putInt(count);
+        }
+        buffer.putLong(numericCount);
+        buffer.putDouble(min);
+        buffer.putDouble(max);
+    }
+
+    void read(final ByteBuffer buffer) {
+        valueCount = buffer.getLong();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = buffer.getInt();
+        }
+        numericCount = buffer.getLong();
+        min = buffer.getDouble();
+        max = buffer.getDouble();
+    }
+}
@@ -22,6 +22,9 @@ package org.exist.storage.structural;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
@@ -29,20 +32,26 @@ import org.apache.logging.log4j.Logger;
 import org.exist.backup.RawDataBackup;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.indexing.AbstractIndex;
+import org.exist.indexing.BulkLoadSupport;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.ExternalKeySorter;
 import org.exist.storage.index.BTreeStore;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
 import org.exist.util.LockException;
+import org.exist.xquery.LocationStep;
 import org.w3c.dom.Element;
 
-public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport {
+import static org.exist.util.ThreadUtils.nameInstanceThread;
+
+public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport, BulkLoadSupport {
 
     protected static final Logger LOG = LogManager.getLogger(NativeStructuralIndex.class);
 
@@ -52,12 +61,22 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
     public static final byte STRUCTURAL_INDEX_ID = 1;
 
+    /** The size of the keys buffered in memory during a bulk load */
+    private static final long BULK_LOAD_BUFFER_SIZE = 64 * 1024 * 1024;
+
     /** The datastore for this node index */
     protected BTreeStore btree;
 
+    /** Collects the keys during a bulk load, see {@link #startBulkLoad()} */
+    protected ExternalKeySorter bulkLoad = null;
+
     protected LockManager lockManager;
+    private ForkJoinPool executor = null;
     protected SymbolTable symbols;
 
+    /** The number of path steps which were looked up in parallel. Package private - for testing! */
+    final LongAdder parallelLookups = new LongAdder();
+
     public NativeStructuralIndex() {
         //Nothing to do
     }
@@ -84,10 +103,35 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
     @Override
     public void close() throws DBException {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
         btree.close();
         btree = null;
     }
 
+    /**
+     * Returns the pool of threads evaluating path steps in parallel, see
+     * {@link LocationStep#getParallelism(org.exist.xquery.XQueryContext)}.
+     *
+     * @return the pool, with as many threads as configured in {@link LocationStep#PROPERTY_PATH_STEP_PARALLELISM}
+     */
+    synchronized ForkJoinPool getExecutor() {
+        if (executor == null) {
+            final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = forkJoinPool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName(nameInstanceThread(pool, "path-step-" + thread.getPoolIndex()));
+                return thread;
+            };
+            executor = new ForkJoinPool(Math.max(1, LocationStep.getMaxParallelism(pool.getConfiguration())),
+                    threadFactory, null, false);
+        }
+        return executor;
+    }
+
     @Override
     public void sync() throws DBException {
         if (btree == null) {
@@ -109,6 +153,32 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         btree.closeAndRemove();
     }
 
+    @Override
+    public void startBulkLoad() {
+        bulkLoad = new ExternalKeySorter(BULK_LOAD_BUFFER_SIZE);
+    }
+
+    @Override
+    public void finishBulkLoad() throws DBException {
+        if (bulkLoad == null) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName());
+                final ExternalKeySorter sorter = bulkLoad) {
+            bulkLoad = null;
+            final long keys = sorter.load(btree);
+            btree.flush();
+            LOG.info("Loaded " + keys + " keys into '" + FileUtils.fileName(btree.getFile()) + "' in " +
+                    (System.currentTimeMillis() - start) + " ms");
+            if (LOG.isDebugEnabled()) {
+                btree.treeStatistics().toLogger();
+            }
+        } catch (final LockException | IOException | BTreeException e) {
+            throw new DBException("Failed to bulk load the structural index: " + e.getMessage());
+        }
+    }
+
     @Override
     public IndexWorker getWorker(DBBroker broker) {
         return new NativeStructuralIndexWorker(this);
@@ -31,6 +31,7 @@ import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.IStoredNode;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.PackedNodeSet;
 import org.exist.dom.persistent.ExtNodeSet;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.collections.Collection;
@@ -39,6 +40,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.numbering.NodeId;
 import org.exist.storage.*;
 import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.ExternalKeySorter;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
@@ -55,7 +57,9 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
 
 import org.exist.security.PermissionDeniedException;
 
@@ -107,8 +111,16 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     public NodeSet findElementsByTagName(byte type, DocumentSet docs, QName qname, NodeSelector selector, Expression parent) {
+        final int parallelism = parent == null ? 1 : LocationStep.getParallelism(parent.getContext());
+        if (parallelism > 1) {
+            final List<Partition> partitions = getPartitions(docs, parallelism);
+            if (partitions.size() > 1 && (selector == null || selector.prepareConcurrentMatch())) {
+                return findElementsByTagName(type, partitions, qname, selector, parent);
+            }
+        }
+
         final NewArrayNodeSet result = new NewArrayNodeSet();
-        final FindElementsCallback callback = new FindElementsCallback(type, qname, result, docs, selector, parent);
+        final FindElementsCallback callback = new FindElementsCallback(type, qname, result, docs::getDoc, selector, parent);
 
         // for each document id range, scan the index to find matches
         for (final Range range : getDocIdRanges(docs)) {
@@ -129,6 +141,175 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return result;
     }
 
+    /**
+     * Returns a {@link PackedNodeSet}, into which the node ids are copied straight from the
+     * keys of the btree, without creating a node id or proxy for each node.
+     */
+    @Override
+    public NodeSet findElementsByTagNameForJoin(byte type, DocumentSet docs, QName qname, Expression parent) {
+        final PackedNodeSet result = new PackedNodeSet(index.getBrokerPool().getNodeFactory(),
+                type == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE,
+                qname != null && qname.getNameType() != type
+                        ? new QName(qname.getLocalPart(), qname.getNamespaceURI(), qname.getPrefix(), type) : qname);
+        final PackElementsCallback callback = new PackElementsCallback(result, docs, parent);
+
+        for (final Range range : getDocIdRanges(docs)) {
+            final byte[] fromKey = computeKey(type, qname, range.start);
+            final byte[] toKey = computeKey(type, qname, range.end + 1);
+            final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+
+            try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+                index.btree.query(query, callback);
+            } catch (final LockException e) {
+                NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
+            } catch (final TerminatedException e) {
+                NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: " + e.getMessage(), e);
+            } catch (final Exception e) {
+                NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parallel version of {@link #findElementsByTagName(byte, DocumentSet, QName, NodeSelector, Expression)}.
+     *
+     * Each partition of the documents is handled by a task on the pool of the index. As the btree can only
+     * be read by one thread at a time, a task reads the keys of its partition while holding the lock on the
+     * btree, and then creates and selects the nodes while the btree is read by other tasks.
+     */
+    private NodeSet findElementsByTagName(final byte type, final List<Partition> partitions, final QName qname,
+            final NodeSelector selector, final Expression parent) {
+        final List<ForkJoinTask<NewArrayNodeSet>> tasks = new ArrayList<>(partitions.size());
+        for (final Partition partition : partitions) {
+            tasks.add(index.getExecutor().submit(() -> {
+                final KeyBuffer keys = new KeyBuffer();
+                for (final Range range : partition.ranges) {
+                    final byte[] fromKey = computeKey(type, qname, range.start);
+                    final byte[] toKey = computeKey(type, qname, range.end + 1);
+                    final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+                    try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+                        index.btree.query(query, keys);
+                    } catch (final LockException e) {
+                        NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
+                    } catch (final Exception e) {
+                        NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
+                    }
+                }
+                final NewArrayNodeSet result = new NewArrayNodeSet();
+                keys.replay(0, keys.size(), new FindElementsCallback(type, qname, result, partition.docs::get, selector, null));
+                return result;
+            }));
+        }
+        return join(tasks, parent);
+    }
+
+    /**
+     * Waits for the tasks of a parallel lookup, and concatenates their results.
+     * The tasks handle consecutive parts of the input, so the result is in document
+     * order if the results of the tasks are.
+     */
+    private NewArrayNodeSet join(final List<ForkJoinTask<NewArrayNodeSet>> tasks, final Expression parent) {
+        index.parallelLookups.increment();
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        try {
+            for (final ForkJoinTask<NewArrayNodeSet> task : tasks) {
+                final NewArrayNodeSet partial = task.join();
+                if (parent != null) {
+                    parent.getContext().proceed(parent);
+                }
+                result.addAll(partial);
+            }
+        } catch (final TerminatedException e) {
+            NativeStructuralIndex.LOG.warn("Query was terminated while searching structural index: " + e.getMessage(), e);
+            for (final ForkJoinTask<NewArrayNodeSet> task : tasks) {
+                task.cancel(false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the document set into partitions of about the same number of documents,
+     * each with its own document id ranges.
+     *
+     * @param docs the document set
+     * @param maxPartitions the maximum number of partitions
+     * @return the partitions, in document id order
+     */
+    List<Partition> getPartitions(final DocumentSet docs, final int maxPartitions) {
+        final List<DocumentImpl> documents = new ArrayList<>();
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            documents.add(i.next());
+        }
+        final int partitionSize = Math.max(1, (documents.size() + maxPartitions - 1) / maxPartitions);
+
+        final List<Partition> partitions = new ArrayList<>(maxPartitions);
+        Partition partition = null;
+        Range next = null;
+        for (int i = 0; i < documents.size(); i++) {
+            final DocumentImpl doc = documents.get(i);
+            if (i % partitionSize == 0) {
+                if (next != null) {
+                    partition.ranges.add(next);
+                    next = null;
+                }
+                partition = new Partition();
+                partitions.add(partition);
+            }
+            partition.docs.put(doc.getDocId(), doc);
+            if (next == null) {
+                next = new Range(doc.getDocId());
+            } else if (next.end + 1 == doc.getDocId()) {
+                next.end++;
+            } else {
+                partition.ranges.add(next);
+                next = new Range(doc.getDocId());
+            }
+        }
+        if (next != null) {
+            partition.ranges.add(next);
+        }
+        return partitions;
+    }
+
+    /**
+     * A part of a document set, handled by one task of a parallel lookup.
+     */
+    static class Partition {
+        final List<Range> ranges = new ArrayList<>();
+        final Map<Integer, DocumentImpl> docs = new HashMap<>();
+    }
+
+    /**
+     * Collects the keys and values found in the btree, so the nodes can be
+     * created after the lock on the btree has been released.
+     */
+    private static class KeyBuffer implements BTreeCallback {
+        private final List<byte[]> keys = new ArrayList<>();
+        private long[] pointers = new long[64];
+
+        @Override
+        public boolean indexInfo(final Value value, final long pointer) {
+            if (keys.size() == pointers.length) {
+                pointers = Arrays.copyOf(pointers, pointers.length * 2);
+            }
+            pointers[keys.size()] = pointer;
+            keys.add(value.getData());
+            return true;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        void replay(final int from, final int to, final BTreeCallback callback) throws TerminatedException {
+            for (int i = from; i < to; i++) {
+                callback.indexInfo(new Value(keys.get(i)), pointers[i]);
+            }
+        }
+    }
+
     /**
      * Scan the document set to find document id ranges to query
      *
@@ -191,6 +372,11 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     public NodeSet findDescendantsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet, int contextId, Expression parent) {
+        final int parallelism = parent == null ? 1 : LocationStep.getParallelism(parent.getContext());
+        if (parallelism > 1 && contextSet.getLength() > 1) {
+            return findDescendantsByTagName(type, qname, axis, contextSet, contextId, parallelism, parent);
+        }
+
         final NewArrayNodeSet result = new NewArrayNodeSet();
         final FindDescendantsCallback callback = new FindDescendantsCallback(type, axis, qname, contextId, result, parent);
         try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
@@ -221,6 +407,68 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return result;
     }
 
+    /**
+     * Parallel version of {@link #findDescendantsByTagName(byte, QName, int, DocumentSet, NodeSet, int, Expression)}.
+     * The context nodes are split into consecutive partitions, which are handled like in
+     * {@link #findElementsByTagName(byte, List, QName, NodeSelector, Expression)}.
+     */
+    private NodeSet findDescendantsByTagName(final byte type, final QName qname, final int axis, final NodeSet contextSet,
+            final int contextId, final int parallelism, final Expression parent) {
+        final List<NodeProxy> ancestors = new ArrayList<>(contextSet.getLength());
+        for (final NodeProxy ancestor : contextSet) {
+            ancestors.add(ancestor);
+        }
+        final int partitionSize = (ancestors.size() + parallelism - 1) / parallelism;
+
+        final List<ForkJoinTask<NewArrayNodeSet>> tasks = new ArrayList<>(parallelism);
+        for (int start = 0; start < ancestors.size(); start += partitionSize) {
+            final List<NodeProxy> partition = ancestors.subList(start, Math.min(start + partitionSize, ancestors.size()));
+            tasks.add(index.getExecutor().submit(() -> {
+                final KeyBuffer keys = new KeyBuffer();
+                final int[] ends = new int[partition.size()];
+                try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+                    for (int i = 0; i < partition.size(); i++) {
+                        final NodeProxy ancestor = partition.get(i);
+                        final DocumentImpl doc = ancestor.getOwnerDocument();
+                        final NodeId ancestorId = ancestor.getNodeId();
+                        final byte[] fromKey;
+                        final byte[] toKey;
+                        if (ancestorId == NodeId.DOCUMENT_NODE) {
+                            fromKey = computeKey(type, qname, doc.getDocId());
+                            toKey = computeKey(type, qname, doc.getDocId() + 1);
+                        } else {
+                            fromKey = computeKey(type, qname, doc.getDocId(), ancestorId);
+                            toKey = computeKey(type, qname, doc.getDocId(), ancestorId.nextSibling());
+                        }
+                        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
+                        try {
+                            index.btree.query(query, keys);
+                        } catch (final Exception e) {
+                            NativeStructuralIndex.LOG.error("Error while searching structural index: " + e.getMessage(), e);
+                        }
+                        ends[i] = keys.size();
+                    }
+                } catch (final LockException e) {
+                    NativeStructuralIndex.LOG.warn("Lock problem while searching structural index: " + e.getMessage(), e);
+                }
+
+                final NewArrayNodeSet result = new NewArrayNodeSet();
+                final FindDescendantsCallback callback = new FindDescendantsCallback(type, axis, qname, contextId, result, null);
+                int from = 0;
+                for (int i = 0; i < partition.size(); i++) {
+                    final NodeProxy ancestor = partition.get(i);
+                    callback.setAncestor(ancestor.getOwnerDocument(), ancestor);
+                    keys.replay(from, ends[i], callback);
+                    from = ends[i];
+                }
+                return result;
+            }));
+        }
+        final NewArrayNodeSet result = join(tasks, parent);
+        result.updateNoSort();
+        return result;
+    }
+
     public NodeSet findAncestorsByTagName(byte type, QName qname, int axis, DocumentSet docs, NodeSet contextSet,
                                           int contextId) {
         final NewArrayNodeSet result = new NewArrayNodeSet();
@@ -301,12 +549,12 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     private class FindElementsCallback implements BTreeCallback {
         byte type;
         QName qname;
-        DocumentSet docs;
+        IntFunction<DocumentImpl> docs;
         NewArrayNodeSet result;
         NodeSelector selector;
         Expression parent;
 
-        FindElementsCallback(byte type, QName qname, NewArrayNodeSet result, DocumentSet docs, NodeSelector selector, Expression parent) {
+        FindElementsCallback(byte type, QName qname, NewArrayNodeSet result, IntFunction<DocumentImpl> docs, NodeSelector selector, Expression parent) {
             this.type = type;
             this.result = result;
             this.docs = docs;
@@ -325,7 +573,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             }
             final byte[] key = value.getData();
             final NodeId nodeId = readNodeId(key, pointer);
-            final DocumentImpl doc = docs.getDoc(readDocId(key));
+            final DocumentImpl doc = docs.apply(readDocId(key));
             if (doc != null) {
                 if (selector == null) {
                     final NodeProxy storedNode = new NodeProxy(doc, nodeId,
@@ -350,6 +598,34 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         }
     }
 
+    private class PackElementsCallback implements BTreeCallback {
+        PackedNodeSet result;
+        DocumentSet docs;
+        Expression parent;
+        DocumentImpl lastDoc = null;
+
+        PackElementsCallback(PackedNodeSet result, DocumentSet docs, Expression parent) {
+            this.result = result;
+            this.docs = docs;
+            this.parent = parent;
+        }
+
+        public boolean indexInfo(Value value, long pointer) throws TerminatedException {
+            if (parent != null) {
+                parent.getContext().proceed(parent);
+            }
+            final byte[] key = value.getData();
+            final int docId = readDocId(key);
+            if (lastDoc == null || lastDoc.getDocId() != docId) {
+                lastDoc = docs.getDoc(docId);
+            }
+            if (lastDoc != null) {
+                result.add(lastDoc, key, 9, readNodeIdUnits(key, pointer), pointer);
+            }
+            return true;
+        }
+    }
+
     private class FindDescendantsCallback implements BTreeCallback {
         int axis;
         byte type;
@@ -670,14 +946,24 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 final QName qname = entry.getKey();
                 try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                     final List<NodeProxy> nodes = entry.getValue();
-                    for (final NodeProxy proxy : nodes) {
-                        final NodeId nodeId = proxy.getNodeId();
-                        final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
-                    }
                     final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
-                    if (index.btree.findValue(docKey) == -1) {
-                        index.btree.addValue(docKey, 0);
+                    final ExternalKeySorter bulkLoad = index.bulkLoad;
+                    if (bulkLoad != null) {
+                        // the keys are sorted and written to the btree at the end of the bulk load
+                        for (final NodeProxy proxy : nodes) {
+                            final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), proxy.getNodeId());
+                            bulkLoad.add(new Value(key), computeValue(proxy));
+                        }
+                        bulkLoad.add(docKey, 0);
+                    } else {
+                        for (final NodeProxy proxy : nodes) {
+                            final NodeId nodeId = proxy.getNodeId();
+                            final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
+                            index.btree.addValue(new Value(key), computeValue(proxy));
+                        }
+                        if (index.btree.findValue(docKey) == -1) {
+                            index.btree.addValue(docKey, 0);
+                        }
                     }
                 } catch (final LockException e) {
                     NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
@@ -763,13 +1049,16 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     }
 
     private NodeId readNodeId(byte[] key, long value) {
+        return index.getBrokerPool().getNodeFactory().createFromData(readNodeIdUnits(key, value), key, 9);
+    }
+
+    private static int readNodeIdUnits(byte[] key, long value) {
         // extra number of bits of the node id is encoded in the long address
         short bits = (short)((value >>> 24) & 0xFFL);
         if (bits == 0)
             {bits = 8;}
         // compute total number of bits for node id
-        final int units = (key.length - 10) * 8 + bits;
-        return index.getBrokerPool().getNodeFactory().createFromData(units, key, 9);
+        return (key.length - 10) * 8 + bits;
     }
 
     private QName readQName(byte[] key) {
@@ -0,0 +1,170 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.sync;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NativeBroker;
+import org.exist.storage.journal.JournalManager;
+import org.exist.storage.journal.Lsn;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.util.NamedThreadFactory;
+
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Creates fuzzy checkpoints in the background, whilst the database is in use.
+ *
+ * Each checkpoint first determines the redo point, see
+ * {@link TransactionManager#getRedoLsn()}, then writes the dirty pages
+ * of the database files to disk, one file at a time and holding only
+ * the lock of that file, see {@link NativeBroker#syncFuzzy(Runnable)}, and finally writes a checkpoint record which
+ * marks the redo point. In contrast to a (sharp) checkpoint created by
+ * {@link BrokerPool#sync(DBBroker, Sync)}, transactions are therefore not
+ * stopped whilst the whole database is synchronized.
+ *
+ * Checkpoints are created periodically, but only if entries have been
+ * written to the journal since the last checkpoint, and before the
+ * journal is rotated, so that the sharp checkpoint which rotates the
+ * journal only has to write the pages dirtied in the meantime.
+ */
+@ThreadSafe
+public class FuzzyCheckpointer implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(FuzzyCheckpointer.class);
+
+    private final BrokerPool pool;
+    private final long period;
+    private final AtomicBoolean rotationPending = new AtomicBoolean();
+    private volatile ScheduledExecutorService executor = null;
+
+    /** The LSN of the last journal entry after the previous checkpoint, only accessed by the executor thread */
+    private Lsn lastCheckpointLsn = Lsn.LSN_INVALID;
+
+    /**
+     * @param pool the database instance
+     * @param period the period between checkpoints in milliseconds
+     */
+    public FuzzyCheckpointer(final BrokerPool pool, final long period) {
+        this.pool = pool;
+        this.period = period;
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory(pool.getThreadGroup(), pool.getId(), "fuzzy-checkpoint"));
+        executor.scheduleWithFixedDelay(this::checkpoint, period, period, TimeUnit.MILLISECONDS);
+        LOG.info("Fuzzy checkpoints will be created every " + period + " ms");
+    }
+
+    /**
+     * Creates a fuzzy checkpoint in the background and then runs the given sharp
+     * checkpoint, which rotates the journal. Requests whilst a rotation is already
+     * pending are ignored.
+     *
+     * @param sharpCheckpoint schedules the sharp checkpoint
+     */
+    public void rotate(final Runnable sharpCheckpoint) {
+        final ScheduledExecutorService executor = this.executor;
+        if (executor == null) {
+            // not yet in multi-user mode
+            sharpCheckpoint.run();
+            return;
+        }
+
+        if (rotationPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        checkpoint();
+                    } finally {
+                        rotationPending.set(false);
+                        sharpCheckpoint.run();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // shutting down
+                rotationPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Creates a fuzzy checkpoint, unless nothing has been written to the
+     * journal since the last one.
+     */
+    void checkpoint() {
+        if (pool.isShuttingDown() || pool.isShutDown() || pool.isReadOnly()) {
+            return;
+        }
+
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Lsn redoLsn = transact.getRedoLsn();
+            if (redoLsn.equals(Lsn.LSN_INVALID) || redoLsn.equals(lastCheckpointLsn)) {
+                // nothing has been written to the journal since the last checkpoint
+                return;
+            }
+
+            final long start = System.currentTimeMillis();
+
+            // the journal entries must be on disk before the pages which they modify
+            final Optional<JournalManager> journalManager = pool.getJournalManager();
+            ((NativeBroker) broker).syncFuzzy(() -> journalManager.ifPresent(jm -> jm.flush(true, true)));
+
+            transact.checkpoint(redoLsn);
+            lastCheckpointLsn = journalManager.map(JournalManager::currentLsn).orElse(Lsn.LSN_INVALID);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Fuzzy checkpoint created in " + (System.currentTimeMillis() - start) + " ms, redo from: " + redoLsn);
+            }
+        } catch (final EXistException | RuntimeException e) {
+            // must not be thrown, as it would cancel all further checkpoints
+            LOG.error("Failed to create fuzzy checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        final ScheduledExecutorService executor = this.executor;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Timeout whilst waiting for the fuzzy checkpoint to complete");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
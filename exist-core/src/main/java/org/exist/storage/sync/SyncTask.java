@@ -92,7 +92,9 @@ public class SyncTask implements SystemTask {
 
         if(System.currentTimeMillis() - pool.getLastMajorSync() >
                 pool.getMajorSyncPeriod()) {
-            pool.sync(broker, Sync.MAJOR);
+            // with fuzzy checkpoints, all dirty pages are written in the background
+            final boolean flushPages = !pool.getFuzzyCheckpointer().isPresent();
+            pool.sync(broker, Sync.MAJOR, flushPages);
         } else {
             pool.sync(broker, Sync.MINOR);
         }
@@ -30,6 +30,15 @@ import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Lsn;
 
 /**
+ * A checkpoint record in the journal.
+ *
+ * A sharp checkpoint is written whilst no transactions are running and after
+ * all dirty pages have been written to disk, recovery therefore only has to
+ * consider the entries after it. A fuzzy checkpoint is written by the
+ * {@link org.exist.storage.sync.FuzzyCheckpointer} whilst the database is in use.
+ * It records the redo point: all changes logged before it had been written
+ * to disk, and no transaction which was still running had started before it.
+ *
  * @author wolf
  */
 public class Checkpoint extends AbstractLoggable {
@@ -38,37 +47,93 @@ public class Checkpoint extends AbstractLoggable {
 
 	private long timestamp;
 	private Lsn storedLsn;
+	private Lsn redoLsn;
 	
 	private final DateFormat df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
 	
     public Checkpoint(final long transactionId) {
         this(null, transactionId);
     }
+
+    /**
+     * Creates a fuzzy checkpoint.
+     *
+     * @param transactionId the id of the transaction for the checkpoint
+     * @param redoLsn the LSN from which recovery has to redo the journal
+     */
+    public Checkpoint(final long transactionId, final Lsn redoLsn) {
+        this(LogEntryTypes.FUZZY_CHECKPOINT, transactionId, redoLsn);
+    }
     
     public Checkpoint(final DBBroker broker, final long transactionId) {
-        super(LogEntryTypes.CHECKPOINT, transactionId);
+        this(LogEntryTypes.CHECKPOINT, transactionId, Lsn.LSN_INVALID);
+    }
+
+    private Checkpoint(final byte type, final long transactionId, final Lsn redoLsn) {
+        super(type, transactionId);
 		timestamp = new Date().getTime();
+		this.redoLsn = redoLsn;
+    }
+
+    /**
+     * Creates a fuzzy checkpoint which is read from the journal.
+     *
+     * @param broker the database broker
+     * @param transactionId the id of the transaction for the checkpoint
+     * @return the checkpoint
+     */
+    public static Checkpoint fuzzy(final DBBroker broker, final long transactionId) {
+        return new Checkpoint(LogEntryTypes.FUZZY_CHECKPOINT, transactionId, Lsn.LSN_INVALID);
     }
     
     @Override
     public void write(final ByteBuffer out) {
         lsn.write(out);
 		out.putLong(timestamp);
+		if (isFuzzy()) {
+		    redoLsn.write(out);
+		}
     }
 
     @Override
     public void read(final ByteBuffer in) {
         storedLsn = Lsn.read(in);
 		timestamp = in.getLong();
+		if (isFuzzy()) {
+		    redoLsn = Lsn.read(in);
+		}
     }
 
     public Lsn getStoredLsn() {
     	return storedLsn;
     }
+
+    /**
+     * @return the LSN from which recovery has to redo the journal,
+     *     or {@link Lsn#LSN_INVALID} for a sharp checkpoint
+     */
+    public Lsn getRedoLsn() {
+        return redoLsn;
+    }
+
+    /**
+     * Fuzzy checkpoints are journalled as a separate entry type, so that the
+     * format of sharp checkpoints is unchanged if fuzzy checkpoints are disabled.
+     *
+     * @return true if this is a fuzzy checkpoint
+     */
+    public boolean isFuzzy() {
+        return getLogType() == LogEntryTypes.FUZZY_CHECKPOINT;
+    }
     
+    @Override
+    public int getRedoFileId() {
+        return REDO_NO_FILE;
+    }
+
     @Override
     public int getLogSize() {
-        return Lsn.RAW_LENGTH + TIMESTAMP_LEN;
+        return Lsn.RAW_LENGTH + TIMESTAMP_LEN + (isFuzzy() ? Lsn.RAW_LENGTH : 0);
     }
 
     public String getDateString() {
@@ -77,6 +142,6 @@ public class Checkpoint extends AbstractLoggable {
 
     @Override
 	public String dump() {
-		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp));
+		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp)) + (isFuzzy() ? ", redo from " + redoLsn : "");
 	}
 }
@@ -19,6 +19,7 @@
  */
 package org.exist.storage.txn;
 
+import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,6 +28,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.storage.*;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.JournalManager;
+import org.exist.storage.journal.Lsn;
 import org.exist.storage.sync.Sync;
 import org.exist.util.LockException;
 import org.exist.xmldb.XmldbURI;
@@ -190,13 +192,6 @@ public class TransactionManager implements BrokerPoolService {
 
     private Txn doBeginTransaction() {
         final long txnId = nextTxnId.getAndIncrement();
-        if (journalManager.isPresent()) {
-            try {
-                journalManager.get().journal(new TxnStart(txnId));
-            } catch (final JournalException e) {
-                LOG.error("Failed to create transaction. Error writing to Journal", e);
-            }
-        }
 
         /*
          * NOTE: we intentionally increment the txn counter here
@@ -204,8 +199,31 @@ public class TransactionManager implements BrokerPoolService {
          *     as that will not be done
          *     by {@link JournalManager#journal(Loggable)} or
          *     {@link Journal#writeToLog(loggable)}.
+         *
+         * The transaction is registered before the TxnStart is
+         *     written, see {@link #getRedoLsn()}.
          */
-        transactions.put(txnId, new TxnCounter().increment());
+        final TxnCounter txnCounter = new TxnCounter().increment();
+        transactions.put(txnId, txnCounter);
+
+        Lsn startLsn = Lsn.LSN_INVALID;
+        try {
+            if (journalManager.isPresent()) {
+                try {
+                    final TxnStart txnStart = new TxnStart(txnId);
+                    journalManager.get().journal(txnStart);
+                    if (txnStart.getLsn() != null) {
+                        startLsn = txnStart.getLsn();
+                    }
+                } catch (final JournalException e) {
+                    LOG.error("Failed to create transaction. Error writing to Journal", e);
+                }
+            }
+        } finally {
+            // wakes up getRedoLsn()
+            txnCounter.setStartLsn(startLsn);
+        }
+
         final Txn txn = new Txn(this, txnId);
 
         // TODO(AR) ultimately we should be doing away with DBBroker#addCurrentTransaction
@@ -462,6 +480,60 @@ public class TransactionManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Determines the redo point for a fuzzy checkpoint, i.e. the LSN from
+     * which recovery would have to redo the journal, if all pages which are
+     * dirty at this moment were written to disk.
+     *
+     * This is the LSN of the last entry in the journal, or the LSN of the
+     * start of the oldest transaction which is still active, as recovery
+     * has to see the complete transaction in order to undo it.
+     *
+     * @return the redo point, or {@link Lsn#LSN_INVALID} if there is no journal
+     */
+    public Lsn getRedoLsn() {
+        if (!journalManager.isPresent()) {
+            return Lsn.LSN_INVALID;
+        }
+
+        Lsn redoLsn = journalManager.get().currentLsn();
+        for (final TxnCounter txnCounter : transactions.values()) {
+            // the TxnStart of the transaction may already have been written before the current LSN was read
+            final Lsn startLsn = txnCounter.awaitStartLsn();
+            if (!startLsn.equals(Lsn.LSN_INVALID) && startLsn.compareTo(redoLsn) < 0) {
+                redoLsn = startLsn;
+            }
+        }
+        return redoLsn;
+    }
+
+    /**
+     * Create a new fuzzy checkpoint.
+     *
+     * This method is called from the {@link org.exist.storage.sync.FuzzyCheckpointer}
+     * after all pages, which were dirty when the redo point was determined, have been
+     * written to disk. In contrast to {@link #checkpoint(boolean)}, transactions may be
+     * active.
+     *
+     * @param redoLsn the redo point as returned by {@link #getRedoLsn()}
+     *
+     * @throws TransactionException if an error occurs whilst writing the checkpoint.
+     */
+    public void checkpoint(final Lsn redoLsn) throws TransactionException {
+        if (state.get() == STATE_SHUTDOWN) {
+            throwShutdownException();
+        }
+
+        if(journalManager.isPresent()) {
+            try {
+                final long txnId = nextTxnId.getAndIncrement();
+                journalManager.get().checkpoint(txnId, redoLsn);
+            } catch(final JournalException e) {
+                throw new TransactionException(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * @deprecated This mixes concerns and should not be here!
      * @param broker the  eXist-db DBBroker
@@ -609,6 +681,12 @@ public class TransactionManager implements BrokerPoolService {
          */
         private volatile long counter = 0;
 
+        /**
+         * The LSN of the TxnStart of the transaction, null
+         * until the TxnStart has been written to the journal.
+         */
+        @GuardedBy("this") private Lsn startLsn = null;
+
         public TxnCounter increment() {
             counter++;
             return this;
@@ -617,5 +695,33 @@ public class TransactionManager implements BrokerPoolService {
         public long getCount() {
             return counter;
         }
+
+        synchronized void setStartLsn(final Lsn startLsn) {
+            this.startLsn = startLsn;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the TxnStart of the transaction has been written.
+         *
+         * @return the LSN of the TxnStart, or {@link Lsn#LSN_INVALID}
+         */
+        synchronized Lsn awaitStartLsn() {
+            boolean interrupted = false;
+            try {
+                while (startLsn == null) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                return startLsn;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
     }
 }
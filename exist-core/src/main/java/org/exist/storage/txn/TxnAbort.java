@@ -44,6 +44,11 @@ public class TxnAbort extends AbstractLoggable {
     public void read(final ByteBuffer in) {
     }
 
+    @Override
+    public int getRedoFileId() {
+        return REDO_NO_FILE;
+    }
+
     @Override
     public int getLogSize() {
         return 0;
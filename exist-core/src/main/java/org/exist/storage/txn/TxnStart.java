@@ -47,6 +47,11 @@ public class TxnStart extends AbstractLoggable {
     public void read(final ByteBuffer in) {
     }
 
+    @Override
+    public int getRedoFileId() {
+        return REDO_NO_FILE;
+    }
+
     @Override
     public int getLogSize() {
         return 0;
@@ -54,13 +54,19 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.dom.DOMFile;
 import org.exist.storage.journal.Journal;
+import org.exist.storage.recovery.RecoveryManager;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
 import org.exist.validation.GrammarPool;
 import org.exist.validation.resolver.eXistXMLCatalogResolver;
 import org.exist.xmldb.DatabaseImpl;
 import org.exist.xquery.FunctionFactory;
+import org.exist.xquery.GroupByClause;
+import org.exist.xquery.LocationStep;
+import org.exist.xquery.OrderByClause;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.XQueryWatchDog;
@@ -380,6 +386,39 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": " + config.get( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL ) );
 
+        final String groupByMemoryBudget = getConfigAttributeValue( xquery, GroupByClause.GROUP_BY_MEMORY_BUDGET_ATTRIBUTE );
+        if( groupByMemoryBudget != null ) {
+            try {
+                config.put( GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET, Integer.valueOf(groupByMemoryBudget) );
+                LOG.debug( GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET + ": " + config.get( GroupByClause.PROPERTY_GROUP_BY_MEMORY_BUDGET ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String orderByMemoryBudget = getConfigAttributeValue( xquery, OrderByClause.ORDER_BY_MEMORY_BUDGET_ATTRIBUTE );
+        if( orderByMemoryBudget != null ) {
+            try {
+                config.put( OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET, Integer.valueOf(orderByMemoryBudget) );
+                LOG.debug( OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET + ": " + config.get( OrderByClause.PROPERTY_ORDER_BY_MEMORY_BUDGET ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String pathStepParallelism = getConfigAttributeValue( xquery, LocationStep.PATH_STEP_PARALLELISM_ATTRIBUTE );
+        if( pathStepParallelism != null ) {
+            try {
+                config.put( LocationStep.PROPERTY_PATH_STEP_PARALLELISM, Integer.valueOf(pathStepParallelism) );
+                LOG.debug( LocationStep.PROPERTY_PATH_STEP_PARALLELISM + ": " + config.get( LocationStep.PROPERTY_PATH_STEP_PARALLELISM ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -904,6 +943,26 @@ public class Configuration implements ErrorHandler
             LOG.warn("Cannot convert " + DefaultCacheManager.SHRINK_THRESHOLD_PROPERTY + " value to integer: " + cacheShrinkThreshold, nfe);
         }
 
+        configureCachePolicy( con, DefaultCacheManager.BTREE_CACHE_POLICY_ATTRIBUTE, DefaultCacheManager.PROPERTY_BTREE_CACHE_POLICY );
+        configureCachePolicy( con, DefaultCacheManager.DATA_CACHE_POLICY_ATTRIBUTE, DefaultCacheManager.PROPERTY_DATA_CACHE_POLICY );
+
+        String offHeapCacheSize = getConfigAttributeValue( con, DefaultCacheManager.OFF_HEAP_CACHE_SIZE_ATTRIBUTE );
+
+        if( offHeapCacheSize != null ) {
+
+            if( offHeapCacheSize.endsWith( "M" ) || offHeapCacheSize.endsWith( "m" ) ) {
+                offHeapCacheSize = offHeapCacheSize.substring( 0, offHeapCacheSize.length() - 1 );
+            }
+
+            try {
+                config.put( DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE, Integer.valueOf(offHeapCacheSize) );
+                LOG.debug( DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE + ": " + config.get( DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE ) + "m" );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE + " value to integer: " + offHeapCacheSize, nfe);
+            }
+        }
+
         String collectionCache = getConfigAttributeValue(con, CollectionCache.CACHE_SIZE_ATTRIBUTE);
         if(collectionCache != null) {
             collectionCache = collectionCache.toLowerCase();
@@ -950,6 +1009,21 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String mmap = getConfigAttributeValue( con, Paged.MMAP_ATTRIBUTE );
+        config.put( Paged.PROPERTY_MMAP, parseBoolean( mmap, false ) );
+        LOG.debug( Paged.PROPERTY_MMAP + ": " + config.get( Paged.PROPERTY_MMAP ) );
+
+        final String readAhead = getConfigAttributeValue( con, DOMFile.READ_AHEAD_ATTRIBUTE );
+        if( readAhead != null ) {
+            try {
+                config.put( DOMFile.PROPERTY_READ_AHEAD, Integer.valueOf(readAhead) );
+                LOG.debug( DOMFile.PROPERTY_READ_AHEAD + ": " + config.get( DOMFile.PROPERTY_READ_AHEAD ) );
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + DOMFile.PROPERTY_READ_AHEAD + " value to integer: " + readAhead, nfe);
+            }
+        }
+
         //Not clear : rather looks like a buffers count
         final String collCacheSize = getConfigAttributeValue( con, BrokerPool.COLLECTION_CACHE_SIZE_ATTRIBUTE );
 
@@ -1057,6 +1131,22 @@ public class Configuration implements ErrorHandler
     }
 
 
+    private void configureCachePolicy( final Element con, final String attributeName, final String propertyName ) throws DatabaseConfigurationException
+    {
+        final String cachePolicy = getConfigAttributeValue( con, attributeName );
+
+        if( cachePolicy != null ) {
+
+            if( !( DefaultCacheManager.CACHE_POLICY_LRU.equals( cachePolicy ) || DefaultCacheManager.CACHE_POLICY_W_TINY_LFU.equals( cachePolicy ) ) ) {
+                throw new DatabaseConfigurationException( "Unknown cache policy for " + attributeName + ": " + cachePolicy
+                        + ", expected '" + DefaultCacheManager.CACHE_POLICY_LRU + "' or '" + DefaultCacheManager.CACHE_POLICY_W_TINY_LFU + "'" );
+            }
+            config.put( propertyName, cachePolicy );
+            LOG.debug( propertyName + ": " + config.get( propertyName ) );
+        }
+    }
+
+
     private void configureRecovery( final Optional<Path> dbHome, Element recovery ) throws DatabaseConfigurationException
     {
         String option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_ENABLED_ATTRIBUTE );
@@ -1071,6 +1161,36 @@ public class Configuration implements ErrorHandler
         setProperty( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT ) );
 
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_FUZZY_CHECKPOINTS_ATTRIBUTE );
+        setProperty( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, parseBoolean( option, false ) );
+        LOG.debug( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS ) );
+
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE );
+
+        if( option != null ) {
+
+            try {
+                setProperty( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, Long.valueOf( option ) );
+                LOG.debug( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW + ": " + config.get( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW ) + "ms" );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "group-commit-window attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, RecoveryManager.RECOVERY_REDO_THREADS_ATTRIBUTE );
+
+        if( option != null ) {
+
+            try {
+                setProperty( RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS, Integer.valueOf( option ) );
+                LOG.debug( RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS + ": " + config.get( RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "redo-threads attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1201,6 +1321,19 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String warmUp = getConfigAttributeValue( queryPool, XQueryPool.WARM_UP_ATTRIBUTE );
+
+        if( warmUp != null ) {
+
+            try {
+                config.put( XQueryPool.PROPERTY_WARM_UP, Integer.valueOf(warmUp) );
+                LOG.debug( XQueryPool.PROPERTY_WARM_UP + ": " + config.get( XQueryPool.PROPERTY_WARM_UP ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
     }
     
     public static class StartupTriggerConfig {
@@ -14,6 +14,7 @@ public abstract class AbstractFLWORClause extends AbstractExpression implements
     private FLWORClause previousClause  = null;
     protected Expression returnExpr;
     private int actualReturnType = Type.ITEM;
+    private long limit = -1;
 
     public AbstractFLWORClause(XQueryContext context) {
         super(context);
@@ -46,6 +47,20 @@ public abstract class AbstractFLWORClause extends AbstractExpression implements
         return seq;
     }
 
+    /**
+     * Restricts the result of the clause to its leading items, see {@link FLWORResultLimit}.
+     * Only "for" and "order by" clauses make use of the limit.
+     *
+     * @param limit the number of leading items which are needed, or -1 for all
+     */
+    public void setLimit(final long limit) {
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
     @Override
     public void setReturnExpression(Expression expr) {
         this.returnExpr = expr;
@@ -54,4 +54,9 @@ public class AncestorSelector implements NodeSelector {
             {return ((ExtNodeSet) descendants).hasDescendantsInSet(doc, nodeId,
                 includeSelf, contextId, copyMatches);}
     }
+
+    @Override
+    public boolean prepareConcurrentMatch() {
+        return NodeSelector.prepareConcurrentRead(descendants == null ? ancestors : descendants);
+    }
 }
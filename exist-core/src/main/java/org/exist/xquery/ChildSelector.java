@@ -52,4 +52,9 @@ public class ChildSelector implements NodeSelector {
             {p.copyContext(contextNode);}
         return p;
     }
+
+    @Override
+    public boolean prepareConcurrentMatch() {
+        return NodeSelector.prepareConcurrentRead(context);
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.indexing.Index;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.xquery.Constants.Comparison;
+
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the number of nodes an index lookup selects, based on the element and value
+ * distribution collected by {@link IndexStatistics}. Used by the {@link Optimizer} and the
+ * {@link org.exist.xquery.pragmas.Optimize} pragma to choose the order in which predicates
+ * and index lookups are applied.
+ *
+ * Estimates are only available if the index-stats module is enabled in conf.xml.
+ */
+public final class CostEstimator {
+
+    /**
+     * Returned by estimates if the cost is not known.
+     */
+    public static final double UNKNOWN = -1;
+
+    /**
+     * Fraction of the indexed nodes assumed to match a full text query.
+     */
+    static final double FULL_TEXT_SELECTIVITY = 0.01;
+
+    private final IndexStatistics statistics;
+
+    private CostEstimator(final IndexStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns an estimator for the database of the context.
+     *
+     * @param context the query context
+     *
+     * @return the estimator, or null if no statistics are collected
+     */
+    public static @Nullable CostEstimator get(final XQueryContext context) {
+        final Index index = context.getBroker().getBrokerPool().getIndexManager().getIndexById(IndexStatistics.ID);
+        return index instanceof IndexStatistics ? new CostEstimator((IndexStatistics) index) : null;
+    }
+
+    /**
+     * Returns the number of elements or attributes with the given name.
+     *
+     * @param qname the name, with the name type of an element or attribute
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount(final QName qname) {
+        return statistics.getNodeCount(qname);
+    }
+
+    /**
+     * Estimates the number of nodes selected by comparing the value of all
+     * nodes with the given name with a value.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     * @param relation the comparison operator
+     * @param value the value compared with, or null if it is not known at compile time
+     *
+     * @return the number of nodes, or {@link #UNKNOWN}
+     */
+    public double estimateMatches(final QName qname, final Comparison relation, @Nullable final String value) {
+        final double selectivity = statistics.getSelectivity(qname, relation, value);
+        if (selectivity < 0) {
+            return UNKNOWN;
+        }
+        return selectivity * statistics.getNodeCount(qname);
+    }
+
+    /**
+     * Estimates the number of nodes selected by a full text query on the nodes with the given name.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     *
+     * @return the number of nodes
+     */
+    public double estimateFullTextMatches(final QName qname) {
+        return FULL_TEXT_SELECTIVITY * statistics.getNodeCount(qname);
+    }
+}
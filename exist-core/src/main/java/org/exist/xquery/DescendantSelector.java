@@ -52,4 +52,9 @@ public class DescendantSelector implements NodeSelector {
             {p.copyContext(contextNode);}
         return p;
     }
+
+    @Override
+    public boolean prepareConcurrentMatch() {
+        return NodeSelector.prepareConcurrentRead(context);
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets an expression which only reads the leading items of a FLWOR expression,
+ * like fn:subsequence, fn:head or a positional predicate, stop the evaluation
+ * of the FLWOR expression once enough items have been produced.
+ *
+ * If the result of the FLWOR expression comes from an "order by" clause, the
+ * clause only keeps the leading items while it collects the tuples. Otherwise,
+ * if there is no "group by" clause, every "for" clause stops iterating its input
+ * once it has produced enough items. As the result of the FLWOR expression is
+ * the concatenation of those items, its leading items are not affected.
+ */
+public final class FLWORResultLimit {
+
+    private final AbstractFLWORClause[] clauses;
+
+    private FLWORResultLimit(final List<AbstractFLWORClause> clauses) {
+        this.clauses = clauses.toArray(new AbstractFLWORClause[0]);
+    }
+
+    /**
+     * Finds the clauses of a FLWOR expression which can make use of a limit.
+     *
+     * @param expr the expression whose leading items are read
+     *
+     * @return the clauses, or null if expr is not a FLWOR expression,
+     *     or its result cannot be limited
+     */
+    public static @Nullable FLWORResultLimit find(Expression expr) {
+        while (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck || expr instanceof DebuggableExpression
+                || (expr != null && expr.getClass() == PathExpr.class && expr.getSubExpressionCount() == 1)) {
+            expr = expr.getSubExpression(0);
+        }
+        if (!(expr instanceof ForExpr || expr instanceof LetExpr)) {
+            return null;
+        }
+
+        final List<AbstractFLWORClause> forClauses = new ArrayList<>();
+        boolean grouped = false;
+        while (expr instanceof AbstractFLWORClause) {
+            final AbstractFLWORClause clause = (AbstractFLWORClause) expr;
+            switch (clause.getType()) {
+                case FOR:
+                    forClauses.add(clause);
+                    break;
+                case LET:
+                case WHERE:
+                    break;
+                case GROUPBY:
+                    grouped = true;
+                    break;
+                case ORDERBY:
+                    if (clause.getReturnExpression() instanceof FLWORClause) {
+                        return null;
+                    }
+                    final List<AbstractFLWORClause> orderBy = new ArrayList<>(1);
+                    orderBy.add(clause);
+                    return new FLWORResultLimit(orderBy);
+                default:
+                    return null;
+            }
+            expr = clause.getReturnExpression();
+        }
+        if (grouped || forClauses.isEmpty()) {
+            return null;
+        }
+        return new FLWORResultLimit(forClauses);
+    }
+
+    /**
+     * Evaluates the FLWOR expression, or an expression wrapping it, with a limit.
+     *
+     * @param limit the number of leading items which are needed, values below 1 mean all items
+     * @param expr the expression passed to {@link #find(Expression)}
+     * @param contextSequence the context sequence
+     * @param contextItem the context item
+     *
+     * @return the result of expr, which contains at least the leading items
+     *
+     * @throws XPathException if the evaluation fails
+     */
+    public Sequence eval(final long limit, final Expression expr, final Sequence contextSequence, final Item contextItem)
+            throws XPathException {
+        // the clauses may be evaluated recursively, so an evaluation which needs all items must
+        // not inherit the limit of an outer one, and the outer limits are restored afterwards
+        final long newLimit = limit < 1 ? -1 : limit;
+        final long[] previousLimits = new long[clauses.length];
+        for (int i = 0; i < clauses.length; i++) {
+            previousLimits[i] = clauses[i].getLimit();
+            clauses[i].setLimit(newLimit);
+        }
+        try {
+            return expr.eval(contextSequence, contextItem);
+        } finally {
+            for (int i = 0; i < clauses.length; i++) {
+                clauses[i].setLimit(previousLimits[i]);
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.memtree.NodeImpl;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
@@ -43,6 +44,7 @@ public class FilteredExpression extends AbstractExpression {
     protected boolean abbreviated = false;
     final protected List<Predicate> predicates = new ArrayList<>(2);
     private Expression parent;
+    private FLWORResultLimit resultLimit = null;
 
     public FilteredExpression(XQueryContext context, Expression expr) {
         super(context);
@@ -78,6 +80,7 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+            resultLimit = FLWORResultLimit.find(expression);
         }
     }
 
@@ -99,7 +102,13 @@ public class FilteredExpression extends AbstractExpression {
         if (contextItem != null)
             {contextSequence = contextItem.toSequence();}
         Sequence result;
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final Sequence seq;
+        if (resultLimit != null && !abbreviated) {
+            // a FLWOR expression only needs to produce the items up to the last position selected by the predicate
+            seq = resultLimit.eval(getPositionalLimit(predicates.get(0)), expression, contextSequence, contextItem);
+        } else {
+            seq = expression.eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
         else {
@@ -143,6 +152,67 @@ public class FilteredExpression extends AbstractExpression {
         return result;
     }
 
+    /**
+     * Returns the last position which a predicate like [10], [$n], [position() le 10]
+     * or [position() lt $n] can select.
+     *
+     * @param pred the predicate
+     *
+     * @return the last position, or -1 if the predicate is not of this kind
+     */
+    private long getPositionalLimit(final Predicate pred) throws XPathException {
+        if (pred.getLength() != 1) {
+            return -1;
+        }
+        final Expression inner = unwrap(pred.getExpression(0));
+        if (pred.getExecutionMode() == Predicate.POSITIONAL) {
+            final double position = getPosition(inner);
+            return Double.isNaN(position) ? -1 : (long) Math.floor(position);
+        }
+        if (inner instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) inner;
+            final Expression left = unwrap(comparison.getLeft());
+            if (left instanceof InternalFunctionCall && ((InternalFunctionCall) left).getFunction() instanceof FunPosition) {
+                final double position = getPosition(unwrap(comparison.getRight()));
+                if (Double.isNaN(position)) {
+                    return -1;
+                }
+                switch (comparison.getRelation()) {
+                    case LT:
+                        return (long) Math.ceil(position) - 1;
+                    case LTEQ:
+                    case EQ:
+                        return (long) Math.floor(position);
+                    default:
+                        return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value of a literal or variable holding a single number.
+     */
+    private static double getPosition(final Expression expr) throws XPathException {
+        if (!(expr instanceof LiteralValue || expr instanceof VariableReference)) {
+            return Double.NaN;
+        }
+        final Sequence seq = expr.eval(null, null);
+        if (!seq.hasOne() || !Type.subTypeOf(seq.itemAt(0).getType(), Type.NUMBER)) {
+            return Double.NaN;
+        }
+        return ((NumericValue) seq.itemAt(0)).getDouble();
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (expr instanceof Atomize || expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck
+                || (expr.getClass() == PathExpr.class && expr.getSubExpressionCount() == 1)) {
+            expr = expr.getSubExpression(0);
+        }
+        return expr;
+    }
+
     private Sequence processPredicate(Sequence contextSequence, Sequence seq) throws XPathException {
         for (final Predicate pred : predicates) {
             seq = pred.evalPredicate(contextSequence, seq, Constants.DESCENDANT_SELF_AXIS);
@@ -185,7 +185,9 @@ public class ForExpr extends BindingExpression {
             if (in.isEmpty() && allowEmpty) {
                 processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
             } else {
-                for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
+                // stop once the leading items requested by a consumer have been produced, see FLWORResultLimit
+                final long limit = getLimit();
+                for (final SequenceIterator i = in.iterate(); i.hasNext() && (limit < 1 || resultSequence.getItemCountLong() < limit); p++) {
                     processItem(var, i.nextItem(), in, resultSequence, at, p);
                 }
             }
@@ -270,6 +270,42 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
     }
 
 
+    /**
+     * Estimates the cost of the comparison if it compares with a literal or a variable.
+     * Other operands may depend on the context position, so predicates using them must
+     * not be reordered.
+     */
+    @Override
+    public double estimatePreSelection( CostEstimator estimator )
+    {
+        if( contextQName == null ) {
+            return( CostEstimator.UNKNOWN );
+        }
+        Expression right = getRight();
+
+        while( ( right instanceof PathExpr ) && ( ( ( PathExpr )right ).getLength() == 1 ) ) {
+            right = ( ( PathExpr )right ).getExpression( 0 );
+        }
+        String value = null;
+
+        if( right instanceof LiteralValue ) {
+            try {
+                value = ( ( LiteralValue )right ).getValue().getStringValue();
+            }
+            catch( final XPathException e ) {
+                return( CostEstimator.UNKNOWN );
+            }
+        } else if( !( right instanceof VariableReference ) ) {
+            return( CostEstimator.UNKNOWN );
+        }
+
+        if( truncation != StringTruncationOperator.NONE ) {
+            value = null;
+        }
+        return( estimator.estimateMatches( contextQName, relation, value ) );
+    }
+
+
     /* (non-Javadoc)
      * @see org.exist.xquery.BinaryOp#returnsType()
      */
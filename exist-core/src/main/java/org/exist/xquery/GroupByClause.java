@@ -1,11 +1,17 @@
 package org.exist.xquery;
 
 import com.ibm.icu.text.Collator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
+import org.exist.xquery.functions.fn.FunCount;
+import org.exist.xquery.functions.fn.FunSum;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -15,9 +21,21 @@ import java.util.stream.Stream;
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    private static final Logger LOG = LogManager.getLogger(GroupByClause.class);
+
+    public static final String GROUP_BY_MEMORY_BUDGET_ATTRIBUTE = "group-by-memory-budget";
+    public static final String PROPERTY_GROUP_BY_MEMORY_BUDGET = "xquery.group-by-memory-budget";
+    public static final int GROUP_BY_MEMORY_BUDGET_DEFAULT = 1000000;
+
+    /**
+     * Namespace of the variables which hold the count() and sum() of a non-grouping variable.
+     */
+    private static final String AGGREGATE_NS = "http://exist-db.org/xquery/group-by/aggregate";
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
+    private ReturnAnalysis analysis = null;
 
     /**
      * Collect tuples and grouping vars. Because GroupByClause needs to keep
@@ -27,22 +45,53 @@ public class GroupByClause extends AbstractFLWORClause {
      */
     private class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
-        private Map<QName, LocalVariable> variables = null;
-        private List<LocalVariable> groupingVars = null;
+        private final Map<GroupKey, Group> groupedMap;
+        private final List<LocalVariable> groupingVars = new ArrayList<>();
+
+        /**
+         * The variables of a group, and for each in-scope variable
+         * the index of its slot, or -1 if its values are not needed.
+         */
+        private Slot[] slots = null;
+        private int[] slotOfVariable = null;
 
         private boolean initialized = false;
 
+        /**
+         * Groups are only written to partitions if they are kept in a hash map.
+         */
+        private boolean spillable;
+        private final long memoryBudget;
+        private long retainedItems = 0;
+        private GroupByPartitions partitions = null;
+
         public GroupByData() {
             // check if we can use a hash map
             if (usesDefaultCollator()) {
                 groupedMap = new HashMap<>();
+                spillable = true;
             } else {
                 // non-default collation: must use tree map
                 groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
+                spillable = false;
             }
-            variables = new HashMap<>();
-            groupingVars = new ArrayList<>();
+            memoryBudget = getMemoryBudget();
+        }
+    }
+
+    /**
+     * The variables which are bound for a non-grouping variable
+     * in the return expression.
+     */
+    private static class Slot {
+        private final LocalVariable var;
+        private final LocalVariable countVar;
+        private final LocalVariable sumVar;
+
+        Slot(final LocalVariable var, final LocalVariable countVar, final LocalVariable sumVar) {
+            this.var = var;
+            this.countVar = countVar;
+            this.sumVar = sumVar;
         }
     }
 
@@ -66,9 +115,10 @@ public class GroupByClause extends AbstractFLWORClause {
         final GroupByData data = stack.peek();
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final AtomicValue[] groupingKeys = new AtomicValue[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -83,31 +133,240 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 data.groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = groupingValue;
         }
 
-        // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
+        if (!data.initialized) {
+            // on first call: initialize non-grouping variables for later use
+            initSlots(data);
+            data.initialized = true;
+        }
+
+        // collect the current tuple into the grouping map
+        final GroupKey key = new GroupKey(groupingKeys);
+        Group group = data.groupedMap.get(key);
+        if (group == null) {
+            if (data.partitions != null && spill(data, key, groupingValues)) {
+                return contextSequence;
+            }
+            // the group may have been read back from the partitions
+            group = data.groupedMap.get(key);
+        }
+        if (group == null) {
+            group = new Group(groupingValues, data.slots.length);
+            data.groupedMap.put(key, group);
+            data.retainedItems++;
+        }
 
         // scan in-scope variables to collect tuples
+        int i = 0;
+        for (LocalVariable nextVar = rootClause.getStartVariable(); nextVar != null && i < data.slotOfVariable.length; nextVar = nextVar.after, i++) {
+            final int slot = data.slotOfVariable[i];
+            if (slot >= 0) {
+                data.retainedItems += add(group, slot, data.slots[slot], nextVar.getValue());
+            }
+        }
+
+        if (data.spillable && data.partitions == null && data.memoryBudget > 0 && data.retainedItems > data.memoryBudget) {
+            // new groups from now on go to disk
+            data.partitions = new GroupByPartitions(groupSpecs.length, data.slotOfVariable.length);
+        }
+
+        return contextSequence;
+    }
+
+    /**
+     * Determines which in-scope variables have to be collected for each group,
+     * and if only their count() or sum() is needed.
+     */
+    private void initSlots(final GroupByData data) throws XPathException {
+        final Set<QName> groupingVarNames = new HashSet<>();
+        for (final GroupSpec spec : groupSpecs) {
+            groupingVarNames.add(spec.getKeyVarName());
+        }
+
+        final Map<QName, Integer> slotOfName = new HashMap<>();
+        final List<Slot> slots = new ArrayList<>();
+        final List<Integer> slotOfVariable = new ArrayList<>();
+
         LocalVariable nextVar = rootClause.getStartVariable();
         Objects.requireNonNull(nextVar);
-        while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
-            if (!data.initialized) {
-                // on first call: initialize non-grouping variable for later use
-                final LocalVariable var = new LocalVariable(nextVar.getQName());
-                var.setSequenceType(nextVar.getSequenceType());
-                var.setStaticType(nextVar.getStaticType());
-                var.setContextDocs(nextVar.getContextDocs());
-                data.variables.put(var.getQName(), var);
+        while (nextVar != null) {
+            final QName name = nextVar.getQName();
+            Integer slot = slotOfName.get(name);
+            if (slot == null) {
+                final Aggregation aggregation = analysis == null ? null : analysis.aggregations.get(name);
+                final boolean referenced = analysis == null || !analysis.complete || analysis.plainRefs.contains(name);
+                if (groupingVarNames.contains(name) || (!referenced && aggregation == null)) {
+                    // shadowed by a grouping variable, or not used after grouping
+                    slot = -1;
+                } else {
+                    LocalVariable var = null;
+                    if (referenced) {
+                        var = new LocalVariable(name);
+                        var.setSequenceType(nextVar.getSequenceType());
+                        var.setStaticType(nextVar.getStaticType());
+                        var.setContextDocs(nextVar.getContextDocs());
+                    }
+                    final LocalVariable countVar = aggregation == null || aggregation.countVar == null ?
+                            null : new LocalVariable(aggregation.countVar);
+                    final LocalVariable sumVar = aggregation == null || aggregation.sumVar == null ?
+                            null : new LocalVariable(aggregation.sumVar);
+                    slot = slots.size();
+                    slots.add(new Slot(var, countVar, sumVar));
+                }
+                slotOfName.put(name, slot);
             }
+            slotOfVariable.add(slot);
             nextVar = nextVar.after;
         }
 
-        data.initialized = true;
-        return contextSequence;
+        data.slots = slots.toArray(new Slot[0]);
+        data.slotOfVariable = slotOfVariable.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Adds the value of a variable to a group.
+     *
+     * @return the number of items which the group retains
+     */
+    private long add(final Group group, final int index, final Slot slot, final Sequence value) throws XPathException {
+        if (slot.countVar != null) {
+            group.counts[index] += value.getItemCountLong();
+        }
+        if (slot.sumVar != null) {
+            group.sums[index] = sum(group.sums[index], value);
+        }
+        if (slot.var != null) {
+            if (group.values[index] == null) {
+                group.values[index] = new ValueSequence(value.getItemCount());
+            }
+            group.values[index].addAll(value);
+            return value.getItemCountLong();
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the value of a variable of a tuple, which was written to a partition, to a group.
+     */
+    private void addSpilled(final Group group, final int index, final Slot slot, final long count, final Sequence value) throws XPathException {
+        if (slot.countVar != null) {
+            group.counts[index] += count;
+        }
+        if (slot.sumVar != null) {
+            // the value is the sum of the tuple
+            group.sums[index] = sum(group.sums[index], value);
+        }
+        if (slot.var != null) {
+            if (group.values[index] == null) {
+                group.values[index] = new ValueSequence(value.getItemCount());
+            }
+            group.values[index].addAll(value);
+        }
+    }
+
+    /**
+     * Adds the items of a sequence to a sum, as fn:sum does.
+     *
+     * @param sum the sum so far, or null if no item has been added yet
+     * @param seq the items to add
+     *
+     * @return the new sum, or null if there are no items yet
+     */
+    private ComputableValue sum(ComputableValue sum, final Sequence seq) throws XPathException {
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            if (sum instanceof NumericValue && ((NumericValue) sum).isNaN()) {
+                // fn:sum ignores any values after NaN
+                break;
+            }
+            final AtomicValue value = FunSum.check(this, i.nextItem().atomize(), sum);
+            if (sum == null) {
+                sum = (ComputableValue) value;
+            } else if (Type.subTypeOf(value.getType(), Type.NUMBER) && ((NumericValue) value).isNaN()) {
+                sum = DoubleValue.NaN;
+            } else {
+                sum = (ComputableValue) sum.promote(value);
+                sum = sum.plus((ComputableValue) value);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Writes a tuple of a group, which is not held in memory, to its partition.
+     *
+     * If the tuple cannot be written, the partitions are read back into memory,
+     * and the clause does not write to partitions any more.
+     *
+     * @return true if the tuple was written, false if it has to be added in memory
+     */
+    private boolean spill(final GroupByData data, final GroupKey key, final Sequence[] groupingValues) throws XPathException {
+        final long[] counts = new long[data.slotOfVariable.length];
+        final Sequence[] values = new Sequence[data.slotOfVariable.length];
+        boolean spillable = Stream.of(key.values).allMatch(value -> GroupByPartitions.isSpillable((Item) value)) &&
+                Stream.of(groupingValues).allMatch(this::isSpillable);
+
+        int i = 0;
+        for (LocalVariable nextVar = rootClause.getStartVariable(); spillable && nextVar != null && i < values.length; nextVar = nextVar.after, i++) {
+            final int slot = data.slotOfVariable[i];
+            final Sequence value = nextVar.getValue();
+            counts[i] = value.getItemCountLong();
+            if (slot < 0) {
+                values[i] = Sequence.EMPTY_SEQUENCE;
+            } else if (data.slots[slot].var != null) {
+                values[i] = value;
+                spillable = GroupByPartitions.isSpillable(value);
+            } else if (data.slots[slot].sumVar != null) {
+                final ComputableValue sum = sum(null, value);
+                values[i] = sum == null ? Sequence.EMPTY_SEQUENCE : sum;
+                spillable = GroupByPartitions.isSpillable(values[i]);
+            } else {
+                values[i] = Sequence.EMPTY_SEQUENCE;
+            }
+        }
+
+        try {
+            if (!spillable) {
+                // continue in memory
+                final GroupByPartitions partitions = data.partitions;
+                data.partitions = null;
+                data.spillable = false;
+                try {
+                    for (int partition = 0; partition < GroupByPartitions.PARTITION_COUNT; partition++) {
+                        partitions.read(partition, tuple -> addSpilled(data, data.groupedMap, tuple));
+                    }
+                } finally {
+                    partitions.close();
+                }
+                return false;
+            }
+
+            data.partitions.write(GroupByPartitions.partitionOf(key.hashCode()),
+                    new GroupByPartitions.SpilledTuple(key.values, groupingValues, counts, values));
+            return true;
+        } catch (final IOException e) {
+            throw new XPathException(this, "Unable to write group by partition: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isSpillable(final Sequence seq) {
+        try {
+            return GroupByPartitions.isSpillable(seq);
+        } catch (final XPathException e) {
+            return false;
+        }
+    }
+
+    private void addSpilled(final GroupByData data, final Map<GroupKey, Group> groups, final GroupByPartitions.SpilledTuple tuple) throws XPathException {
+        final Group group = groups.computeIfAbsent(new GroupKey(tuple.keys), k -> new Group(tuple.groupingValues, data.slots.length));
+        for (int i = 0; i < data.slotOfVariable.length; i++) {
+            final int slot = data.slotOfVariable[i];
+            if (slot >= 0) {
+                addSpilled(group, slot, data.slots[slot], tuple.counts[i], tuple.values[i]);
+            }
+        }
     }
 
     @Override
@@ -117,37 +376,46 @@ public class GroupByClause extends AbstractFLWORClause {
             Sequence result = new ValueSequence();
             final LocalVariable mark = context.markLocalVariables(false);
             try {
-                // declare non-grouping variables
-                for (LocalVariable var : data.variables.values()) {
-                    context.declareVariableBinding(var);
-                }
-                // declare grouping variables
-                for (LocalVariable var : data.groupingVars) {
-                    context.declareVariableBinding(var);
+                if (data.initialized) {
+                    // declare non-grouping variables
+                    for (final Slot slot : data.slots) {
+                        if (slot.var != null) {
+                            context.declareVariableBinding(slot.var);
+                        }
+                        if (slot.countVar != null) {
+                            context.declareVariableBinding(slot.countVar);
+                        }
+                        if (slot.sumVar != null) {
+                            context.declareVariableBinding(slot.sumVar);
+                        }
+                    }
+                    // declare grouping variables
+                    for (LocalVariable var : data.groupingVars) {
+                        context.declareVariableBinding(var);
+                    }
                 }
                 // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
+                for (final Group group : data.groupedMap.values()) {
+                    evalGroup(data, group, result);
+                }
 
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
+                // then over the groups of each partition
+                if (data.partitions != null) {
+                    data.groupedMap.clear();
+                    for (int partition = 0; partition < GroupByPartitions.PARTITION_COUNT; partition++) {
+                        final Map<GroupKey, Group> groups = new HashMap<>();
+                        data.partitions.read(partition, tuple -> addSpilled(data, groups, tuple));
+                        for (final Group group : groups.values()) {
+                            evalGroup(data, group, result);
                         }
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
-                    }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
                 }
+            } catch (final IOException e) {
+                throw new XPathException(this, "Unable to read group by partition: " + e.getMessage(), e);
             } finally {
+                if (data.partitions != null) {
+                    data.partitions.close();
+                }
                 stack.pop();
                 context.popLocalVariables(mark, result);
             }
@@ -161,6 +429,35 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    private void evalGroup(final GroupByData data, final Group group, final Sequence result) throws XPathException {
+        context.proceed();
+
+        // set grouping variable values
+        int i = 0;
+        for (LocalVariable var : data.groupingVars) {
+            if (i < group.groupingValues.length) {
+                var.setValue(group.groupingValues[i++]);
+            } else {
+                throw new XPathException(this, "Internal error: missing grouping value");
+            }
+        }
+        // set values of non-grouping variables
+        for (i = 0; i < data.slots.length; i++) {
+            final Slot slot = data.slots[i];
+            if (slot.var != null) {
+                slot.var.setValue(group.values[i] == null ? Sequence.EMPTY_SEQUENCE : group.values[i]);
+            }
+            if (slot.countVar != null) {
+                slot.countVar.setValue(new IntegerValue(group.counts[i]));
+            }
+            if (slot.sumVar != null) {
+                slot.sumVar.setValue(group.sums[i] == null ? IntegerValue.ZERO : group.sums[i]);
+            }
+        }
+        final Sequence r = returnExpr.eval(null);
+        result.addAll(r);
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -173,6 +470,17 @@ public class GroupByClause extends AbstractFLWORClause {
                     context.declareVariableBinding(groupKeyVar);
                 }
             }
+            if (analysis != null) {
+                // the return expression has already been rewritten
+                for (final Aggregation aggregation : analysis.aggregations.values()) {
+                    if (aggregation.countVar != null) {
+                        context.declareVariableBinding(new LocalVariable(aggregation.countVar));
+                    }
+                    if (aggregation.sumVar != null) {
+                        context.declareVariableBinding(new LocalVariable(aggregation.sumVar));
+                    }
+                }
+            }
 
             final AnalyzeContextInfo newContextInfo = new AnalyzeContextInfo(contextInfo);
             newContextInfo.addFlag(SINGLE_STEP_EXECUTION);
@@ -181,6 +489,12 @@ public class GroupByClause extends AbstractFLWORClause {
             }
 
             returnExpr.analyze(newContextInfo);
+
+            if (analysis == null) {
+                analysis = new ReturnAnalysis();
+                analysis.scan(returnExpr, this::setReturnExpression);
+                analysis.rewrite();
+            }
         } finally {
             // restore the local variable stack
             context.popLocalVariables(mark);
@@ -232,6 +546,11 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        for (final GroupByData data : stack) {
+            if (data.partitions != null) {
+                data.partitions.close();
+            }
+        }
         stack.clear();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
@@ -248,14 +567,16 @@ public class GroupByClause extends AbstractFLWORClause {
      * Compare keys using the collator given in the group spec. Used to
      * sort keys into the grouping map.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
+    private int compareKeys(final GroupKey k1, final GroupKey k2) {
+        final AtomicValue[] s1 = k1.values;
+        final AtomicValue[] s2 = k2.values;
+        final int c1 = s1.length;
+        final int c2 = s2.length;
         if (c1 == c2) {
             try {
                 for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
+                    final AtomicValue v1 = s1[i];
+                    final AtomicValue v2 = s2[i];
                     final Collator collator = groupSpecs[i].getCollator();
                     final int r = v1.compareTo(collator, v2);
                     if (r != Constants.EQUAL) {
@@ -274,24 +595,267 @@ public class GroupByClause extends AbstractFLWORClause {
         return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
     }
 
-    static class Tuple extends HashMap<QName, Sequence> {
+    /**
+     * Returns the number of items which the groups may hold in memory,
+     * before further groups are written to disk. Set by the option
+     * exist:group-by-memory-budget, or in the configuration.
+     *
+     * @return the number of items, or 0 if groups are never written to disk
+     */
+    private long getMemoryBudget() {
+        final Option option = context.getOption(Option.GROUP_BY_MEMORY_BUDGET_QNAME);
+        if (option != null) {
+            try {
+                return Long.parseLong(option.getContents().trim());
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid value for option " + Option.GROUP_BY_MEMORY_BUDGET_QNAME + ": " + option.getContents());
+            }
+        }
+        final Object budget = context.getBroker().getConfiguration().getProperty(PROPERTY_GROUP_BY_MEMORY_BUDGET);
+        return budget instanceof Integer ? (Integer) budget : GROUP_BY_MEMORY_BUDGET_DEFAULT;
+    }
+
+    /**
+     * The atomized grouping keys of a tuple.
+     */
+    static final class GroupKey {
+        private final AtomicValue[] values;
+        private final int hashCode;
+
+        GroupKey(final AtomicValue[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
 
-        private final List<Sequence> groupingValues;
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof GroupKey && Arrays.equals(values, ((GroupKey) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
+    /**
+     * The variables of a group. For each slot, either the values of the
+     * variable, or its count and sum are collected, see {@link Slot}.
+     */
+    static final class Group {
+        private final Sequence[] groupingValues;
+        private final ValueSequence[] values;
+        private final long[] counts;
+        private final ComputableValue[] sums;
+
+        Group(final Sequence[] groupingValues, final int slots) {
             this.groupingValues = groupingValues;
+            this.values = new ValueSequence[slots];
+            this.counts = new long[slots];
+            this.sums = new ComputableValue[slots];
+        }
+    }
+
+    /**
+     * The fn:count and fn:sum calls of a non-grouping variable, which
+     * have been replaced by a reference to a variable holding the result.
+     */
+    private static class Aggregation {
+        private QName countVar = null;
+        private QName sumVar = null;
+    }
+
+    /**
+     * Finds the references to non-grouping variables in the return expression.
+     *
+     * If a variable is only used as the argument of fn:count or fn:sum, the
+     * calls are replaced by a reference to a variable holding the count or
+     * sum, so that the values of the variable do not have to be collected.
+     *
+     * Only expressions which are known not to reference variables other than
+     * through their sub-expressions are scanned. Any other expression
+     * makes the analysis incomplete, in which case nothing is rewritten.
+     *
+     * The sum of a group is computed whilst its tuples are added, so calls of
+     * fn:sum which might not be evaluated, e.g. in the branch of a conditional,
+     * are not rewritten, as they must not raise an error for non-numeric values.
+     */
+    private class ReturnAnalysis {
+        private boolean complete = true;
+        private final Set<QName> plainRefs = new HashSet<>();
+        private final Map<QName, Aggregation> aggregations = new HashMap<>();
+        private final List<AggregateCall> calls = new ArrayList<>();
+        private int conditionalDepth = 0;
+        private int nextAggregate = 0;
+
+        private void scan(final Expression expr, final Consumer<Expression> replace) {
+            if (!complete || expr == null) {
+                return;
+            }
+
+            if (expr instanceof VariableReference) {
+                plainRefs.add(((VariableReference) expr).getName());
+
+            } else if (expr instanceof LiteralValue) {
+                // nothing to do
+
+            } else if (expr instanceof LocationStep) {
+                if (!((LocationStep) expr).getPredicates().isEmpty()) {
+                    complete = false;
+                }
+
+            } else if ((expr instanceof FunCount || (expr instanceof FunSum && conditionalDepth == 0))
+                    && ((Function) expr).getArgumentCount() == 1
+                    && replace != null && aggregatedVariable(((Function) expr).getArgument(0)) != null) {
+                calls.add(new AggregateCall(aggregatedVariable(((Function) expr).getArgument(0)), expr instanceof FunSum, replace, expr));
+
+            } else if (expr instanceof InternalFunctionCall) {
+                scanFunction(((InternalFunctionCall) expr).getFunction());
+
+            } else if (expr instanceof Function) {
+                scanFunction((Function) expr);
+
+            } else if (expr instanceof Atomize || expr instanceof DynamicTypeCheck || expr instanceof DynamicCardinalityCheck) {
+                scan(expr.getSubExpression(0), null);
+
+            } else if (expr instanceof DebuggableExpression) {
+                final DebuggableExpression debuggable = (DebuggableExpression) expr;
+                final Expression inner = debuggable.getFirst();
+                scan(inner, e -> debuggable.replace(inner, e));
+
+            } else if (expr instanceof ConditionalExpression) {
+                final ConditionalExpression conditional = (ConditionalExpression) expr;
+                final Expression test = conditional.getTestExpr();
+                final Expression then = conditional.getThenExpr();
+                final Expression otherwise = conditional.getElseExpr();
+                scan(test, e -> conditional.replace(test, e));
+                scanConditional(then, e -> conditional.replace(then, e));
+                scanConditional(otherwise, e -> conditional.replace(otherwise, e));
+
+            } else if (expr instanceof ElementConstructor) {
+                final ElementConstructor constructor = (ElementConstructor) expr;
+                scan(constructor.getNameExpr(), null);
+                if (constructor.getAttributes() != null) {
+                    for (final AttributeConstructor attribute : constructor.getAttributes()) {
+                        for (final Iterator<Object> i = attribute.contentIterator(); i.hasNext(); ) {
+                            final Object next = i.next();
+                            if (next instanceof Expression) {
+                                scan((Expression) next, null);
+                            }
+                        }
+                    }
+                }
+                scan(constructor.getContent(), null);
+
+            } else if (expr instanceof OrderByClause) {
+                final OrderByClause orderBy = (OrderByClause) expr;
+                for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+                    scan(spec.getSortExpression(), null);
+                }
+                scan(orderBy.getReturnExpression(), orderBy::setReturnExpression);
+
+            } else if (expr instanceof WhereClause) {
+                final WhereClause where = (WhereClause) expr;
+                scan(where.getWhereExpr(), null);
+                scanConditional(where.getReturnExpression(), where::setReturnExpression);
+
+            } else if (expr instanceof LogicalOp) {
+                // the second operand is not evaluated if the first one decides the result
+                final LogicalOp op = (LogicalOp) expr;
+                final Expression left = op.getLeft();
+                final Expression right = op.getRight();
+                scan(left, e -> op.replace(left, e));
+                scanConditional(right, e -> op.replace(right, e));
+
+            } else if (expr.getClass() == PathExpr.class || expr instanceof SequenceConstructor
+                    || expr instanceof EnclosedExpr || expr instanceof BinaryOp || expr instanceof UnaryExpr) {
+                scanSteps((PathExpr) expr);
+
+            } else {
+                complete = false;
+            }
         }
 
-        public void add(final QName name, final Sequence val) throws XPathException {
-            Sequence seq = get(name);
-            if (seq == null) {
-                final ValueSequence temp = new ValueSequence(val.getItemCount());
-                temp.addAll(val);
-                put(name, temp);
+        /**
+         * Scans an expression which is not evaluated for every group.
+         */
+        private void scanConditional(final Expression expr, final Consumer<Expression> replace) {
+            conditionalDepth++;
+            try {
+                scan(expr, replace);
+            } finally {
+                conditionalDepth--;
+            }
+        }
+
+        private void scanFunction(final Function function) {
+            // user defined functions cannot see local variables, nor can the functions of the fn module
+            if (function instanceof FunctionCall || function.getClass().getPackage() == FunCount.class.getPackage()) {
+                scanSteps(function);
             } else {
-                seq.addAll(val);
+                complete = false;
+            }
+        }
+
+        private void scanSteps(final PathExpr path) {
+            for (int i = 0; i < path.getSubExpressionCount(); i++) {
+                final Expression step = path.getSubExpression(i);
+                scan(step, e -> path.replace(step, e));
+            }
+        }
+
+        /**
+         * Returns the name of the variable, if the argument is a variable reference.
+         */
+        private QName aggregatedVariable(Expression arg) {
+            while (arg instanceof Atomize || arg instanceof DynamicTypeCheck || arg instanceof DynamicCardinalityCheck
+                    || (arg != null && arg.getClass() == PathExpr.class && arg.getSubExpressionCount() == 1)) {
+                arg = arg.getSubExpression(0);
             }
+            return arg instanceof VariableReference ? ((VariableReference) arg).getName() : null;
+        }
+
+        private void rewrite() {
+            if (!complete) {
+                calls.clear();
+                return;
+            }
+            for (final AggregateCall call : calls) {
+                if (plainRefs.contains(call.var)) {
+                    continue;
+                }
+                final Aggregation aggregation = aggregations.computeIfAbsent(call.var, v -> new Aggregation());
+                final QName name;
+                if (call.sum) {
+                    if (aggregation.sumVar == null) {
+                        aggregation.sumVar = new QName("sum" + nextAggregate++, AGGREGATE_NS);
+                    }
+                    name = aggregation.sumVar;
+                } else {
+                    if (aggregation.countVar == null) {
+                        aggregation.countVar = new QName("count" + nextAggregate++, AGGREGATE_NS);
+                    }
+                    name = aggregation.countVar;
+                }
+                final VariableReference ref = new VariableReference(context, name);
+                ref.setLocation(call.function.getLine(), call.function.getColumn());
+                call.replace.accept(ref);
+            }
+            calls.clear();
+        }
+    }
+
+    private static class AggregateCall {
+        private final QName var;
+        private final boolean sum;
+        private final Consumer<Expression> replace;
+        private final Expression function;
+
+        AggregateCall(final QName var, final boolean sum, final Consumer<Expression> replace, final Expression function) {
+            this.var = var;
+            this.sum = sum;
+            this.replace = replace;
+            this.function = function;
         }
     }
 }
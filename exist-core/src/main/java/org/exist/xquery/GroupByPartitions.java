@@ -0,0 +1,207 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import com.evolvedbinary.j8fu.function.ConsumerE;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.value.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Hash partitions of the tuples of a {@link GroupByClause}, which
+ * are written to temporary files once the clause exceeds its memory budget.
+ *
+ * All tuples of a group are written to the same partition, so that
+ * the partitions can be grouped one after the other.
+ *
+ * Only atomic values and persistent nodes can be written to a partition,
+ * see {@link #isSpillable(Sequence)}. Items are encoded by a {@link SpillCodec}.
+ */
+final class GroupByPartitions implements Closeable {
+
+    static final int PARTITION_COUNT = 16;
+
+    /**
+     * A tuple, or the contribution of a tuple to a group, as stored in a partition.
+     */
+    static final class SpilledTuple {
+        final AtomicValue[] keys;
+        final Sequence[] groupingValues;
+        final long[] counts;
+        final Sequence[] values;
+
+        SpilledTuple(final AtomicValue[] keys, final Sequence[] groupingValues, final long[] counts, final Sequence[] values) {
+            this.keys = keys;
+            this.groupingValues = groupingValues;
+            this.counts = counts;
+            this.values = values;
+        }
+    }
+
+    private final int keyCount;
+    private final int valueCount;
+    private final Path[] files = new Path[PARTITION_COUNT];
+    private final DataOutputStream[] outputs = new DataOutputStream[PARTITION_COUNT];
+    private final int[] tupleCounts = new int[PARTITION_COUNT];
+    private final SpillCodec codec = new SpillCodec();
+
+    /**
+     * @param keyCount the number of grouping keys of each tuple
+     * @param valueCount the number of variable values of each tuple
+     */
+    GroupByPartitions(final int keyCount, final int valueCount) {
+        this.keyCount = keyCount;
+        this.valueCount = valueCount;
+    }
+
+    /**
+     * Determines if all the items of a sequence can be written to a partition.
+     *
+     * @param seq the sequence
+     *
+     * @return true if the sequence can be written to a partition
+     *
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    static boolean isSpillable(final Sequence seq) throws XPathException {
+        return SpillCodec.isSpillable(seq);
+    }
+
+    /**
+     * Determines if an item can be written to a partition.
+     *
+     * @param item the item
+     *
+     * @return true if the item can be written to a partition
+     */
+    static boolean isSpillable(final Item item) {
+        return SpillCodec.isSpillable(item);
+    }
+
+    /**
+     * Returns the partition for a group.
+     *
+     * @param hash the hash code of the grouping key
+     *
+     * @return the partition
+     */
+    static int partitionOf(final int hash) {
+        return (hash & 0x7fffffff) % PARTITION_COUNT;
+    }
+
+    /**
+     * Writes a tuple to a partition.
+     *
+     * @param partition the partition, see {@link #partitionOf(int)}
+     * @param tuple the tuple, all of its sequences must be spillable
+     *
+     * @throws IOException if the partition cannot be written
+     * @throws XPathException if a sequence of the tuple cannot be iterated
+     */
+    void write(final int partition, final SpilledTuple tuple) throws IOException, XPathException {
+        DataOutputStream os = outputs[partition];
+        if (os == null) {
+            files[partition] = TemporaryFileManager.getInstance().getTemporaryFile();
+            os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[partition])));
+            outputs[partition] = os;
+        }
+
+        for (final AtomicValue key : tuple.keys) {
+            codec.writeItem(os, key);
+        }
+        for (final Sequence groupingValue : tuple.groupingValues) {
+            codec.writeSequence(os, groupingValue);
+        }
+        for (int i = 0; i < tuple.values.length; i++) {
+            os.writeLong(tuple.counts[i]);
+            codec.writeSequence(os, tuple.values[i]);
+        }
+        tupleCounts[partition]++;
+    }
+
+    /**
+     * Reads the tuples of a partition in the order in which they were written.
+     *
+     * @param partition the partition
+     * @param consumer receives the tuples
+     *
+     * @throws IOException if the partition cannot be read
+     * @throws XPathException if a value cannot be restored, or the consumer raises an error
+     */
+    void read(final int partition, final ConsumerE<SpilledTuple, XPathException> consumer) throws IOException, XPathException {
+        final DataOutputStream os = outputs[partition];
+        if (os == null) {
+            return;
+        }
+        os.close();
+        outputs[partition] = null;
+
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(files[partition])))) {
+            for (int t = 0; t < tupleCounts[partition]; t++) {
+                consumer.accept(readTuple(is));
+            }
+        } finally {
+            returnFile(partition);
+        }
+    }
+
+    private SpilledTuple readTuple(final DataInput is) throws IOException, XPathException {
+        final AtomicValue[] keys = new AtomicValue[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = (AtomicValue) codec.readItem(is);
+        }
+        final Sequence[] groupingValues = new Sequence[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            groupingValues[i] = codec.readSequence(is);
+        }
+        final long[] counts = new long[valueCount];
+        final Sequence[] values = new Sequence[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            counts[i] = is.readLong();
+            values[i] = codec.readSequence(is);
+        }
+        return new SpilledTuple(keys, groupingValues, counts, values);
+    }
+
+    private void returnFile(final int partition) {
+        if (files[partition] != null) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(files[partition]);
+            files[partition] = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (final IOException e) {
+                    // the file is discarded anyway
+                }
+                outputs[i] = null;
+            }
+            returnFile(i);
+        }
+    }
+}
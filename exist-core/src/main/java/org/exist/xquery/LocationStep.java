@@ -29,6 +29,7 @@ import org.exist.numbering.NodeId;
 import org.exist.stax.*;
 import org.exist.storage.ElementValue;
 import org.exist.storage.UpdateListener;
+import org.exist.util.Configuration;
 import org.exist.xquery.value.*;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -50,6 +51,9 @@ import java.util.Iterator;
  */
 public class LocationStep extends Step {
 
+    public static final String PATH_STEP_PARALLELISM_ATTRIBUTE = "path-step-parallelism";
+    public static final String PROPERTY_PATH_STEP_PARALLELISM = "xquery.path-step-parallelism";
+
     private static final int INDEX_SCAN_THRESHOLD = 10000;
 
     private NodeSet currentSet = null;
@@ -70,6 +74,44 @@ public class LocationStep extends Step {
     // Cache for the current NodeTest type
     private Integer nodeTestType = null;
 
+    /**
+     * Returns the number of threads which may look up the nodes selected by a
+     * path step in the structural index, each for a part of the documents.
+     * Set by the option exist:path-step-parallelism, and limited by the
+     * configuration.
+     *
+     * @param context the query context
+     *
+     * @return the number of threads, 1 if the lookup is done by the calling thread only
+     */
+    public static int getParallelism(final XQueryContext context) {
+        final Option option = context.getOption(Option.PATH_STEP_PARALLELISM_QNAME);
+        if (option == null) {
+            return 1;
+        }
+        final int requested;
+        try {
+            requested = Integer.parseInt(option.getContents().trim());
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value for option " + Option.PATH_STEP_PARALLELISM_QNAME + ": " + option.getContents());
+            return 1;
+        }
+        return Math.max(1, Math.min(requested, getMaxParallelism(context.getBroker().getConfiguration())));
+    }
+
+    /**
+     * Returns the number of threads which may look up the nodes selected by
+     * path steps, for all queries together.
+     *
+     * @param configuration the database configuration
+     *
+     * @return the number of threads, by default the number of processors
+     */
+    public static int getMaxParallelism(final Configuration configuration) {
+        final Object max = configuration.getProperty(PROPERTY_PATH_STEP_PARALLELISM);
+        return max instanceof Integer ? (Integer) max : Runtime.getRuntime().availableProcessors();
+    }
+
     /**
      * Creates a new instance.
      *
@@ -593,7 +635,7 @@ public class LocationStep extends Step {
                                         + "'");
                     }
                     // TODO : why a null selector here ? We have one below !
-                    currentSet = index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), null, this);
+                    currentSet = index.findElementsByTagNameForJoin(ElementValue.ATTRIBUTE, docs, test.getName(), this);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -682,7 +724,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = index.findElementsByTagNameForJoin(ElementValue.ELEMENT, docs, test.getName(), this);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -745,7 +787,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = index.findElementsByTagNameForJoin(ElementValue.ELEMENT, docs, test.getName(), this);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -23,7 +23,9 @@
 package org.exist.xquery;
 
 import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NewArrayNodeSet;
 import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
 import org.exist.numbering.NodeId;
 
 /**
@@ -32,4 +34,30 @@ import org.exist.numbering.NodeId;
 public interface NodeSelector {
 
     public NodeProxy match(DocumentImpl doc, NodeId nodeId);
+
+    /**
+     * Prepares the selector for calls to {@link #match(DocumentImpl, NodeId)}
+     * from several threads at the same time.
+     *
+     * @return true if match may be called concurrently afterwards
+     */
+    default boolean prepareConcurrentMatch() {
+        return false;
+    }
+
+    /**
+     * Prepares a node set for being read by several threads at the same time.
+     * A {@link NewArrayNodeSet} only changes on reads until it is sorted.
+     *
+     * @param nodes the node set read by a selector
+     *
+     * @return true if the node set may be read concurrently afterwards
+     */
+    static boolean prepareConcurrentRead(final NodeSet nodes) {
+        if (nodes instanceof NewArrayNodeSet) {
+            ((NewArrayNodeSet) nodes).sort();
+            return true;
+        }
+        return false;
+    }
 }
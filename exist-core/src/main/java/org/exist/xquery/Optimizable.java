@@ -38,4 +38,17 @@ public interface Optimizable extends Expression {
     NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException;
 
     int getOptimizeAxis();
+
+    /**
+     * Estimates the number of nodes {@link #preSelect(Sequence, boolean)} selects
+     * without a context.
+     *
+     * @param estimator the estimator providing the statistics of the database
+     *
+     * @return the number of nodes, or {@link CostEstimator#UNKNOWN} if the expression
+     *     cannot estimate its cost
+     */
+    default double estimatePreSelection(CostEstimator estimator) {
+        return CostEstimator.UNKNOWN;
+    }
 }
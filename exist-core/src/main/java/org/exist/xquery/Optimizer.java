@@ -47,6 +47,9 @@ import java.util.*;
  *
  * <pre>declare option exist:optimize "enable=yes|no";</pre>
  *
+ * If the index statistics are enabled, the predicates of a location step are
+ * ordered by their estimated selectivity (see {@link CostEstimator}), so the most
+ * selective predicate is evaluated first.
  */
 public class Optimizer extends DefaultExpressionVisitor {
 
@@ -60,9 +63,12 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private List<QueryRewriter> rewriters;
 
+    private CostEstimator estimator;
+
     public Optimizer(XQueryContext context) {
         this.context = context;
         this.rewriters = context.getBroker().getIndexController().getQueryRewriters(context);
+        this.estimator = CostEstimator.get(context);
     }
 
     public boolean hasOptimized() {
@@ -72,6 +78,8 @@ public class Optimizer extends DefaultExpressionVisitor {
     public void visitLocationStep(LocationStep locationStep) {
         super.visitLocationStep(locationStep);
 
+        orderPredicates(locationStep);
+
         // check query rewriters if they want to rewrite the location step
         Pragma optimizePragma = null;
         for (QueryRewriter rewriter : rewriters) {
@@ -145,6 +153,26 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    public void visitOrderByClause(OrderByClause orderBy) {
+        super.visitOrderByClause(orderBy);
+
+        // check query rewriters if they want to rewrite the sort expressions
+        for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+            for (final QueryRewriter rewriter : rewriters) {
+                try {
+                    final Expression sortExpr = rewriter.rewriteOrderSpec(spec);
+                    if (sortExpr != null) {
+                        spec.replace(spec.getSortExpression(), sortExpr);
+                        hasOptimized = true;
+                        break;
+                    }
+                } catch (XPathException e) {
+                    LOG.warn("Exception called while rewriting order spec: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     public void visitFilteredExpr(FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
 
@@ -199,6 +227,53 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    /**
+     * Orders the predicates of a location step by the estimated number of nodes
+     * they select. The order is only changed if all predicates are filters which
+     * can estimate their cost, see {@link Optimizable#estimatePreSelection(CostEstimator)}.
+     *
+     * @param locationStep the location step
+     */
+    private void orderPredicates(LocationStep locationStep) {
+        final List<Predicate> preds = locationStep.getPredicates();
+        if (estimator == null || preds.size() < 2) {
+            return;
+        }
+        final Map<Predicate, Double> estimates = new IdentityHashMap<>();
+        for (final Predicate pred : preds) {
+            if ((pred.getExecutionMode() != Predicate.NODE && pred.getExecutionMode() != Predicate.BOOLEAN)
+                    || pred.getLength() != 1) {
+                return;
+            }
+            Expression inner = simplifyPath(pred.getExpression(0));
+            if (inner instanceof InternalFunctionCall) {
+                inner = ((InternalFunctionCall) inner).getFunction();
+            }
+            if (!(inner instanceof Optimizable)) {
+                return;
+            }
+            final double estimate = ((Optimizable) inner).estimatePreSelection(estimator);
+            if (estimate < 0) {
+                return;
+            }
+            estimates.put(pred, estimate);
+        }
+
+        final List<Predicate> ordered = new ArrayList<>(preds);
+        ordered.sort(Comparator.comparingDouble(estimates::get));
+        if (ordered.equals(preds)) {
+            return;
+        }
+        if (LOG.isTraceEnabled())
+            {LOG.trace("Reordering predicates by estimated selectivity: " + ExpressionDumper.dump(locationStep));}
+        hasOptimized = true;
+        preds.clear();
+        preds.addAll(ordered);
+        if (context.getProfiler().traceFunctions()) {
+            context.getProfiler().traceOptimization(context, PerformanceStats.OptimizationType.PredicateReordering, locationStep);
+        }
+    }
+
     private boolean hasOptimizable(List<Predicate> preds) {
         // walk through the predicates attached to the current location step.
         // try to find a predicate containing an expression which is an instance
@@ -42,6 +42,9 @@ public class Option {
     public final static QName OPTIMIZE_QNAME = new QName("optimize", Namespaces.EXIST_NS);
     public final static QName OPTIMIZE_IMPLICIT_TIMEZONE = new QName("implicit-timezone", Namespaces.EXIST_NS);
     public final static QName CURRENT_DATETIME = new QName("current-dateTime", Namespaces.EXIST_NS);
+    public final static QName GROUP_BY_MEMORY_BUDGET_QNAME = new QName("group-by-memory-budget", Namespaces.EXIST_NS);
+    public final static QName ORDER_BY_MEMORY_BUDGET_QNAME = new QName("order-by-memory-budget", Namespaces.EXIST_NS);
+    public final static QName PATH_STEP_PARALLELISM_QNAME = new QName("path-step-parallelism", Namespaces.EXIST_NS);
 	
     private final static String[] EMPTY = new String[0];
 
@@ -1,5 +1,7 @@
 package org.exist.xquery;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.OrderedValueSequence;
@@ -8,13 +10,18 @@ import org.exist.xquery.value.Sequence;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * Represents an "order by" clause within a FLWOR expression.
  */
 public class OrderByClause extends AbstractFLWORClause {
 
+    private static final Logger LOG = LogManager.getLogger(OrderByClause.class);
+
+    public static final String ORDER_BY_MEMORY_BUDGET_ATTRIBUTE = "order-by-memory-budget";
+    public static final String PROPERTY_ORDER_BY_MEMORY_BUDGET = "xquery.order-by-memory-budget";
+    public static final int ORDER_BY_MEMORY_BUDGET_DEFAULT = 1000000;
+
     protected OrderSpec[] orderSpecs = null;
 
     /*  OrderByClause needs to keep state between calls to eval and postEval. We thus need
@@ -53,7 +60,7 @@ public class OrderByClause extends AbstractFLWORClause {
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, 100, getLimit(), getMemoryBudget(), context);
         } else {
             orderedResult = stack.pop();
         }
@@ -80,6 +87,26 @@ public class OrderByClause extends AbstractFLWORClause {
         return super.postEval(result);
     }
 
+    /**
+     * Returns the number of items which the clause may keep in memory
+     * before they are sorted and written to disk. Set by the option
+     * exist:order-by-memory-budget, or in the configuration.
+     *
+     * @return the number of items, or 0 if items are always sorted in memory
+     */
+    private long getMemoryBudget() {
+        final Option option = context.getOption(Option.ORDER_BY_MEMORY_BUDGET_QNAME);
+        if (option != null) {
+            try {
+                return Long.parseLong(option.getContents().trim());
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid value for option " + Option.ORDER_BY_MEMORY_BUDGET_QNAME + ": " + option.getContents());
+            }
+        }
+        final Object budget = context.getBroker().getConfiguration().getProperty(PROPERTY_ORDER_BY_MEMORY_BUDGET);
+        return budget instanceof Integer ? (Integer) budget : ORDER_BY_MEMORY_BUDGET_DEFAULT;
+    }
+
     @Override
     public void dump(ExpressionDumper dumper) {
         dumper.display("order by ");
@@ -100,6 +127,11 @@ public class OrderByClause extends AbstractFLWORClause {
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         returnExpr.resetState(postOptimization);
+        if (orderSpecs != null) {
+            for (OrderSpec spec : orderSpecs) {
+                spec.resetState(postOptimization);
+            }
+        }
         stack.clear();
     }
 }
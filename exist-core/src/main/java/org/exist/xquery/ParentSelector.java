@@ -41,4 +41,9 @@ public class ParentSelector implements NodeSelector {
     public NodeProxy match(DocumentImpl doc, NodeId nodeId) {
         return parents.get(doc, nodeId);
     }
+
+    @Override
+    public boolean prepareConcurrentMatch() {
+        return NodeSelector.prepareConcurrentRead(parents);
+    }
 }
@@ -173,7 +173,13 @@ public class PerformanceStats implements BrokerPoolService {
     }
 
     public enum OptimizationType {
-        PositionalPredicate
+        PositionalPredicate,
+        /** predicates were reordered by their estimated selectivity */
+        PredicateReordering,
+        /** the context was preselected by the index lookup at the reported location, which has the lowest estimated cost */
+        IndexPreselection,
+        /** the index lookups were skipped as they were not expected to narrow the context */
+        StructuralScan
     }
 
     private static class CompareByTime implements Comparator<FunctionStats> {
@@ -48,6 +48,19 @@ public class QueryRewriter {
         return null;
     }
 
+    /**
+     * Rewrite the sort expression of an order spec in an "order by" clause, e.g. to read
+     * the sort key from an index instead of atomizing the node. The replacement is evaluated
+     * for each tuple, the tuples are sorted by the clause as before.
+     *
+     * @param orderSpec the order spec to rewrite
+     * @return an expression to replace the sort expression or null if not applicable
+     * @throws XPathException in case of a static error
+     */
+    public Expression rewriteOrderSpec(OrderSpec orderSpec) throws XPathException {
+        return null;
+    }
+
     protected XQueryContext getContext() {
         return context;
     }
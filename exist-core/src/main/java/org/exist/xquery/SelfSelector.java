@@ -55,4 +55,9 @@ public class SelfSelector implements NodeSelector {
         	return null;
         }
     }
+
+    @Override
+    public boolean prepareConcurrentMatch() {
+        return NodeSelector.prepareConcurrentRead(context);
+    }
 }
@@ -39,7 +39,6 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.storage.UpdateListener;
 import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.LockManager;
-import org.exist.storage.lock.ManagedDocumentLock;
 import org.exist.util.LockException;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
@@ -220,18 +219,15 @@ public class ExtCollection extends Function {
         for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
             final DocumentImpl doc = i.next();
 
-            ManagedDocumentLock dlock = null;
             try {
-                if (!context.inProtectedMode()) {
-                    dlock = lockManager.acquireDocumentReadLock(doc.getURI());
+                if (context.inProtectedMode()) {
+                    result.add(new NodeProxy(doc));
+                } else {
+                    // waits only if the document is being updated
+                    result.add(lockManager.readDocumentOptimistically(doc.getURI(), () -> new NodeProxy(doc)));
                 }
-                result.add(new NodeProxy(doc));
             } catch (final LockException e) {
                 throw new XPathException(this, ErrorCodes.FODC0002, e);
-            } finally {
-                if (dlock != null) {
-                    dlock.close();
-                }
             }
         }
 
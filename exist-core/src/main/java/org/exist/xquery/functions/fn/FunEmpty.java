@@ -22,8 +22,10 @@
 package org.exist.xquery.functions.fn;
 
 import org.exist.dom.QName;
+import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.Dependency;
+import org.exist.xquery.FLWORResultLimit;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.Profiler;
@@ -37,6 +39,8 @@ import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
 
+import javax.annotation.Nullable;
+
 /**
  * @author wolf
  */
@@ -53,10 +57,18 @@ public class FunEmpty extends Function {
             new FunctionReturnSequenceType(Type.BOOLEAN, Cardinality.EXACTLY_ONE,
                 "true() if the empty sequence, false() otherwise"));
 
+    @Nullable private FLWORResultLimit resultLimit = null;
+
     public FunEmpty(final XQueryContext context) {
         super(context, signature);
     }
 
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        resultLimit = FLWORResultLimit.find(getArgument(0));
+    }
+
     @Override
     public Sequence eval(final Sequence contextSequence, final Item contextItem)
             throws XPathException {
@@ -74,7 +86,10 @@ public class FunEmpty extends Function {
             }
         }
 
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+        // only the first item of a FLWOR expression is needed
+        final Sequence seq = resultLimit != null ?
+                resultLimit.eval(1, getArgument(0), contextSequence, contextItem) :
+                getArgument(0).eval(contextSequence, contextItem);
         final Sequence result = seq.isEmpty() ? BooleanValue.TRUE : BooleanValue.FALSE;
 
         if (context.getProfiler().isEnabled()) {
@@ -7,17 +7,21 @@ import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.BasicFunction;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.FLWORResultLimit;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
 import org.exist.xquery.value.ValueSequence;
 
+import javax.annotation.Nullable;
+
 public class FunHeadTail extends BasicFunction {
 
 	public final static FunctionSignature signatures[] = {
@@ -38,6 +42,8 @@ public class FunHeadTail extends BasicFunction {
                     },
                 new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the resulting sequence")) };
 	
+	@Nullable private FLWORResultLimit resultLimit = null;
+
 	public FunHeadTail(XQueryContext context, FunctionSignature signature) {
 		super(context, signature);
 	}
@@ -49,6 +55,22 @@ public class FunHeadTail extends BasicFunction {
 			throw new XPathException(this, ErrorCodes.EXXQDY0003, "Function " + 
 					getSignature().getName() + " is only supported for xquery version \"3.0\" and later.");
 		}
+		if (isCalledAs("head")) {
+			resultLimit = FLWORResultLimit.find(getArgument(0));
+		}
+	}
+
+	@Override
+	public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+		if (resultLimit == null) {
+			return super.eval(contextSequence, contextItem);
+		}
+		// only the first item of a FLWOR expression is needed
+		if (contextItem != null) {
+			contextSequence = contextItem.toSequence();
+		}
+		final Sequence arg = resultLimit.eval(1, getArgument(0), contextSequence, contextItem);
+		return eval(new Sequence[] { arg }, contextSequence);
 	}
 	
 	@Override
@@ -59,6 +59,11 @@ public class FunSubSequence extends Function {
                     },
                     new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the subsequence"))};
 
+    /**
+     * Limits the source sequence, if it is a FLWOR expression.
+     */
+    @Nullable private FLWORResultLimit resultLimit = null;
+
     public FunSubSequence(final XQueryContext context, final FunctionSignature signature) {
         super(context, signature);
     }
@@ -80,6 +85,10 @@ public class FunSubSequence extends Function {
                 contextInfo.setStaticReturnType(argContextInfo.getStaticReturnType());
             }
         }
+
+        if (getArgumentCount() == 3) {
+            resultLimit = FLWORResultLimit.find(getArgument(0));
+        }
     }
 
     @Override
@@ -100,14 +109,29 @@ public class FunSubSequence extends Function {
         }
 
         final Sequence result;
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
-        if (seq.isEmpty()) {
-            result = Sequence.EMPTY_SEQUENCE;
+        if (resultLimit != null) {
+            // evaluate the bounds first, so that the source is only evaluated up to the end of the subsequence
+            final DoubleValue startLoc = (DoubleValue) getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final DoubleValue length = (DoubleValue) getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final long startArg = startLoc.getLong();
+            final long lengthArg = length.getLong();
+
+            long limit = -1;
+            if (lengthArg > 0 && startArg < Long.MAX_VALUE - lengthArg && startArg + lengthArg > 1) {
+                limit = startArg + lengthArg - 1;
+            }
+            final Sequence seq = resultLimit.eval(limit, getArgument(0), contextSequence, contextItem);
+            result = seq.isEmpty() ? Sequence.EMPTY_SEQUENCE : subsequence(seq, startLoc, length);
         } else {
-            return subsequence(seq,
-                    ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
-                    getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
-            );
+            final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+            if (seq.isEmpty()) {
+                result = Sequence.EMPTY_SEQUENCE;
+            } else {
+                return subsequence(seq,
+                        ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
+                        getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
+                );
+            }
         }
 
         if (context.getProfiler().isEnabled()) {
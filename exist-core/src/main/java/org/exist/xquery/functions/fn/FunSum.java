@@ -25,6 +25,7 @@ import org.exist.dom.QName;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.Dependency;
 import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.Expression;
 import org.exist.xquery.Function;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.Profiler;
@@ -102,7 +103,7 @@ public class FunSum extends Function {
     		Item item = iter.nextItem();
     		AtomicValue value = item.atomize();
 
-        	value = check(value, null);
+        	value = check(this, value, null);
     		
     		//Set the first value
     		ComputableValue sum = (ComputableValue) value;
@@ -110,7 +111,7 @@ public class FunSum extends Function {
     			item = iter.nextItem();
     			value = item.atomize();
 
-            	value = check(value, sum);
+            	value = check(this, value, sum);
     			
         		if (Type.subTypeOf(value.getType(), Type.NUMBER)) {
     				if (((NumericValue)value).isInfinite())
@@ -140,29 +141,41 @@ public class FunSum extends Function {
         return result;        
 	}
 	
-	private AtomicValue check(AtomicValue value, ComputableValue sum) throws XPathException {
+	/**
+	 * Checks that a value can be added to a sum, and converts it
+	 * to the type in which it is added.
+	 *
+	 * @param expr the expression which computes the sum, used for error reporting
+	 * @param value the value to be added
+	 * @param sum the sum so far, or null if value is the first value
+	 *
+	 * @return the value to add to the sum
+	 *
+	 * @throws XPathException if the value can not be added to the sum
+	 */
+	public static AtomicValue check(final Expression expr, AtomicValue value, final ComputableValue sum) throws XPathException {
 		//Duration values must either all be xs:yearMonthDuration values or must all be xs:dayTimeDuration values.
 		if (Type.subTypeOf(value.getType(), Type.DURATION)) {
 			value = ((DurationValue)value).wrap();
 			if (value.getType() == Type.YEAR_MONTH_DURATION) {
             	if (sum != null && sum.getType() != Type.YEAR_MONTH_DURATION)
-            		{throw new XPathException(this, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(sum.getType()) +
+            		{throw new XPathException(expr, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(sum.getType()) +
             				" and " + Type.getTypeName(value.getType()), value);}
     		
 			} else if (value.getType() == Type.DAY_TIME_DURATION) {
             	if (sum != null && sum.getType() != Type.DAY_TIME_DURATION)
-            		{throw new XPathException(this, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(sum.getType()) +
+            		{throw new XPathException(expr, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(sum.getType()) +
             				" and " + Type.getTypeName(value.getType()), value);}
 				
 			} else
-				{throw new XPathException(this, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(value.getType()), value);}
+				{throw new XPathException(expr, ErrorCodes.FORG0006, "Cannot compare " + Type.getTypeName(value.getType()), value);}
 
 		//Any values of type xdt:untypedAtomic in the sequence $arg are cast to xs:double
 		} else if (value.getType() == Type.UNTYPED_ATOMIC) 
         	{value = value.convertTo(Type.DOUBLE);}
 		
 		if (!(value instanceof ComputableValue))
-			{throw new XPathException(this, ErrorCodes.XPTY0004, "" + Type.getTypeName(value.getType()) + "(" + value + ")' can not be an operand in a sum");}
+			{throw new XPathException(expr, ErrorCodes.XPTY0004, "" + Type.getTypeName(value.getType()) + "(" + value + ")' can not be an operand in a sum");}
 
 		return value;
 	}
@@ -127,9 +127,7 @@ public class DocumentNameOrId extends BasicFunction {
                     final NodeProxy proxy = (NodeProxy) node;
                     final DocumentImpl doc = proxy.getOwnerDocument();
                     if(doc != null) {
-                        try (final ManagedDocumentLock docLock = context.getBroker().getBrokerPool().getLockManager().acquireDocumentReadLock(doc.getURI())){
-                            return documentNameOrId(doc);
-                        }
+                        return context.getBroker().getBrokerPool().getLockManager().readDocumentOptimistically(doc.getURI(), () -> documentNameOrId(doc));
                     } else {
                         return resourceById(args);
                     }
@@ -26,6 +26,7 @@ import org.exist.collections.Collection;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.QName;
 import org.exist.indexing.StructuralIndex;
+import org.exist.storage.ElementValue;
 import org.exist.storage.QNameRangeIndexSpec;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
@@ -49,6 +50,7 @@ public class Optimize extends Pragma {
     private LocationStep contextStep = null;
     private VariableReference contextVar = null;
     private int contextId = Expression.NO_CONTEXT_ID;
+    private boolean structuralScan = false;
 
     private NodeSet cachedContext = null;
     private int cachedTimestamp;
@@ -81,7 +83,11 @@ public class Optimize extends Pragma {
         boolean optimize = false;
         NodeSet originalContext = null;
 
-        if (contextSequence == null || contextSequence.isPersistentSet()) {    // don't try to optimize in-memory node sets!
+        if (structuralScan) {
+            if (context.getProfiler().traceFunctions()) {
+                context.getProfiler().traceOptimization(context, PerformanceStats.OptimizationType.StructuralScan, innerExpr);
+            }
+        } else if (contextSequence == null || contextSequence.isPersistentSet()) {    // don't try to optimize in-memory node sets!
             // contextSequence will be overwritten
             originalContext = contextSequence == null ? null : contextSequence.toNodeSet();
             if (cachedContext != null && cachedContext == originalContext)
@@ -107,6 +113,10 @@ public class Optimize extends Pragma {
             }
         }
         if (optimize) {
+            if (context.getProfiler().traceFunctions()) {
+                context.getProfiler().traceOptimization(context, PerformanceStats.OptimizationType.IndexPreselection,
+                        optimizables[0]);
+            }
             cachedContext = originalContext;
             cachedTimestamp = originalContext == null ? 0 : originalContext.getState();
             cachedOptimize = true;
@@ -234,6 +244,51 @@ public class Optimize extends Pragma {
             LOG.trace("exist:optimize: context step: " + contextStep);
             LOG.trace("exist:optimize: context var: " + contextVar);
         }
+        choosePlan();
+    }
+
+    /**
+     * Orders the index lookups by their estimated cost, so the first lookup selects the
+     * fewest nodes and every following lookup is restricted to them. If even the cheapest
+     * lookup is not expected to select fewer nodes than the context step, the lookups are
+     * skipped and the expression is evaluated on the structural index.
+     *
+     * Nothing is changed unless the cost of every lookup can be estimated.
+     */
+    private void choosePlan() {
+        final CostEstimator estimator = CostEstimator.get(context);
+        if (estimator == null || optimizables == null) {
+            return;
+        }
+        final double[] estimates = new double[optimizables.length];
+        for (int i = 0; i < optimizables.length; i++) {
+            estimates[i] = optimizables[i].estimatePreSelection(estimator);
+            if (estimates[i] < 0) {
+                return;
+            }
+        }
+        // stable insertion sort, the lookups are few
+        for (int i = 1; i < optimizables.length; i++) {
+            final Optimizable optimizable = optimizables[i];
+            final double estimate = estimates[i];
+            int j = i - 1;
+            for (; j >= 0 && estimates[j] > estimate; j--) {
+                optimizables[j + 1] = optimizables[j];
+                estimates[j + 1] = estimates[j];
+            }
+            optimizables[j + 1] = optimizable;
+            estimates[j + 1] = estimate;
+        }
+        if (contextStep != null && contextStep.getTest().getName() != null) {
+            final int axis = contextStep.getAxis();
+            final QName stepName = axis == Constants.ATTRIBUTE_AXIS || axis == Constants.DESCENDANT_ATTRIBUTE_AXIS ?
+                    new QName(contextStep.getTest().getName(), ElementValue.ATTRIBUTE) : contextStep.getTest().getName();
+            final long stepCount = estimator.getNodeCount(stepName);
+            structuralScan = stepCount > 0 && estimates[0] >= stepCount;
+        }
+        if (LOG.isTraceEnabled())
+            {LOG.trace("exist:optimize: estimated cost of first index lookup: " + estimates[0] +
+                (structuralScan ? "; using structural index" : ""));}
     }
 
     public void after(XQueryContext context, Expression expression) throws XPathException {
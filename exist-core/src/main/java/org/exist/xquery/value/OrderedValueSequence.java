@@ -27,16 +27,20 @@ import org.exist.dom.persistent.AVLTreeNodeSet;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.numbering.NodeId;
+import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.Constants;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
 import org.exist.xquery.util.ExpressionDumper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 
 /**
  * A sequence that sorts its entries in the order specified by the order specs of
@@ -46,36 +50,94 @@ import java.util.stream.Stream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If only the leading items of the sorted sequence are needed, see {@link #OrderedValueSequence(OrderSpec[], int, long, long, XQueryContext)},
+ * just those are kept in a bounded heap. Otherwise, once more items than the memory budget
+ * have been added, they are sorted and written as a run to a temporary file. The runs are
+ * merged lazily while the sequence is iterated, and removed when the query context runs its
+ * cleanup tasks. Only atomic values and persistent nodes can be written to a run, see
+ * {@link SpillCodec#isSpillable(Item)}. If any other item is added, the runs are read
+ * back and the sequence is sorted in memory.
+ *
  * @author wolf
  */
 public class OrderedValueSequence extends AbstractSequence {
 
+    /**
+     * The maximum number of runs which are merged at once.
+     */
+    private static final int MERGE_WIDTH = 64;
+
     private final OrderSpec[] orderSpecs;
     private Entry[] items;
     private int count = 0;
+    private long position = 0;
     private int state = 0;
 
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
+    // the leading items, if only those are needed
+    private final long limit;
+    private PriorityQueue<Entry> leadingItems = null;
+
+    // the sorted runs written to temporary files
+    private final long memoryBudget;
+    private final XQueryContext context;
+    private boolean spillable;
+    private SpillCodec codec = null;
+    private List<Run> runs = null;
+    private long spilledCount = 0;
+    private final Set<Closeable> openRuns = new HashSet<>();
+    private MergingIterator lastIterator = null;
+    private long lastIteratorPos = 0;
+
     public OrderedValueSequence(final OrderSpec orderSpecs[], final int size) {
+        this(orderSpecs, size, -1, 0, null);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param limit the number of leading items of the sorted sequence which are needed, or -1 if all items are needed
+     * @param memoryBudget the number of items kept in memory before they are written to a temporary file as a sorted run,
+     *     or 0 to always sort in memory
+     * @param context the query context which removes the temporary files, required if memoryBudget is not 0
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final long limit, final long memoryBudget,
+            @Nullable final XQueryContext context) {
         this.orderSpecs = orderSpecs;
         this.items = new Entry[size == 0 ? 1 : size];
+        this.context = context;
+        if (limit > 0 && limit < Integer.MAX_VALUE && (memoryBudget <= 0 || limit <= memoryBudget)) {
+            this.limit = limit;
+            this.leadingItems = new PriorityQueue<>((int) Math.min(limit, items.length), Collections.reverseOrder());
+            this.memoryBudget = 0;
+        } else {
+            this.limit = -1;
+            this.memoryBudget = context == null ? 0 : memoryBudget;
+        }
+        this.spillable = this.memoryBudget > 0;
     }
 
     @Override
-    public SequenceIterator iterate() {
+    public SequenceIterator iterate() throws XPathException {
+        if (runs != null) {
+            return new MergingIterator();
+        }
         return new OrderedValueSequenceIterator();
     }
 
     @Override
-    public SequenceIterator unorderedIterator() {
-        return new OrderedValueSequenceIterator();
+    public SequenceIterator unorderedIterator() throws XPathException {
+        return iterate();
     }
 
     @Override
     public long getItemCountLong() {
-        return (items == null) ? 0 : count;
+        if (leadingItems != null) {
+            return leadingItems.size();
+        }
+        return (items == null) ? 0 : spilledCount + count;
     }
 
     @Override
@@ -90,13 +152,36 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public void add(final Item item) throws XPathException {
-        if (hasOne) {
-            hasOne = false;
-        }
-        if (isEmpty) {
-            hasOne = true;
+        final Entry entry = new Entry(item, position++);
+        checkItemType(item.getType());
+        setHasChanged();
+
+        if (leadingItems != null) {
+            if (leadingItems.size() < limit) {
+                leadingItems.add(entry);
+            } else if (entry.compareTo(leadingItems.peek()) < 0) {
+                leadingItems.poll();
+                leadingItems.add(entry);
+            }
+        } else {
+            if (spillable && !entry.isSpillable()) {
+                // continue in memory
+                spillable = false;
+                if (runs != null) {
+                    readRuns();
+                }
+            }
+            append(entry);
+            if (spillable && count >= memoryBudget) {
+                writeRun();
+            }
         }
+
         isEmpty = false;
+        hasOne = getItemCountLong() == 1;
+    }
+
+    private void append(final Entry entry) {
         if (count == 0 && items.length == 1) {
             items = new Entry[2];
         } else if (count == items.length) {
@@ -104,9 +189,7 @@ public class OrderedValueSequence extends AbstractSequence {
             System.arraycopy(items, 0, newItems, 0, count);
             items = newItems;
         }
-        items[count] = new Entry(item, count++);
-        checkItemType(item.getType());
-        setHasChanged();
+        items[count++] = entry;
     }
 
     @Override
@@ -123,15 +206,35 @@ public class OrderedValueSequence extends AbstractSequence {
         }
     }
 
-    public void sort() {
-//		FastQSort.sort(items, 0, count - 1);
+    /**
+     * Sorts the sequence. Must be called after all items have been added,
+     * and before the sequence is read.
+     *
+     * @throws XPathException if the sorted runs cannot be merged
+     */
+    public void sort() throws XPathException {
+        if (leadingItems != null) {
+            count = leadingItems.size();
+            items = leadingItems.toArray(new Entry[Math.max(count, 1)]);
+            leadingItems = null;
+        }
 
         Arrays.parallelSort(items, 0, count);
-        Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
+        if (runs == null) {
+            Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
+        } else {
+            // the order values of the items in memory are needed to merge them with the runs
+            while (runs.size() > MERGE_WIDTH) {
+                mergeRuns();
+            }
+        }
     }
 
     @Override
     public Item itemAt(final int pos) {
+        if (runs != null) {
+            return spilledItemAt(pos);
+        }
         if (items != null && pos > -1 && pos < count) {
             return items[pos].item;
         } else {
@@ -139,6 +242,143 @@ public class OrderedValueSequence extends AbstractSequence {
         }
     }
 
+    private Item spilledItemAt(final int pos) {
+        if (pos < 0 || pos >= getItemCountLong()) {
+            return null;
+        }
+        try {
+            // items are mostly accessed in order, so continue with the last iterator if possible
+            if (lastIterator == null || lastIteratorPos > pos) {
+                if (lastIterator != null) {
+                    lastIterator.close();
+                }
+                lastIterator = new MergingIterator();
+                lastIteratorPos = 0;
+            }
+            lastIteratorPos += lastIterator.skip(pos - lastIteratorPos);
+            lastIteratorPos++;
+            return lastIterator.nextItem();
+        } catch (final XPathException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sorts the items in memory, and writes them to a new run.
+     */
+    private void writeRun() throws XPathException {
+        Arrays.parallelSort(items, 0, count);
+        if (runs == null) {
+            runs = new ArrayList<>();
+            codec = new SpillCodec();
+            context.registerCleanupTask((ctx, predicate) -> close());
+        }
+        final Run run = newRun(count);
+        try (final DataOutputStream os = run.openOutput()) {
+            for (int i = 0; i < count; i++) {
+                writeEntry(os, items[i]);
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to write sorted run of order by: " + e.getMessage(), e);
+        }
+        spilledCount += count;
+        Arrays.fill(items, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Merges the first {@link #MERGE_WIDTH} runs into a single run.
+     */
+    private void mergeRuns() throws XPathException {
+        final List<Run> merged = new ArrayList<>(runs.subList(0, MERGE_WIDTH));
+        long size = 0;
+        for (final Run run : merged) {
+            size += run.size;
+        }
+        final Run run = newRun(size);
+        try (final DataOutputStream os = run.openOutput()) {
+            final MergingIterator iterator = new MergingIterator(merged, false);
+            try {
+                for (Entry entry = iterator.nextEntry(); entry != null; entry = iterator.nextEntry()) {
+                    writeEntry(os, entry);
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (final IOException | UncheckedIOException e) {
+            throw new XPathException("Unable to merge sorted runs of order by: " + e.getMessage(), e);
+        }
+        runs.removeAll(merged);
+        merged.forEach(Run::remove);
+    }
+
+    /**
+     * Reads the entries of all runs back into memory, and removes the runs.
+     */
+    private void readRuns() throws XPathException {
+        final List<Run> spilled = runs;
+        runs = null;
+        spilledCount = 0;
+        try {
+            for (final Run run : spilled) {
+                try (final DataInputStream is = run.openInput()) {
+                    for (long i = 0; i < run.size; i++) {
+                        append(readEntry(is));
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to read sorted run of order by: " + e.getMessage(), e);
+        } finally {
+            spilled.forEach(Run::remove);
+        }
+    }
+
+    private Run newRun(final long size) throws XPathException {
+        try {
+            final Run run = new Run(TemporaryFileManager.getInstance().getTemporaryFile(), size);
+            runs.add(run);
+            return run;
+        } catch (final IOException e) {
+            throw new XPathException("Unable to create sorted run of order by: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeEntry(final DataOutput os, final Entry entry) throws IOException {
+        os.writeLong(entry.pos);
+        for (final AtomicValue value : entry.values) {
+            codec.writeItem(os, value);
+        }
+        codec.writeItem(os, entry.item);
+    }
+
+    private Entry readEntry(final DataInput is) throws IOException, XPathException {
+        final long pos = is.readLong();
+        final AtomicValue[] values = new AtomicValue[orderSpecs.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (AtomicValue) codec.readItem(is);
+        }
+        return new Entry(codec.readItem(is), values, pos);
+    }
+
+    /**
+     * Removes the temporary files of the runs.
+     */
+    private void close() {
+        for (final Closeable openRun : new ArrayList<>(openRuns)) {
+            try {
+                openRun.close();
+            } catch (final IOException e) {
+                // the file is removed anyway
+            }
+        }
+        openRuns.clear();
+        lastIterator = null;
+        if (runs != null) {
+            runs.forEach(Run::remove);
+        }
+    }
+
     private void checkItemType(final int type) {
         if (itemType == type) {
             return;
@@ -162,6 +402,14 @@ public class OrderedValueSequence extends AbstractSequence {
         }
         // for this method to work, all items have to be nodes
         if (itemType != Type.ANY_TYPE && Type.subTypeOf(itemType, Type.NODE)) {
+            if (runs != null) {
+                // items in runs are persistent nodes
+                final NodeSet set = new AVLTreeNodeSet();
+                for (final SequenceIterator i = iterate(); i.hasNext(); ) {
+                    set.add((NodeProxy) i.nextItem());
+                }
+                return set;
+            }
             //Was ExtArrayNodeset() which orders the nodes in document order
             //The order seems to change between different invocations !!!
             final NodeSet set = new AVLTreeNodeSet();
@@ -224,10 +472,13 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public boolean isPersistentSet() {
-        if (count == 0) {
+        if (getItemCountLong() == 0) {
             return true;
         }
         if (itemType != Type.ANY_TYPE && Type.subTypeOf(itemType, Type.NODE)) {
+            if (runs != null) {
+                return true;
+            }
             for (int i = 0; i < count; i++) {
                 final NodeValue v = (NodeValue) items[i].item;
                 if (v.getImplementationType() != NodeValue.PERSISTENT_NODE) {
@@ -241,13 +492,16 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public MemoryNodeSet toMemNodeSet() throws XPathException {
-        if (count == 0) {
+        if (getItemCountLong() == 0) {
             return MemoryNodeSet.EMPTY;
         }
         if (itemType == Type.ANY_TYPE || !Type.subTypeOf(itemType, Type.NODE)) {
             throw new XPathException("Type error: the sequence cannot be converted into" +
                     " a node set. Item type is " + Type.getTypeName(itemType));
         }
+        if (runs != null) {
+            return null;
+        }
         for (int i = 0; i < count; i++) {
             final NodeValue v = (NodeValue) items[i].item;
             if (v.getImplementationType() == NodeValue.PERSISTENT_NODE) {
@@ -259,6 +513,9 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public String toString() {
+        if (runs != null) {
+            return "sorted runs of " + getItemCountLong() + " items";
+        }
         final StringBuilder builder = new StringBuilder();
         for (int i = 0; i < count; i++) {
             builder.append(items[i].toString());
@@ -293,14 +550,14 @@ public class OrderedValueSequence extends AbstractSequence {
     private class Entry implements Comparable<Entry> {
         Item item;
         AtomicValue values[];
-        private final int pos;
+        private final long pos;
 
         /**
          * @param item     the item in the sequence
          * @param position the original position of the item in the result sequence
          * @throws XPathException
          */
-        public Entry(final Item item, final int position) throws XPathException {
+        public Entry(final Item item, final long position) throws XPathException {
             this.item = item;
             this.pos = position;
             values = new AtomicValue[orderSpecs.length];
@@ -317,6 +574,29 @@ public class OrderedValueSequence extends AbstractSequence {
             }
         }
 
+        /**
+         * @param item     the item in the sequence
+         * @param values   the order values of the item
+         * @param position the original position of the item in the result sequence
+         */
+        Entry(final Item item, final AtomicValue[] values, final long position) {
+            this.item = item;
+            this.values = values;
+            this.pos = position;
+        }
+
+        boolean isSpillable() {
+            if (!SpillCodec.isSpillable(item)) {
+                return false;
+            }
+            for (final AtomicValue value : values) {
+                if (!SpillCodec.isSpillable(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         @Override
         public int compareTo(final Entry other) {
             int cmp = 0;
@@ -394,6 +674,188 @@ public class OrderedValueSequence extends AbstractSequence {
         }
     }
 
+    /**
+     * A file containing a sorted run of entries.
+     */
+    private static final class Run {
+        private final Path file;
+        private final long size;
+
+        Run(final Path file, final long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        DataOutputStream openOutput() throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+
+        DataInputStream openInput() throws IOException {
+            return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        void remove() {
+            TemporaryFileManager.getInstance().returnTemporaryFile(file);
+        }
+    }
+
+    /**
+     * Reads the entries of a run, or of the items in memory, one after the other.
+     */
+    private abstract class RunCursor implements Comparable<RunCursor> {
+        Entry current = null;
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return false if there are no more entries
+         */
+        abstract boolean advance() throws IOException, XPathException;
+
+        void close() throws IOException {
+        }
+
+        @Override
+        public int compareTo(final RunCursor other) {
+            return current.compareTo(other.current);
+        }
+    }
+
+    private final class FileRunCursor extends RunCursor implements Closeable {
+        private final DataInputStream is;
+        private long remaining;
+
+        FileRunCursor(final Run run) throws IOException {
+            this.is = run.openInput();
+            this.remaining = run.size;
+            openRuns.add(this);
+        }
+
+        @Override
+        boolean advance() throws IOException, XPathException {
+            if (remaining == 0) {
+                close();
+                current = null;
+                return false;
+            }
+            remaining--;
+            current = readEntry(is);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            openRuns.remove(this);
+            is.close();
+        }
+    }
+
+    private final class MemoryRunCursor extends RunCursor {
+        private int next = 0;
+
+        @Override
+        boolean advance() {
+            if (next < count) {
+                current = items[next++];
+                return true;
+            }
+            current = null;
+            return false;
+        }
+    }
+
+    /**
+     * Merges the runs and the items in memory lazily.
+     */
+    private class MergingIterator implements SequenceIterator {
+        private final PriorityQueue<RunCursor> cursors;
+        private long remaining;
+
+        MergingIterator() throws XPathException {
+            this(runs, true);
+        }
+
+        MergingIterator(final List<Run> merged, final boolean inMemory) throws XPathException {
+            this.cursors = new PriorityQueue<>(merged.size() + 1);
+            try {
+                for (final Run run : merged) {
+                    remaining += run.size;
+                    add(new FileRunCursor(run));
+                }
+                if (inMemory) {
+                    remaining += count;
+                    add(new MemoryRunCursor());
+                }
+            } catch (final IOException e) {
+                close();
+                throw new XPathException("Unable to read sorted run of order by: " + e.getMessage(), e);
+            }
+        }
+
+        private void add(final RunCursor cursor) throws IOException {
+            try {
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            } catch (final XPathException e) {
+                cursor.close();
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        Entry nextEntry() {
+            final RunCursor cursor = cursors.poll();
+            if (cursor == null) {
+                return null;
+            }
+            final Entry entry = cursor.current;
+            try {
+                add(cursor);
+            } catch (final IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            remaining--;
+            return entry;
+        }
+
+        void close() {
+            for (final RunCursor cursor : cursors) {
+                try {
+                    cursor.close();
+                } catch (final IOException e) {
+                    // the file is removed anyway
+                }
+            }
+            cursors.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public Item nextItem() {
+            final Entry entry = nextEntry();
+            return entry == null ? null : entry.item;
+        }
+
+        @Override
+        public long skippable() {
+            return remaining;
+        }
+
+        @Override
+        public long skip(final long n) {
+            long skipped = 0;
+            while (skipped < n && nextEntry() != null) {
+                skipped++;
+            }
+            return skipped;
+        }
+    }
+
     private class OrderedValueSequenceIterator implements SequenceIterator {
         private int pos = 0;
 
@@ -0,0 +1,245 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.value;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.XPathException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes items to, and restores them from, the temporary files to which
+ * a FLWOR clause moves its data once it exceeds its memory budget.
+ *
+ * Only atomic values and persistent nodes can be written, see {@link #isSpillable(Item)}.
+ * Persistent nodes are written as the id of their document and their node id,
+ * the documents themselves are kept in memory by the codec. Items must thus be
+ * read back through the same codec instance which wrote them.
+ */
+public final class SpillCodec {
+
+    private static final byte EMPTY_VALUE = 0;
+    private static final byte ATOMIC_VALUE = 1;
+    private static final byte DOUBLE_VALUE = 2;
+    private static final byte FLOAT_VALUE = 3;
+    private static final byte NODE = 4;
+    private static final byte DOCUMENT_NODE = 5;
+
+    private static final int[] SPILLABLE_TYPES = {
+            Type.STRING, Type.BOOLEAN, Type.ANY_URI, Type.NUMBER, Type.UNTYPED_ATOMIC,
+            Type.DATE_TIME, Type.DATE, Type.TIME, Type.DURATION,
+            Type.GYEAR, Type.GMONTH, Type.GDAY, Type.GYEARMONTH, Type.GMONTHDAY
+    };
+
+    private final Map<Integer, DocumentImpl> documents = new HashMap<>();
+
+    /**
+     * Determines if all the items of a sequence can be written.
+     *
+     * @param seq the sequence
+     *
+     * @return true if the sequence can be written
+     *
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public static boolean isSpillable(final Sequence seq) throws XPathException {
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            if (!isSpillable(i.nextItem())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if an item can be written.
+     *
+     * @param item the item
+     *
+     * @return true if the item can be written
+     */
+    public static boolean isSpillable(final Item item) {
+        if (item instanceof NodeProxy) {
+            // full-text matches are not written
+            return ((NodeProxy) item).getMatches() == null;
+        }
+        if (item instanceof AtomicValue) {
+            final AtomicValue value = (AtomicValue) item;
+            if (value.isEmpty()) {
+                return true;
+            }
+            for (final int type : SPILLABLE_TYPES) {
+                if (Type.subTypeOf(value.getType(), type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a sequence, all of its items must be spillable.
+     *
+     * @param os the output
+     * @param seq the sequence
+     *
+     * @throws IOException if the output cannot be written
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public void writeSequence(final DataOutput os, final Sequence seq) throws IOException, XPathException {
+        os.writeInt(seq.getItemCount());
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            writeItem(os, i.nextItem());
+        }
+    }
+
+    /**
+     * Reads a sequence written by {@link #writeSequence(DataOutput, Sequence)}.
+     *
+     * @param is the input
+     *
+     * @return the sequence
+     *
+     * @throws IOException if the input cannot be read
+     * @throws XPathException if an item cannot be restored
+     */
+    public Sequence readSequence(final DataInput is) throws IOException, XPathException {
+        final int count = is.readInt();
+        if (count == 0) {
+            return Sequence.EMPTY_SEQUENCE;
+        }
+        final ValueSequence seq = new ValueSequence(count);
+        for (int i = 0; i < count; i++) {
+            seq.add(readItem(is));
+        }
+        return seq;
+    }
+
+    /**
+     * Writes an item, which must be spillable.
+     *
+     * @param os the output
+     * @param item the item
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void writeItem(final DataOutput os, final Item item) throws IOException {
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            final DocumentImpl doc = node.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+
+            final NodeId nodeId = node.getNodeId();
+            if (nodeId.equals(NodeId.DOCUMENT_NODE)) {
+                os.writeByte(DOCUMENT_NODE);
+                os.writeInt(doc.getDocId());
+            } else {
+                os.writeByte(NODE);
+                os.writeInt(doc.getDocId());
+                os.writeShort(node.getNodeType());
+                os.writeLong(node.getInternalAddress());
+                os.writeInt(nodeId.units());
+                final byte[] data = new byte[nodeId.size()];
+                nodeId.serialize(data, 0);
+                os.writeInt(data.length);
+                os.write(data);
+            }
+            return;
+        }
+
+        final AtomicValue value = (AtomicValue) item;
+        if (value.isEmpty()) {
+            os.writeByte(EMPTY_VALUE);
+        } else if (value.getType() == Type.DOUBLE) {
+            os.writeByte(DOUBLE_VALUE);
+            os.writeLong(Double.doubleToRawLongBits(((DoubleValue) value).getValue()));
+        } else if (value.getType() == Type.FLOAT) {
+            os.writeByte(FLOAT_VALUE);
+            os.writeInt(Float.floatToRawIntBits(((FloatValue) value).getValue()));
+        } else {
+            os.writeByte(ATOMIC_VALUE);
+            os.writeInt(value.getType());
+            final byte[] data = value.getStringValue().getBytes(StandardCharsets.UTF_8);
+            os.writeInt(data.length);
+            os.write(data);
+        }
+    }
+
+    /**
+     * Reads an item written by {@link #writeItem(DataOutput, Item)}.
+     *
+     * @param is the input
+     *
+     * @return the item
+     *
+     * @throws IOException if the input cannot be read
+     * @throws XPathException if the item cannot be restored
+     */
+    public Item readItem(final DataInput is) throws IOException, XPathException {
+        final byte kind = is.readByte();
+        switch (kind) {
+            case EMPTY_VALUE:
+                return AtomicValue.EMPTY_VALUE;
+
+            case DOUBLE_VALUE:
+                return new DoubleValue(Double.longBitsToDouble(is.readLong()));
+
+            case FLOAT_VALUE:
+                return new FloatValue(Float.intBitsToFloat(is.readInt()));
+
+            case ATOMIC_VALUE:
+                final int type = is.readInt();
+                final byte[] data = new byte[is.readInt()];
+                is.readFully(data);
+                final String s = new String(data, StandardCharsets.UTF_8);
+                switch (type) {
+                    case Type.STRING:
+                        return new StringValue(s);
+                    case Type.UNTYPED_ATOMIC:
+                        return new UntypedAtomicValue(s);
+                    default:
+                        return new StringValue(s).convertTo(type);
+                }
+
+            case DOCUMENT_NODE:
+                return new NodeProxy(documents.get(is.readInt()));
+
+            case NODE:
+                final DocumentImpl doc = documents.get(is.readInt());
+                final short nodeType = is.readShort();
+                final long address = is.readLong();
+                final int units = is.readInt();
+                final byte[] nodeIdData = new byte[is.readInt()];
+                is.readFully(nodeIdData);
+                final NodeId nodeId = doc.getBrokerPool().getNodeFactory().createFromData(units, nodeIdData, 0);
+                return new NodeProxy(doc, nodeId, nodeType, address);
+
+            default:
+                throw new IOException("Unknown kind of spilled item: " + kind);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.dom.persistent;
+
+import org.exist.numbering.DLNFactory;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.xquery.Expression;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class PackedNodeSetTest {
+
+    private static final NodeIdFactory NODE_FACTORY = new DLNFactory();
+
+    @Test
+    public void iterate() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final PackedNodeSet set = packedNodeSet(doc1, "1.1", "1.2", "1.2.1");
+        add(set, doc2, "1.1", "1.3");
+
+        assertEquals(5, set.getLength());
+        assertEquals(2, set.getSizeHint(doc2));
+        assertEquals(2, set.getDocumentSet().getDocumentCount());
+        assertEquals(ids("1.1", "1.2", "1.2.1", "1.1", "1.3"), ids(set));
+
+        final NodeProxy proxy = set.get(3);
+        assertSame(doc2, proxy.getOwnerDocument());
+        assertEquals("1.1", proxy.getNodeId().toString());
+        assertEquals(Node.ELEMENT_NODE, proxy.getNodeType());
+    }
+
+    @Test
+    public void get() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final PackedNodeSet set = packedNodeSet(doc1, "1.1", "1.2", "1.2.1", "1.3");
+
+        assertNotNull(set.get(doc1, nodeId("1.2.1")));
+        assertNull(set.get(doc1, nodeId("1.2.2")));
+        assertNull(set.get(doc2, nodeId("1.2.1")));
+        assertTrue(set.contains(new NodeProxy(doc1, nodeId("1.3"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addOutOfOrder() {
+        packedNodeSet(mockDocument(1), "1.2", "1.1");
+    }
+
+    @Test
+    public void selectParentChild() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final PackedNodeSet set = packedNodeSet(doc1, "1.1", "1.2", "1.2.1", "1.2.1.1", "1.3");
+
+        final NodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc1, nodeId("1")));
+        parents.add(new NodeProxy(doc1, nodeId("1.2")));
+        parents.add(new NodeProxy(doc2, nodeId("1")));
+
+        final NodeSet children = set.selectParentChild(parents, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID);
+        assertEquals(ids("1.1", "1.2", "1.2.1", "1.3"), ids(children));
+
+        final NodeSet withChildren = set.selectParentChild(parents, NodeSet.ANCESTOR, Expression.NO_CONTEXT_ID);
+        assertEquals(ids("1", "1.2"), ids(withChildren));
+    }
+
+    @Test
+    public void selectAncestorDescendant() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final PackedNodeSet set = packedNodeSet(doc1, "1.1", "1.2", "1.2.1", "1.2.1.1", "1.3");
+
+        final NodeSet ancestors = new NewArrayNodeSet();
+        ancestors.add(new NodeProxy(doc1, nodeId("1.2")));
+
+        assertEquals(ids("1.2.1", "1.2.1.1"),
+                ids(set.selectAncestorDescendant(ancestors, NodeSet.DESCENDANT, false, Expression.NO_CONTEXT_ID, true)));
+        assertEquals(ids("1.2", "1.2.1", "1.2.1.1"),
+                ids(set.selectAncestorDescendant(ancestors, NodeSet.DESCENDANT, true, Expression.NO_CONTEXT_ID, true)));
+
+        final NodeSet documents = new NewArrayNodeSet();
+        documents.add(new NodeProxy(doc1, NodeId.DOCUMENT_NODE));
+        assertEquals(5, set.selectAncestorDescendant(documents, NodeSet.DESCENDANT, false, Expression.NO_CONTEXT_ID, true).getLength());
+    }
+
+    @Test
+    public void selectParentChild_contextIsKept() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final PackedNodeSet set = packedNodeSet(doc1, "1.1", "1.2");
+
+        final NodeProxy parent = new NodeProxy(doc1, nodeId("1"));
+        final NodeSet parents = new NewArrayNodeSet();
+        parents.add(parent);
+
+        final NodeSet children = set.selectParentChild(parents, NodeSet.DESCENDANT, 1);
+        for (final NodeProxy child : children) {
+            assertNotNull(child.getContext());
+            assertSame(parent, child.getContext().getNode());
+        }
+    }
+
+    @Test
+    public void intersectionAndUnion() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final PackedNodeSet set1 = packedNodeSet(doc1, "1.1", "1.2", "1.3");
+        add(set1, doc2, "1.1");
+        final PackedNodeSet set2 = packedNodeSet(doc1, "1.2", "1.3", "1.4");
+
+        final NodeSet intersection = set1.intersection(set2);
+        assertTrue(intersection instanceof PackedNodeSet);
+        assertEquals(ids("1.2", "1.3"), ids(intersection));
+
+        final NodeSet union = set1.union(set2);
+        assertTrue(union instanceof PackedNodeSet);
+        assertEquals(ids("1.1", "1.2", "1.3", "1.4", "1.1"), ids(union));
+    }
+
+    private static PackedNodeSet packedNodeSet(final DocumentImpl doc, final String... ids) {
+        final PackedNodeSet set = new PackedNodeSet(NODE_FACTORY, Node.ELEMENT_NODE, null);
+        add(set, doc, ids);
+        return set;
+    }
+
+    private static void add(final PackedNodeSet set, final DocumentImpl doc, final String... ids) {
+        for (final String id : ids) {
+            final NodeId nodeId = nodeId(id);
+            final byte[] data = new byte[nodeId.size() + 3];
+            nodeId.serialize(data, 3);
+            set.add(doc, data, 3, nodeId.units(), 0);
+        }
+    }
+
+    private static NodeId nodeId(final String id) {
+        return NODE_FACTORY.createFromString(id);
+    }
+
+    private static List<String> ids(final String... ids) {
+        final List<String> list = new ArrayList<>();
+        for (final String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<String> ids(final NodeSet set) {
+        final List<String> list = new ArrayList<>();
+        for (final NodeProxy proxy : set) {
+            list.add(proxy.getNodeId().toString());
+        }
+        return list;
+    }
+
+    private static DocumentImpl mockDocument(final int docId) {
+        final DocumentImpl doc = createMock(DocumentImpl.class);
+        expect(doc.getDocId()).andReturn(docId).anyTimes();
+        replay(doc);
+        return doc;
+    }
+}
@@ -185,6 +185,61 @@ public class BrokerPoolTest {
         }
     }
 
+    /**
+     * Checks that when all broker leases are taken,
+     * the threads waiting for a lease are served
+     * in the order in which they asked for it.
+     */
+    @Test
+    public void waitingLeasesAreServedInOrder() throws InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final int maxBrokers = pool.getMax();
+
+        final CountDownLatch firstBrokerReleaseLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+
+            // lease all brokers
+            final CountDownLatch acquiredLatch = new CountDownLatch(maxBrokers);
+            final Thread firstBrokerUser = new Thread(new BrokerUser(pool, acquiredLatch, firstBrokerReleaseLatch), "first-brokerUser");
+            firstBrokerUser.start();
+            for (int i = 1; i < maxBrokers; i++) {
+                new Thread(new BrokerUser(pool, acquiredLatch, releaseLatch)).start();
+            }
+            acquiredLatch.await();
+
+            // queue two more threads for a lease, one after the other
+            final CountDownLatch earlierAcquiredLatch = new CountDownLatch(1);
+            final Thread earlierBrokerUser = new Thread(new BrokerUser(pool, earlierAcquiredLatch, releaseLatch), "earlier-brokerUser");
+            earlierBrokerUser.start();
+            awaitWaiting(earlierBrokerUser);
+
+            final CountDownLatch laterAcquiredLatch = new CountDownLatch(1);
+            final Thread laterBrokerUser = new Thread(new BrokerUser(pool, laterAcquiredLatch, releaseLatch), "later-brokerUser");
+            laterBrokerUser.start();
+            awaitWaiting(laterBrokerUser);
+
+            // releasing a single broker should hand the lease to the thread which waited longest
+            firstBrokerReleaseLatch.countDown();
+            firstBrokerUser.join();
+
+            assertTrue(earlierAcquiredLatch.await(5, TimeUnit.SECONDS));
+            Thread.sleep(500);  // just to ensure the other thread has done something
+            assertEquals(1, laterAcquiredLatch.getCount());
+
+        } finally {
+            // release all brokers from brokerUsers
+            firstBrokerReleaseLatch.countDown();
+            releaseLatch.countDown();
+        }
+    }
+
+    private static void awaitWaiting(final Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+
     public static class BrokerUser implements Runnable {
 
         final BrokerPool brokerPool;
@@ -0,0 +1,157 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.recovery.RecoveryManager;
+import org.exist.storage.serializers.Serializer;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.util.io.InputStreamUtil;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.samples.Samples.SAMPLES;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test recovery after a forced database corruption, with the
+ * journal being redone by several threads.
+ */
+public class ParallelRedoRecoveryTest {
+
+    private static final int REDO_THREADS = 4;
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS, REDO_THREADS)
+                    .build(),
+            true,
+            true);
+
+    @After
+    public void cleanup() {
+        // restore the flag in-case of a test failure
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void storeCommit_removeNoCommit() throws Exception {
+        final int expectedSpeeches = storeAndCommit_removeNoCommit(existEmbeddedServer.getBrokerPool());
+
+        // flush journal
+        existEmbeddedServer.getBrokerPool().getJournalManager().get().flush(true, false);
+
+        // restart with no Journal checkpoint, forces recovery to run at startup
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.restart();
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        verify(existEmbeddedServer.getBrokerPool(), expectedSpeeches);
+    }
+
+    private int storeAndCommit_removeNoCommit(final BrokerPool pool) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, XPathException {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection test2 = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI2);
+                broker.saveCollection(transaction, test2);
+
+                for (final String sampleName : SAMPLES.getShakespeareXmlSampleNames()) {
+                    final String sample;
+                    try (final InputStream is = SAMPLES.getShakespeareSample(sampleName)) {
+                        sample = InputStreamUtil.readString(is, UTF_8);
+                    }
+                    final IndexInfo info = test2.validateXMLResource(transaction, broker, XmldbURI.create(sampleName), sample);
+                    assertNotNull(info);
+                    test2.store(transaction, broker, info, sample);
+                }
+
+                // remove last document
+                final String lastSampleName = SAMPLES.getShakespeareXmlSampleNames()[SAMPLES.getShakespeareXmlSampleNames().length - 1];
+                test2.removeXMLResource(transaction, broker, XmldbURI.create(lastSampleName));
+
+                transact.commit(transaction);
+            }
+
+            final int speeches = countSpeeches(pool, broker);
+
+            // the following transaction will not be committed. It will thus be rolled back by recovery
+            final Txn transaction = transact.beginTransaction();
+            try (final Collection test2 = broker.openCollection(TestConstants.TEST_COLLECTION_URI2, LockMode.WRITE_LOCK)) {
+                test2.removeXMLResource(transaction, broker, XmldbURI.create(SAMPLES.getShakespeareXmlSampleNames()[0]));
+            }
+
+            return speeches;
+        }
+    }
+
+    private void verify(final BrokerPool pool, final int expectedSpeeches) throws EXistException, PermissionDeniedException, SAXException, XPathException, LockException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Serializer serializer = broker.getSerializer();
+            serializer.reset();
+
+            final String[] sampleNames = SAMPLES.getShakespeareXmlSampleNames();
+            for (int i = 0; i < sampleNames.length - 1; i++) {
+                try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append(sampleNames[i]), LockMode.READ_LOCK)) {
+                    assertNotNull("Document '" + sampleNames[i] + "' should exist", lockedDoc);
+                    assertNotNull(serializer.serialize(lockedDoc.getDocument()));
+                }
+            }
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append(sampleNames[sampleNames.length - 1]), LockMode.READ_LOCK)) {
+                assertNull("Document '" + sampleNames[sampleNames.length - 1] + "' should not exist anymore", lockedDoc);
+            }
+
+            assertEquals(expectedSpeeches, countSpeeches(pool, broker));
+        }
+    }
+
+    private static int countSpeeches(final BrokerPool pool, final DBBroker broker) throws XPathException, PermissionDeniedException {
+        final XQuery xquery = pool.getXQueryService();
+        final Sequence seq = xquery.execute(broker, "count(collection('" + TestConstants.TEST_COLLECTION_URI2 + "')//SPEECH)", null);
+        return ((IntegerValue) seq.itemAt(0)).getInt();
+    }
+}
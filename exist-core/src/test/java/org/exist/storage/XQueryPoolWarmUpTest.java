@@ -0,0 +1,149 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.FileSource;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class XQueryPoolWarmUpTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void compilesRecordedQueries() throws EXistException, PermissionDeniedException, XPathException, IOException,
+            ExecutionException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path query = temporaryFolder.newFile("warm-up.xq").toPath();
+        Files.write(query, "1 + 1".getBytes(StandardCharsets.UTF_8));
+
+        final Path file = temporaryFolder.getRoot().toPath().resolve(XQueryPoolWarmUp.FILE_NAME);
+        final XQueryPoolWarmUp recorded = new XQueryPoolWarmUp(8);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Source source = new FileSource(query, true);
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, new XQueryContext(pool), source);
+            recorded.record(source, compiled);
+
+            // sources which cannot be loaded again are not recorded
+            recorded.record(new StringSource("2 + 2"), compiled);
+            recorded.write(broker, file);
+        }
+
+        final XQueryPoolWarmUp restored = new XQueryPoolWarmUp(8);
+        restored.read(file);
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        restored.warmUp(pool, xqueryPool, Runnable::run).get();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = xqueryPool.borrowCompiledXQuery(broker, new FileSource(query, true));
+            assertNotNull(compiled);
+        }
+    }
+
+    @Test
+    public void skipsModifiedQueries() throws EXistException, PermissionDeniedException, XPathException, IOException,
+            ExecutionException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path query = temporaryFolder.newFile("modified.xq").toPath();
+        Files.write(query, "1 + 1".getBytes(StandardCharsets.UTF_8));
+
+        final Path file = temporaryFolder.getRoot().toPath().resolve(XQueryPoolWarmUp.FILE_NAME);
+        final XQueryPoolWarmUp recorded = new XQueryPoolWarmUp(8);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Source source = new FileSource(query, true);
+            recorded.record(source, pool.getXQueryService().compile(broker, new XQueryContext(pool), source));
+            recorded.write(broker, file);
+        }
+
+        Files.write(query, "2 + 2".getBytes(StandardCharsets.UTF_8));
+
+        final XQueryPoolWarmUp restored = new XQueryPoolWarmUp(8);
+        restored.read(file);
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        restored.warmUp(pool, xqueryPool, Runnable::run).get();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, new FileSource(query, true)));
+        }
+    }
+
+    @Test
+    public void replacesQueriesWhichAreNoLongerUsed() throws EXistException, PermissionDeniedException, XPathException,
+            IOException, ExecutionException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path[] queries = new Path[5];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = temporaryFolder.newFile("decay-" + i + ".xq").toPath();
+            Files.write(queries[i], (i + " + 1").getBytes(StandardCharsets.UTF_8));
+        }
+
+        final Path file = temporaryFolder.getRoot().toPath().resolve(XQueryPoolWarmUp.FILE_NAME);
+        // tracks at most four queries
+        final XQueryPoolWarmUp recorded = new XQueryPoolWarmUp(1);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, new XQueryContext(pool), new FileSource(queries[0], true));
+            for (int i = 0; i < 10; i++) {
+                recorded.record(new FileSource(queries[0], true), compiled);
+            }
+            for (int i = 1; i < 4; i++) {
+                recorded.record(new FileSource(queries[i], true), compiled);
+            }
+
+            // the last query is still tracked, and becomes the hottest one
+            for (int i = 0; i < 20; i++) {
+                recorded.record(new FileSource(queries[4], true), compiled);
+            }
+            recorded.write(broker, file);
+        }
+
+        final XQueryPoolWarmUp restored = new XQueryPoolWarmUp(1);
+        restored.read(file);
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        restored.warmUp(pool, xqueryPool, Runnable::run).get();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertNotNull(xqueryPool.borrowCompiledXQuery(broker, new FileSource(queries[4], true)));
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, new FileSource(queries[0], true)));
+        }
+    }
+}
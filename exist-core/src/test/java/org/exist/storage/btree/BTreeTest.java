@@ -164,6 +164,46 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void longSharedPrefix() throws DBException, IOException, TerminatedException {
+        // keys which share a prefix longer than 127 bytes
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            buf.append('p');
+        }
+        final String prefixStr = buf.toString();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            final Random rand = new Random(42);
+            for (int i = 1; i <= COUNT; i++) {
+                final int j = rand.nextInt(COUNT * 10);
+                btree.addValue(new Value(prefixStr + Integer.toString(j) + "-suffix-of-the-key"), j);
+            }
+            btree.flush();
+
+            final TreeMetrics metrics = btree.treeStatistics();
+            assertTrue(metrics.getHeight() >= 2);
+            assertTrue(metrics.getInnerPages() > 0);
+            // the shared prefix is only stored once per page
+            assertTrue("compression: " + metrics.getKeyCompression(), metrics.getKeyCompression() > 0.7);
+            // the separators in the branch pages are truncated after the first distinct byte
+            assertTrue("fanout: " + metrics.getAverageFanout(), metrics.getAverageFanout() > 20);
+
+            rand.setSeed(42);
+            for (int i = 1; i <= COUNT; i++) {
+                final int j = rand.nextInt(COUNT * 10);
+                assertEquals(j, btree.findValue(new Value(prefixStr + Integer.toString(j) + "-suffix-of-the-key")));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(metrics.getLeafKeys(), count);
+        }
+    }
+
     @Test
     public void stringsTruncated() throws DBException, IOException, TerminatedException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
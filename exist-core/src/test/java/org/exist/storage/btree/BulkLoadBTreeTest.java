@@ -0,0 +1,194 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BrokerPool;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.TerminatedException;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests building the B+tree bottom-up from sorted keys.
+ */
+public class BulkLoadBTreeTest {
+
+    private final static byte BTREE_TEST_FILE_ID = 0x7F;
+    private final static short BTREE_TEST_FILE_VERSION = Short.MIN_VALUE;
+
+    private static final int COUNT = 50000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadInMemory() throws DBException, IOException, TerminatedException {
+        load(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void loadWithSortedRuns() throws DBException, IOException, TerminatedException {
+        // small buffer, so the keys are spilled to many sorted runs
+        load(64 * 1024);
+    }
+
+    @Test
+    public void singlePage() throws DBException, IOException, TerminatedException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("single.dbx");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            final BTree.BulkLoader loader = btree.newBulkLoader();
+            loader.add(new Value("A"), 1);
+            loader.add(new Value("B"), 2);
+            assertEquals(2, loader.finish());
+            btree.flush();
+
+            assertEquals(1, btree.findValue(new Value("A")));
+            assertEquals(2, btree.findValue(new Value("B")));
+            assertEquals(BTree.KEY_NOT_FOUND, btree.findValue(new Value("C")));
+        }
+    }
+
+    @Test
+    public void unsortedKeysAreRejected() throws DBException, IOException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("unsorted.dbx");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            final BTree.BulkLoader loader = btree.newBulkLoader();
+            loader.add(new Value("B"), 1);
+            try {
+                loader.add(new Value("A"), 2);
+                fail("Expected BTreeException");
+            } catch (final BTreeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = BTreeException.class)
+    public void nonEmptyTreeIsRejected() throws DBException, IOException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("nonempty.dbx");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            btree.addValue(new Value("A"), 1);
+            btree.newBulkLoader();
+        }
+    }
+
+    private void load(final long bufferSize) throws DBException, IOException, TerminatedException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("bulk.dbx");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        final List<Integer> order = new ArrayList<>(COUNT);
+        for (int i = 1; i <= COUNT; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            try (final ExternalKeySorter sorter = new ExternalKeySorter(bufferSize)) {
+                for (final int i : order) {
+                    sorter.add(key(i), 0);
+                }
+                // duplicates: the pointer added last wins
+                for (final int i : order) {
+                    sorter.add(key(i), i);
+                }
+                assertEquals(COUNT, sorter.load(btree));
+            }
+            btree.flush();
+
+            verify(btree, COUNT);
+
+            // the tree can be modified incrementally afterwards
+            for (int i = COUNT + 1; i <= COUNT + 1000; i++) {
+                btree.addValue(key(i), i);
+            }
+            for (int i = 1; i <= 1000; i++) {
+                assertEquals(i, btree.removeValue(key(i)));
+            }
+            for (int i = 1; i <= 1000; i++) {
+                btree.addValue(key(i), i);
+            }
+            btree.flush();
+        }
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+            verify(btree, COUNT + 1000);
+        }
+    }
+
+    private static void verify(final BTree btree, final int keyCount) throws IOException, BTreeException, TerminatedException {
+        for (int i = 1; i <= keyCount; i++) {
+            assertEquals(i, btree.findValue(key(i)));
+        }
+
+        // the leaf pages are linked in key order
+        final List<Value> keys = new ArrayList<>();
+        btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("key-")), (value, pointer) -> {
+            keys.add(value);
+            return true;
+        });
+        assertEquals(keyCount, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+        }
+
+        final IndexQuery range = new IndexQuery(IndexQuery.RANGE, key(1000), key(1999));
+        int expected = 0;
+        for (int i = 1; i <= keyCount; i++) {
+            if (range.testValue(key(i))) {
+                expected++;
+            }
+        }
+        final int[] count = { 0 };
+        btree.query(range, (value, pointer) -> {
+            count[0]++;
+            return true;
+        });
+        assertEquals(expected, count[0]);
+    }
+
+    private static Value key(final int i) {
+        return new Value("key-" + i);
+    }
+}
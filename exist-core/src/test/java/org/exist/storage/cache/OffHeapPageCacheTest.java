@@ -0,0 +1,114 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OffHeapPageCacheTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Test
+    public void putAndGet() {
+        final OffHeapPageCache cache = new OffHeapPageCache(16 * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = cache.register();
+
+        final byte[] page = page((byte) 7, 100);
+        cache.put(fileId, 3, page, page.length);
+
+        final byte[] dest = new byte[PAGE_SIZE];
+        assertEquals(page.length, cache.get(fileId, 3, dest));
+        assertArrayEquals(page, Arrays.copyOf(dest, page.length));
+        assertEquals(-1, cache.get(fileId, 4, dest));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getFails());
+
+        // replaces the previous copy
+        final byte[] updated = page((byte) 8, 200);
+        cache.put(fileId, 3, updated, updated.length);
+        assertEquals(updated.length, cache.get(fileId, 3, dest));
+        assertArrayEquals(updated, Arrays.copyOf(dest, updated.length));
+        assertEquals(1, cache.getUsedPages());
+    }
+
+    @Test
+    public void filesAreSeparated() {
+        final OffHeapPageCache cache = new OffHeapPageCache(16 * PAGE_SIZE, PAGE_SIZE);
+        final int file1 = cache.register();
+        final int file2 = cache.register();
+
+        cache.put(file1, 1, page((byte) 1, 10), 10);
+        cache.put(file2, 1, page((byte) 2, 10), 10);
+
+        final byte[] dest = new byte[PAGE_SIZE];
+        assertEquals(10, cache.get(file1, 1, dest));
+        assertEquals(1, dest[0]);
+        assertEquals(10, cache.get(file2, 1, dest));
+        assertEquals(2, dest[0]);
+
+        cache.invalidate(file1);
+        assertEquals(-1, cache.get(file1, 1, dest));
+        assertEquals(10, cache.get(file2, 1, dest));
+        assertEquals(1, cache.getUsedPages());
+    }
+
+    @Test
+    public void referencedPagesSurviveEviction() {
+        final int slots = 8;
+        final OffHeapPageCache cache = new OffHeapPageCache(slots * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = cache.register();
+        final byte[] dest = new byte[PAGE_SIZE];
+
+        for (long pageNum = 0; pageNum < slots; pageNum++) {
+            cache.put(fileId, pageNum, page((byte) pageNum, 10), 10);
+        }
+        // the first new page clears all reference bits and evicts page 0
+        cache.put(fileId, 100, page((byte) 100, 10), 10);
+        assertEquals(-1, cache.get(fileId, 0, dest));
+
+        // page 1 is accessed again before the next eviction
+        assertEquals(10, cache.get(fileId, 1, dest));
+        cache.put(fileId, 101, page((byte) 101, 10), 10);
+
+        assertEquals(10, cache.get(fileId, 1, dest));
+        assertEquals(-1, cache.get(fileId, 2, dest));
+        assertEquals(slots, cache.getUsedPages());
+    }
+
+    @Test
+    public void slabsAreAllocatedOnDemand() {
+        final OffHeapPageCache cache = new OffHeapPageCache(64 * 1024 * 1024, PAGE_SIZE);
+        assertEquals(64 * 1024 * 1024, cache.getSize());
+        assertEquals(0, cache.getAllocated());
+
+        cache.put(cache.register(), 0, page((byte) 1, 10), 10);
+        assertEquals(16 * 1024 * 1024, cache.getAllocated());
+    }
+
+    private static byte[] page(final byte value, final int length) {
+        final byte[] data = new byte[length];
+        Arrays.fill(data, value);
+        return data;
+    }
+}
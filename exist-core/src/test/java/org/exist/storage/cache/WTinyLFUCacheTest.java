@@ -0,0 +1,198 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WTinyLFUCacheTest {
+
+    private static final int SIZE = 100;
+
+    @Test
+    public void hotItemsSurviveScan() {
+        final Cache<TestCacheable> cache = new WTinyLFUCache<>("test", SIZE, 0, 0, Cache.CacheType.BTREE);
+
+        // a working set which is accessed repeatedly
+        for (long key = 0; key < SIZE / 2; key++) {
+            cache.add(new TestCacheable(key));
+        }
+        // moves the last item of the working set out of the admission window
+        cache.add(new TestCacheable(999));
+        for (int round = 0; round < 5; round++) {
+            for (long key = 0; key < SIZE / 2; key++) {
+                assertNotNull(cache.get(key));
+            }
+        }
+
+        // a single scan over many more items than fit into the cache
+        for (long key = 1000; key < 1000 + SIZE * 20; key++) {
+            if (cache.get(key) == null) {
+                cache.add(new TestCacheable(key));
+            }
+        }
+
+        int retained = 0;
+        for (long key = 0; key < SIZE / 2; key++) {
+            if (cache.get(key) != null) {
+                retained++;
+            }
+        }
+        assertEquals(SIZE / 2, retained);
+        assertTrue(cache.getUsedBuffers() <= SIZE);
+        assertTrue(cache.getRejected() > 0);
+    }
+
+    @Test
+    public void lruEvictsHotItemsOnScan() {
+        final Cache<TestCacheable> cache = new LRUCache<>("test", SIZE, 0, 0, Cache.CacheType.BTREE);
+
+        for (long key = 0; key < SIZE / 2; key++) {
+            cache.add(new TestCacheable(key));
+        }
+        for (long key = 1000; key < 1000 + SIZE * 20; key++) {
+            cache.add(new TestCacheable(key));
+        }
+        for (long key = 0; key < SIZE / 2; key++) {
+            assertNull(cache.get(key));
+        }
+        assertEquals(-1, cache.getAdmitted());
+    }
+
+    @Test
+    public void pinnedItemsAreNotEvicted() {
+        final Cache<TestCacheable> cache = new WTinyLFUCache<>("test", SIZE, 0, 0, Cache.CacheType.DATA);
+
+        final TestCacheable pinned = new TestCacheable(0);
+        pinned.unloadable = false;
+        cache.add(pinned);
+
+        for (long key = 1; key < SIZE * 10; key++) {
+            cache.add(new TestCacheable(key));
+        }
+        assertSame(pinned, cache.get(0));
+        assertFalse(pinned.synced);
+    }
+
+    @Test
+    public void frequentCandidateEvictsVictim() {
+        final Cache<TestCacheable> cache = new WTinyLFUCache<>("test", SIZE, 0, 0, Cache.CacheType.DATA);
+
+        final TestCacheable first = new TestCacheable(0);
+        cache.add(first);
+        for (long key = 1; key < SIZE; key++) {
+            cache.add(new TestCacheable(key));
+        }
+
+        // accessed several times whilst in the admission window
+        cache.add(new TestCacheable(5000));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.get(5000));
+        }
+        cache.add(new TestCacheable(5001));
+
+        assertNotNull(cache.get(5000));
+        assertNull(cache.get(0));
+        assertTrue(first.synced);
+        assertEquals(1, cache.getAdmitted());
+    }
+
+    @Test
+    public void resize() {
+        final Cache<TestCacheable> cache = new WTinyLFUCache<>("test", SIZE, 0, 0, Cache.CacheType.DATA);
+        for (long key = 0; key < SIZE; key++) {
+            cache.add(new TestCacheable(key));
+        }
+
+        cache.resize(SIZE * 2);
+        assertEquals(SIZE * 2, cache.getBuffers());
+        for (long key = 0; key < SIZE; key++) {
+            assertNotNull(cache.get(key));
+        }
+
+        cache.resize(SIZE / 2);
+        assertEquals(SIZE / 2, cache.getBuffers());
+        assertTrue(cache.getUsedBuffers() <= SIZE / 2);
+    }
+
+    private static class TestCacheable implements Cacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        private boolean unloadable = true;
+        private boolean synced = false;
+
+        TestCacheable(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            synced = true;
+            return true;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return unloadable;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+    }
+}
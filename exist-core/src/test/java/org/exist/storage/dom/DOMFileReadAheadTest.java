@@ -0,0 +1,136 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.dom;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.serializers.Serializer;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests reading a document from a cold cache, whilst the
+ * pages of the document are read ahead.
+ */
+public class DOMFileReadAheadTest {
+
+    private static final XmldbURI DOC_NAME = XmldbURI.create("large.xml");
+    private static final int PARAGRAPHS = 5000;
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(DOMFile.PROPERTY_READ_AHEAD, 8)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void readAfterRestart() throws Exception {
+        store();
+
+        existEmbeddedServer.restart();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            verify(broker, PARAGRAPHS);
+
+            // pages written after they were read ahead must not be read from the outdated copy
+            query(broker, "update insert <p n='" + PARAGRAPHS + "'>The last paragraph</p> into doc('" +
+                    TestConstants.TEST_COLLECTION_URI.append(DOC_NAME) + "')//body");
+            verify(broker, PARAGRAPHS + 1);
+        }
+
+        existEmbeddedServer.restart();
+
+        final BrokerPool restartedPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = restartedPool.get(Optional.of(restartedPool.getSecurityManager().getSystemSubject()))) {
+            verify(broker, PARAGRAPHS + 1);
+        }
+    }
+
+    private void store() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, test);
+
+            final StringBuilder builder = new StringBuilder("<TEI><text><body>");
+            for (int i = 0; i < PARAGRAPHS; i++) {
+                builder.append("<p n=\"").append(i).append("\">Paragraph ").append(i).append(" of a large document</p>");
+            }
+            final String xml = builder.append("</body></text></TEI>").toString();
+
+            final IndexInfo info = test.validateXMLResource(transaction, broker, DOC_NAME, xml);
+            assertNotNull(info);
+            test.store(transaction, broker, info, xml);
+
+            transact.commit(transaction);
+        }
+    }
+
+    private static void verify(final DBBroker broker, final int paragraphs) throws EXistException, PermissionDeniedException, SAXException, LockException, XPathException {
+        final Serializer serializer = broker.getSerializer();
+        serializer.reset();
+        try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI.append(DOC_NAME), LockMode.READ_LOCK)) {
+            assertNotNull(lockedDoc);
+            final String xml = serializer.serialize(lockedDoc.getDocument());
+            assertTrue(xml.contains("<p n=\"0\">Paragraph 0 of a large document</p>"));
+            assertTrue(xml.contains("<p n=\"" + (PARAGRAPHS - 1) + "\">Paragraph " + (PARAGRAPHS - 1) + " of a large document</p>"));
+        }
+
+        final String expected = IntStream.range(0, paragraphs).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        final Sequence result = query(broker, "string-join(doc('" + TestConstants.TEST_COLLECTION_URI.append(DOC_NAME) + "')//p/@n, ',')");
+        assertEquals(expected, result.getStringValue());
+    }
+
+    private static Sequence query(final DBBroker broker, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        return xquery.execute(broker, query, null);
+    }
+}
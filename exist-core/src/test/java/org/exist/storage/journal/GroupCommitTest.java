@@ -0,0 +1,115 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.journal;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that concurrent transaction commits share a sync of the journal.
+ */
+public class GroupCommitTest {
+
+    private static final long GROUP_COMMIT_WINDOW = 100;
+    private static final int COMMITTERS = 8;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, true)
+                    .put(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, GROUP_COMMIT_WINDOW)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void concurrentCommitsShareSync() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final CyclicBarrier barrier = new CyclicBarrier(COMMITTERS);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(COMMITTERS);
+        try {
+            final List<Future<Txn.State>> results = new ArrayList<>();
+            for (int i = 0; i < COMMITTERS; i++) {
+                results.add(executorService.submit(() -> {
+                    try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                            final Txn transaction = transact.beginTransaction()) {
+                        barrier.await();
+                        transact.commit(transaction);
+                        return transaction.getState();
+                    }
+                }));
+            }
+
+            final long start = System.nanoTime();
+            for (final Future<Txn.State> result : results) {
+                assertEquals(Txn.State.COMMITTED, result.get());
+            }
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // each commit syncing the journal by itself would take at least COMMITTERS * GROUP_COMMIT_WINDOW
+            assertTrue("commits took " + elapsed + "ms", elapsed < (COMMITTERS * GROUP_COMMIT_WINDOW) / 2);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void interruptedCommitKeepsJournalOpen() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                Thread.currentThread().interrupt();
+                transact.commit(transaction);
+                assertEquals(Txn.State.COMMITTED, transaction.getState());
+            } finally {
+                // the interrupt must be kept for the caller
+                assertTrue(Thread.interrupted());
+            }
+
+            // the journal must still be usable after the interrupted sync
+            try (final Txn transaction = transact.beginTransaction()) {
+                transact.commit(transaction);
+                assertEquals(Txn.State.COMMITTED, transaction.getState());
+            }
+        }
+    }
+}
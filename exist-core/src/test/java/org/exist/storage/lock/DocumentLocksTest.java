@@ -28,10 +28,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests for Document Locks
@@ -151,4 +154,90 @@ public class DocumentLocksTest {
         assertEquals(callable1, firstWriteHolder.get());
         assertEquals(callable2, lastWriteHolder.get());
     }
+
+    /**
+     * This test makes sure that an optimistic read of a Document
+     * which is not being written does not take a lock.
+     */
+    @Test
+    public void optimisticReadWithoutWriter() throws LockException {
+        final XmldbURI docUri = XmldbURI.create("/db/x/y/z/1.xml");
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+
+        final AtomicInteger reads = new AtomicInteger();
+        final String result = lockManager.readDocumentOptimistically(docUri, () -> {
+            reads.incrementAndGet();
+            assertEquals(0, lockManager.getDocumentLock(docUri.toString()).getReadLockCount());
+            return "read";
+        });
+
+        assertEquals("read", result);
+        assertEquals(1, reads.get());
+    }
+
+    /**
+     * This test makes sure that an optimistic read of a Document
+     * whilst a writer holds the WRITE_LOCK waits for the writer.
+     */
+    @Test
+    public void optimisticReadWhilstWriting() throws LockException, InterruptedException, ExecutionException {
+        final XmldbURI docUri = XmldbURI.create("/db/x/y/z/1.xml");
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        final AtomicBoolean written = new AtomicBoolean();
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final Future<Boolean> reader;
+        try (final ManagedDocumentLock documentLock = lockManager.acquireDocumentWriteLock(docUri)) {
+            reader = executorService.submit(() -> lockManager.readDocumentOptimistically(docUri, () -> {
+                // must be read under the READ_LOCK
+                assertEquals(1, lockManager.getDocumentLock(docUri.toString()).getReadLockCount());
+                return written.get();
+            }));
+
+            // make sure the reader is waiting for the read lock before we continue
+            while (!lockManager.getDocumentLock(docUri.toString()).hasQueuedThreads()) {
+                Thread.sleep(10);
+            }
+            written.set(true);
+        }
+
+        assertTrue(reader.get());
+        executorService.shutdown();
+    }
+
+    /**
+     * This test makes sure that an optimistic read of a Document
+     * during which a writer modified the Document is repeated
+     * with a READ_LOCK.
+     */
+    @Test
+    public void optimisticReadConflict() throws LockException, InterruptedException, ExecutionException {
+        final XmldbURI docUri = XmldbURI.create("/db/x/y/z/1.xml");
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        final AtomicInteger version = new AtomicInteger();
+        final AtomicInteger reads = new AtomicInteger();
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final int result = lockManager.readDocumentOptimistically(docUri, () -> {
+            final int read = version.get();
+            if (reads.getAndIncrement() == 0) {
+                // a writer modifies the document whilst we read it optimistically
+                try {
+                    executorService.submit(() -> {
+                        try (final ManagedDocumentLock documentLock = lockManager.acquireDocumentWriteLock(docUri)) {
+                            version.incrementAndGet();
+                        }
+                        return null;
+                    }).get();
+                } catch (final InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return read;
+        });
+        executorService.shutdown();
+
+        assertEquals(2, reads.get());
+        assertEquals(1, result);
+    }
 }
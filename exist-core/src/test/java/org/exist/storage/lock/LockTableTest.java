@@ -0,0 +1,197 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.lock;
+
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.Lock.LockType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the lock events reported by many threads
+ * are aggregated correctly by the {@link LockTable}.
+ */
+public class LockTableTest {
+
+    private static final int THREADS = 32;
+    private static final int EVENTS_PER_THREAD = 10_000;
+
+    private LockTable lockTable;
+
+    @Before
+    public void setUp() {
+        lockTable = new LockTable(null);
+    }
+
+    @After
+    public void tearDown() {
+        lockTable.shutdown();
+    }
+
+    @Test
+    public void concurrentEvents() throws InterruptedException {
+        final CountingListener listener = new CountingListener();
+        lockTable.registerListener(listener);
+
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final String id = "/db/" + i;
+            threads[i] = new Thread(() -> {
+                // more events than fit in the event buffer of the thread
+                for (int j = 0; j < EVENTS_PER_THREAD; j++) {
+                    lockTable.attempt(j, id, LockType.COLLECTION, LockMode.READ_LOCK);
+                    lockTable.acquired(j, id, LockType.COLLECTION, LockMode.READ_LOCK);
+                    lockTable.released(j, id, LockType.COLLECTION, LockMode.READ_LOCK);
+                }
+            }, "lock-table-test-" + i);
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(lockTable.getAcquired().isEmpty());
+        assertTrue(lockTable.getAttempting().isEmpty());
+
+        lockTable.deregisterListener(listener);
+        assertEquals(THREADS * EVENTS_PER_THREAD * 3, listener.events.get());
+        assertEquals(0, listener.unbalanced.get());
+    }
+
+    @Test
+    public void acquiredByOtherThread() throws InterruptedException {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Thread thread = new Thread(() -> {
+            lockTable.attempt(1, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+            lockTable.acquired(1, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+            lockTable.attempt(2, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+            lockTable.acquired(2, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+            lockTable.attempt(3, "/db/b", LockType.COLLECTION, LockMode.WRITE_LOCK);
+            acquired.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lockTable.attemptFailed(3, "/db/b", LockType.COLLECTION, LockMode.WRITE_LOCK);
+            lockTable.released(2, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+            lockTable.released(1, "/db/a", LockType.COLLECTION, LockMode.READ_LOCK);
+        }, "lock-table-test-holder");
+        thread.start();
+        acquired.await();
+
+        try {
+            final Map<String, Map<LockType, Map<LockMode, Map<String, LockTable.LockCountTraces>>>> acquiredLocks = lockTable.getAcquired();
+            final LockTable.LockCountTraces lockCountTraces = acquiredLocks.get("/db/a").get(LockType.COLLECTION).get(LockMode.READ_LOCK).get("lock-table-test-holder");
+            assertNotNull(lockCountTraces);
+            assertEquals(2, lockCountTraces.getCount());
+
+            final Map<String, Map<LockType, List<LockTable.LockModeOwner>>> attempting = lockTable.getAttempting();
+            final List<LockTable.LockModeOwner> owners = attempting.get("/db/b").get(LockType.COLLECTION);
+            assertEquals(1, owners.size());
+            assertEquals(LockMode.WRITE_LOCK, owners.get(0).getLockMode());
+            assertEquals("lock-table-test-holder", owners.get(0).getOwnerThread());
+        } finally {
+            release.countDown();
+            thread.join();
+        }
+
+        assertTrue(lockTable.getAcquired().isEmpty());
+        assertTrue(lockTable.getAttempting().isEmpty());
+    }
+
+    @Test
+    public void eventsPublishedByListener() {
+        final CountingListener counter = new CountingListener();
+        final LockingListener locking = new LockingListener(lockTable);
+        lockTable.registerListener(counter);
+        lockTable.registerListener(locking);
+
+        lockTable.attempt(1, "/db/trigger", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.acquired(1, "/db/trigger", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.released(1, "/db/trigger", LockType.COLLECTION, LockMode.READ_LOCK);
+
+        // the first drain notifies the listener, the second applies any events
+        // it published to a buffer which had already been drained
+        lockTable.getAcquired();
+        assertTrue(lockTable.getAcquired().isEmpty());
+
+        lockTable.deregisterListener(locking);
+        lockTable.deregisterListener(counter);
+        assertEquals(3 + LockingListener.EVENTS * 3, counter.events.get());
+        assertEquals(0, counter.unbalanced.get());
+    }
+
+    private static class CountingListener implements LockTable.LockEventListener {
+        private final AtomicInteger events = new AtomicInteger();
+        private final AtomicInteger unbalanced = new AtomicInteger();
+
+        @Override
+        public void accept(final LockTable.LockEventType lockEventType, final long timestamp, final long groupId,
+                final LockTable.Entry entry) {
+            events.incrementAndGet();
+            if (lockEventType == LockTable.LockEventType.Released && entry.getCount() != 0) {
+                unbalanced.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Takes a lock when notified of the first event of /db/trigger,
+     * publishing more events than fit in the event buffer whilst
+     * the lock table is being drained.
+     */
+    private static class LockingListener implements LockTable.LockEventListener {
+        private static final int EVENTS = 1_000;
+
+        private final LockTable lockTable;
+        private boolean triggered = false;
+
+        private LockingListener(final LockTable lockTable) {
+            this.lockTable = lockTable;
+        }
+
+        @Override
+        public void accept(final LockTable.LockEventType lockEventType, final long timestamp, final long groupId,
+                final LockTable.Entry entry) {
+            if (triggered || !"/db/trigger".equals(entry.getId())) {
+                return;
+            }
+            triggered = true;
+            for (int i = 0; i < EVENTS; i++) {
+                lockTable.attempt(i, "/db/listener", LockType.COLLECTION, LockMode.READ_LOCK);
+                lockTable.acquired(i, "/db/listener", LockType.COLLECTION, LockMode.READ_LOCK);
+                lockTable.released(i, "/db/listener", LockType.COLLECTION, LockMode.READ_LOCK);
+            }
+        }
+    }
+}
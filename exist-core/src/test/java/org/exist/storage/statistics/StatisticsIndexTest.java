@@ -24,12 +24,25 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Optional;
 
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.QName;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
 import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
 import org.junit.*;
 
 import static org.exist.storage.NativeBroker.DEFAULT_DATA_DIR;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class StatisticsIndexTest {
@@ -53,4 +66,63 @@ public class StatisticsIndexTest {
         final Path dataDir = existEmbeddedServer.getBrokerPool().getConfiguration().getProperty(BrokerPool.PROPERTY_DATA_DIR, Paths.get(DEFAULT_DATA_DIR));
         assertTrue(Files.exists(dataDir.resolve("stats.dbx")));
     }
+
+    @Test
+    public void countsAndValueDistribution() throws Exception {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<item cat='").append(i % 10 == 0 ? "rare" : "common").append("'>");
+            xml.append("<price>").append(i).append("</price></item>");
+        }
+        xml.append("</items>");
+        storeDocument(xml.toString());
+
+        final IndexStatistics stats = (IndexStatistics) existEmbeddedServer.getBrokerPool().getIndexManager()
+                .getIndexById(IndexStatistics.ID);
+        final QName item = new QName("item", "");
+        final QName price = new QName("price", "");
+        final QName cat = new QName("cat", "", ElementValue.ATTRIBUTE);
+        assertEquals(100, stats.getNodeCount(item));
+        assertEquals(100, stats.getNodeCount(price));
+        assertEquals(100, stats.getNodeCount(cat));
+        assertEquals(0, stats.getNodeCount(new QName("cat", "")));
+
+        assertTrue(stats.getSelectivity(cat, Comparison.EQ, "rare") < stats.getSelectivity(cat, Comparison.EQ, "common"));
+        assertEquals(0.25, stats.getSelectivity(price, Comparison.LT, "24.75"), 0.01);
+        assertEquals(0.75, stats.getSelectivity(price, Comparison.GT, "24.75"), 0.01);
+        assertEquals(-1, stats.getSelectivity(item, Comparison.EQ, "x"), 0);
+    }
+
+    @Test
+    public void predicatesWithEstimates() throws Exception {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 50; i++) {
+            xml.append("<item id='").append(i).append("' cat='").append(i % 2 == 0 ? "a" : "b").append("'/>");
+        }
+        xml.append("</items>");
+        storeDocument(xml.toString());
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker,
+                    "collection('" + TestConstants.TEST_COLLECTION_URI + "')//item[@cat = 'a'][@id = '10']/@id/string()",
+                    null);
+            assertEquals(1, result.getItemCount());
+            assertEquals("10", result.itemAt(0).getStringValue());
+        }
+    }
+
+    private void storeDocument(final String xml) throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager txnMgr = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn txn = txnMgr.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(txn, TestConstants.TEST_COLLECTION_URI);
+            final IndexInfo info = collection.validateXMLResource(txn, broker, TestConstants.TEST_XML_URI, xml);
+            collection.store(txn, broker, info, xml);
+            broker.saveCollection(txn, collection);
+            txnMgr.commit(txn);
+        }
+    }
 }
@@ -2,17 +2,34 @@ package org.exist.storage.structural;
 
 import com.googlecode.junittoolbox.ParallelRunner;
 import org.easymock.EasyMock;
+import org.exist.EXistException;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.DocumentSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.LocationStep;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.easymock.EasyMock.*;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author <a href="mailto:adam.retter@googlemail.com">Adam Retter</a>
@@ -20,6 +37,66 @@ import static org.junit.Assert.assertEquals;
 @RunWith(ParallelRunner.class)
 public class NativeStructuralIndexWorkerTest {
 
+    private static final int PARALLELISM = 4;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                .put(LocationStep.PROPERTY_PATH_STEP_PARALLELISM, PARALLELISM)
+                .build(),
+            true,
+            true);
+
+    private static final String PARALLEL = "declare option exist:path-step-parallelism '" + PARALLELISM + "';\n";
+
+    private static final String DOCS = "collection('/db/parallel-test')";
+
+    /**
+     * Stores 20 documents with sections nested to different depths,
+     * so that the descendant axis finds nodes at several levels of each document.
+     */
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, XPathException {
+        execute(
+                "xmldb:create-collection('/db', 'parallel-test'),\n" +
+                "for $i in 0 to 19\n" +
+                "return xmldb:store('/db/parallel-test', 'doc' || $i || '.xml',\n" +
+                "    <doc n='{$i}'>{\n" +
+                "        for $j in 0 to $i mod 4\n" +
+                "        return <section><title>{$i}.{$j}</title>{\n" +
+                "            for $k in 0 to $j - 1\n" +
+                "            return <section><title>{$i}.{$j}.{$k}</title><p>{$i}.{$j}.{$k}</p></section>\n" +
+                "        }<p>{$i}.{$j}</p></section>\n" +
+                "    }</doc>)");
+    }
+
+    /**
+     * Path steps must return the same nodes, in the same order,
+     * whether or not they are looked up in parallel.
+     */
+    @Test
+    public void parallelLookups() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final NativeStructuralIndex index = (NativeStructuralIndex) pool.getIndexManager().getIndexById(NativeStructuralIndex.ID);
+
+        final String[] paths = {
+                DOCS + "//title ! string()",
+                DOCS + "/doc/section//p ! string()",
+                DOCS + "//section/section/title ! string()",
+                DOCS + "/doc[@n mod 3 = 0]//section[p]/title ! string()",
+                DOCS + "//p/ancestor::section/title ! string()"
+        };
+        for (final String path : paths) {
+            final long before = index.parallelLookups.sum();
+            final List<String> sequential = execute(path);
+            assertFalse(path, sequential.isEmpty());
+            assertEquals("Sequential lookup of " + path + " was done in parallel", before, index.parallelLookups.sum());
+
+            assertEquals(path, sequential, execute(PARALLEL + path));
+            assertTrue("Parallel lookup of " + path + " was done sequentially", index.parallelLookups.sum() > before);
+        }
+    }
+
     @Test
     public void getDocIdRanges_singleContiguous() {
         final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
@@ -131,6 +208,58 @@ public class NativeStructuralIndexWorkerTest {
         assertEquals(24, ranges.get(3).end);
     }
 
+    @Test
+    public void getPartitions() {
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+
+        final DocumentSet docs = documentIdSet(Arrays.asList(1,2,3, 4,5,6, 88,89,3));
+
+        final List<NativeStructuralIndexWorker.Partition> partitions = indexWorker.getPartitions(docs, 3);
+
+        assertEquals(3, partitions.size());
+
+        assertEquals(1, partitions.get(0).ranges.size());
+        assertEquals(1, partitions.get(0).ranges.get(0).start);
+        assertEquals(3, partitions.get(0).ranges.get(0).end);
+        assertEquals(3, partitions.get(0).docs.size());
+
+        assertEquals(1, partitions.get(1).ranges.size());
+        assertEquals(4, partitions.get(1).ranges.get(0).start);
+        assertEquals(6, partitions.get(1).ranges.get(0).end);
+
+        assertEquals(2, partitions.get(2).ranges.size());
+        assertEquals(88, partitions.get(2).ranges.get(0).start);
+        assertEquals(89, partitions.get(2).ranges.get(0).end);
+        assertEquals(3, partitions.get(2).ranges.get(1).start);
+        assertEquals(3, partitions.get(2).ranges.get(1).end);
+    }
+
+    @Test
+    public void getPartitions_fewerDocumentsThanPartitions() {
+        final NativeStructuralIndexWorker indexWorker = new NativeStructuralIndexWorker(null);
+
+        final DocumentSet docs = documentIdSet(Arrays.asList(7, 9));
+
+        final List<NativeStructuralIndexWorker.Partition> partitions = indexWorker.getPartitions(docs, 4);
+
+        assertEquals(2, partitions.size());
+        assertEquals(7, partitions.get(0).ranges.get(0).start);
+        assertEquals(9, partitions.get(1).ranges.get(0).start);
+    }
+
+    private static List<String> execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker, query, null);
+            final List<String> values = new ArrayList<>();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                values.add(i.nextItem().getStringValue());
+            }
+            return values;
+        }
+    }
+
     private DocumentSet documentIdSet(final List<Integer> documentIds) {
         final DocumentSet mockDocumentSet = createMock(DocumentSet.class);
 
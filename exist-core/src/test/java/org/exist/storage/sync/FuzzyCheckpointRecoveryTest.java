@@ -0,0 +1,159 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.sync;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.journal.Lsn;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.serializers.Serializer;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test recovery after a forced database corruption, when a fuzzy
+ * checkpoint was created whilst a transaction was still active.
+ */
+public class FuzzyCheckpointRecoveryTest {
+
+    private static final XmldbURI COMMITTED_BEFORE = XmldbURI.create("committed-before.xml");
+    private static final XmldbURI UNCOMMITTED = XmldbURI.create("uncommitted.xml");
+    private static final XmldbURI COMMITTED_AFTER = XmldbURI.create("committed-after.xml");
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(BrokerPool.PROPERTY_RECOVERY_FUZZY_CHECKPOINTS, true)
+                    .build(),
+            true,
+            true);
+
+    @After
+    public void cleanup() {
+        // restore the flag in-case of a test failure
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void checkpointWithActiveTransaction() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final FuzzyCheckpointer checkpointer = pool.getFuzzyCheckpointer().get();
+        final TransactionManager transact = pool.getTransactionManager();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection test = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+                broker.saveCollection(transaction, test);
+                final Collection test2 = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI2);
+                broker.saveCollection(transaction, test2);
+                store(transaction, broker, test, COMMITTED_BEFORE);
+                transact.commit(transaction);
+            }
+
+            // the following transaction will not be committed. It will thus be rolled back by recovery
+            final Txn uncommitted = transact.beginTransaction();
+            try (final Collection test = broker.openCollection(TestConstants.TEST_COLLECTION_URI, LockMode.WRITE_LOCK)) {
+                store(uncommitted, broker, test, UNCOMMITTED);
+            }
+
+            // the redo point is held back by the active transaction
+            final Lsn redoLsn = transact.getRedoLsn();
+            assertTrue(redoLsn.compareTo(pool.getJournalManager().get().currentLsn()) < 0);
+
+            // writes the pages modified by the uncommitted transaction to disk
+            checkpointer.checkpoint();
+
+            try (final Txn transaction = transact.beginTransaction();
+                    final Collection test2 = broker.openCollection(TestConstants.TEST_COLLECTION_URI2, LockMode.WRITE_LOCK)) {
+                store(transaction, broker, test2, COMMITTED_AFTER);
+                transact.commit(transaction);
+            }
+        }
+
+        // flush journal
+        pool.getJournalManager().get().flush(true, false);
+
+        // restart with no sharp Journal checkpoint, forces recovery to run at startup
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.restart();
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        verify(existEmbeddedServer.getBrokerPool());
+    }
+
+    private static void store(final Txn transaction, final DBBroker broker, final Collection collection, final XmldbURI docName) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder builder = new StringBuilder("<doc name=\"").append(docName).append("\">");
+        for (int i = 0; i < 100; i++) {
+            builder.append("<item n=\"").append(i).append("\">Item ").append(i).append("</item>");
+        }
+        final String xml = builder.append("</doc>").toString();
+
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, docName, xml);
+        assertNotNull(info);
+        collection.store(transaction, broker, info, xml);
+    }
+
+    private void verify(final BrokerPool pool) throws EXistException, PermissionDeniedException, SAXException, LockException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Serializer serializer = broker.getSerializer();
+            serializer.reset();
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI.append(COMMITTED_BEFORE), LockMode.READ_LOCK)) {
+                assertNotNull("Document '" + COMMITTED_BEFORE + "' should exist", lockedDoc);
+                assertTrue(serializer.serialize(lockedDoc.getDocument()).contains("Item 99"));
+            }
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append(COMMITTED_AFTER), LockMode.READ_LOCK)) {
+                assertNotNull("Document '" + COMMITTED_AFTER + "' should exist", lockedDoc);
+                assertTrue(serializer.serialize(lockedDoc.getDocument()).contains("Item 99"));
+            }
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI.append(UNCOMMITTED), LockMode.READ_LOCK)) {
+                assertNull("Document '" + UNCOMMITTED + "' should have been rolled back", lockedDoc);
+            }
+
+            try (final Collection test = broker.openCollection(TestConstants.TEST_COLLECTION_URI, LockMode.READ_LOCK)) {
+                assertEquals(1, test.getDocumentCount(broker));
+            }
+        }
+    }
+}
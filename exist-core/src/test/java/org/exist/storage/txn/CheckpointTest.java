@@ -0,0 +1,76 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.txn;
+
+import org.exist.storage.journal.LogEntryTypes;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Lsn;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest {
+
+    private static final int SHARP_CHECKPOINT_LEN = Lsn.RAW_LENGTH + 8;
+
+    @Test
+    public void sharpCheckpointKeepsFormat() throws LogException {
+        final Checkpoint checkpoint = new Checkpoint(1);
+        checkpoint.setLsn(new Lsn((short) 1, 100));
+        assertEquals(LogEntryTypes.CHECKPOINT, checkpoint.getLogType());
+        assertFalse(checkpoint.isFuzzy());
+        assertEquals(SHARP_CHECKPOINT_LEN, checkpoint.getLogSize());
+
+        final ByteBuffer buf = ByteBuffer.allocate(64);
+        checkpoint.write(buf);
+        assertEquals(SHARP_CHECKPOINT_LEN, buf.position());
+
+        buf.flip();
+        final Checkpoint read = (Checkpoint) LogEntryTypes.create(LogEntryTypes.CHECKPOINT, null, 1);
+        read.read(buf);
+        assertFalse(read.isFuzzy());
+        assertEquals(checkpoint.getLsn(), read.getStoredLsn());
+        assertEquals(Lsn.LSN_INVALID, read.getRedoLsn());
+    }
+
+    @Test
+    public void fuzzyCheckpoint() throws LogException {
+        final Lsn redoLsn = new Lsn((short) 1, 50);
+        final Checkpoint checkpoint = new Checkpoint(2, redoLsn);
+        checkpoint.setLsn(new Lsn((short) 1, 200));
+        assertEquals(LogEntryTypes.FUZZY_CHECKPOINT, checkpoint.getLogType());
+        assertTrue(checkpoint.isFuzzy());
+
+        final ByteBuffer buf = ByteBuffer.allocate(64);
+        checkpoint.write(buf);
+        assertEquals(checkpoint.getLogSize(), buf.position());
+
+        buf.flip();
+        final Checkpoint read = (Checkpoint) LogEntryTypes.create(LogEntryTypes.FUZZY_CHECKPOINT, null, 2);
+        read.read(buf);
+        assertTrue(read.isFuzzy());
+        assertEquals(checkpoint.getLsn(), read.getStoredLsn());
+        assertEquals(redoLsn, read.getRedoLsn());
+    }
+}
@@ -39,6 +39,7 @@ public class FieldType {
 	private final static String ANALYZER_ID_ATTR = "analyzer";
 	private final static String BOOST_ATTRIB = "boost";
 	private final static String STORE_ATTRIB = "store";
+	private final static String OFFSETS_ATTRIB = "offsets";
 	
 	private String id = null;
 	
@@ -50,6 +51,9 @@ public class FieldType {
 	private float boost = -1;
     
 	private Field.Store store = null;
+
+	// index term offsets, so LuceneMatchListener can mark matches without re-analyzing the text
+	private boolean offsets = false;
 	
     public FieldType(Element config, AnalyzerConfig analyzers) throws DatabaseConfigurationException {
         
@@ -85,6 +89,11 @@ public class FieldType {
         if (storeAttr != null && storeAttr.length() > 0) {
         	store = storeAttr.equalsIgnoreCase("yes") ? Field.Store.YES : Field.Store.NO;
         }
+
+        String offsetsAttr = config.getAttribute(OFFSETS_ATTRIB);
+        if (offsetsAttr != null && offsetsAttr.length() > 0) {
+        	offsets = offsetsAttr.equalsIgnoreCase("yes") || offsetsAttr.equalsIgnoreCase("true");
+        }
     }
     
     public String getId() {
@@ -110,4 +119,8 @@ public class FieldType {
 	public Field.Store getStore() {
 		return store;
 	}
+
+	public boolean hasOffsets() {
+		return offsets;
+	}
 }
@@ -30,6 +30,7 @@ import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
 import org.exist.backup.RawDataBackup;
@@ -41,6 +42,7 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
+import org.exist.util.NamedThreadFactory;
 import org.exist.xquery.XPathException;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -49,6 +51,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     
@@ -68,12 +74,27 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     protected double bufferSize = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
 
+    /**
+     * Interval in milliseconds in which readers are reopened to see the changes made
+     * by other transactions. If 0, readers are reopened whenever the index is read.
+     */
+    protected long refreshInterval = 0;
+
     protected IndexWriter cachedWriter = null;
     protected DirectoryTaxonomyWriter cachedTaxonomyWriter = null;
 
     protected SearcherTaxonomyManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    /**
+     * Incremented whenever the writer has been used, compared with
+     * {@link #readGeneration} to decide if readers have to be reopened.
+     */
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private volatile long readGeneration = 0;
+    private final Object refreshLock = new Object();
+    private ScheduledExecutorService refreshExecutor = null;
+
     public String getDirName() {
         return DIR_NAME;
     }
@@ -94,6 +115,14 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: " + bufferSize);
+
+        String refreshIntervalParam = config.getAttribute("refresh-interval");
+        if (refreshIntervalParam != null && !refreshIntervalParam.isEmpty())
+            try {
+                refreshInterval = Long.parseLong(refreshIntervalParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid refresh interval setting for lucene index: " + refreshIntervalParam, e);
+            }
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -134,6 +163,11 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             searcherManager = new SearcherTaxonomyManager(cachedWriter, true, null, cachedTaxonomyWriter);
             readerManager = new ReaderManager(cachedWriter, true);
+
+            if (refreshInterval > 0) {
+                refreshExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(pool, "lucene-refresh"));
+                refreshExecutor.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+            }
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading lucene index directory: " +
                 e.getMessage(), e);
@@ -145,6 +179,15 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     @Override
     public synchronized void close() throws DBException {
         try {
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
+                try {
+                    refreshExecutor.awaitTermination(refreshInterval, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                refreshExecutor = null;
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -220,6 +263,17 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         if (writer == null)
             return;
         needsCommit = true;
+        writeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Returns the current write generation, which a reader has to see to include
+     * all changes made so far. See {@link #withReader(long, FunctionE)}.
+     *
+     * @return the write generation
+     */
+    public long getWriteGeneration() {
+        return writeGeneration.get();
     }
 
     protected void commit() {
@@ -243,17 +297,79 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
-        final DirectoryReader reader = readerManager.acquire();
+        return withReader(0, fn);
+    }
+
+    /**
+     * Calls the function with a reader, which sees at least the changes made up to
+     * the given write generation. If a refresh interval is configured, the reader is
+     * only reopened if it is older, so a transaction always reads its own writes
+     * without reopening the reader for every read.
+     *
+     * @param generation the write generation, as returned by {@link #getWriteGeneration()}
+     * @param fn the function
+     * @param <R> the type of the result
+     * @return the result of the function
+     * @throws IOException if the index cannot be read
+     */
+    public <R> R withReader(long generation, FunctionE<IndexReader, R, IOException> fn) throws IOException {
+        final DirectoryReader reader = acquireReader(generation);
         try {
             return fn.apply(reader);
         } finally {
-            readerManager.release(reader);
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * Acquires a reader like {@link #withReader(long, FunctionE)} does, for callers
+     * which read the index many times in a row. The reader has to be released with
+     * {@link #releaseReader(DirectoryReader)}.
+     *
+     * @param generation the write generation, as returned by {@link #getWriteGeneration()}
+     * @return the reader
+     * @throws IOException if the index cannot be read
+     */
+    public DirectoryReader acquireReader(long generation) throws IOException {
+        if (refreshInterval > 0) {
+            refresh(generation);
+        } else {
+            readerManager.maybeRefreshBlocking();
         }
+        return readerManager.acquire();
+    }
+
+    /**
+     * Releases a reader acquired by {@link #acquireReader(long)}.
+     *
+     * @param reader the reader
+     * @throws IOException if the reader cannot be released
+     */
+    public void releaseReader(DirectoryReader reader) throws IOException {
+        readerManager.release(reader);
     }
 
     public <R> R withSearcher(Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        return withSearcher(0, consumer);
+    }
+
+    /**
+     * Calls the function with a searcher, which sees at least the changes made up to
+     * the given write generation. See {@link #withReader(long, FunctionE)}.
+     *
+     * @param generation the write generation, as returned by {@link #getWriteGeneration()}
+     * @param consumer the function
+     * @param <R> the type of the result
+     * @return the result of the function
+     * @throws IOException if the index cannot be read
+     * @throws XPathException if the function fails
+     */
+    public <R> R withSearcher(long generation, Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
+        if (refreshInterval > 0) {
+            refresh(generation);
+        } else {
+            searcherManager.maybeRefreshBlocking();
+        }
         final SearcherTaxonomyManager.SearcherAndTaxonomy searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -262,6 +378,36 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    /**
+     * Reopens the readers from the writer if they do not see the given write generation.
+     * Unlike a commit, this does not sync the index to disk.
+     */
+    private void refresh(long generation) throws IOException {
+        if (readGeneration >= generation) {
+            return;
+        }
+        synchronized (refreshLock) {
+            if (readGeneration >= generation) {
+                return;
+            }
+            final long current = writeGeneration.get();
+            searcherManager.maybeRefreshBlocking();
+            readerManager.maybeRefreshBlocking();
+            readGeneration = current;
+        }
+    }
+
+    /**
+     * Called by the refresh thread to make the changes of all transactions visible.
+     */
+    private void refresh() {
+        try {
+            refresh(writeGeneration.get());
+        } catch (IOException | AlreadyClosedException e) {
+            LOG.warn("Failed to refresh lucene index readers: " + e.getMessage(), e);
+        }
+    }
+
 	@Override
 	public void backupToArchive(final RawDataBackup backup) throws IOException {
 		for (final String name : directory.listAll()) {
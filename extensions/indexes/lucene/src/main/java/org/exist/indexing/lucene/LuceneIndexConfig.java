@@ -240,6 +240,13 @@ public class LuceneIndexConfig {
         return type.getBoost();
     }
 
+    /**
+     * @return true if term offsets should be stored in the index
+     */
+    public boolean hasOffsets() {
+        return type.hasOffsets();
+    }
+
     /**
      * Get boost by matching the config with given attributes
      * (e.g. sibling or child atributes)
@@ -50,6 +50,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.indexing.lucene.PlainTextHighlighter.Offset;
 import org.exist.indexing.lucene.PlainTextIndexConfig.PlainTextField;
 import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.*;
 import org.exist.storage.btree.DBException;
@@ -91,6 +92,18 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         TYPE_NODE_ID.setTokenized(true);
     }
 
+    /**
+     * Field type for text content configured with offsets="yes": the postings
+     * include the offsets of each term, which are used by {@link LuceneMatchListener}.
+     */
+    public static final org.apache.lucene.document.FieldType TYPE_CONTENT_OFFSETS =
+            new org.apache.lucene.document.FieldType(TextField.TYPE_NOT_STORED);
+    static {
+        TYPE_CONTENT_OFFSETS.setStoreTermVectors(true);
+        TYPE_CONTENT_OFFSETS.setIndexOptions(FieldInfo.IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TYPE_CONTENT_OFFSETS.freeze();
+    }
+
     static final Logger LOG = LogManager.getLogger(LuceneIndexWorker.class);
     
     protected LuceneIndex index;
@@ -114,6 +127,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private int cachedNodesSize = 0;
 
     private int maxCachedNodesSize = 4096 * 1024;
+
+    /**
+     * The write generation of the index after the last change made through this worker,
+     * so searches see the changes made by the same broker.
+     */
+    private long writeGeneration = 0;
     
     private Analyzer analyzer;
 
@@ -315,7 +334,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -330,7 +349,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -352,7 +371,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -400,7 +419,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while deleting lucene index entries: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToRemove = null;
         }
     }
@@ -428,10 +447,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, String queryStr, int axis, QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
+            final TopHits topHits = options.getLimit().map(TopHits::new).orElse(null);
             for (QName qname : definedIndexes) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 LuceneConfig config = getLuceneConfig(broker, docs);
@@ -449,7 +469,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     query = drilldown(facets.get(), query, config);
                 }
                 searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, options.getFields(), config);
+                        returnAncestor, searcher, query, options.getFields(), config, topHits);
+            }
+            if (topHits != null) {
+                topHits.addToResult();
             }
             return resultSet;
         });
@@ -478,10 +501,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, Element queryRoot, int axis, QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
+            final TopHits topHits = options.getLimit().map(TopHits::new).orElse(null);
             for (QName qname : definedIndexes) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 LuceneConfig config = getLuceneConfig(broker, docs);
@@ -493,9 +517,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 }
                 if (query != null) {
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, options.getFields(), config);
+                            returnAncestor, searcher, query, options.getFields(), config, topHits);
                 }
             }
+            if (topHits != null) {
+                topHits.addToResult();
+            }
             return resultSet;
         });
     }
@@ -503,15 +530,19 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet,
                               String field, Element queryRoot, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
             final LuceneConfig config = getLuceneConfig(broker, docs);
             analyzer = getQueryAnalyzer(config, field, null, options);
             final Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
             if (query != null) {
+                final TopHits topHits = options.getLimit().map(TopHits::new).orElse(null);
                 searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, null, config);
+                        returnAncestor, searcher, query, null, config, topHits);
+                if (topHits != null) {
+                    topHits.addToResult();
+                }
             }
             return resultSet;
         });
@@ -529,11 +560,13 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
                                   NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
                                   SearcherTaxonomyManager.SearcherAndTaxonomy searcher, Query query,
-                                  @Nullable Set<String> fields, LuceneConfig config) throws IOException {
+                                  @Nullable Set<String> fields, LuceneConfig config,
+                                  @Nullable TopHits topHits) throws IOException {
         final LuceneFacets facets = new LuceneFacets();
         final FacetsCollector facetsCollector = new FacetsCollector();
-        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields);
+        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields, topHits);
         searcher.searcher.search(query, collector);
+        collector.finish();
 
         // compute facets
         facets.compute(searcher.taxonomyReader, config.facetsConfig, facetsCollector);
@@ -568,7 +601,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
             String field, String queryString, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             NodeSet resultSet = new NewArrayNodeSet();
             boolean returnAncestor = axis == NodeSet.ANCESTOR;
             LuceneConfig config = getLuceneConfig(context.getBroker(), docs);
@@ -577,8 +610,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             QueryParserWrapper parser = getQueryParser(field, analyzer, docs);
             options.configureParser(parser.getConfiguration());
             Query query = parser.parse(queryString);
+            final TopHits topHits = options.getLimit().map(TopHits::new).orElse(null);
             searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                    returnAncestor, searcher, query, null, config);
+                    returnAncestor, searcher, query, null, config, topHits);
+            if (topHits != null) {
+                topHits.addToResult();
+            }
             return resultSet;
         });
     }
@@ -665,7 +702,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
 
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             pendingDoc = null;
             cachedNodesSize = 0;
         }
@@ -686,7 +723,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      */
     public NodeImpl search(final XQueryContext context, final List<String> toBeMatchedURIs, String queryText, String[] fieldsToGet, QueryOptions options) throws XPathException, IOException {
 
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             // Get analyzer : to be retrieved from configuration
             final Analyzer searchAnalyzer = new StandardAnalyzer(LuceneIndex.LUCENE_VERSION_IN_USE);
 
@@ -822,7 +859,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
                 AtomicReader atomicReader = context.reader();
@@ -844,7 +881,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             boolean found = false;
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
@@ -887,8 +924,17 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return false;
     }
 
+    /**
+     * Collects the hits of a query into the result set.
+     *
+     * The hits of a segment are buffered, and processed when the segment has been searched.
+     * They are grouped by the eXist document they belong to, so each document is only looked
+     * up once, instead of once for every hit.
+     */
     private class LuceneHitCollector extends Collector {
 
+        private static final int INITIAL_BUFFER_SIZE = 256;
+
         private Scorer scorer;
 
         private AtomicReader reader;
@@ -904,8 +950,17 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final LuceneFacets facets;
         private final FacetsCollector chainedCollector;
         private final Set<String> fields;
+        private final NodeIdFactory nodeFactory;
+        @Nullable private final TopHits topHits;
+
+        // the hits of the current segment: the lucene doc, the eXist document id and the score of each hit
+        private int[] hitDocs = new int[INITIAL_BUFFER_SIZE];
+        private int[] hitDocIds = new int[INITIAL_BUFFER_SIZE];
+        private float[] hitScores = new float[INITIAL_BUFFER_SIZE];
+        private boolean[] hitAccepted = new boolean[INITIAL_BUFFER_SIZE];
+        private int hitCount = 0;
 
-        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields) {
+        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields, @Nullable TopHits topHits) {
             this.qname = qname;
             this.docs = docs;
             this.contextSet = contextSet;
@@ -916,6 +971,8 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             this.facets = facets;
             this.chainedCollector = nextCollector;
             this.fields = fields;
+            this.nodeFactory = index.getBrokerPool().getNodeFactory();
+            this.topHits = topHits;
         }
 
         @Override
@@ -926,6 +983,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
         @Override
         public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            processHits();
             this.reader = atomicReaderContext.reader();
             this.docIdValues = this.reader.getNumericDocValues(FIELD_DOC_ID);
             this.nodeIdValues = this.reader.getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
@@ -938,17 +996,80 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
 
         @Override
-        public void collect(int doc) {
-            try {
-                float score = scorer.score();
-                int docId = (int) this.docIdValues.get(doc);
-                DocumentImpl storedDocument = docs.getDoc(docId);
-                if (storedDocument == null)
-                    return;
+        public void collect(int doc) throws IOException {
+            if (hitCount == hitDocs.length) {
+                final int newSize = hitCount * 2;
+                hitDocs = Arrays.copyOf(hitDocs, newSize);
+                hitDocIds = Arrays.copyOf(hitDocIds, newSize);
+                hitScores = Arrays.copyOf(hitScores, newSize);
+                hitAccepted = new boolean[newSize];
+            }
+            hitDocs[hitCount] = doc;
+            hitDocIds[hitCount] = (int) this.docIdValues.get(doc);
+            hitScores[hitCount++] = scorer.score();
+        }
+
+        /**
+         * Processes the hits buffered for the last segment. Must be called
+         * after the search has finished.
+         *
+         * @throws IOException if the index cannot be read
+         */
+        void finish() throws IOException {
+            processHits();
+        }
+
+        private void processHits() throws IOException {
+            if (hitCount == 0) {
+                return;
+            }
+
+            // sort the hits by document id, and by their position in the segment within a document
+            final long[] order = new long[hitCount];
+            for (int i = 0; i < hitCount; i++) {
+                order[i] = ((long) hitDocIds[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int start = 0;
+            while (start < hitCount) {
+                final int docId = (int) (order[start] >>> 32);
+                int end = start + 1;
+                while (end < hitCount && (int) (order[end] >>> 32) == docId) {
+                    end++;
+                }
+                final DocumentImpl storedDocument = docs.getDoc(docId);
+                if (storedDocument != null) {
+                    processHits(storedDocument, order, start, end);
+                }
+                start = end;
+            }
+
+            // the facets collector is passed the accepted hits in the order of the segment
+            for (int i = 0; i < hitCount; i++) {
+                if (hitAccepted[i]) {
+                    chainedCollector.collect(hitDocs[i]);
+                    hitAccepted[i] = false;
+                }
+            }
+            hitCount = 0;
+        }
+
+        private void processHits(DocumentImpl storedDocument, long[] order, int start, int end) throws IOException {
+            final int sizeHint = contextSet == null ? Constants.NO_SIZE_HINT : contextSet.getSizeHint(storedDocument);
+            for (int i = start; i < end; i++) {
+                final int hit = (int) order[i];
+                final int doc = hitDocs[hit];
+                final float score = hitScores[hit];
+                if (topHits != null && contextSet == null && !topHits.isCompetitive(score)) {
+                    // the hit is accepted, but will not be returned
+                    hitAccepted[hit] = true;
+                    continue;
+                }
+
                 final BytesRef ref = this.nodeIdValues.get(doc);
                 int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-                NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
-                //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
+                NodeId nodeId = nodeFactory.createFromData(units, ref.bytes, ref.offset + 2);
 
                 NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
                 if (qname != null)
@@ -956,39 +1077,43 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 // if a context set is specified, we can directly check if the
                 // matching node is a descendant of one of the nodes
                 // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = createMatch(doc, score, nodeId);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                            chainedCollector.collect(doc);
-                        }
-                    } else {
-                        LuceneMatch match = createMatch(doc, score, nodeId);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
-                        chainedCollector.collect(doc);
+                NodeProxy parentNode = null;
+                if (contextSet != null && returnAncestor) {
+                    parentNode = contextSet.get(storedNode);
+                    if (parentNode == null) {
+                        continue;
                     }
+                }
+                hitAccepted[hit] = true;
+                if (topHits != null) {
+                    topHits.offer(new TopHit(this, reader, doc, score, storedNode, parentNode, sizeHint));
+                } else {
+                    addHit(reader, doc, score, storedNode, parentNode, sizeHint);
+                }
+            }
+        }
+
+        private void addHit(AtomicReader reader, int doc, float score, NodeProxy storedNode,
+                @Nullable NodeProxy parentNode, int sizeHint) throws IOException {
+            final LuceneMatch match = createMatch(reader, doc, score, storedNode.getNodeId());
+            if (parentNode != null) {
+                parentNode.addMatch(match);
+                resultSet.add(parentNode, sizeHint);
+                if (Expression.NO_CONTEXT_ID != contextId) {
+                    parentNode.deepCopyContext(storedNode, contextId);
+                } else
+                    parentNode.copyContext(storedNode);
+            } else {
+                storedNode.addMatch(match);
+                if (contextSet != null) {
+                    resultSet.add(storedNode, sizeHint);
                 } else {
-                    LuceneMatch match = createMatch(doc, score, nodeId);
-                    storedNode.addMatch(match);
                     resultSet.add(storedNode);
-                    chainedCollector.collect(doc);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
 
-        private LuceneMatch createMatch(int docId, float score, NodeId nodeId) throws IOException {
+        private LuceneMatch createMatch(AtomicReader reader, int docId, float score, NodeId nodeId) throws IOException {
             final LuceneMatch match = new LuceneMatch(contextId, nodeId, query, facets);
             match.setScore(score);
             if (fields != null && !fields.isEmpty()) {
@@ -1001,6 +1126,123 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    /**
+     * A hit kept by {@link TopHits}, which is only added to the result
+     * if it is one of the hits with the highest score.
+     */
+    private static class TopHit {
+        final LuceneHitCollector collector;
+        final AtomicReader reader;
+        final int doc;
+        final float score;
+        final NodeProxy storedNode;
+        @Nullable final NodeProxy parentNode;
+        final int sizeHint;
+        long sequence;
+        /** further hits below the same ancestor, which are returned as one node */
+        @Nullable List<TopHit> merged = null;
+
+        TopHit(LuceneHitCollector collector, AtomicReader reader, int doc, float score, NodeProxy storedNode,
+                @Nullable NodeProxy parentNode, int sizeHint) {
+            this.collector = collector;
+            this.reader = reader;
+            this.doc = doc;
+            this.score = score;
+            this.storedNode = storedNode;
+            this.parentNode = parentNode;
+            this.sizeHint = sizeHint;
+        }
+    }
+
+    /**
+     * Keeps the hits with the highest score, if the number of hits returned by a query is limited,
+     * see {@link QueryOptions#getLimit()}. The hits are only turned into matches and added to the
+     * result once all hits have been collected, so the work done for the result does not depend
+     * on the total number of hits. If hits have the same score, the hit found first is kept,
+     * as Lucene's {@link TopScoreDocCollector} does.
+     *
+     * If the ancestors of the matching nodes are returned, the hits below the same ancestor are
+     * merged into one, which is ranked by the highest score among them, so the limit applies
+     * to the returned nodes.
+     */
+    private static class TopHits {
+        private final int limit;
+        private final PriorityQueue<TopHit> queue;
+        // the context set returns the same instance for an ancestor, see NodeSet#get(NodeProxy)
+        private final Map<NodeProxy, TopHit> ancestors = new IdentityHashMap<>();
+        private long sequence = 0;
+
+        TopHits(int limit) {
+            this.limit = limit;
+            this.queue = new PriorityQueue<>(Math.min(limit, 1024),
+                    Comparator.comparingDouble((TopHit hit) -> hit.score)
+                            .thenComparing(Comparator.comparingLong((TopHit hit) -> hit.sequence).reversed()));
+        }
+
+        boolean isCompetitive(float score) {
+            return queue.size() < limit || score > queue.peek().score;
+        }
+
+        void offer(TopHit hit) {
+            if (hit.parentNode != null) {
+                final TopHit ancestor = ancestors.get(hit.parentNode);
+                if (ancestor != null) {
+                    merge(ancestor, hit);
+                    return;
+                }
+            }
+            if (!isCompetitive(hit.score)) {
+                return;
+            }
+            hit.sequence = sequence++;
+            if (queue.size() == limit) {
+                final TopHit removed = queue.poll();
+                if (removed.parentNode != null) {
+                    ancestors.remove(removed.parentNode);
+                }
+            }
+            queue.add(hit);
+            if (hit.parentNode != null) {
+                ancestors.put(hit.parentNode, hit);
+            }
+        }
+
+        private void merge(TopHit ancestor, TopHit hit) {
+            if (hit.score <= ancestor.score) {
+                addMerged(ancestor, hit);
+                return;
+            }
+            // the hit with the highest score ranks the ancestor
+            queue.remove(ancestor);
+            hit.sequence = ancestor.sequence;
+            hit.merged = ancestor.merged;
+            ancestor.merged = null;
+            addMerged(hit, ancestor);
+            queue.add(hit);
+            ancestors.put(hit.parentNode, hit);
+        }
+
+        private static void addMerged(TopHit ancestor, TopHit hit) {
+            if (ancestor.merged == null) {
+                ancestor.merged = new ArrayList<>();
+            }
+            ancestor.merged.add(hit);
+        }
+
+        void addToResult() throws IOException {
+            for (final TopHit hit : queue) {
+                hit.collector.addHit(hit.reader, hit.doc, hit.score, hit.storedNode, hit.parentNode, hit.sizeHint);
+                if (hit.merged != null) {
+                    for (final TopHit other : hit.merged) {
+                        other.collector.addHit(other.reader, other.doc, other.score, other.storedNode, other.parentNode, other.sizeHint);
+                    }
+                }
+            }
+            queue.clear();
+            ancestors.clear();
+        }
+    }
+
     /**
      * Check index configurations for all collection in the given DocumentSet and return
      * a list of QNames, which have indexes defined on them.
@@ -1028,7 +1270,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private List<QName> getDefinedIndexesFor(QName qname, final List<QName> indexes) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             for (FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -1175,7 +1417,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(writeGeneration, reader -> {
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 doScanIndex(docs, nodes, start, end, max, map, reader, field);
@@ -1188,7 +1430,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByField(String field, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(writeGeneration, reader -> {
             doScanIndex(docs, nodes, start, end, max, map, reader, field);
             return null;
         });
@@ -1388,7 +1630,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     else
                         contentField = LuceneUtil.encodeQName(pending.qname, index.getBrokerPool().getSymbols());
 
-                    Field fld = new Field(contentField, pending.text.toString(), Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.YES);
+                    final Field fld;
+                    if (pending.idxConf.hasOffsets()) {
+                        fld = new Field(contentField, pending.text.toString(), TYPE_CONTENT_OFFSETS);
+                    } else {
+                        fld = new Field(contentField, pending.text.toString(), Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.YES);
+                    }
                     if (pending.boost > 0) {
                         fld.setBoost(pending.boost);
                     } else if (config.getBoost() > 0) {
@@ -1414,7 +1661,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (final IOException e) {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToWrite = new ArrayList<>();
             cachedNodesSize = 0;
         }
@@ -1433,7 +1680,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
+        }
+    }
+
+    private void releaseWriter(IndexWriter writer) {
+        index.releaseWriter(writer);
+        if (writer != null) {
+            writeGeneration = index.getWriteGeneration();
         }
     }
 
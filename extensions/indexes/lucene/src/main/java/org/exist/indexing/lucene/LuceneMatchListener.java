@@ -29,9 +29,24 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
 import org.exist.indexing.AbstractMatchListener;
 import org.exist.numbering.NodeId;
 import org.exist.stax.ExtendedXMLStreamReader;
@@ -40,6 +55,7 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.NodePath2;
+import org.exist.util.ByteConversion;
 import org.exist.util.serializer.AttrList;
 import org.xml.sax.SAXException;
 
@@ -216,6 +232,12 @@ public class LuceneMatchListener extends AbstractMatchListener {
             LOG.warn("Problem found while serializing XML: " + e.getMessage(), e);
         }
 
+        // If the index stores term offsets, take the matches from there
+        // instead of analyzing the text again
+        if (idxConf.hasOffsets() && scanStoredOffsets(p, idxConf, offsets)) {
+            return;
+        }
+
         // Retrieve the Analyzer for the NodeProxy that was used for
         // indexing and querying.
         Analyzer analyzer = idxConf.getAnalyzer();
@@ -274,39 +296,14 @@ public class LuceneMatchListener extends AbstractMatchListener {
                                     stream.restoreState(stateList.get(i));
 
                                     final OffsetAttribute offsetAttr = stream.getAttribute(OffsetAttribute.class);
-                                    final int idx = offsets.getIndex(offsetAttr.startOffset());
-
-                                    final NodeId nodeId = offsets.ids[idx];
-                                    final Offset offset = nodesWithMatch.get(nodeId);
-                                    if (offset != null) {
-                                        if (lastIdx == idx) {
-                                            offset.setEndOffset(offsetAttr.endOffset() - offsets.offsets[idx]);
-                                        } else {
-                                            offset.add(offsetAttr.startOffset() - offsets.offsets[idx],
-                                                    offsetAttr.endOffset() - offsets.offsets[idx]);
-                                        }
-                                    } else {
-                                        nodesWithMatch.put(nodeId, new Offset(offsetAttr.startOffset() - offsets.offsets[idx],
-                                                offsetAttr.endOffset() - offsets.offsets[idx]));
-                                    }
-
-                                    lastIdx = idx;
+                                    lastIdx = addMatch(offsets, offsetAttr.startOffset(), offsetAttr.endOffset(), lastIdx);
                                 }
                             }
                         } // End of phrase handling
                     } else {
 
                         final OffsetAttribute offsetAttr = stream.getAttribute(OffsetAttribute.class);
-                        final int idx = offsets.getIndex(offsetAttr.startOffset());
-                        final NodeId nodeId = offsets.ids[idx];
-                        final Offset offset = nodesWithMatch.get(nodeId);
-                        if (offset != null) {
-                            offset.add(offsetAttr.startOffset() - offsets.offsets[idx],
-                                    offsetAttr.endOffset() - offsets.offsets[idx]);
-                        } else {
-                            nodesWithMatch.put(nodeId, new Offset(offsetAttr.startOffset() - offsets.offsets[idx],
-                                    offsetAttr.endOffset() - offsets.offsets[idx]));
-                        }
+                        addMatch(offsets, offsetAttr.startOffset(), offsetAttr.endOffset(), -1);
                     }
                 }
             }
@@ -315,6 +312,192 @@ public class LuceneMatchListener extends AbstractMatchListener {
         }
     }
 
+    /**
+     * Mark the query terms using the offsets stored in the index, which is much
+     * cheaper than running the analyzer over the text of the node again.
+     *
+     * @param p the indexed node
+     * @param idxConf the index configuration of the node
+     * @param offsets the start offsets of the text nodes below p
+     * @return false if the index does not have offsets of the query terms for the node,
+     *     so the text needs to be analyzed
+     */
+    private boolean scanStoredOffsets(final NodeProxy p, final LuceneIndexConfig idxConf, final OffsetList offsets) {
+        final String field;
+        if (idxConf.isNamed()) {
+            field = idxConf.getName();
+        } else {
+            final IStoredNode<?> node = (IStoredNode<?>) p.getNode();
+            field = LuceneUtil.encodeQName(node.getQName(), index.getBrokerPool().getSymbols());
+        }
+
+        final BytesRefBuilder docIdBytes = new BytesRefBuilder();
+        NumericUtils.intToPrefixCoded(p.getOwnerDocument().getDocId(), 0, docIdBytes);
+        final NodeId nodeId = p.getNodeId();
+        final byte[] nodeIdData = new byte[nodeId.size() + 2];
+        ByteConversion.shortToByte((short) nodeId.units(), nodeIdData, 0);
+        nodeId.serialize(nodeIdData, 2);
+
+        final BooleanQuery query = new BooleanQuery();
+        query.add(new TermQuery(new Term(LuceneIndexWorker.FIELD_DOC_ID, docIdBytes.toBytesRef())), BooleanClause.Occur.MUST);
+        query.add(new TermQuery(new Term(LuceneUtil.FIELD_NODE_ID, new BytesRef(nodeIdData))), BooleanClause.Occur.MUST);
+
+        try {
+            final List<TermOffset> hits = index.withReader(reader -> {
+                // the node may be indexed in several lucene documents, not all of which have the field
+                final TermOffsetsCollector collector = new TermOffsetsCollector(field);
+                new IndexSearcher(reader).search(query, collector);
+                return collector.hits;
+            });
+            if (hits == null) {
+                return false;
+            }
+            markTermOffsets(hits, offsets);
+            return true;
+        } catch (final IOException e) {
+            LOG.warn("Problem found while reading term offsets: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Read positions and offsets of all query terms within the given Lucene document.
+     *
+     * @return the terms sorted by offset, or null if the field was not indexed with offsets
+     */
+    private List<TermOffset> getTermOffsets(final AtomicReader reader, final int doc, final String field) throws IOException {
+        // fields indexed without offsets in some documents of a segment lose the offsets
+        final FieldInfo info = reader.getFieldInfos().fieldInfo(field);
+        if (info == null || info.getIndexOptions() != FieldInfo.IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) {
+            return null;
+        }
+        final List<TermOffset> hits = new ArrayList<>();
+        final Terms terms = reader.terms(field);
+        if (terms == null) {
+            return hits;
+        }
+        final TermsEnum termsEnum = terms.iterator(null);
+        for (final Object key : termMap.keySet()) {
+            final String text = key.toString();
+            if (!termsEnum.seekExact(new BytesRef(text))) {
+                continue;
+            }
+            final DocsAndPositionsEnum postings = termsEnum.docsAndPositions(reader.getLiveDocs(), null, DocsAndPositionsEnum.FLAG_OFFSETS);
+            if (postings == null || postings.advance(doc) != doc) {
+                continue;
+            }
+            for (int i = postings.freq(); i > 0; i--) {
+                final int position = postings.nextPosition();
+                hits.add(new TermOffset(text, position, postings.startOffset(), postings.endOffset()));
+            }
+        }
+        hits.sort(Comparator.comparingInt(hit -> hit.startOffset));
+        return hits;
+    }
+
+    /**
+     * Collects the term offsets of the first lucene document of a node
+     * which has offsets for any of the query terms in the field.
+     */
+    private class TermOffsetsCollector extends Collector {
+        private final String field;
+        private AtomicReader reader;
+        private List<TermOffset> hits = null;
+
+        private TermOffsetsCollector(final String field) {
+            this.field = field;
+        }
+
+        @Override
+        public void setScorer(final Scorer scorer) {
+        }
+
+        @Override
+        public void collect(final int doc) throws IOException {
+            if (hits != null) {
+                return;
+            }
+            final List<TermOffset> docHits = getTermOffsets(reader, doc, field);
+            if (docHits != null && !docHits.isEmpty()) {
+                hits = docHits;
+            }
+        }
+
+        @Override
+        public void setNextReader(final AtomicReaderContext context) {
+            this.reader = context.reader();
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
+        }
+    }
+
+    private void markTermOffsets(final List<TermOffset> hits, final OffsetList offsets) {
+        Map<String, TermOffset> byPosition = null;
+        for (final TermOffset hit : hits) {
+            final Query query = termMap.get(hit.text);
+            if (query instanceof PhraseQuery) {
+                // only mark the terms of a phrase if they are found at the expected positions
+                final PhraseQuery phraseQuery = (PhraseQuery) query;
+                final Term[] terms = phraseQuery.getTerms();
+                final int[] positions = phraseQuery.getPositions();
+                if (!hit.text.equals(terms[0].text())) {
+                    continue;
+                }
+                if (byPosition == null) {
+                    byPosition = new HashMap<>();
+                    for (final TermOffset t : hits) {
+                        byPosition.put(t.position + ":" + t.text, t);
+                    }
+                }
+                final TermOffset[] phrase = new TermOffset[terms.length];
+                int i = 0;
+                for (; i < terms.length; i++) {
+                    phrase[i] = byPosition.get((hit.position + positions[i] - positions[0]) + ":" + terms[i].text());
+                    if (phrase[i] == null) {
+                        break;
+                    }
+                }
+                if (i == terms.length) {
+                    int lastIdx = -1;
+                    for (final TermOffset t : phrase) {
+                        lastIdx = addMatch(offsets, t.startOffset, t.endOffset, lastIdx);
+                    }
+                }
+            } else {
+                addMatch(offsets, hit.startOffset, hit.endOffset, -1);
+            }
+        }
+    }
+
+    /**
+     * Record a match of the text between the given offsets.
+     *
+     * @param offsets the start offsets of the text nodes
+     * @param startOffset start of the match within the text of the indexed node
+     * @param endOffset end of the match within the text of the indexed node
+     * @param lastIdx index of the text node containing the previous term of a phrase, or -1.
+     *     If the match is in the same text node, the previous match is extended instead.
+     * @return the index of the text node containing the match
+     */
+    private int addMatch(final OffsetList offsets, final int startOffset, final int endOffset, final int lastIdx) {
+        final int idx = offsets.getIndex(startOffset);
+        final NodeId nodeId = offsets.ids[idx];
+        final Offset offset = nodesWithMatch.get(nodeId);
+        if (offset != null) {
+            if (lastIdx == idx) {
+                offset.setEndOffset(endOffset - offsets.offsets[idx]);
+            } else {
+                offset.add(startOffset - offsets.offsets[idx], endOffset - offsets.offsets[idx]);
+            }
+        } else {
+            nodesWithMatch.put(nodeId, new Offset(startOffset - offsets.offsets[idx], endOffset - offsets.offsets[idx]));
+        }
+        return idx;
+    }
+
     private NodePath getPath(final NodeProxy proxy) {
         final NodePath2 path = new NodePath2();
         final IStoredNode<?> node = (IStoredNode<?>) proxy.getNode();
@@ -389,6 +572,20 @@ public class LuceneMatchListener extends AbstractMatchListener {
 
     }
 
+    private static class TermOffset {
+        private final String text;
+        private final int position;
+        private final int startOffset;
+        private final int endOffset;
+
+        TermOffset(final String text, final int position, final int startOffset, final int endOffset) {
+            this.text = text;
+            this.position = position;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+    }
+
     private static class Offset {
         private final int startOffset;
         private int endOffset;
@@ -86,7 +86,9 @@ public class Query extends Function implements Optimizable {
                         "   <phrase-slop>number</phrase-slop>\n" +
                         "   <leading-wildcard>yes|no</leading-wildcard>\n" +
                         "   <filter-rewrite>yes|no</filter-rewrite>\n" +
-                        "</options>")
+                        "   <limit>number</limit>\n" +
+                        "</options>\n" +
+                        "If a limit is given, only the given number of nodes with the highest score are returned.")
             },
             new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_MORE,
                 "all nodes from the input node set matching the query. match highlighting information " +
@@ -194,6 +196,14 @@ public class Query extends Function implements Optimizable {
         return axis;
     }
 
+    @Override
+    public double estimatePreSelection(CostEstimator estimator) {
+        if (contextQName == null || contextQName.getLocalPart() == null || contextQName.getLocalPart().equals("*")) {
+            return CostEstimator.UNKNOWN;
+        }
+        return estimator.estimateFullTextMatches(contextQName);
+    }
+
     public NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException {
     	if (contextSequence != null && !contextSequence.isPersistentSet())
     		// in-memory docs won't have an index
@@ -54,6 +54,7 @@ public class QueryOptions {
     public static final String OPTION_FACETS = "facets";
     public static final String OPTION_FIELDS = "fields";
     public static final String OPTION_QUERY_ANALYZER_ID = "query-analyzer-id";
+    public static final String OPTION_LIMIT = "limit";
 
     protected enum DefaultOperator {
         OR,
@@ -69,6 +70,7 @@ public class QueryOptions {
     protected boolean lowercaseExpandedTerms = false;
     protected Optional<Map<String, FacetQuery>> facets = Optional.empty();
     protected Set<String> fields = null;
+    protected Optional<Integer> limit = Optional.empty();
 
     public QueryOptions() {
         // default options
@@ -204,6 +206,16 @@ public class QueryOptions {
         return fields;
     }
 
+    /**
+     * Returns the maximum number of hits to return. If present, only the hits
+     * with the highest scores are returned.
+     *
+     * @return the maximum number of hits
+     */
+    public Optional<Integer> getLimit() {
+        return limit;
+    }
+
     public boolean filterRewrite() {
         return filterRewrite;
     }
@@ -231,6 +243,16 @@ public class QueryOptions {
             case OPTION_LOWERCASE_EXPANDED_TERMS:
                 lowercaseExpandedTerms = value.equalsIgnoreCase("yes");
                 break;
+            case OPTION_LIMIT:
+                try {
+                    limit = Optional.of(Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_LIMIT + " must be an integer");
+                }
+                if (limit.get() < 1) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_LIMIT + " must be a positive integer");
+                }
+                break;
             case OPTION_QUERY_ANALYZER_ID:
                 queryAnalyzerId = value;
             default:
@@ -93,6 +93,14 @@ public class LuceneIndexTest {
             "   <item id='3'><description>Cabinet</description>\n<condition>bad</condition></item>" +
             "</test>";
 
+    private static final String XML2_ANCESTORS =
+            "<test>" +
+            "   <item id='1'><description>Chair</description><description>Chair, chair</description>" +
+            "       <description>Chair</description></item>" +
+            "   <item id='2'><description>Chair</description></item>" +
+            "   <item id='3'><description>Table</description></item>" +
+            "</test>";
+
     private static final String XML3 =
             "<section>" +
             "   <head>TITLE IN UPPERCASE LETTERS</head>" +
@@ -763,6 +771,80 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void limit() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG2, XML2, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "//description[ft:query(., 'chair table cabinet', " +
+                    "<options><default-operator>or</default-operator></options>)]", null);
+            assertNotNull(seq);
+            assertEquals(3, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//description[ft:query(., 'chair table cabinet', " +
+                    "<options><default-operator>or</default-operator><limit>2</limit></options>)]", null);
+            assertNotNull(seq);
+            assertEquals(2, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//description[ft:query(., 'chair table^5 cabinet', " +
+                    "map { 'default-operator': 'or', 'limit': 1 })]/string()", null);
+            assertEquals("Table", seq.getStringValue());
+        }
+    }
+
+    @Test
+    public void limitAncestors() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG2, XML2_ANCESTORS, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            // the matches below the first item must count as one returned node
+            final Sequence seq = xquery.execute(broker, "//item[ft:query(description, 'chair', map { 'limit': 2 })]/@id/string()", null);
+            assertEquals(2, seq.getItemCount());
+            assertEquals("1", seq.itemAt(0).getStringValue());
+            assertEquals("2", seq.itemAt(1).getStringValue());
+        }
+    }
+
+    @Test
+    public void readOwnWritesWithRefreshInterval() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG1, XML1, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        final LuceneIndex index = (LuceneIndex) pool.getIndexManager().getIndexById(LuceneIndex.ID);
+        final long refreshInterval = index.refreshInterval;
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "/section[ft:query(p, 'content')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            // the refresh thread is not running, so the readers are only reopened for the writes of the broker
+            index.refreshInterval = Long.MAX_VALUE;
+
+            try(final Txn transaction = transact.beginTransaction()) {
+                final IndexInfo info = root.validateXMLResource(transaction, broker, XmldbURI.create("refresh.xml"), XML7);
+                assertNotNull(info);
+                root.store(transaction, broker, info, XML7);
+                transact.commit(transaction);
+            }
+            seq = xquery.execute(broker, "/section[ft:query(p, 'heiterkeit')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            try(final Txn transaction = transact.beginTransaction()) {
+                root.removeXMLResource(transaction, broker, XmldbURI.create("refresh.xml"));
+                transact.commit(transaction);
+            }
+            seq = xquery.execute(broker, "/section[ft:query(p, 'heiterkeit')]", null);
+            assertEquals(0, seq.getItemCount());
+        } finally {
+            index.refreshInterval = refreshInterval;
+        }
+    }
+
     @Test
     public void dropSingleDoc() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException {
         final DocumentSet docs = configureAndStore(COLLECTION_CONFIG1, XML1, "dropDocument.xml");
@@ -152,6 +152,22 @@ public class LuceneMatchListenerTest {
             "    </index>" +
             "</collection>";
 
+    private static String CONF6 =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "   <index>" +
+        "       <text qname=\"para\" offsets=\"yes\"/>" +
+        "       <text qname=\"term\" offsets=\"yes\"/>" +
+        "   </index>" +
+        "</collection>";
+
+    private static String CONF7 =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "   <index>" +
+        "       <text field=\"para-text\" qname=\"para\" offsets=\"yes\"/>" +
+        "       <text qname=\"para\" offsets=\"yes\"/>" +
+        "   </index>" +
+        "</collection>";
+
     private static String MATCH_START = "<exist:match xmlns:exist=\"http://exist.sourceforge.net/NS/exist\">";
     private static String MATCH_END = "</exist:match>";
 
@@ -211,6 +227,65 @@ public class LuceneMatchListenerTest {
         }
     }
 
+    /**
+     * Test match highlighting using the term offsets stored in the index.
+     */
+    @Test
+    public void storedOffsets() throws EXistException, PermissionDeniedException, XPathException, SAXException, CollectionConfigurationException, LockException, IOException {
+        configureAndStore(CONF6, XML);
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "//para[ft:query(., '+nested +inner +elements')]", null);
+            assertNotNull(seq);
+            assertEquals(1, seq.getItemCount());
+            String result = queryResult2String(broker, seq);
+            XMLAssert.assertEquals("<para>another paragraph with <note><hi>" + MATCH_START + "nested" +
+                    MATCH_END + "</hi> " + MATCH_START +
+                    "inner" + MATCH_END + "</note> " + MATCH_START + "elements" + MATCH_END + ".</para>", result);
+
+            seq = xquery.execute(broker, "//para[ft:query(term, 'term')]", null);
+            assertNotNull(seq);
+            assertEquals(1, seq.getItemCount());
+            result = queryResult2String(broker, seq);
+            XMLAssert.assertEquals("<para>a third paragraph with <term>" + MATCH_START + "term" + MATCH_END +
+                    "</term>.</para>", result);
+
+            seq = xquery.execute(broker, "//para[ft:query(., '\"double match\"')]", null);
+            assertNotNull(seq);
+            assertEquals(1, seq.getItemCount());
+            result = queryResult2String(broker, seq);
+            XMLAssert.assertEquals("<para>" + MATCH_START + "double match" + MATCH_END + " " +
+                    MATCH_START + "double match" + MATCH_END + "</para>", result);
+        }
+    }
+
+    /**
+     * Test match highlighting using stored term offsets if a node is indexed
+     * in several lucene documents, only one of which has the queried field.
+     */
+    @Test
+    public void storedOffsetsSeveralDocuments() throws EXistException, PermissionDeniedException, XPathException, SAXException, CollectionConfigurationException, LockException, IOException {
+        configureAndStore(CONF7, XML);
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "//para[ft:query(., '+nested +inner +elements')]", null);
+            assertNotNull(seq);
+            assertEquals(1, seq.getItemCount());
+            String result = queryResult2String(broker, seq);
+            XMLAssert.assertEquals("<para>another paragraph with <note><hi>" + MATCH_START + "nested" +
+                    MATCH_END + "</hi> " + MATCH_START +
+                    "inner" + MATCH_END + "</note> " + MATCH_START + "elements" + MATCH_END + ".</para>", result);
+        }
+    }
+
     @Test
     public void matchInAncestor() throws EXistException, PermissionDeniedException, XPathException, SAXException, IOException, XpathException, LockException, CollectionConfigurationException {
         configureAndStore(CONF1, XML);
@@ -52,9 +52,13 @@ public class ComplexTextCollector implements TextCollector {
     public void characters(AbstractCharacterData text, NodePath path) {
         if (currentField != null) {
             Field field = fields.get(fields.size() - 1);
-            if (!field.isAttribute() && (currentField.includeNested() || currentField.match(path))) {
-                field.append(text.getXMLString());
-                length += text.getXMLString().length();
+            if (!field.isAttribute()) {
+                if (currentField.includeNested() || currentField.match(path)) {
+                    field.append(text.getXMLString());
+                    length += text.getXMLString().length();
+                } else {
+                    field.setIncomplete();
+                }
             }
         }
     }
@@ -206,6 +206,45 @@ public class RangeIndexConfig {
         return Type.ITEM;
     }
 
+    /**
+     * Find the fields which are defined by the given path, relative to the node
+     * they are created on.
+     *
+     * @param relPath the path of the field below the indexed node
+     * @return the names of the fields
+     */
+    public List<String> getFieldNames(NodePath relPath) {
+        final List<String> names = new ArrayList<>();
+        for (RangeIndexConfigElement rice : paths.values()) {
+            do {
+                if (rice.isComplex()) {
+                    for (RangeIndexConfigField field : ((ComplexRangeIndexConfigElement) rice).getFields()) {
+                        if (samePath(relPath, field.getRelativePath())) {
+                            names.add(field.getName());
+                        }
+                    }
+                }
+                rice = rice.getNext();
+            } while (rice != null);
+        }
+        return names;
+    }
+
+    private static boolean samePath(NodePath path, NodePath other) {
+        if (other == null || path.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            final QName qname = path.getComponent(i);
+            final QName otherQName = other.getComponent(i);
+            // QName.equals does not distinguish attributes from elements
+            if (!qname.equals(otherQName) || qname.getNameType() != otherQName.getNameType()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private class PathIterator implements Iterator<RangeIndexConfigElement> {
 
         private RangeIndexConfigElement nextConfig;
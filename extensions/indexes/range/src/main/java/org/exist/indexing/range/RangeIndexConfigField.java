@@ -118,6 +118,14 @@ public class RangeIndexConfigField {
         return path;
     }
 
+    /**
+     * @return the path of the field relative to the indexed node, or null if the
+     * field is defined on the indexed node itself
+     */
+    public NodePath getRelativePath() {
+        return relPath;
+    }
+
     public int getType() {
         return type;
     }
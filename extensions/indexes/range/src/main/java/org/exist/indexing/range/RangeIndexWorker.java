@@ -42,6 +42,7 @@ import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ByteBlockPool;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.exist.collections.Collection;
@@ -87,6 +88,9 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public static final String FIELD_ADDRESS = "address";
     public static final String FIELD_ID = "id";
 
+    // the maximum length of a value in sorted doc values
+    private static final int MAX_SORT_VALUE_LENGTH = ByteBlockPool.BYTE_BLOCK_SIZE - 2;
+
     private static Set<String> LOAD_FIELDS = new TreeSet<String>();
     static {
         LOAD_FIELDS.add(FIELD_DOC_ID);
@@ -107,6 +111,12 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private int maxCachedNodesSize = 4096 * 1024;
 
+    /**
+     * The write generation of the index after the last change made through this worker,
+     * so searches see the changes made by the same broker.
+     */
+    private long writeGeneration = 0;
+
     public RangeIndexWorker(RangeIndex index, DBBroker broker) {
         this.index = index;
         this.broker = broker;
@@ -371,7 +381,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -396,7 +406,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -428,7 +438,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.warn("Error while deleting lucene index entries: " + e.getMessage(), e);
         } finally {
             nodesToRemove = null;
-            index.releaseWriter(writer);
+            releaseWriter(writer);
         }
     }
 
@@ -486,12 +496,28 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 Field fNodeIdIdx = new Field(FIELD_ID, bts, LuceneIndexWorker.TYPE_NODE_ID);
                 doc.add(fNodeIdIdx);
 
+                // fields which occur once are also stored as sorted doc values, so an
+                // "order by" can read the sort key from the index
+                Map<String, Integer> occurrences = null;
+                if (pending.getCollector().hasFields()) {
+                    occurrences = new HashMap<>();
+                    for (TextCollector.Field field : pending.getCollector().getFields()) {
+                        occurrences.merge(field.getName(), 1, Integer::sum);
+                    }
+                }
+
                 for (TextCollector.Field field : pending.getCollector().getFields()) {
                     String contentField;
                     if (field.isNamed())
                         contentField = field.getName();
                     else
                         contentField = LuceneUtil.encodeQName(pending.getQName(), index.getBrokerPool().getSymbols());
+                    if (occurrences != null && field.isNamed() && field.isComplete() && occurrences.get(contentField) == 1) {
+                        final BytesRef value = new BytesRef(field.getStringValue());
+                        if (value.length <= MAX_SORT_VALUE_LENGTH) {
+                            doc.add(new SortedDocValuesField(contentField, value));
+                        }
+                    }
                     Field fld = pending.getConfig().convertToField(contentField, field.getContent().toString());
                     if (fld != null) {
                         doc.add(fld);
@@ -509,14 +535,14 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToWrite = new ArrayList<RangeIndexDoc>();
             cachedNodesSize = 0;
         }
     }
 
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet, List<QName> qnames, AtomicValue[] keys, RangeIndex.Operator operator, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             List<QName> definedIndexes = getDefinedIndexes(qnames);
             NodeSet resultSet = new NewArrayNodeSet();
             for (QName qname : definedIndexes) {
@@ -541,7 +567,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             BooleanQuery query = new BooleanQuery();
             int j = 0;
             for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
@@ -571,6 +597,115 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         });
     }
 
+    /**
+     * Opens a reader for the values of fields, which stays open for many lookups, e.g.
+     * for all tuples of an "order by". It has to be closed to release the index reader.
+     *
+     * @return the field values
+     * @throws IOException if the index cannot be read
+     */
+    public FieldValues openFieldValues() throws IOException {
+        return new FieldValues(index.acquireReader(writeGeneration), writeGeneration);
+    }
+
+    /**
+     * Reads the values of fields defined on a node from the sorted doc values.
+     * Only fields which occur once below the node, and contain the full string value
+     * of the field node, are stored as doc values.
+     */
+    public class FieldValues implements AutoCloseable {
+        private final DirectoryReader reader;
+        private final long generation;
+        private final List<AtomicReaderContext> leaves;
+        private final TermsEnum[] ids;
+        private final DocsEnum[] docs;
+        private final Map<String, SortedDocValues>[] values;
+
+        // the leaf in which the last value was found, the next node is likely in the same one
+        private int lastLeaf = 0;
+
+        @SuppressWarnings("unchecked")
+        private FieldValues(DirectoryReader reader, long generation) {
+            this.reader = reader;
+            this.generation = generation;
+            this.leaves = reader.leaves();
+            this.ids = new TermsEnum[leaves.size()];
+            this.docs = new DocsEnum[leaves.size()];
+            this.values = new Map[leaves.size()];
+        }
+
+        /**
+         * @param worker the worker of the current broker
+         * @return true if the reader belongs to the worker and sees all changes it made
+         */
+        public boolean isCurrent(RangeIndexWorker worker) {
+            return worker == RangeIndexWorker.this && generation == writeGeneration;
+        }
+
+        /**
+         * Read the value of a field defined on the given node.
+         *
+         * @param doc the document
+         * @param nodeId the id of the indexed node
+         * @param fields the names of the fields to look at
+         * @return the string value of the first field found, or null if it is not available from the index
+         * @throws IOException if the index cannot be read
+         */
+        public String get(DocumentImpl doc, NodeId nodeId, List<String> fields) throws IOException {
+            final byte[] idData = new byte[nodeId.size() + 4];
+            ByteConversion.intToByteH(doc.getDocId(), idData, 0);
+            nodeId.serialize(idData, 4);
+            final BytesRef id = new BytesRef(idData);
+
+            for (int i = 0; i < leaves.size(); i++) {
+                final int leaf = i == 0 ? lastLeaf : (i <= lastLeaf ? i - 1 : i);
+                final String value = get(leaf, id, fields);
+                if (value != null) {
+                    lastLeaf = leaf;
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private String get(int leaf, BytesRef id, List<String> fields) throws IOException {
+            final AtomicReader atomicReader = leaves.get(leaf).reader();
+            if (ids[leaf] == null) {
+                final Terms terms = atomicReader.terms(FIELD_ID);
+                if (terms == null) {
+                    return null;
+                }
+                ids[leaf] = terms.iterator(null);
+                values[leaf] = new HashMap<>();
+            }
+            if (!ids[leaf].seekExact(id)) {
+                return null;
+            }
+            docs[leaf] = ids[leaf].docs(atomicReader.getLiveDocs(), docs[leaf], DocsEnum.FLAG_NONE);
+            for (int luceneDoc = docs[leaf].nextDoc(); luceneDoc != DocIdSetIterator.NO_MORE_DOCS; luceneDoc = docs[leaf].nextDoc()) {
+                for (String field : fields) {
+                    SortedDocValues fieldValues = values[leaf].get(field);
+                    if (fieldValues == null && !values[leaf].containsKey(field)) {
+                        fieldValues = atomicReader.getSortedDocValues(field);
+                        values[leaf].put(field, fieldValues);
+                    }
+                    if (fieldValues != null) {
+                        final int ord = fieldValues.getOrd(luceneDoc);
+                        if (ord > -1) {
+                            return fieldValues.lookupOrd(ord).utf8ToString();
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            index.releaseReader(reader);
+        }
+    }
+
 //    private OpenBitSet getDocs(DocumentSet docs, IndexSearcher searcher) throws IOException {
 //        OpenBitSet bits = new OpenBitSet(searcher.getIndexReader().maxDoc());
 //        for (Iterator i = docs.getDocumentIterator(); i.hasNext(); ) {
@@ -709,7 +844,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private List<QName> getDefinedIndexesFor(QName qname, final List<QName> indexes) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             for (FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -913,7 +1048,14 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
+        }
+    }
+
+    private void releaseWriter(IndexWriter writer) {
+        index.releaseWriter(writer);
+        if (writer != null) {
+            writeGeneration = index.getWriteGeneration();
         }
     }
 
@@ -956,7 +1098,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public Occurrences[] scanIndexByField(String field, DocumentSet docs, String start, long max) {
         try {
-            return index.withReader(reader -> {
+            return index.withReader(writeGeneration, reader -> {
                 TreeMap<String, Occurrences> map = new TreeMap<String, Occurrences>();
                 scan(docs, null, start, null, max, map, reader, field);
 
@@ -970,7 +1112,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             TreeMap<String, Occurrences> map = new TreeMap<String, Occurrences>();
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
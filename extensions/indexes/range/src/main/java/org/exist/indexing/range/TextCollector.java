@@ -30,6 +30,7 @@ public interface TextCollector {
         private final int wsTreatment;
         private final boolean caseSensitive;
         private XMLString content;
+        private boolean complete = true;
 
         public Field(final XMLString content, final int wsTreatment, final boolean caseSensitive) {
             this.content = content;
@@ -64,6 +65,28 @@ public interface TextCollector {
             return content.toString();
         }
 
+        /**
+         * Returns the collected text before any case or whitespace
+         * normalization is applied. Must be called before {@link #getContent()}.
+         *
+         * @return the collected text
+         */
+        public String getStringValue() {
+            return content.toString();
+        }
+
+        /**
+         * @return false if text of nested elements was skipped, so the content
+         * is not the string value of the node
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public void setIncomplete() {
+            this.complete = false;
+        }
+
         public String getName() {
             return name;
         }
@@ -21,17 +21,21 @@
  */
 package org.exist.xquery.modules.range;
 
+import org.exist.dom.QName;
 import org.exist.indexing.range.*;
+import org.exist.storage.ElementValue;
 import org.exist.storage.NodePath;
 import org.exist.xquery.*;
 import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.value.Type;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Query rewriter for the range index. May replace path expressions like a[b = "c"] or a[b = "c"][d = "e"]
- * with either a[range:equals(b, "c")] or range:field-equals(...).
+ * with either a[range:equals(b, "c")] or range:field-equals(...). The sort expression of an "order by $a/b"
+ * is replaced with a {@link SortKey}, which reads the value of b from the index if it is a field.
  */
 public class RangeQueryRewriter extends QueryRewriter {
 
@@ -125,6 +129,51 @@ public class RangeQueryRewriter extends QueryRewriter {
         return null;
     }
 
+    @Override
+    public Expression rewriteOrderSpec(OrderSpec orderSpec) throws XPathException {
+        final Expression expr = unwrap(orderSpec.getSortExpression());
+        if (!(expr instanceof PathExpr)) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) expr;
+        if (path.getSubExpressionCount() < 2) {
+            return null;
+        }
+        // only paths like $a/b/@c can be looked up: the variable is bound to the indexed node,
+        // and the following steps select the field
+        final Expression contextExpr = unwrap(path.getSubExpression(0));
+        if (!(contextExpr instanceof VariableReference)) {
+            return null;
+        }
+        final NodePath fieldPath = new NodePath();
+        for (int i = 1; i < path.getSubExpressionCount(); i++) {
+            final Expression next = path.getSubExpression(i);
+            if (!(next instanceof LocationStep)) {
+                return null;
+            }
+            final LocationStep step = (LocationStep) next;
+            final NodeTest test = step.getTest();
+            if (step.hasPredicates() || test.isWildcardTest() || test.getName() == null) {
+                return null;
+            }
+            if (step.getAxis() == Constants.CHILD_AXIS && test.getType() == Type.ELEMENT) {
+                fieldPath.addComponent(new QName(test.getName(), ElementValue.ELEMENT));
+            } else if (step.getAxis() == Constants.ATTRIBUTE_AXIS) {
+                fieldPath.addComponent(new QName(test.getName(), ElementValue.ATTRIBUTE));
+            } else {
+                return null;
+            }
+        }
+        return new SortKey(getContext(), contextExpr, fieldPath, orderSpec.getSortExpression());
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (expr instanceof PathExpr && ((PathExpr) expr).getSubExpressionCount() == 1) {
+            expr = ((PathExpr) expr).getSubExpression(0);
+        }
+        return expr;
+    }
+
     protected static Lookup rewrite(Expression expression, NodePath path) throws XPathException {
         ArrayList<Expression> eqArgs = new ArrayList<Expression>(2);
         if (expression instanceof GeneralComparison) {
@@ -0,0 +1,191 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.range;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.indexing.range.RangeIndex;
+import org.exist.indexing.range.RangeIndexConfig;
+import org.exist.indexing.range.RangeIndexWorker;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.xquery.*;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.UntypedAtomicValue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replaces the sort expression of an "order by" clause like <code>order by $div/head</code>
+ * if the sort key is a field of the range index. The value of the field is read from the
+ * sorted doc values of the index, so the node does not need to be loaded and atomized.
+ * Only the sort key of each tuple is looked up in the index: the tuples are still collected
+ * and sorted in memory by the "order by" clause, the order itself is not read from the index.
+ *
+ * If the index does not have a value for the node, e.g. because the field occurs more than
+ * once, the original expression is evaluated.
+ *
+ * The index reader is acquired once and kept for the following tuples, until the state of the
+ * expression is reset after the query, or the broker changes the index.
+ */
+public class SortKey extends AbstractExpression {
+
+    private static final Logger LOG = LogManager.getLogger(SortKey.class);
+
+    private final Expression contextExpr;
+    private final NodePath fieldPath;
+    private final Expression fallback;
+
+    private RangeIndexConfig lastConfig = null;
+    private List<String> lastFields = Collections.emptyList();
+
+    private RangeIndexWorker.FieldValues fieldValues = null;
+
+    /**
+     * @param context the query context
+     * @param contextExpr the expression returning the indexed node, e.g. the variable
+     * @param fieldPath the path of the field relative to the indexed node
+     * @param fallback the original sort expression
+     */
+    public SortKey(XQueryContext context, Expression contextExpr, NodePath fieldPath, Expression fallback) {
+        super(context);
+        this.contextExpr = contextExpr;
+        this.fieldPath = fieldPath;
+        this.fallback = fallback;
+    }
+
+    public Expression getFallback() {
+        return fallback;
+    }
+
+    @Override
+    public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
+        // contextExpr is part of the fallback expression
+        fallback.analyze(contextInfo);
+    }
+
+    @Override
+    public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        final Sequence input = contextExpr.eval(contextSequence, contextItem);
+        if (input.hasOne() && input.itemAt(0) instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) input.itemAt(0);
+            final List<String> fields = getFields(node.getOwnerDocument().getCollection());
+            if (!fields.isEmpty()) {
+                final long start = System.currentTimeMillis();
+                final RangeIndexWorker index = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+                final String value;
+                try {
+                    if (fieldValues != null && !fieldValues.isCurrent(index)) {
+                        closeFieldValues();
+                    }
+                    if (fieldValues == null) {
+                        fieldValues = index.openFieldValues();
+                    }
+                    value = fieldValues.get(node.getOwnerDocument(), node.getNodeId(), fields);
+                } catch (IOException e) {
+                    throw new XPathException(this, e.getMessage());
+                }
+                if (value != null) {
+                    if (context.getProfiler().traceFunctions()) {
+                        context.getProfiler().traceIndexUsage(context, "new-range", this, PerformanceStats.OPTIMIZED_INDEX, System.currentTimeMillis() - start);
+                    }
+                    return new UntypedAtomicValue(value);
+                }
+            }
+        }
+        return fallback.eval(contextSequence, contextItem);
+    }
+
+    /**
+     * Get the names of the fields matching the field path in the configuration of the
+     * collection. The result is kept as long as the configuration does not change.
+     */
+    private List<String> getFields(Collection collection) {
+        final IndexSpec idxConf = collection.getIndexConfiguration(context.getBroker());
+        if (idxConf == null) {
+            return Collections.emptyList();
+        }
+        final RangeIndexConfig config = (RangeIndexConfig) idxConf.getCustomIndexSpec(RangeIndex.ID);
+        if (config == null) {
+            return Collections.emptyList();
+        }
+        if (config != lastConfig) {
+            lastFields = config.getFieldNames(fieldPath);
+            lastConfig = config;
+        }
+        return lastFields;
+    }
+
+    private void closeFieldValues() throws IOException {
+        final RangeIndexWorker.FieldValues values = fieldValues;
+        fieldValues = null;
+        values.close();
+    }
+
+    @Override
+    public int returnsType() {
+        return Type.ITEM;
+    }
+
+    @Override
+    public int getCardinality() {
+        return fallback.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return fallback.getDependencies();
+    }
+
+    @Override
+    public void resetState(boolean postOptimization) {
+        super.resetState(postOptimization);
+        fallback.resetState(postOptimization);
+        if (fieldValues != null) {
+            try {
+                closeFieldValues();
+            } catch (IOException e) {
+                LOG.warn("Failed to release range index reader: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void accept(ExpressionVisitor visitor) {
+        fallback.accept(visitor);
+    }
+
+    @Override
+    public void dump(ExpressionDumper dumper) {
+        fallback.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return fallback.toString();
+    }
+}